@@ -0,0 +1,67 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic data shared by benchmarks. The same arguments always
+ * produce the same data, so that results are comparable between runs.
+ */
+public class BenchmarkData {
+    // Length of the string column of generated records
+    public static final int PAYLOAD_LENGTH = 32;
+
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private BenchmarkData() {}
+
+    /**
+     * @return schema of generated records: an int key, a fixed-length string payload,
+     * and a float value
+     */
+    public static Schema schema() {
+        return new Schema()
+                .add("key", Type.intType())
+                .add("payload", Type.stringType(PAYLOAD_LENGTH))
+                .add("value", Type.floatType());
+    }
+
+    /**
+     * Generates records with keys drawn uniformly from [0, numKeys).
+     *
+     * @param numRecords number of records to generate
+     * @param numKeys number of distinct keys to draw from
+     * @param seed seed of the generator
+     * @return generated records, matching schema()
+     */
+    public static List<Record> records(int numRecords, int numKeys, long seed) {
+        Random random = new Random(seed);
+        List<Record> records = new ArrayList<>(numRecords);
+        char[] payload = new char[PAYLOAD_LENGTH];
+        for (int i = 0; i < numRecords; ++i) {
+            for (int j = 0; j < payload.length; ++j) {
+                payload[j] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            records.add(new Record(random.nextInt(numKeys), new String(payload), random.nextFloat()));
+        }
+        return records;
+    }
+
+    /**
+     * Maps i to a distinct, pseudo-randomly ordered int key: distinct values of i
+     * always give distinct keys, so keys can be generated one at a time without
+     * remembering which were already used.
+     *
+     * @param i index of the key
+     * @return the ith key
+     */
+    public static int key(int i) {
+        // multiplication by an odd constant is a bijection on 32-bit integers
+        return i * 0x9E3779B1;
+    }
+}
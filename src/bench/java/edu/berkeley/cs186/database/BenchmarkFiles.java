@@ -0,0 +1,29 @@
+package edu.berkeley.cs186.database;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * File helpers shared by benchmarks.
+ */
+public class BenchmarkFiles {
+    private BenchmarkFiles() {}
+
+    /**
+     * Deletes a directory and everything in it.
+     * @param dir directory to delete
+     */
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
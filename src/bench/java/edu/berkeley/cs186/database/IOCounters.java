@@ -0,0 +1,19 @@
+package edu.berkeley.cs186.database;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Counts buffer manager I/Os (BufferManager#getNumIOs) done by a benchmark. Reported
+ * by JMH as the total number of I/Os in each iteration, alongside the operation
+ * count; the number of I/Os per operation is ios / ops.
+ */
+@AuxCounters(AuxCounters.Type.EVENTS)
+@State(Scope.Thread)
+public class IOCounters {
+    public long ios;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        ios = 0;
+    }
+}
@@ -0,0 +1,129 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares two-phase locking (Database#beginTransaction) with optimistic
+ * transactions (Database#runOptimisticTransaction) on short read-mostly
+ * transactions, on 8 threads. Each transaction reads READS_PER_TRANSACTION random
+ * records of a table of numRecords records, and one in WRITE_EVERY transactions then
+ * updates the last record it read. The smaller the table, the more transactions
+ * conflict.
+ *
+ * Under 2PL, deadlocks are broken by the background deadlock detector, and the
+ * aborted transaction is retried; optimistic transactions are retried when they
+ * fail validation. aborts / ops is the number of retries per transaction.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="OptimisticTransaction"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class OptimisticTransactionBenchmark {
+    private static final int BUFFER_SIZE = 1024;
+    private static final int READS_PER_TRANSACTION = 4;
+    private static final int WRITE_EVERY = 10;
+    private static final String TABLE_NAME = "records";
+
+    @Param({"false", "true"})
+    public boolean optimistic;
+
+    @Param({"100", "1000", "100000"})
+    public int numRecords;
+
+    /**
+     * Counts transactions retried. Reported by JMH as the total in each iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Aborts {
+        public long aborts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            aborts = 0;
+        }
+    }
+
+    private Path dir;
+    private Database database;
+    private RecordId[] rids;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("optimistic");
+        // with the recovery manager, to roll back aborted transactions
+        database = new Database(dir.toString(), BUFFER_SIZE, new LockManager(), new ClockEvictionPolicy(), true);
+        database.waitAllTransactions();
+        database.enableOptimisticTransactions();
+        database.startDeadlockDetector(10);
+
+        List<Record> records = BenchmarkData.records(numRecords, numRecords, 186);
+        rids = new RecordId[numRecords];
+        try (Transaction transaction = database.beginTransaction()) {
+            transaction.createTable(BenchmarkData.schema(), TABLE_NAME);
+            for (int i = 0; i < numRecords; ++i) {
+                rids[i] = transaction.getTransactionContext().addRecord(TABLE_NAME, records.get(i));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        database.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    private void work(Transaction transaction) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TransactionContext context = transaction.getTransactionContext();
+        RecordId rid = null;
+        Record record = null;
+        for (int i = 0; i < READS_PER_TRANSACTION; ++i) {
+            rid = rids[random.nextInt(numRecords)];
+            record = context.getRecord(TABLE_NAME, rid);
+        }
+        if (random.nextInt(WRITE_EVERY) == 0) {
+            context.updateRecord(TABLE_NAME, rid, record);
+        }
+    }
+
+    @Benchmark
+    public void transaction(Aborts counters) {
+        if (optimistic) {
+            counters.aborts += database.runOptimisticTransaction(this::work, Integer.MAX_VALUE) - 1;
+            return;
+        }
+        while (true) {
+            Transaction transaction = database.beginTransaction();
+            try {
+                work(transaction);
+                transaction.commit();
+                return;
+            } catch (DeadlockException e) {
+                transaction.rollback();
+                ++counters.aborts;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.IOCounters;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures BPlusTree#put, BPlusTree#get and BPlusTree#scanAll on a tree of int keys,
+ * loaded with numKeys keys (in pseudo-random order) before measurement starts. The
+ * buffer is smaller than the largest trees, so those incur I/Os.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="BPlusTree"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BPlusTreeBenchmark {
+    private static final int BUFFER_SIZE = 256;
+    private static final int ORDER = 64;
+
+    @Param({"1000", "10000", "100000"})
+    public int numKeys;
+
+    private Path dir;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private BPlusTree tree;
+    private Random random;
+    private int nextKey;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bplustree");
+        diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), new DummyRecoveryManager());
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), BUFFER_SIZE,
+                                          new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart();
+        BPlusTreeMetadata metadata = new BPlusTreeMetadata("bench", "key", Type.intType(), ORDER,
+                                                           partNum, DiskSpaceManager.INVALID_PAGE_NUM, -1);
+        tree = new BPlusTree(bufferManager, metadata, new DummyLockContext());
+        for (int i = 0; i < numKeys; ++i) {
+            tree.put(new IntDataBox(BenchmarkData.key(i)), new RecordId(i, (short) 0));
+        }
+        random = new Random(186);
+        nextKey = numKeys;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        bufferManager.close();
+        diskSpaceManager.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    /**
+     * Inserts a key not yet in the tree; the tree keeps growing during the benchmark.
+     */
+    @Benchmark
+    public void put(IOCounters counters) {
+        long ios = bufferManager.getNumIOs();
+        int i = nextKey++;
+        tree.put(new IntDataBox(BenchmarkData.key(i)), new RecordId(i, (short) 0));
+        counters.ios += bufferManager.getNumIOs() - ios;
+    }
+
+    /**
+     * Looks up a random key that is in the tree.
+     */
+    @Benchmark
+    public Object get(IOCounters counters) {
+        long ios = bufferManager.getNumIOs();
+        Object rid = tree.get(new IntDataBox(BenchmarkData.key(random.nextInt(numKeys))));
+        counters.ios += bufferManager.getNumIOs() - ios;
+        return rid;
+    }
+
+    /**
+     * Scans every key of the tree.
+     */
+    @Benchmark
+    public void scanAll(IOCounters counters, Blackhole blackhole) {
+        long ios = bufferManager.getNumIOs();
+        Iterator<RecordId> iter = tree.scanAll();
+        while (iter.hasNext()) {
+            blackhole.consume(iter.next());
+        }
+        counters.ios += bufferManager.getNumIOs() - ios;
+    }
+}
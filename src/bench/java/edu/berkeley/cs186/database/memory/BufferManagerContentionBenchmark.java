@@ -0,0 +1,71 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of buffer pool hits (fetch + unpin of a page that is already
+ * loaded) from many threads at once, with the buffer pool split into 1 (a single
+ * global lock) or more stripes.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="BufferManagerContention -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class BufferManagerContentionBenchmark {
+    private static final int BUFFER_SIZE = 1024;
+    private static final int NUM_PAGES = 256;
+
+    @Param({"1", "4", "16", "64"})
+    public int numStripes;
+
+    private Path dir;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private long[] pageNums;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bm-contention");
+        diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), new DummyRecoveryManager());
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), BUFFER_SIZE,
+                                          LRUEvictionPolicy::new, numStripes);
+        int partNum = diskSpaceManager.allocPart();
+        pageNums = new long[NUM_PAGES];
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        bufferManager.close();
+        diskSpaceManager.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public long fetchHit() {
+        long pageNum = pageNums[ThreadLocalRandom.current().nextInt(NUM_PAGES)];
+        BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+        frame.unpin();
+        return pageNum;
+    }
+}
@@ -0,0 +1,93 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of fetching (through BufferManager#fetchPage) and unpinning a
+ * page that is already loaded, on 1, 4 and 16 threads. Every fetch is a hit, so this
+ * only exercises the hit path, which takes no stripe lock; the allocation rate
+ * reported by the GC profiler should be zero. Threads that fetch the same page at
+ * the same time wait for each other's page latch.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="BufferManagerHit"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferManagerHitBenchmark {
+    private static final int BUFFER_SIZE = 1024;
+    private static final int NUM_PAGES = 256;
+
+    @Param({"1", "16"})
+    public int numStripes;
+
+    private Path dir;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private LockContext parentContext;
+    private long[] pageNums;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bm-hit");
+        diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), new DummyRecoveryManager());
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), BUFFER_SIZE,
+                                          LRUEvictionPolicy::new, numStripes);
+        parentContext = new DummyLockContext();
+        int partNum = diskSpaceManager.allocPart();
+        pageNums = new long[NUM_PAGES];
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            Page page = bufferManager.fetchNewPage(parentContext, partNum);
+            pageNums[i] = page.getPageNum();
+            page.unpin();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        bufferManager.close();
+        diskSpaceManager.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    private Page fetchAndUnpin() {
+        long pageNum = pageNums[ThreadLocalRandom.current().nextInt(NUM_PAGES)];
+        Page page = bufferManager.fetchPage(parentContext, pageNum);
+        page.unpin();
+        return page;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Page fetchHit1Thread() {
+        return fetchAndUnpin();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Page fetchHit4Threads() {
+        return fetchAndUnpin();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Page fetchHit16Threads() {
+        return fetchAndUnpin();
+    }
+}
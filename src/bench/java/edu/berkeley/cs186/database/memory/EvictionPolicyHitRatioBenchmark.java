@@ -0,0 +1,139 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the buffer pool hit ratio of each eviction policy under a workload that
+ * mixes index lookups (root, inner node and leaf of a small index, with skewed
+ * leaf accesses) with a full scan of a table much larger than the buffer.
+ *
+ * Each operation is one index lookup followed by scanPagesPerLookup pages of the
+ * scan. The hits and misses counters are reported alongside the throughput; the
+ * hit ratio is hits / (hits + misses).
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="EvictionPolicyHitRatio"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class EvictionPolicyHitRatioBenchmark {
+    private static final int BUFFER_SIZE = 128;
+    private static final int NUM_INNER_PAGES = 8;
+    private static final int NUM_LEAF_PAGES = 96;
+    private static final int NUM_TABLE_PAGES = 2048;
+
+    @Param({"lru", "clock", "arc"})
+    public String policy;
+
+    @Param({"1", "4", "16"})
+    public int scanPagesPerLookup;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    private Path dir;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private long rootPage;
+    private long[] innerPages;
+    private long[] leafPages;
+    private long[] tablePages;
+    private int scanPosition;
+    private Random random;
+    private byte[] buf;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bm-hit-ratio");
+        diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), new DummyRecoveryManager());
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), BUFFER_SIZE,
+                                          newPolicy(policy));
+        int indexPart = diskSpaceManager.allocPart();
+        int tablePart = diskSpaceManager.allocPart();
+        rootPage = diskSpaceManager.allocPage(indexPart);
+        innerPages = allocPages(indexPart, NUM_INNER_PAGES);
+        leafPages = allocPages(indexPart, NUM_LEAF_PAGES);
+        tablePages = allocPages(tablePart, NUM_TABLE_PAGES);
+        scanPosition = 0;
+        random = new Random(186);
+        buf = new byte[8];
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        bufferManager.close();
+        diskSpaceManager.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void lookupAndScan(Counters counters) {
+        access(rootPage, counters);
+        access(innerPages[random.nextInt(NUM_INNER_PAGES)], counters);
+        // skewed towards the first leaves: the minimum of two uniform picks
+        int leaf = Math.min(random.nextInt(NUM_LEAF_PAGES), random.nextInt(NUM_LEAF_PAGES));
+        access(leafPages[leaf], counters);
+        for (int i = 0; i < scanPagesPerLookup; ++i) {
+            access(tablePages[scanPosition], counters);
+            scanPosition = (scanPosition + 1) % NUM_TABLE_PAGES;
+        }
+    }
+
+    private void access(long pageNum, Counters counters) {
+        long ios = bufferManager.getNumIOs();
+        BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+        try {
+            // reading a record touches the page a few times
+            frame.readBytes((short) 0, (short) buf.length, buf);
+            frame.readBytes((short) 8, (short) buf.length, buf);
+        } finally {
+            frame.unpin();
+        }
+        if (bufferManager.getNumIOs() == ios) {
+            ++counters.hits;
+        } else {
+            ++counters.misses;
+        }
+    }
+
+    private long[] allocPages(int partNum, int numPages) {
+        long[] pages = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pages[i] = diskSpaceManager.allocPage(partNum);
+        }
+        return pages;
+    }
+
+    private static EvictionPolicy newPolicy(String name) {
+        switch (name) {
+        case "lru": return new LRUEvictionPolicy();
+        case "clock": return new ClockEvictionPolicy();
+        case "arc": return new ARCEvictionPolicy();
+        default: throw new IllegalArgumentException("unknown eviction policy " + name);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.table.ColumnVector;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares record-at-a-time execution (QueryOperator#iterator) with batch execution
+ * (QueryOperator#batchIterator) of
+ *
+ *   SELECT key, value FROM records WHERE key < numRecords * selectivity
+ *
+ * over a table of numRecords records held in the buffer pool. Each operation runs
+ * the query once, in its own transaction, and consumes every output value.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="BatchExecution"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchExecutionBenchmark {
+    private static final int BUFFER_SIZE = 4096;
+    private static final String TABLE_NAME = "records";
+
+    @Param({"10000", "100000"})
+    public int numRecords;
+
+    @Param({"0.1", "0.9"})
+    public double selectivity;
+
+    private Path dir;
+    private Database database;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("batch");
+        database = new Database(dir.toString(), BUFFER_SIZE);
+        database.waitAllTransactions();
+        List<Record> records = BenchmarkData.records(numRecords, numRecords, 186);
+        try (Transaction transaction = database.beginTransaction()) {
+            transaction.createTable(BenchmarkData.schema(), TABLE_NAME);
+            for (Record record : records) {
+                transaction.getTransactionContext().addRecord(TABLE_NAME, record);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        database.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    private QueryOperator query(Transaction transaction) {
+        QueryOperator scan = new SequentialScanOperator(transaction.getTransactionContext(), TABLE_NAME);
+        QueryOperator select = new SelectOperator(scan, "key", PredicateOperator.LESS_THAN,
+                                                  new IntDataBox((int) (numRecords * selectivity)));
+        return new ProjectOperator(select, Arrays.asList("key", "value"), Collections.emptyList());
+    }
+
+    @Benchmark
+    public void records(Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            Iterator<Record> records = query(transaction).iterator();
+            while (records.hasNext()) {
+                Record record = records.next();
+                blackhole.consume(record.getValue(0).getInt());
+                blackhole.consume(record.getValue(1).getFloat());
+            }
+        }
+    }
+
+    @Benchmark
+    public void batches(Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            Iterator<RecordBatch> batches = query(transaction).batchIterator();
+            while (batches.hasNext()) {
+                RecordBatch batch = batches.next();
+                ColumnVector keys = batch.getColumn(0);
+                ColumnVector values = batch.getColumn(1);
+                for (int i = 0; i < batch.size(); ++i) {
+                    int row = batch.getRow(i);
+                    blackhole.consume(keys.getInts()[row]);
+                    blackhole.consume(values.getFloats()[row]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.IOCounters;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.Record;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares GroupByOperator followed by ProjectOperator (a temp table per group)
+ * with HashAggregateOperator and GraceHashAggregateOperator on
+ *
+ *   SELECT key, COUNT(*), SUM(value) FROM records GROUP BY key
+ *
+ * over NUM_RECORDS records with numGroups distinct keys, with workMem buffer pages.
+ * Each operation runs the query once, in its own transaction.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="HashAggregate"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashAggregateBenchmark {
+    private static final int BUFFER_SIZE = 1024;
+    private static final int NUM_RECORDS = 100000;
+    private static final String TABLE_NAME = "records";
+    private static final List<String> COLUMNS = Arrays.asList("key", "COUNT(*)", "SUM(value)");
+    private static final List<String> GROUP_BY = Collections.singletonList("key");
+
+    @Param({"10", "1000", "50000"})
+    public int numGroups;
+
+    @Param({"4", "16"})
+    public int workMem;
+
+    private Path dir;
+    private Database database;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("aggregate");
+        database = new Database(dir.toString(), BUFFER_SIZE);
+        database.setWorkMem(workMem);
+        database.waitAllTransactions();
+        List<Record> records = BenchmarkData.records(NUM_RECORDS, numGroups, 186);
+        try (Transaction transaction = database.beginTransaction()) {
+            transaction.createTable(BenchmarkData.schema(), TABLE_NAME);
+            for (Record record : records) {
+                transaction.getTransactionContext().addRecord(TABLE_NAME, record);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        database.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    private long run(QueryOperator operator, Blackhole blackhole) {
+        long ios = database.getBufferManager().getNumIOs();
+        Iterator<Record> records = operator.iterator();
+        while (records.hasNext()) {
+            blackhole.consume(records.next());
+        }
+        return database.getBufferManager().getNumIOs() - ios;
+    }
+
+    @Benchmark
+    public void groupByProject(IOCounters counters, Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            TransactionContext context = transaction.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(context, TABLE_NAME);
+            QueryOperator groupBy = new GroupByOperator(scan, context, GROUP_BY);
+            counters.ios += run(new ProjectOperator(groupBy, COLUMNS, GROUP_BY), blackhole);
+        }
+    }
+
+    private static List<Expression> expressions() {
+        List<Expression> expressions = new ArrayList<>();
+        for (String column : COLUMNS) {
+            expressions.add(Expression.fromString(column));
+        }
+        return expressions;
+    }
+
+    @Benchmark
+    public void hashAggregate(IOCounters counters, Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            TransactionContext context = transaction.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(context, TABLE_NAME);
+            counters.ios += run(new HashAggregateOperator(scan, context, COLUMNS, expressions(), GROUP_BY), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void graceHashAggregate(IOCounters counters, Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            TransactionContext context = transaction.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(context, TABLE_NAME);
+            counters.ios += run(new GraceHashAggregateOperator(scan, context, COLUMNS, expressions(), GROUP_BY), blackhole);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.IOCounters;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.query.join.BNLJOperator;
+import edu.berkeley.cs186.database.query.join.GHJOperator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures block nested loop join (BNLJOperator) and grace hash join (GHJOperator),
+ * sequential and with JOIN_PARALLELISM workers (see Database#setJoinParallelism),
+ * of two inputs of numRecords records each, read from in-memory sources, on keys
+ * drawn from [0, numRecords) (so each record matches about one record of the other
+ * input). Each operation builds the operator and iterates over the whole join, in
+ * its own transaction.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="JoinBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoinBenchmark {
+    private static final int BUFFER_SIZE = 256;
+    private static final int WORK_MEM = 8;
+    private static final int JOIN_PARALLELISM = 2;
+
+    @Param({"1000", "5000", "20000"})
+    public int numRecords;
+
+    private Path dir;
+    private Database database;
+    private Schema schema;
+    private List<Record> leftRecords;
+    private List<Record> rightRecords;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("join");
+        database = new Database(dir.toString(), BUFFER_SIZE);
+        database.setWorkMem(WORK_MEM);
+        database.waitAllTransactions();
+        schema = BenchmarkData.schema();
+        leftRecords = BenchmarkData.records(numRecords, numRecords, 186);
+        rightRecords = BenchmarkData.records(numRecords, numRecords, 187);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        database.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int bnlj(IOCounters counters) {
+        long ios = database.getBufferManager().getNumIOs();
+        int numOutput;
+        try (Transaction transaction = database.beginTransaction()) {
+            numOutput = count(new BNLJOperator(new TestSourceOperator(leftRecords, schema),
+                                               new TestSourceOperator(rightRecords, schema),
+                                               "key", "key", transaction.getTransactionContext()));
+        }
+        counters.ios += database.getBufferManager().getNumIOs() - ios;
+        return numOutput;
+    }
+
+    @Benchmark
+    public int ghj(IOCounters counters) {
+        long ios = database.getBufferManager().getNumIOs();
+        int numOutput;
+        try (Transaction transaction = database.beginTransaction()) {
+            numOutput = count(new GHJOperator(new TestSourceOperator(leftRecords, schema),
+                                              new TestSourceOperator(rightRecords, schema),
+                                              "key", "key", transaction.getTransactionContext()));
+        }
+        counters.ios += database.getBufferManager().getNumIOs() - ios;
+        return numOutput;
+    }
+
+    @Benchmark
+    public int parallelGhj(IOCounters counters) {
+        long ios = database.getBufferManager().getNumIOs();
+        int numOutput;
+        database.setJoinParallelism(JOIN_PARALLELISM);
+        try (Transaction transaction = database.beginTransaction()) {
+            numOutput = count(new GHJOperator(new TestSourceOperator(leftRecords, schema),
+                                              new TestSourceOperator(rightRecords, schema),
+                                              "key", "key", transaction.getTransactionContext()));
+        } finally {
+            database.setJoinParallelism(1);
+        }
+        counters.ios += database.getBufferManager().getNumIOs() - ios;
+        return numOutput;
+    }
+
+    private static int count(QueryOperator operator) {
+        int numOutput = 0;
+        Iterator<Record> iter = operator.iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            ++numOutput;
+        }
+        return numOutput;
+    }
+}
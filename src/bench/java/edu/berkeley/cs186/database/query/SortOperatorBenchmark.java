@@ -0,0 +1,80 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.IOCounters;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures SortOperator#sort (external merge sort) of numRecords records, read from
+ * an in-memory source, with workMem buffer pages, sorting parallelism blocks at once
+ * (see Database#setSortParallelism). Each operation is one full sort, in its own
+ * transaction.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="SortOperator"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortOperatorBenchmark {
+    private static final int BUFFER_SIZE = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int numRecords;
+
+    @Param({"4", "16"})
+    public int workMem;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path dir;
+    private Database database;
+    private Schema schema;
+    private List<Record> records;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("sort");
+        database = new Database(dir.toString(), BUFFER_SIZE);
+        database.setWorkMem(workMem);
+        database.setSortParallelism(parallelism);
+        database.waitAllTransactions();
+        schema = BenchmarkData.schema();
+        records = BenchmarkData.records(numRecords, numRecords, 186);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        database.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Run sort(IOCounters counters) {
+        long ios = database.getBufferManager().getNumIOs();
+        Run run;
+        try (Transaction transaction = database.beginTransaction()) {
+            SortOperator operator = new SortOperator(transaction.getTransactionContext(),
+                                                     new TestSourceOperator(records, schema), "key");
+            run = operator.sort();
+        }
+        counters.ios += database.getBufferManager().getNumIOs() - ios;
+        return run;
+    }
+}
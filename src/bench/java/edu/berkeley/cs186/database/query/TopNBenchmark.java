@@ -0,0 +1,97 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.IOCounters;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.Record;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares SortOperator followed by LimitOperator with TopNOperator on
+ *
+ *   SELECT * FROM records ORDER BY value LIMIT limit
+ *
+ * over NUM_RECORDS records, with WORK_MEM buffer pages. Each operation runs the
+ * query once, in its own transaction.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="TopN"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopNBenchmark {
+    private static final int BUFFER_SIZE = 1024;
+    private static final int WORK_MEM = 16;
+    private static final int NUM_RECORDS = 100000;
+    private static final String TABLE_NAME = "records";
+
+    @Param({"10", "1000"})
+    public int limit;
+
+    private Path dir;
+    private Database database;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("topN");
+        database = new Database(dir.toString(), BUFFER_SIZE);
+        database.setWorkMem(WORK_MEM);
+        database.waitAllTransactions();
+        List<Record> records = BenchmarkData.records(NUM_RECORDS, NUM_RECORDS, 186);
+        try (Transaction transaction = database.beginTransaction()) {
+            transaction.createTable(BenchmarkData.schema(), TABLE_NAME);
+            for (Record record : records) {
+                transaction.getTransactionContext().addRecord(TABLE_NAME, record);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        database.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    private long run(QueryOperator operator, Blackhole blackhole) {
+        long ios = database.getBufferManager().getNumIOs();
+        Iterator<Record> records = operator.iterator();
+        while (records.hasNext()) {
+            blackhole.consume(records.next());
+        }
+        return database.getBufferManager().getNumIOs() - ios;
+    }
+
+    @Benchmark
+    public void sortLimit(IOCounters counters, Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            TransactionContext context = transaction.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(context, TABLE_NAME);
+            QueryOperator sort = new SortOperator(context, scan, "value");
+            counters.ios += run(new LimitOperator(sort, limit, 0), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void topN(IOCounters counters, Blackhole blackhole) {
+        try (Transaction transaction = database.beginTransaction()) {
+            TransactionContext context = transaction.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(context, TABLE_NAME);
+            counters.ios += run(new TopNOperator(context, scan, "value", limit, 0), blackhole);
+        }
+    }
+}
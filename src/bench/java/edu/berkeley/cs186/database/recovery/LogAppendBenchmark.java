@@ -0,0 +1,90 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of LogManager#appendToLog with page update records of
+ * updateSize bytes, on 1, 4 and 16 threads appending to the same log. Full log pages
+ * are written out by the buffer manager as they are evicted; the log is started over
+ * every iteration so that it does not grow without bound.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="LogAppend"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogAppendBenchmark {
+    private static final int BUFFER_SIZE = 256;
+
+    @Param({"16", "256"})
+    public int updateSize;
+
+    private Path dir;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private LogManager logManager;
+    private byte[] before;
+    private byte[] after;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("log-append");
+        diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), new DummyRecoveryManager());
+        diskSpaceManager.allocPart(LogManager.LOG_PARTITION);
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), BUFFER_SIZE,
+                                          new LRUEvictionPolicy());
+        logManager = new LogManager(bufferManager);
+        before = new byte[updateSize];
+        after = new byte[updateSize];
+        ThreadLocalRandom.current().nextBytes(before);
+        ThreadLocalRandom.current().nextBytes(after);
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws IOException {
+        logManager.close();
+        bufferManager.close();
+        diskSpaceManager.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    private long append() {
+        long transNum = Thread.currentThread().getId();
+        return logManager.appendToLog(new UpdatePageLogRecord(transNum, 10000000001L, 0L, (short) 0,
+                                                              before, after));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long append1Thread() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long append4Threads() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long append16Threads() {
+        return append();
+    }
+}
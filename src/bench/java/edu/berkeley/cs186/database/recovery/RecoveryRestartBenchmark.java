@@ -0,0 +1,136 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.IOCounters;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ARIESRecoveryManager#restart, on a log written by numTransactions
+ * transactions of UPDATES_PER_TRANSACTION page writes each, with a checkpoint taken
+ * halfway through. At the time of the crash, a quarter of the transactions have
+ * ended after committing, a quarter have committed but not ended, a quarter are
+ * aborting and a quarter are still running.
+ *
+ * The log is generated (with a fixed seed) before each operation, and each operation
+ * loads the recovery manager from disk and runs restart recovery once.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="RecoveryRestart"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecoveryRestartBenchmark {
+    private static final int BUFFER_SIZE = 64;
+    private static final int NUM_PAGES = 32;
+    private static final int UPDATES_PER_TRANSACTION = 10;
+    private static final int UPDATE_SIZE = 16;
+
+    @Param({"10", "100", "1000"})
+    public int numTransactions;
+
+    private Path dir;
+    private ARIESRecoveryManager recoveryManager;
+
+    @Setup(Level.Invocation)
+    public void crash() throws IOException {
+        dir = Files.createTempDirectory("restart");
+        ARIESRecoveryManager recoveryManager = loadRecoveryManager(dir);
+        Random random = new Random(186);
+        byte[] before = new byte[UPDATE_SIZE];
+        byte[] after = new byte[UPDATE_SIZE];
+        for (long transNum = 1; transNum <= numTransactions; ++transNum) {
+            recoveryManager.startTransaction(DummyTransaction.create(transNum));
+        }
+        for (int i = 0; i < UPDATES_PER_TRANSACTION; ++i) {
+            if (i == UPDATES_PER_TRANSACTION / 2) {
+                recoveryManager.checkpoint();
+            }
+            for (long transNum = 1; transNum <= numTransactions; ++transNum) {
+                long pageNum = DiskSpaceManager.getVirtualPageNum(1, random.nextInt(NUM_PAGES));
+                short offset = (short) random.nextInt(BufferManager.EFFECTIVE_PAGE_SIZE - UPDATE_SIZE);
+                random.nextBytes(before);
+                random.nextBytes(after);
+                recoveryManager.logPageWrite(transNum, pageNum, offset, before, after);
+            }
+        }
+        for (long transNum = 1; transNum <= numTransactions; ++transNum) {
+            switch ((int) (transNum % 4)) {
+            case 1:
+                recoveryManager.commit(transNum);
+                recoveryManager.end(transNum);
+                break;
+            case 2:
+                recoveryManager.commit(transNum);
+                break;
+            case 3:
+                recoveryManager.abort(transNum);
+                break;
+            default:
+                break;
+            }
+        }
+        // the log is flushed, but the dirty page table and transaction table are lost
+        recoveryManager.logManager.close();
+        recoveryManager.bufferManager.evictAll();
+        recoveryManager.bufferManager.close();
+        recoveryManager.diskSpaceManager.close();
+        DummyTransaction.cleanupTransactions();
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanup() throws IOException {
+        recoveryManager.close();
+        recoveryManager.bufferManager.close();
+        recoveryManager.diskSpaceManager.close();
+        DummyTransaction.cleanupTransactions();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void restart(IOCounters counters) {
+        recoveryManager = loadRecoveryManager(dir);
+        recoveryManager.restart();
+        counters.ios += recoveryManager.bufferManager.getNumIOs();
+    }
+
+    /**
+     * Loads the recovery manager from disk, creating the log and data partitions if
+     * they do not exist yet.
+     */
+    private static ARIESRecoveryManager loadRecoveryManager(Path dir) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, BUFFER_SIZE,
+                                                        new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            for (int i = 0; i < NUM_PAGES; ++i) {
+                diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(1, i));
+            }
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+}
@@ -0,0 +1,130 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.BenchmarkData;
+import edu.berkeley.cs186.database.BenchmarkFiles;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the plain and compact encodings of UpdatePageLogRecord (see
+ * UpdatePageLogRecord#setCompact), on updates of updateSize bytes of the kind an insert
+ * makes: the before image is zeroed free space and the after image is serialized
+ * records. encode reports the number of log bytes written (logBytes / ops is bytes
+ * per update); redo measures reading a record back from its bytes and redoing it on a
+ * buffered page, as the redo pass of restart recovery does.
+ *
+ * Run with e.g.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="UpdateLogRecord"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateLogRecordBenchmark {
+    private static final int NUM_RECORDS = 64;
+    private static final int NUM_PAGES = 16;
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    @Param({"16", "256", "1024"})
+    public int updateSize;
+
+    /**
+     * Counts bytes of log written. Reported by JMH as the total in each iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class LogBytes {
+        public long logBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            logBytes = 0;
+        }
+    }
+
+    private Path dir;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private DummyRecoveryManager recoveryManager;
+    private UpdatePageLogRecord[] records;
+    private byte[][] encoded;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("update-log-record");
+        recoveryManager = new DummyRecoveryManager();
+        diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), recoveryManager);
+        bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 2 * NUM_PAGES,
+                                          new LRUEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[NUM_PAGES];
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        Schema schema = BenchmarkData.schema();
+        List<Record> data = BenchmarkData.records(NUM_RECORDS * updateSize / schema.getSizeInBytes() + 1,
+                                                  Integer.MAX_VALUE, 186);
+        byte[] image = new byte[NUM_RECORDS * updateSize];
+        int pos = 0;
+        for (Record record : data) {
+            byte[] bytes = record.toBytes(schema);
+            int length = Math.min(bytes.length, image.length - pos);
+            System.arraycopy(bytes, 0, image, pos, length);
+            pos += length;
+        }
+
+        records = new UpdatePageLogRecord[NUM_RECORDS];
+        encoded = new byte[NUM_RECORDS][];
+        for (int i = 0; i < NUM_RECORDS; ++i) {
+            byte[] after = new byte[updateSize];
+            System.arraycopy(image, i * updateSize, after, 0, updateSize);
+            records[i] = new UpdatePageLogRecord(i + 1, pageNums[i % NUM_PAGES], 10000L * i, (short) 0,
+                                                 new byte[updateSize], after);
+            records[i].setCompact(compact);
+            encoded[i] = records[i].toBytes();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        bufferManager.evictAll();
+        bufferManager.close();
+        diskSpaceManager.close();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public byte[] encode(LogBytes counters) {
+        next = (next + 1) % NUM_RECORDS;
+        byte[] bytes = records[next].toBytes();
+        counters.logBytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public void redo() {
+        next = (next + 1) % NUM_RECORDS;
+        LogRecord record = LogRecord.fromBytes(ByteBuffer.wrap(encoded[next])).get();
+        record.setLSN(10000L * next + 1);
+        record.redo(recoveryManager, diskSpaceManager, bufferManager);
+    }
+}
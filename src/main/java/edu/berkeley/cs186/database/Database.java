@@ -15,6 +15,7 @@ import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.MappedDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.EvictionPolicy;
@@ -37,7 +38,10 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Phaser;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 /**
@@ -82,6 +86,8 @@ public class Database implements AutoCloseable {
     private static final int DEFAULT_BUFFER_SIZE = 262144; // default of 1G
     // effective page size - table metadata size
     private static final int MAX_SCHEMA_SIZE = 4006;
+    // snapshot of transactions that do not read a snapshot
+    private static final long NO_SNAPSHOT = -1;
 
     // _metadata.tables, manages all tables in the database
     private Table tableMetadata;
@@ -98,9 +104,19 @@ public class Database implements AutoCloseable {
     private final BufferManager bufferManager;
     // recovery manager
     private final RecoveryManager recoveryManager;
+    // prior versions of records, for snapshot transactions; null unless enabled
+    private VersionStore versionStore;
+    // read and write sets, for optimistic transactions; null unless enabled
+    private OptimisticValidator validator;
 
     // number of pages of memory to use for joins, etc.
     private int workMem = 1024; // default of 4M
+
+    // number of blocks sorted at once by external sorts
+    private int sortParallelism = 1;
+
+    // number of pairs of partitions joined at once by grace hash joins
+    private int joinParallelism = 1;
     // number of pages of memory available total
     private int numMemoryPages;
     // active transactions
@@ -164,7 +180,7 @@ public class Database implements AutoCloseable {
     }
 
     /**
-     * Creates a new database.
+     * Creates a new database with file channel I/O (DiskSpaceManagerImpl)
      *
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory in the buffer cache
@@ -174,6 +190,43 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, false);
+    }
+
+    /**
+     * Creates a new database with a single buffer cache stripe
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMappedIO flag to access partition files through memory-mapped
+     *                    segments (MappedDiskSpaceManager) instead of file channel
+     *                    reads and writes (DiskSpaceManagerImpl)
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, boolean useMappedIO) {
+        this(fileDir, numMemoryPages, lockManager, () -> policy, 1, useRecoveryManager, useMappedIO);
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policyFactory creates the eviction policy for each buffer cache stripe
+     * @param numBufferStripes the number of independently locked stripes to split
+     *                         the buffer cache into
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMappedIO flag to access partition files through memory-mapped
+     *                    segments (MappedDiskSpaceManager) instead of file channel
+     *                    reads and writes (DiskSpaceManagerImpl)
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    Supplier<EvictionPolicy> policyFactory, int numBufferStripes,
+                    boolean useRecoveryManager, boolean useMappedIO) {
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
@@ -186,9 +239,13 @@ public class Database implements AutoCloseable {
             recoveryManager = new DummyRecoveryManager();
         }
 
-        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        if (useMappedIO) {
+            diskSpaceManager = new MappedDiskSpaceManager(fileDir, recoveryManager);
+        } else {
+            diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        }
         bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
-                                              policy);
+                                          policyFactory, numBufferStripes);
 
         // create log partition
         if (!initialized) diskSpaceManager.allocPart(0);
@@ -289,6 +346,8 @@ public class Database implements AutoCloseable {
         // wait for all transactions to terminate
         this.waitAllTransactions();
 
+        this.lockManager.stopDeadlockDetector();
+
         dropDemoTables();
 
         this.bufferManager.evictAll();
@@ -302,6 +361,57 @@ public class Database implements AutoCloseable {
         this.diskSpaceManager.close();
     }
 
+    /**
+     * Starts detecting deadlocks between transactions in the background, every
+     * intervalMillis. Each deadlock is broken by aborting the lock request of the
+     * transaction in it that has written the fewest log records; that transaction's
+     * operation throws DeadlockException, and it should be rolled back. Does nothing
+     * if the detector is already running. See LockManager#startDeadlockDetector.
+     *
+     * @param intervalMillis time between rounds of detection
+     */
+    public void startDeadlockDetector(long intervalMillis) {
+        lockManager.startDeadlockDetector(intervalMillis,
+                transaction -> recoveryManager.getNumLogRecords(transaction.getTransNum()));
+    }
+
+    /**
+     * Keeps prior versions of records from now on, so that snapshot transactions
+     * (see beginSnapshotTransaction) can be started. Must be called while no
+     * transactions are running. Does nothing if already enabled.
+     */
+    public synchronized void enableMultiversioning() {
+        if (this.versionStore == null) {
+            this.versionStore = new VersionStore();
+        }
+    }
+
+    /**
+     * @return the version store, or null if multiversioning is not enabled
+     */
+    public VersionStore getVersionStore() {
+        return versionStore;
+    }
+
+    /**
+     * Records the pages read by optimistic transactions and written by all
+     * transactions from now on, so that optimistic transactions (see
+     * beginOptimisticTransaction) can be started. Must be called while no
+     * transactions are running. Does nothing if already enabled.
+     */
+    public synchronized void enableOptimisticTransactions() {
+        if (this.validator == null) {
+            this.validator = new OptimisticValidator();
+        }
+    }
+
+    /**
+     * @return the validator, or null if optimistic transactions are not enabled
+     */
+    public OptimisticValidator getOptimisticValidator() {
+        return validator;
+    }
+
     public LockManager getLockManager() {
         return lockManager;
     }
@@ -324,6 +434,38 @@ public class Database implements AutoCloseable {
         this.workMem = workMem;
     }
 
+    public int getSortParallelism() {
+        return this.sortParallelism;
+    }
+
+    /**
+     * Sets the number of blocks that external sorts (see SortOperator#sort) sort
+     * concurrently, on the common fork/join pool, with an equal share of work
+     * memory each. 1 (the default) sorts on the calling thread only.
+     */
+    public void setSortParallelism(int sortParallelism) {
+        if (sortParallelism < 1) {
+            throw new IllegalArgumentException("sortParallelism must be positive");
+        }
+        this.sortParallelism = sortParallelism;
+    }
+
+    public int getJoinParallelism() {
+        return this.joinParallelism;
+    }
+
+    /**
+     * Sets the number of pairs of partitions that grace hash joins (see
+     * GHJOperator) build and probe concurrently, on worker threads with an equal
+     * share of work memory each. 1 (the default) joins on the calling thread only.
+     */
+    public void setJoinParallelism(int joinParallelism) {
+        if (joinParallelism < 1) {
+            throw new IllegalArgumentException("joinParallelism must be positive");
+        }
+        this.joinParallelism = joinParallelism;
+    }
+
     /**
      * @return Schema for _metadata.tables with fields:
      *   | field name   | field type
@@ -451,7 +593,14 @@ public class Database implements AutoCloseable {
         LockContext tableContext = getTableContext(tableName);
         long page0 = DiskSpaceManager.getVirtualPageNum(metadata.partNum, 0);
         PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext);
-        return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        Table table = new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        if (versionStore != null) {
+            table.setVersionStore(versionStore);
+        }
+        if (validator != null) {
+            table.setOptimisticValidator(validator);
+        }
+        return table;
     }
 
     /**
@@ -573,7 +722,80 @@ public class Database implements AutoCloseable {
      * @return the new Transaction
      */
     public synchronized Transaction beginTransaction() {
-        TransactionImpl t = new TransactionImpl(this.numTransactions, false);
+        return beginTransaction(NO_SNAPSHOT, false);
+    }
+
+    /**
+     * Start a new optimistic transaction. It reads without taking locks (it still
+     * locks what it writes), and scans tables where others would look up their
+     * indices. Its reads are validated when it commits: if another transaction
+     * has written a page it read since, it is rolled back and commit throws
+     * ValidationException. Suited to short transactions that rarely conflict.
+     * Requires optimistic transactions to be enabled (see
+     * enableOptimisticTransactions). See OptimisticValidator.
+     *
+     * @return the new Transaction
+     */
+    public synchronized Transaction beginOptimisticTransaction() {
+        if (validator == null) {
+            throw new DatabaseException("optimistic transactions are not enabled");
+        }
+        return beginTransaction(NO_SNAPSHOT, true);
+    }
+
+    /**
+     * Runs `work` in an optimistic transaction, and commits it, starting over in a
+     * new transaction each time validation fails. `work` must not commit or roll
+     * back the transaction itself. If `work` throws, the transaction is rolled back.
+     *
+     * @param work the work of the transaction
+     * @param maxAttempts maximum number of transactions to run
+     * @return number of transactions run
+     * @throws ValidationException if the last transaction run fails validation
+     */
+    public int runOptimisticTransaction(Consumer<Transaction> work, int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        for (int attempt = 1; ; ++attempt) {
+            Transaction t = beginOptimisticTransaction();
+            try {
+                work.accept(t);
+            } catch (RuntimeException e) {
+                if (t.getStatus() == Transaction.Status.RUNNING) {
+                    t.rollback();
+                }
+                throw e;
+            }
+            try {
+                t.commit();
+                return attempt;
+            } catch (ValidationException e) {
+                if (attempt == maxAttempts) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a new read-only transaction, which reads a snapshot of the database as
+     * of the last transaction committed. It takes no locks on the records (or
+     * pages) of tables, so it neither waits for, nor blocks, transactions writing
+     * them. Indices are not versioned: lookups and sorted scans are done by
+     * scanning the snapshot. Requires multiversioning (see enableMultiversioning).
+     *
+     * @return the new Transaction
+     */
+    public synchronized Transaction beginSnapshotTransaction() {
+        if (versionStore == null) {
+            throw new DatabaseException("multiversioning is not enabled");
+        }
+        return beginTransaction(versionStore.beginSnapshot(), false);
+    }
+
+    private Transaction beginTransaction(long snapshot, boolean optimistic) {
+        TransactionImpl t = new TransactionImpl(this.numTransactions, false, snapshot, optimistic);
         activeTransactions.register();
         if (activeTransactions.isTerminated()) {
             activeTransactions = new Phaser(1);
@@ -593,7 +815,7 @@ public class Database implements AutoCloseable {
     private synchronized Transaction beginRecoveryTransaction(Long transactionNum) {
         this.numTransactions = Math.max(this.numTransactions, transactionNum + 1);
 
-        TransactionImpl t = new TransactionImpl(transactionNum, true);
+        TransactionImpl t = new TransactionImpl(transactionNum, true, NO_SNAPSHOT, false);
         activeTransactions.register();
         if (activeTransactions.isTerminated()) {
             activeTransactions = new Phaser(1);
@@ -608,13 +830,19 @@ public class Database implements AutoCloseable {
         Map<String, Table> tempTables;
         long tempTableCounter;
         boolean recoveryTransaction;
+        // timestamp of the snapshot read, or NO_SNAPSHOT
+        long snapshot;
+        boolean optimistic;
 
-        private TransactionContextImpl(long tNum, boolean recoveryTransaction) {
+        private TransactionContextImpl(long tNum, boolean recoveryTransaction, long snapshot, boolean optimistic) {
             this.transNum = tNum;
             this.aliases = new HashMap<>();
-            this.tempTables = new HashMap<>();
+            // concurrent, as workers of parallel operators read temporary tables
+            this.tempTables = new ConcurrentHashMap<>();
             this.tempTableCounter = 0;
             this.recoveryTransaction = recoveryTransaction;
+            this.snapshot = snapshot;
+            this.optimistic = optimistic;
         }
 
         @Override
@@ -622,11 +850,26 @@ public class Database implements AutoCloseable {
             return transNum;
         }
 
+        @Override
+        public boolean isOptimistic() {
+            return optimistic;
+        }
+
         @Override
         public int getWorkMemSize() {
             return Database.this.getWorkMem();
         }
 
+        @Override
+        public int getSortParallelism() {
+            return Database.this.getSortParallelism();
+        }
+
+        @Override
+        public int getJoinParallelism() {
+            return Database.this.getJoinParallelism();
+        }
+
         @Override
         public String createTempTable(Schema schema) {
             String tempTableName = "tempTable" + tempTableCounter++;
@@ -692,6 +935,9 @@ public class Database implements AutoCloseable {
         @Override
         public Iterator<Record> sortedScan(String tableName, String columnName) {
             Table tab = getTable(tableName);
+            if (bypassesIndices(tab)) {
+                return scanAndSort(tableName, columnName);
+            }
             tableName = tab.getName();
             // Since we'll likely scan multiple pages of records, its better
             // to get an S lock on the whole table up front
@@ -714,6 +960,11 @@ public class Database implements AutoCloseable {
         @Override
         public Iterator<Record> sortedScanFrom(String tableName, String columnName, DataBox startValue) {
             Table tab = getTable(tableName);
+            if (bypassesIndices(tab)) {
+                int index = tab.getSchema().findField(columnName);
+                return filter(scanAndSort(tableName, columnName),
+                              record -> record.getValue(index).compareTo(startValue) >= 0);
+            }
             tableName = tab.getName();
             BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
             // Since we'll likely scan multiple pages of records, its better
@@ -725,6 +976,10 @@ public class Database implements AutoCloseable {
         @Override
         public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) {
             Table tab = getTable(tableName);
+            if (bypassesIndices(tab)) {
+                int index = tab.getSchema().findField(columnName);
+                return filter(getRecordIterator(tableName), record -> record.getValue(index).equals(key));
+            }
             tableName = tab.getName();
             BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
             return tab.recordIterator(tree.scanEqual(key));
@@ -732,11 +987,27 @@ public class Database implements AutoCloseable {
 
         @Override
         public BacktrackingIterator<Record> getRecordIterator(String tableName) {
-            return getTable(tableName).iterator();
+            Table tab = getTable(tableName);
+            if (readsSnapshot(tab)) {
+                return tab.snapshotIterator(snapshot);
+            }
+            return tab.iterator();
+        }
+
+        @Override
+        public Iterator<RecordBatch> getBatchIterator(String tableName) {
+            Table tab = getTable(tableName);
+            if (readsSnapshot(tab)) {
+                return super.getBatchIterator(tableName);
+            }
+            return tab.batchIterator();
         }
 
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
+            if (bypassesIndices(getTable(tableName))) {
+                return lookupKey(tableName, columnName, key).hasNext();
+            }
             tableName = aliases.getOrDefault(tableName, tableName);
             BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
             return tree.get(key).isPresent();
@@ -744,6 +1015,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public RecordId addRecord(String tableName, Record record) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             if (tab == null) {
@@ -764,6 +1036,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Schema s = tab.getSchema();
@@ -781,11 +1054,16 @@ public class Database implements AutoCloseable {
 
         @Override
         public Record getRecord(String tableName, RecordId rid) {
-            return getTable(tableName).getRecord(rid);
+            Table tab = getTable(tableName);
+            if (readsSnapshot(tab)) {
+                return tab.getRecord(rid, snapshot);
+            }
+            return tab.getRecord(rid);
         }
 
         @Override
         public RecordId updateRecord(String tableName, RecordId rid, Record updated) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Schema s = tab.getSchema();
@@ -809,6 +1087,7 @@ public class Database implements AutoCloseable {
         public void updateRecordWhere(String tableName, String targetColumnName,
                                       UnaryOperator<DataBox> targetValue,
                                       String predColumnName, PredicateOperator predOperator, DataBox predValue) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -831,6 +1110,7 @@ public class Database implements AutoCloseable {
         }
 
         public void updateRecordWhere(String tableName, String targetColumnName, Function<Record, DataBox> targetValue, Function<Record, DataBox> condition) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -852,6 +1132,7 @@ public class Database implements AutoCloseable {
         @Deprecated
         public void deleteRecordWhere(String tableName, String predColumnName,
                                       PredicateOperator predOperator, DataBox predValue) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -871,6 +1152,7 @@ public class Database implements AutoCloseable {
         }
 
         public void deleteRecordWhere(String tableName, Function<Record, DataBox> condition) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -971,6 +1253,62 @@ public class Database implements AutoCloseable {
             return tableFromMetadata(pair.getSecond());
         }
 
+        // Whether reads of the table are of the snapshot (temporary tables are
+        // private to the transaction, and read directly)
+        private boolean readsSnapshot(Table tab) {
+            return snapshot != NO_SNAPSHOT && !tempTables.containsValue(tab);
+        }
+
+        // Whether reads of the table scan it rather than its indices: indices keep
+        // no prior versions for snapshots, and optimistic reads are validated by
+        // the table pages they read, which index lookups skip
+        private boolean bypassesIndices(Table tab) {
+            return readsSnapshot(tab) || (optimistic && !tempTables.containsValue(tab));
+        }
+
+        // Snapshot transactions may only write their temporary tables
+        private void checkWritable(String tableName) {
+            if (snapshot != NO_SNAPSHOT && !tempTables.containsKey(aliases.getOrDefault(tableName, tableName))) {
+                throw new DatabaseException("snapshot transactions are read-only");
+            }
+        }
+
+        private Iterator<Record> scanAndSort(String tableName, String columnName) {
+            try {
+                return new SortOperator(this, new SequentialScanOperator(this, tableName),
+                    columnName).iterator();
+            } catch (Exception e2) {
+                throw new DatabaseException(e2);
+            }
+        }
+
+        private Iterator<Record> filter(Iterator<Record> records, Predicate<Record> predicate) {
+            return new Iterator<Record>() {
+                private Record next = null;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && records.hasNext()) {
+                        Record record = records.next();
+                        if (predicate.test(record)) {
+                            next = record;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Record next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Record record = next;
+                    next = null;
+                    return record;
+                }
+            };
+        }
+
         private String prefixTempTableName(String name) {
             String prefix = "temp." + transNum + "-";
             if (name.startsWith(prefix)) {
@@ -984,12 +1322,16 @@ public class Database implements AutoCloseable {
     private class TransactionImpl extends Transaction {
         private long transNum;
         private boolean recoveryTransaction;
+        private long snapshot;
+        private boolean optimistic;
         private TransactionContext transactionContext;
 
-        private TransactionImpl(long transNum, boolean recovery) {
+        private TransactionImpl(long transNum, boolean recovery, long snapshot, boolean optimistic) {
             this.transNum = transNum;
             this.recoveryTransaction = recovery;
-            this.transactionContext = new TransactionContextImpl(transNum, recovery);
+            this.snapshot = snapshot;
+            this.optimistic = optimistic;
+            this.transactionContext = new TransactionContextImpl(transNum, recovery, snapshot, optimistic);
         }
 
         @Override
@@ -1009,8 +1351,21 @@ public class Database implements AutoCloseable {
 
         @Override
         protected void startCommit() {
+            if (optimistic) {
+                try {
+                    validator.validate(transNum);
+                } catch (ValidationException e) {
+                    this.startRollback();
+                    throw e;
+                }
+            }
             transactionContext.deleteAllTempTables();
             recoveryManager.commit(transNum);
+            if (versionStore != null) {
+                // before locks are released, so that later writers replace only
+                // committed versions
+                versionStore.commit(transNum);
+            }
             this.cleanup();
         }
 
@@ -1029,6 +1384,16 @@ public class Database implements AutoCloseable {
             if (!this.recoveryTransaction) {
                 recoveryManager.end(transNum);
             }
+            // an aborted transaction's changes have been rolled back by now
+            if (validator != null) {
+                validator.end(transNum);
+            }
+            if (versionStore != null) {
+                versionStore.end(transNum);
+                if (snapshot != NO_SNAPSHOT) {
+                    versionStore.endSnapshot(snapshot);
+                }
+            }
 
             transactionContext.close();
             activeTransactions.arriveAndDeregister();
@@ -1041,6 +1406,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void createTable(Schema s, String tableName) {
+            checkWritable();
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1064,6 +1430,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropTable(String tableName) {
+            checkWritable();
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1090,6 +1457,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropAllTables() {
+            checkWritable();
             // For something as drastic as dropping all tables we'll want
             // to get an exclusive lock on the entire database.
             LockUtil.ensureSufficientLockHeld(lockManager.databaseContext(), LockType.X);
@@ -1100,6 +1468,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void createIndex(String tableName, String columnName, boolean bulkLoad) {
+            checkWritable();
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1153,6 +1522,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropIndex(String tableName, String columnName) {
+            checkWritable();
             // We need exclusive write access on an index to drop it.
             LockUtil.ensureSufficientLockHeld(getColumnIndexMetadataContext(tableName, columnName), LockType.X);
             Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tableName, columnName);
@@ -1231,6 +1601,12 @@ public class Database implements AutoCloseable {
             return transactionContext;
         }
 
+        private void checkWritable() {
+            if (snapshot != NO_SNAPSHOT) {
+                throw new DatabaseException("snapshot transactions are read-only");
+            }
+        }
+
         @Override
         public String toString() {
             return "Transaction " + transNum + " (" + getStatus().toString() + ")";
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
@@ -88,6 +89,29 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract int getWorkMemSize();
 
+    /**
+     * @return the number of blocks that sorts in this transaction sort at once
+     */
+    public int getSortParallelism() {
+        return 1;
+    }
+
+    /**
+     * @return the number of pairs of partitions that grace hash joins in this
+     * transaction join at once
+     */
+    public int getJoinParallelism() {
+        return 1;
+    }
+
+    /**
+     * @return whether the transaction is optimistic: it reads without locking, and
+     * has its reads validated when it commits (see OptimisticValidator)
+     */
+    public boolean isOptimistic() {
+        return false;
+    }
+
     @Override
     public abstract void close();
 
@@ -156,6 +180,13 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract BacktrackingIterator<Record> getRecordIterator(String tableName);
 
+    /**
+     * Returns an iterator over all of the records in `tableName`, in batches.
+     */
+    public Iterator<RecordBatch> getBatchIterator(String tableName) {
+        return RecordBatch.fromRecords(getRecordIterator(tableName), getSchema(tableName));
+    }
+
     public abstract boolean contains(String tableName, String columnName, DataBox key);
 
     // Record Operations ///////////////////////////////////////////////////////
@@ -41,6 +41,10 @@ public class Server {
         // Use the following after completing project 5 (recovery)
         // Database db = new Database("demo", 25, new LockManager(), new ClockEvictionPolicy(), true);
 
+        // Use the following to split the buffer cache into independently locked
+        // stripes, to reduce contention between clients
+        // Database db = new Database("demo", 25, new LockManager(), ClockEvictionPolicy::new, 4, true, false);
+
         Server server = new Server();
         server.listen(db);
         db.close();
@@ -27,7 +27,7 @@ public class HashFunc {
         int start = 0;
         for (DataBox d: record.getValues()) {
             byte[] curr = d.hashBytes();
-            System.arraycopy(bytes, start, curr, 0, curr.length);
+            System.arraycopy(curr, 0, bytes, start, curr.length);
             start += curr.length;
         }
         return hashBytes(bytes, pass);
@@ -68,7 +68,7 @@ public class HashFunc {
             state.b += k[4]  + ((bytesToInt(k, 5)  << 8)) + ((bytesToInt(k, 6)  << 16)) + ((bytesToInt(k, 7)  << 24));
             state.c += k[8] +  ((bytesToInt(k, 9)  << 8)) + ((bytesToInt(k, 10) << 16)) + ((bytesToInt(k, 11) << 24));
             state.mix();
-            k = Arrays.copyOfRange(k, 12, k.length - 12);
+            k = Arrays.copyOfRange(k, 12, k.length);
         }
 
         switch(k.length) {
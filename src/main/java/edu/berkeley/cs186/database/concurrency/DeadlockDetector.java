@@ -0,0 +1,76 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.TransactionContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Background deadlock detection for LockManager: every intervalMillis, builds the
+ * waits-for graph of the transactions blocked in the lock manager and breaks every
+ * cycle in it by aborting the request of one of its transactions (see
+ * LockManager#detectDeadlocks).
+ */
+class DeadlockDetector {
+    private LockManager lockManager;
+    private long intervalNanos;
+    private ToLongFunction<TransactionContext> victimCost;
+
+    // Set once the detector should stop
+    private boolean closed;
+
+    private Thread thread;
+
+    /**
+     * @param lockManager lock manager to detect deadlocks in
+     * @param intervalMillis time between rounds of detection
+     * @param victimCost cost of aborting a transaction; the cheapest transaction of
+     *                   each cycle is aborted
+     */
+    DeadlockDetector(LockManager lockManager, long intervalMillis, ToLongFunction<TransactionContext> victimCost) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive");
+        }
+        this.lockManager = lockManager;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.victimCost = victimCost;
+        this.thread = new Thread(this::run, "deadlock-detector");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the detector, waiting for a round in progress to finish.
+     */
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.nanoTime() + this.intervalNanos;
+                try {
+                    long remaining;
+                    while (!this.closed && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this.closed) {
+                    return;
+                }
+            }
+            lockManager.detectDeadlocks(victimCost);
+        }
+    }
+}
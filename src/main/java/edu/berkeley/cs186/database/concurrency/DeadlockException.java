@@ -0,0 +1,12 @@
+package edu.berkeley.cs186.database.concurrency;
+
+/**
+ * Thrown to a transaction whose lock request was cancelled to break a deadlock. The
+ * transaction keeps the locks it held, and should be aborted.
+ */
+@SuppressWarnings("serial")
+public class DeadlockException extends RuntimeException {
+    DeadlockException(String message) {
+        super(message);
+    }
+}
@@ -12,7 +12,10 @@ import java.util.List;
  * and later projects to be completed without needing to complete Project 4.
  */
 public class DummyLockManager extends LockManager {
-    public DummyLockManager() { }
+    public DummyLockManager() {
+        // nothing is ever locked: one (empty) shard is enough
+        super(1);
+    }
 
     @Override
     public LockContext context(String name) {
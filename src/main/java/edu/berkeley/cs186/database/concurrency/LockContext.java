@@ -42,6 +42,12 @@ public class LockContext {
     // Whether or not any new child LockContexts should be marked readonly.
     protected boolean childLocksDisabled;
 
+    // The number of children of this LockContext, if it differs from the number
+    // of child contexts created: a table does not create a context for each of
+    // its pages until the page is locked, so its capacity is set to its number of
+    // data pages instead. -1 if not set.
+    protected volatile int capacity;
+
     public LockContext(LockManager lockman, LockContext parent, String name) {
         this(lockman, parent, name, false);
     }
@@ -59,6 +65,7 @@ public class LockContext {
         this.numChildLocks = new ConcurrentHashMap<>();
         this.children = new ConcurrentHashMap<>();
         this.childLocksDisabled = readonly;
+        this.capacity = -1;
     }
 
     /**
@@ -271,7 +278,9 @@ public class LockContext {
         if (readonly) {
             throw new UnsupportedOperationException("Lock context is read only");
         }
-        LockType type = getEffectiveLockType(transaction);
+        // the lock held at this level (the effective lock type only reflects
+        // the locks of ancestors)
+        LockType type = getExplicitLockType(transaction);
         if (type.equals(LockType.NL)) {
             throw new NoLockHeldException("No lock is held");
         }
@@ -279,26 +288,19 @@ public class LockContext {
             return;
         }
 
-        List<ResourceName> toRelease = listAllDescendants(transaction);
+        List<ResourceName> descendants = listAllDescendants(transaction);
+        List<ResourceName> toRelease = new ArrayList<>(descendants);
         toRelease.add(name);
-        List<LockContext> contexts = new ArrayList<>();
-        for (ResourceName resourceName : toRelease) {
-            LockContext context = fromResourceName(lockman, resourceName);
-            contexts.add(context);
-        }
+        LockType newLockType = type.equals(LockType.IS) ? LockType.S : LockType.X;
+        lockman.acquireAndRelease(transaction, name, newLockType, toRelease);
 
-        if (type.equals(LockType.IS)) {
-            lockman.acquireAndRelease(transaction, name, LockType.S, toRelease);
-            for (LockContext context : contexts) {
-                context.decreaseNumChildLocks(transaction, context.parent);
-            }
-        } else if (type.equals(LockType.IX) || type.equals(LockType.SIX)) {
-            lockman.acquireAndRelease(transaction,name, LockType.X, toRelease);
-            for (LockContext context : contexts) {
-                context.decreaseNumChildLocks(transaction, context.parent);
-            }
+        // no locks are left below this level, and the parent still has a lock on
+        // this context
+        Long transNum = transaction.getTransNum();
+        numChildLocks.remove(transNum);
+        for (ResourceName descendant : descendants) {
+            fromResourceName(lockman, descendant).numChildLocks.remove(transNum);
         }
-        return;
     }
 
     private void decreaseNumChildLocks(TransactionContext transaction, LockContext context) {
@@ -462,6 +464,42 @@ public class LockContext {
         return numChildLocks.getOrDefault(transaction.getTransNum(), 0);
     }
 
+    /**
+     * Sets the number of children of this context, for contexts whose children
+     * are not all created up front (such as tables, whose children are pages).
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the number of children of this context: the number set by
+     * setCapacity, or the number of child contexts if it was not set.
+     */
+    public int capacity() {
+        int capacity = this.capacity;
+        return capacity < 0 ? children.size() : capacity;
+    }
+
+    /**
+     * Gets the fraction of this context's children that a single transaction
+     * holds locks on, or 0 if this context has no children.
+     */
+    public double saturation(TransactionContext transaction) {
+        int capacity = capacity();
+        return capacity == 0 ? 0 : (double) getNumChildren(transaction) / capacity;
+    }
+
+    /**
+     * Whether `transaction` holds enough locks on children of this context
+     * that LockUtil should escalate them to a lock on this context rather than
+     * take another. See LockManager#setEscalationThresholds.
+     */
+    public boolean shouldEscalate(TransactionContext transaction) {
+        int numChildren = getNumChildren(transaction);
+        return numChildren > 0 && lockman.shouldEscalate(numChildren, capacity());
+    }
+
     @Override
     public String toString() {
         return "LockContext(" + name.toString() + ")";
@@ -2,8 +2,10 @@ package edu.berkeley.cs186.database.concurrency;
 
 import edu.berkeley.cs186.database.TransactionContext;
 
-
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 /**
  * LockManager maintains the bookkeeping for what transactions have what locks
@@ -30,16 +32,56 @@ import java.util.*;
  *    queue: S(A) X(A) S(A)
  * only the first request should be removed from the queue when the queue is
  * processed.
+ *
+ * The resource table is split into shards by hash of resource name, each guarded
+ * by its own monitor, so that locks on unrelated resources (say, two pages of a
+ * table) do not contend with each other. An operation only holds one shard's
+ * monitor at a time: releasing the locks given up by a granted acquire-and-release
+ * request, which may be on resources of other shards, happens after the lock it
+ * acquired has been granted, and before its transaction is unblocked.
+ *
+ * Transactions that deadlock wait forever unless deadlocks are detected, either
+ * on demand (detectDeadlocks) or periodically in the background
+ * (startDeadlockDetector). A transaction whose request is aborted to break a
+ * deadlock gets a DeadlockException instead of its lock.
  */
 public class LockManager {
+    // Default number of shards of the resource table.
+    private static final int NUM_SHARDS = 64;
+
     // transactionLocks is a mapping from transaction number to a list of lock
-    // objects held by that transaction.
-    private Map<Long, List<Lock>> transactionLocks = new HashMap<>();
+    // objects held by that transaction. The lists are only read or modified
+    // inside compute calls on the map, which are atomic for a given transaction.
+    private Map<Long, List<Lock>> transactionLocks = new ConcurrentHashMap<>();
+
+    // Shards of the resource table, indexed by hash of resource name.
+    private Shard[] shards;
+
+    // A shard of the resource table. Guarded by the shard's monitor.
+    private class Shard {
+        // resourceEntries is a mapping from resource names to a ResourceEntry
+        // object, which contains a list of Locks on the object, as well as a
+        // queue for requests on that resource. Resources with neither locks nor
+        // requests have no entry.
+        Map<ResourceName, ResourceEntry> resourceEntries = new HashMap<>();
 
-    // resourceEntries is a mapping from resource names to a ResourceEntry
-    // object, which contains a list of Locks on the object, as well as a
-    // queue for requests on that resource.
-    private Map<ResourceName, ResourceEntry> resourceEntries = new HashMap<>();
+        /**
+         * Fetches the resourceEntry corresponding to `name`, inserting a new
+         * (empty) one if no entry exists yet.
+         */
+        ResourceEntry getResourceEntry(ResourceName name) {
+            return resourceEntries.computeIfAbsent(name, n -> new ResourceEntry());
+        }
+
+        /**
+         * Removes the entry for `name` if it has neither locks nor requests.
+         */
+        void removeIfUnused(ResourceName name, ResourceEntry entry) {
+            if (entry.locks.isEmpty() && entry.waitingQueue.isEmpty()) {
+                resourceEntries.remove(name);
+            }
+        }
+    }
 
     // A ResourceEntry contains the list of locks on a resource, as well as
     // the queue for requests for locks on the resource.
@@ -49,30 +91,16 @@ public class LockManager {
         // Queue for yet-to-be-satisfied lock requests on this resource.
         Deque<LockRequest> waitingQueue = new ArrayDeque<>();
 
-        // Below are a list of helper methods we suggest you implement.
-        // You're free to modify their type signatures, delete, or ignore them.
-
         /**
          * Check if `lockType` is compatible with preexisting locks. Allows
          * conflicts for locks held by transaction with id `except`, which is
          * useful when a transaction tries to replace a lock it already has on
          * the resource.
          */
-
-        //TODO: fix
         public boolean checkCompatible(LockType lockType, long except) {
-
-
-//            for (Lock lock : locks) {
-//                if (!LockType.compatible(lock.lockType, lockType)) {
-//                    return false;
-//                }
-//            }
-
             for (Lock lock : this.locks) {
-                if (!LockType.compatible(lock.lockType, lockType)) {
-                    if (!lock.transactionNum.equals(except)) return false;
-                    //return false;
+                if (lock.transactionNum != except && !LockType.compatible(lock.lockType, lockType)) {
+                    return false;
                 }
             }
             return true;
@@ -80,53 +108,41 @@ public class LockManager {
 
         /**
          * Gives the transaction the lock `lock`. Assumes that the lock is
-         * compatible. Updates lock on resource if the transaction already has a
-         * lock.
+         * compatible. Replaces the transaction's lock on the resource if it
+         * already has one, keeping its place in acquisition order.
          */
-
-
         public void grantOrUpdateLock(Lock lock) {
-            //base case: no locks so far
-            //if list is not empty: check if lock on resource already exists
-            //if so, update, o/w add the lock
-
-                for (Lock currLock : locks) {
-                    if (currLock.transactionNum.equals(lock.transactionNum)) {
-                        currLock.lockType = lock.lockType;
-                        return;
-                    }
+            for (int i = 0; i < locks.size(); ++i) {
+                Lock old = locks.get(i);
+                if (old.transactionNum.equals(lock.transactionNum)) {
+                    locks.set(i, lock);
+                    transactionLocks.computeIfPresent(lock.transactionNum, (transNum, held) -> {
+                        held.set(held.indexOf(old), lock);
+                        return held;
+                    });
+                    return;
                 }
-
-
-            //no lock was found, add it and update transactionLocks map
-            //if (locks.isEmpty()) {
-                locks.add(lock);
-                List<Lock> currTransactionLocks = transactionLocks.getOrDefault(lock.transactionNum, new ArrayList<Lock>());
-                currTransactionLocks.add(lock);
-                transactionLocks.put(lock.transactionNum, currTransactionLocks);
-                return;
-            //}
-
+            }
+            locks.add(lock);
+            transactionLocks.compute(lock.transactionNum, (transNum, held) -> {
+                if (held == null) {
+                    held = new ArrayList<>();
+                }
+                held.add(lock);
+                return held;
+            });
         }
 
         /**
-         * Releases the lock `lock` and processes the queue. Assumes that the
-         * lock has been granted before.
+         * Releases the lock `lock`. Assumes that the lock has been granted
+         * before. Does not process the queue.
          */
-        //TODO: assumes that the lock has been grants before means we don't need to check if it exists
-        //on the list?
         public void releaseLock(Lock lock) {
-            //delete lock from locks and transactionLocks
-            assert locks.contains(lock);
             locks.remove(lock);
-            List<Lock> currTransactionLock = transactionLocks.get(lock.transactionNum);
-            assert currTransactionLock.contains(lock);
-            currTransactionLock.remove(lock);
-            if (currTransactionLock.isEmpty()) {
-                transactionLocks.remove(lock.transactionNum);
-            }
-            processQueue();
-            return;
+            transactionLocks.computeIfPresent(lock.transactionNum, (transNum, held) -> {
+                held.remove(lock);
+                return held.isEmpty() ? null : held;
+            });
         }
 
         /**
@@ -134,40 +150,33 @@ public class LockManager {
          * the end otherwise.
          */
         public void addToQueue(LockRequest request, boolean addFront) {
-            assert !waitingQueue.contains(request);
-            if (addFront) waitingQueue.addFirst(request);
-            else waitingQueue.addLast(request);
+            if (addFront) {
+                waitingQueue.addFirst(request);
+            } else {
+                waitingQueue.addLast(request);
+            }
         }
 
         /**
          * Grant locks to requests from front to back of the queue, stopping
-         * when the next lock cannot be granted. Once a request is completely
-         * granted, the transaction that made the request can be unblocked.
+         * when the next lock cannot be granted. The granted requests' released
+         * locks are not released yet, and their transactions are still blocked:
+         * see finishRequests.
+         *
+         * @return the requests that were granted, in queue order
          */
-
-        private void processQueue() {
-            Set<ResourceEntry> processing = new HashSet<>();
-            Iterator<LockRequest> requests = waitingQueue.iterator();
-            while (requests.hasNext()) {
-                LockRequest currRequest = requests.next();
-                Lock currLock = currRequest.lock;
-                if (checkCompatible(currLock.lockType, currLock.transactionNum)) {
-                    grantOrUpdateLock(currLock);
-
-                    for (Lock lock : currRequest.releasedLocks) {
-                        ResourceEntry entry = getResourceEntry(lock.name);
-                        entry.releaseLock(lock);
-                        processing.add(entry);
-                    }
-                    waitingQueue.pollFirst();
-                    currRequest.transaction.unblock();
-
-                } else break;
-
-            }
-            for (ResourceEntry entry: processing) {
-                entry.processQueue();
+        public List<LockRequest> processQueue() {
+            List<LockRequest> granted = new ArrayList<>();
+            while (!waitingQueue.isEmpty()) {
+                LockRequest request = waitingQueue.peekFirst();
+                if (!checkCompatible(request.lock.lockType, request.lock.transactionNum)) {
+                    break;
+                }
+                waitingQueue.pollFirst();
+                grantOrUpdateLock(request.lock);
+                granted.add(request);
             }
+            return granted;
         }
 
         /**
@@ -175,13 +184,34 @@ public class LockManager {
          */
         public LockType getTransactionLockType(long transaction) {
             for (Lock currLock : locks) {
-                if (currLock.transactionNum.equals(transaction)) {
+                if (currLock.transactionNum == transaction) {
                     return currLock.lockType;
                 }
             }
             return LockType.NL;
         }
 
+        /**
+         * Adds the requests in the queue to `waiting` (by transaction number),
+         * and the transactions each waits for to `waitsFor`: those holding a
+         * lock incompatible with the request, and those queued ahead of it.
+         */
+        public void addWaitsFor(Map<Long, LockRequest> waiting, Map<Long, Set<Long>> waitsFor) {
+            List<Long> ahead = new ArrayList<>();
+            for (LockRequest request : waitingQueue) {
+                long transNum = request.lock.transactionNum;
+                waiting.put(transNum, request);
+                Set<Long> edges = waitsFor.computeIfAbsent(transNum, t -> new HashSet<>());
+                for (Lock lock : locks) {
+                    if (lock.transactionNum != transNum && !LockType.compatible(lock.lockType, request.lock.lockType)) {
+                        edges.add(lock.transactionNum);
+                    }
+                }
+                edges.addAll(ahead);
+                ahead.add(transNum);
+            }
+        }
+
         @Override
         public String toString() {
             return "Active Locks: " + Arrays.toString(this.locks.toArray()) +
@@ -192,13 +222,84 @@ public class LockManager {
     // You should not modify or use this directly.
     private Map<String, LockContext> contexts = new HashMap<>();
 
+    // Contexts with fewer children than this are never escalated because of
+    // their saturation alone.
+    static final int MIN_ESCALATION_CAPACITY = 10;
+
+    // Thresholds for escalating a transaction's locks on the children of a
+    // context to a lock on the context (see setEscalationThresholds); 0 if
+    // disabled.
+    private volatile double escalationSaturation;
+    private volatile int escalationNumChildLocks;
+
+    // Background deadlock detector, null if not running.
+    private DeadlockDetector deadlockDetector;
+
+    // Deadlock detection statistics
+    private AtomicLong numDeadlockAborts = new AtomicLong();
+    private AtomicLong totalDetectionNanos = new AtomicLong();
+    private AtomicLong maxDetectionNanos = new AtomicLong();
+
+    public LockManager() {
+        this(NUM_SHARDS);
+    }
+
+    /**
+     * @param numShards number of shards to split the resource table into; a power
+     *                  of two
+     */
+    LockManager(int numShards) {
+        if (numShards <= 0 || Integer.bitCount(numShards) != 1) {
+            throw new IllegalArgumentException("numShards must be a power of two");
+        }
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; ++i) {
+            this.shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Helper method to fetch the shard of the resource table that `name` is in.
+     */
+    private Shard shardFor(ResourceName name) {
+        int hash = name.hashCode();
+        // spread the high bits, which list hash codes mostly vary in, to the low ones
+        hash ^= hash >>> 16;
+        return shards[hash & (shards.length - 1)];
+    }
+
+    /**
+     * Releases `lock`, which must be held, and processes the queue of its
+     * resource.
+     *
+     * @return requests granted from the queue, which must be passed to
+     * finishRequests
+     */
+    private List<LockRequest> releaseLock(Lock lock) {
+        Shard shard = shardFor(lock.name);
+        synchronized (shard) {
+            ResourceEntry entry = shard.getResourceEntry(lock.name);
+            entry.releaseLock(lock);
+            List<LockRequest> granted = entry.processQueue();
+            shard.removeIfUnused(lock.name, entry);
+            return granted;
+        }
+    }
+
     /**
-     * Helper method to fetch the resourceEntry corresponding to `name`.
-     * Inserts a new (empty) resourceEntry into the map if no entry exists yet.
+     * Finishes requests granted from a queue: releases the locks each request
+     * gives up (processing those resources' queues in turn), then unblocks the
+     * request's transaction. Must be called without holding any shard's monitor.
      */
-    private ResourceEntry getResourceEntry(ResourceName name) {
-        resourceEntries.putIfAbsent(name, new ResourceEntry());
-        return resourceEntries.get(name);
+    private void finishRequests(List<LockRequest> granted) {
+        Deque<LockRequest> requests = new ArrayDeque<>(granted);
+        while (!requests.isEmpty()) {
+            LockRequest request = requests.pollFirst();
+            for (Lock lock : request.releasedLocks) {
+                requests.addAll(releaseLock(lock));
+            }
+            request.transaction.unblock();
+        }
     }
 
     /**
@@ -223,56 +324,51 @@ public class LockManager {
      * by `transaction` and isn't being released
      * @throws NoLockHeldException if `transaction` doesn't hold a lock on one
      * or more of the names in `releaseNames`
+     * @throws DeadlockException if the request was aborted to break a deadlock;
+     * no locks are acquired or released
      */
     public void acquireAndRelease(TransactionContext transaction, ResourceName name,
                                   LockType lockType, List<ResourceName> releaseNames)
             throws DuplicateLockRequestException, NoLockHeldException {
-        // You may modify any part of this method. You are not required to keep
-        // all your code within the given synchronized block and are allowed to
-        // move the synchronized block elsewhere if you wish.
-
-            LockType type = getLockType(transaction, name);
-            if (!type.equals(LockType.NL) && !releaseNames.contains(name)) {
-                throw new DuplicateLockRequestException("Duplicate request on resource" + name.toString());
-            }
-            for (ResourceName resourceName : releaseNames) {
-                if (this.getLockType(transaction, resourceName).equals(LockType.NL)) {
-                    throw new NoLockHeldException("No lock is held on resource" + name.toString());
-                }
+        if (getLockType(transaction, name) != LockType.NL && !releaseNames.contains(name)) {
+            throw new DuplicateLockRequestException("Duplicate request on resource " + name);
+        }
+        for (ResourceName releaseName : releaseNames) {
+            if (getLockType(transaction, releaseName) == LockType.NL) {
+                throw new NoLockHeldException("No lock is held on resource " + releaseName);
             }
+        }
 
-        boolean shouldBlock = false;
-        synchronized (this) {
-            ResourceEntry entry = getResourceEntry(name);
-            Lock lock = new Lock(name, lockType, transaction.getTransNum());
-            List<Lock> locksForReleasing = new ArrayList<>();
-            List<Lock> locksInTransaction = getLocks(transaction);
-
-            for (ResourceName resourceName : releaseNames) {
-                ResourceEntry entryToRelease = getResourceEntry(resourceName);
-                for (Lock lockToRelease : locksInTransaction) {
-                    if (entryToRelease.locks.contains(lockToRelease)) {
-                        locksForReleasing.add(lockToRelease);
-                    }
-                }
+        long transNum = transaction.getTransNum();
+        Lock lock = new Lock(name, lockType, transNum);
+        // an old lock on `name` is replaced by the new one rather than released
+        List<Lock> releasedLocks = new ArrayList<>();
+        for (Lock held : getLocks(transaction)) {
+            if (!held.name.equals(name) && releaseNames.contains(held.name)) {
+                releasedLocks.add(held);
             }
-            if (entry.checkCompatible(lockType, lock.transactionNum)) {
+        }
 
-                for (Lock lockToRelease : locksForReleasing ) {
-                    ResourceEntry entryToRelease = getResourceEntry(lockToRelease.name);
-                    entryToRelease.releaseLock(lockToRelease);
-                    entryToRelease.processQueue();
-                }
-                entry.grantOrUpdateLock(lock);
-            } else {
-                entry.addToQueue(new LockRequest(transaction, lock, locksForReleasing), true);
+        LockRequest request = new LockRequest(transaction, lock, releasedLocks);
+        Shard shard = shardFor(name);
+        boolean shouldBlock;
+        synchronized (shard) {
+            ResourceEntry entry = shard.getResourceEntry(name);
+            shouldBlock = !entry.checkCompatible(lockType, transNum);
+            if (shouldBlock) {
+                entry.addToQueue(request, true);
                 transaction.prepareBlock();
-                shouldBlock = true;
+            } else {
+                entry.grantOrUpdateLock(lock);
             }
-            
         }
         if (shouldBlock) {
             transaction.block();
+            throwIfAborted(request);
+            return;
+        }
+        for (Lock released : releasedLocks) {
+            finishRequests(releaseLock(released));
         }
     }
 
@@ -286,37 +382,32 @@ public class LockManager {
      *
      * @throws DuplicateLockRequestException if a lock on `name` is held by
      * `transaction`
+     * @throws DeadlockException if the request was aborted to break a deadlock
      */
     public void acquire(TransactionContext transaction, ResourceName name,
                         LockType lockType) throws DuplicateLockRequestException {
-
-        // You may modify any part of this method. You are not required to keep all your
-        // code within the given synchronized block and are allowed to move the
-        // synchronized block elsewhere if you wish.
-
-        //check compatability, addToQueue(... , false)
-        if (!this.getLockType(transaction, name).equals(LockType.NL)) {
-            throw new DuplicateLockRequestException("Duplicate request on source " + name.toString());
+        if (getLockType(transaction, name) != LockType.NL) {
+            throw new DuplicateLockRequestException("Duplicate request on resource " + name);
         }
 
-        boolean shouldBlock = false;
-        synchronized (this) {
-            ResourceEntry entry = getResourceEntry(name);
-            Lock lock = new Lock(name, lockType, transaction.getTransNum());
-            //TODO: check if locks > 0 !entry.waitingQueue.isEmpty() &&
-            if (!(entry.locks.size() > 0) || (entry.waitingQueue.isEmpty() &&
-                    entry.checkCompatible(lock.lockType, lock.transactionNum))) {
-                entry.grantOrUpdateLock(lock);
-            } else {
-                shouldBlock = true;
-                entry.addToQueue(new LockRequest(transaction, lock), false);
+        long transNum = transaction.getTransNum();
+        Lock lock = new Lock(name, lockType, transNum);
+        LockRequest request = new LockRequest(transaction, lock);
+        Shard shard = shardFor(name);
+        boolean shouldBlock;
+        synchronized (shard) {
+            ResourceEntry entry = shard.getResourceEntry(name);
+            shouldBlock = !entry.waitingQueue.isEmpty() || !entry.checkCompatible(lockType, transNum);
+            if (shouldBlock) {
+                entry.addToQueue(request, false);
                 transaction.prepareBlock();
-                //shouldBlock = true;
-
+            } else {
+                entry.grantOrUpdateLock(lock);
             }
         }
         if (shouldBlock) {
             transaction.block();
+            throwIfAborted(request);
         }
     }
 
@@ -332,18 +423,11 @@ public class LockManager {
      */
     public void release(TransactionContext transaction, ResourceName name)
             throws NoLockHeldException {
-
-        LockType type = this.getLockType(transaction, name);
-        if (type.equals(LockType.NL)) {
-            throw new NoLockHeldException("No lock is held on resource " + name.toString());
-        }
-        synchronized (this) {
-            ResourceEntry entry = getResourceEntry(name);
-            Lock lock = new Lock(name, type, transaction.getTransNum());
-            entry.releaseLock(lock);
-            entry.processQueue();
-
+        LockType type = getLockType(transaction, name);
+        if (type == LockType.NL) {
+            throw new NoLockHeldException("No lock is held on resource " + name);
         }
+        finishRequests(releaseLock(new Lock(name, type, transaction.getTransNum())));
     }
 
     /**
@@ -366,67 +450,318 @@ public class LockManager {
      * @throws InvalidLockException if the requested lock type is not a
      * promotion. A promotion from lock type A to lock type B is valid if and
      * only if B is substitutable for A, and B is not equal to A.
+     * @throws DeadlockException if the request was aborted to break a deadlock;
+     * the lock is not changed
      */
     public void promote(TransactionContext transaction, ResourceName name,
                         LockType newLockType)
             throws DuplicateLockRequestException, NoLockHeldException, InvalidLockException {
-
         LockType type = getLockType(transaction, name);
-        if (type.equals(newLockType)) {
-            throw new DuplicateLockRequestException("Duplicate request on resource " + name.toString());
+        if (type == newLockType) {
+            throw new DuplicateLockRequestException("Duplicate request on resource " + name);
         }
-        if (type.equals(LockType.NL)) {
-            throw new NoLockHeldException("No lock is held on resource " + name.toString());
+        if (type == LockType.NL) {
+            throw new NoLockHeldException("No lock is held on resource " + name);
         }
         if (!LockType.substitutable(newLockType, type)) {
             throw new InvalidLockException("Not a promotion");
         }
-        boolean shouldBlock = false;
-        synchronized (this) {
-            ResourceEntry entry = getResourceEntry(name);
-            Lock promotedLock = new Lock(name, newLockType, transaction.getTransNum());
-            if (entry.checkCompatible(promotedLock.lockType, promotedLock.transactionNum)) {
-                entry.grantOrUpdateLock(promotedLock);
+
+        long transNum = transaction.getTransNum();
+        Lock promotedLock = new Lock(name, newLockType, transNum);
+        LockRequest request = new LockRequest(transaction, promotedLock);
+        Shard shard = shardFor(name);
+        boolean shouldBlock;
+        synchronized (shard) {
+            ResourceEntry entry = shard.getResourceEntry(name);
+            shouldBlock = !entry.checkCompatible(newLockType, transNum);
+            if (shouldBlock) {
+                entry.addToQueue(request, true);
+                transaction.prepareBlock();
             } else {
-                entry.addToQueue(new LockRequest(transaction, promotedLock), true);
-                shouldBlock = true;
+                entry.grantOrUpdateLock(promotedLock);
             }
-            
         }
         if (shouldBlock) {
-            transaction.prepareBlock();
             transaction.block();
+            throwIfAborted(request);
+        }
+    }
+
+    private static void throwIfAborted(LockRequest request) {
+        if (request.aborted) {
+            throw new DeadlockException("Request aborted to break a deadlock: " + request);
         }
     }
 
     /**
-     * Return the type of lock `transaction` has on `name` or NL if no lock is
-     * held.
+     * Runs one round of deadlock detection. Builds the graph of which
+     * transactions with a request in a queue wait for which others (see
+     * ResourceEntry#addWaitsFor), and breaks each cycle in it by aborting the
+     * request of the transaction in the cycle with the smallest cost (on ties,
+     * the highest numbered, i.e. most recently started, transaction). An aborted
+     * request is taken off its queue, the queue is processed, and the request's
+     * transaction is unblocked and throws DeadlockException. The transaction
+     * keeps the locks it holds until it is aborted.
+     *
+     * @param victimCost cost of aborting a transaction
+     * @return number of requests aborted
      */
-    public synchronized LockType getLockType(TransactionContext transaction, ResourceName name) {
+    public int detectDeadlocks(ToLongFunction<TransactionContext> victimCost) {
+        Map<Long, LockRequest> waiting = new HashMap<>();
+        Map<Long, Set<Long>> waitsFor = new HashMap<>();
+        snapshotWaitsFor(0, waiting, waitsFor);
+
+        int numAborted = 0;
+        List<Long> cycle;
+        while ((cycle = findCycle(waitsFor)) != null) {
+            LockRequest victim = null;
+            long minCost = Long.MAX_VALUE;
+            // the deadlock formed when the last request of the cycle was made
+            long formedNanos = Long.MIN_VALUE;
+            for (long transNum : cycle) {
+                LockRequest request = waiting.get(transNum);
+                formedNanos = Math.max(formedNanos, request.requestNanos);
+                long cost = victimCost.applyAsLong(request.transaction);
+                if (victim == null || cost < minCost ||
+                        (cost == minCost && transNum > victim.lock.transactionNum)) {
+                    victim = request;
+                    minCost = cost;
+                }
+            }
+            // the victim no longer waits for anything
+            waitsFor.remove(victim.lock.transactionNum);
+            if (abortRequest(victim, formedNanos)) {
+                ++numAborted;
+            }
+        }
+        return numAborted;
+    }
 
-        ResourceEntry resourceEntry = getResourceEntry(name);
-        for (Lock lock : resourceEntry.locks) {
-            if (lock.transactionNum.equals(transaction.getTransNum())) {
-                return lock.lockType;
+    /**
+     * Adds the waits-for edges of every resource to `waitsFor`, holding the
+     * monitors of shards shardIndex and up, in order, so that the graph is
+     * consistent. (Every other operation holds one shard's monitor at a time,
+     * so this cannot deadlock with them.)
+     */
+    private void snapshotWaitsFor(int shardIndex, Map<Long, LockRequest> waiting,
+                                  Map<Long, Set<Long>> waitsFor) {
+        if (shardIndex == shards.length) {
+            for (Shard shard : shards) {
+                for (ResourceEntry entry : shard.resourceEntries.values()) {
+                    entry.addWaitsFor(waiting, waitsFor);
+                }
+            }
+            return;
+        }
+        synchronized (shards[shardIndex]) {
+            snapshotWaitsFor(shardIndex + 1, waiting, waitsFor);
+        }
+    }
+
+    /**
+     * Finds a cycle in a waits-for graph by depth-first search. Transactions
+     * that are not keys of `waitsFor` do not wait for anything.
+     *
+     * @return the transactions of a cycle, or null if there is no cycle
+     */
+    private static List<Long> findCycle(Map<Long, Set<Long>> waitsFor) {
+        Set<Long> visited = new HashSet<>();
+        for (Long start : waitsFor.keySet()) {
+            if (visited.contains(start)) {
+                continue;
             }
+            // the current path, the index of each transaction on it, and the
+            // edges of each transaction on it left to search
+            List<Long> path = new ArrayList<>();
+            Map<Long, Integer> pathIndex = new HashMap<>();
+            Deque<Iterator<Long>> edges = new ArrayDeque<>();
+            visited.add(start);
+            pathIndex.put(start, 0);
+            path.add(start);
+            edges.push(waitsFor.get(start).iterator());
+            while (!edges.isEmpty()) {
+                Iterator<Long> iter = edges.peek();
+                if (!iter.hasNext()) {
+                    pathIndex.remove(path.remove(path.size() - 1));
+                    edges.pop();
+                    continue;
+                }
+                Long next = iter.next();
+                Integer index = pathIndex.get(next);
+                if (index != null) {
+                    return new ArrayList<>(path.subList(index, path.size()));
+                }
+                if (visited.contains(next) || !waitsFor.containsKey(next)) {
+                    continue;
+                }
+                visited.add(next);
+                pathIndex.put(next, path.size());
+                path.add(next);
+                edges.push(waitsFor.get(next).iterator());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes `request` off its queue and unblocks its transaction, which throws
+     * DeadlockException. The abort is counted in the deadlock detection
+     * statistics before the transaction is unblocked.
+     *
+     * @param formedNanos the time the deadlock of the request formed
+     * @return false if the request was not in a queue
+     */
+    private boolean abortRequest(LockRequest request, long formedNanos) {
+        ResourceName name = request.lock.name;
+        Shard shard = shardFor(name);
+        List<LockRequest> granted;
+        synchronized (shard) {
+            ResourceEntry entry = shard.resourceEntries.get(name);
+            if (entry == null || !entry.waitingQueue.remove(request)) {
+                return false;
+            }
+            request.aborted = true;
+            granted = entry.processQueue();
+            shard.removeIfUnused(name, entry);
+        }
+        long latency = System.nanoTime() - formedNanos;
+        numDeadlockAborts.incrementAndGet();
+        totalDetectionNanos.addAndGet(latency);
+        maxDetectionNanos.accumulateAndGet(latency, Math::max);
+        finishRequests(granted);
+        request.transaction.unblock();
+        return true;
+    }
+
+    /**
+     * Starts detecting deadlocks in the background, every intervalMillis (see
+     * detectDeadlocks). Does nothing if the detector is already running.
+     *
+     * @param intervalMillis time between rounds of detection
+     * @param victimCost cost of aborting a transaction
+     */
+    public synchronized void startDeadlockDetector(long intervalMillis,
+                                                   ToLongFunction<TransactionContext> victimCost) {
+        if (this.deadlockDetector != null) {
+            return;
+        }
+        this.deadlockDetector = new DeadlockDetector(this, intervalMillis, victimCost);
+    }
+
+    /**
+     * Stops the background deadlock detector, if running, and waits for a round
+     * in progress to finish.
+     */
+    public void stopDeadlockDetector() {
+        DeadlockDetector deadlockDetector;
+        synchronized (this) {
+            deadlockDetector = this.deadlockDetector;
+            this.deadlockDetector = null;
+        }
+        if (deadlockDetector != null) {
+            deadlockDetector.close();
+        }
+    }
+
+    /**
+     * @return number of requests aborted to break deadlocks
+     */
+    public long getNumDeadlockAborts() {
+        return numDeadlockAborts.get();
+    }
+
+    /**
+     * @return average time, in nanoseconds, from a deadlock forming (the last
+     * request of its cycle being made) to a request being aborted to break it,
+     * or 0 if no request was aborted
+     */
+    public long getMeanDeadlockDetectionNanos() {
+        long numAborts = numDeadlockAborts.get();
+        return numAborts == 0 ? 0 : totalDetectionNanos.get() / numAborts;
+    }
+
+    /**
+     * @return longest time, in nanoseconds, from a deadlock forming to a request
+     * being aborted to break it
+     */
+    public long getMaxDeadlockDetectionNanos() {
+        return maxDetectionNanos.get();
+    }
+
+    /**
+     * Sets when LockUtil escalates a transaction's locks on the children of a
+     * context (say, pages of a table) to an S or X lock on the context, instead
+     * of taking yet another lock on a child: once the transaction holds locks
+     * on at least `saturation` of the context's children (only for contexts
+     * with at least MIN_ESCALATION_CAPACITY children), or on at least
+     * `numChildLocks` children. This bounds the number of locks a transaction
+     * takes below a single context, at the cost of concurrency on it. Both are
+     * disabled by default.
+     *
+     * @param saturation fraction of a context's children, or 0 to disable
+     * @param numChildLocks number of locks on a context's children, or 0 to
+     *                      disable
+     */
+    public void setEscalationThresholds(double saturation, int numChildLocks) {
+        if (saturation < 0 || saturation > 1) {
+            throw new IllegalArgumentException("saturation must be between 0 and 1");
+        }
+        if (numChildLocks < 0) {
+            throw new IllegalArgumentException("numChildLocks must not be negative");
+        }
+        this.escalationSaturation = saturation;
+        this.escalationNumChildLocks = numChildLocks;
+    }
+
+    /**
+     * Whether a transaction holding `numChildLocks` locks on the children of a
+     * context with `capacity` children has crossed an escalation threshold.
+     */
+    boolean shouldEscalate(int numChildLocks, int capacity) {
+        int maxChildLocks = this.escalationNumChildLocks;
+        if (maxChildLocks > 0 && numChildLocks >= maxChildLocks) {
+            return true;
+        }
+        double saturation = this.escalationSaturation;
+        return saturation > 0 && capacity >= MIN_ESCALATION_CAPACITY &&
+               numChildLocks >= saturation * capacity;
+    }
+
+    /**
+     * Return the type of lock `transaction` has on `name` or NL if no lock is
+     * held.
+     */
+    public LockType getLockType(TransactionContext transaction, ResourceName name) {
+        Shard shard = shardFor(name);
+        synchronized (shard) {
+            ResourceEntry entry = shard.resourceEntries.get(name);
+            return entry == null ? LockType.NL : entry.getTransactionLockType(transaction.getTransNum());
         }
-        return LockType.NL;
     }
 
     /**
      * Returns the list of locks held on `name`, in order of acquisition.
      */
-    public synchronized List<Lock> getLocks(ResourceName name) {
-        return new ArrayList<>(resourceEntries.getOrDefault(name, new ResourceEntry()).locks);
+    public List<Lock> getLocks(ResourceName name) {
+        Shard shard = shardFor(name);
+        synchronized (shard) {
+            ResourceEntry entry = shard.resourceEntries.get(name);
+            return entry == null ? new ArrayList<>() : new ArrayList<>(entry.locks);
+        }
     }
 
     /**
      * Returns the list of locks held by `transaction`, in order of acquisition.
      */
-    public synchronized List<Lock> getLocks(TransactionContext transaction) {
-        return new ArrayList<>(transactionLocks.getOrDefault(transaction.getTransNum(),
-                Collections.emptyList()));
+    public List<Lock> getLocks(TransactionContext transaction) {
+        List<Lock> locks = new ArrayList<>();
+        // copied inside computeIfPresent, so that it is not modified while copying
+        transactionLocks.computeIfPresent(transaction.getTransNum(), (transNum, held) -> {
+            locks.addAll(held);
+            return held;
+        });
+        return locks;
     }
 
     /**
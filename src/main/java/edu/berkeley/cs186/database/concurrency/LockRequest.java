@@ -15,6 +15,11 @@ class LockRequest {
     TransactionContext transaction;
     Lock lock;
     List<Lock> releasedLocks;
+    // Time the request was made, by System#nanoTime.
+    long requestNanos = System.nanoTime();
+    // Set if the request was taken off the queue to break a deadlock, before its
+    // transaction is unblocked.
+    boolean aborted;
 
     // Lock request for `lock`, that is not releasing anything.
     LockRequest(TransactionContext transaction, Lock lock) {
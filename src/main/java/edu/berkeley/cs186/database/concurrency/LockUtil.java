@@ -40,12 +40,26 @@ public class LockUtil {
         // Do nothing if the transaction or lockContext is null
         TransactionContext transaction = TransactionContext.getTransaction();
         if (transaction == null || lockContext == null) return;
+        // Optimistic transactions lock only what they write: their reads, of
+        // tables only (not indices), are validated when they commit
+        if (transaction.isOptimistic() && requestType != LockType.X) return;
         //TODO: maybe use parentContext instead of all ancestors
         // You may find these variables useful
         LockContext parentContext = lockContext.parentContext();
         LockType effectiveLockType = lockContext.getEffectiveLockType(transaction);
         LockType explicitLockType = lockContext.getExplicitLockType(transaction);
 
+        // Escalate the locks on the parent's children, rather than take yet
+        // another one, once there are enough of them. Escalating IS gives S, so
+        // X requests only escalate an IX or SIX parent (to X).
+        if (parentContext != null && requestType != LockType.NL && explicitLockType == LockType.NL &&
+                !LockType.substitutable(effectiveLockType, requestType) &&
+                (requestType == LockType.S || parentContext.getExplicitLockType(transaction) != LockType.IS) &&
+                parentContext.shouldEscalate(transaction)) {
+            parentContext.escalate(transaction);
+            return;
+        }
+
         List<LockContext> ancestors = allAncestors(lockContext);
         if (requestType.equals(LockType.S)) {
             for (LockContext ancestor : ancestors) {
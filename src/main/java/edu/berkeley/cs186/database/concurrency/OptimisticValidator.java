@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validation of optimistic transactions (optimistic concurrency control).
+ *
+ * Optimistic transactions read without locking (see LockUtil), but still lock what
+ * they write, like any other transaction. Each page has a version, bumped whenever a
+ * transaction that wrote it ends (commits or aborts), and a number of running
+ * transactions that have written it. The first time an optimistic transaction reads
+ * a page, the page's version is recorded in its read set. When it commits, each page
+ * in its read set must still be at the recorded version, and must not have been
+ * written by another running transaction: otherwise, the transaction may have read
+ * a write that was not (or is no longer) committed, or read records since
+ * overwritten by a committed transaction, and it fails validation.
+ *
+ * Insertions and deletions also write a key for their table, which scans read, so
+ * that a scan fails validation if records are added to (or removed from) the table
+ * while it runs. Pages and table keys are both identified by page numbers.
+ *
+ * Versions are not kept per page, but per slot of a fixed-size table, by hash of
+ * page number, so that the validator takes the same memory however many pages are
+ * read and written. Pages sharing a slot share a version: a write of one fails the
+ * validation of reads of the others, which is safe, if needlessly pessimistic.
+ */
+public class OptimisticValidator {
+    private static final int NUM_SLOTS = 1 << 16;
+    private static final int NUM_STRIPES = 64;
+
+    // Read and write sets of a transaction, by slot. Only used by the transaction's
+    // thread.
+    private static class TransactionState {
+        // version of each slot read, when it was first read
+        Map<Integer, Long> readVersions = new HashMap<>();
+        Set<Integer> writtenSlots = new HashSet<>();
+    }
+
+    // Number of transactions that wrote a page of each slot and have since ended.
+    // Guarded by the monitor of the slot's stripe.
+    private final long[] versions = new long[NUM_SLOTS];
+    // Number of running transactions that wrote a page of each slot. Guarded by the
+    // monitor of the slot's stripe.
+    private final int[] numWriters = new int[NUM_SLOTS];
+    private final Object[] stripes = new Object[NUM_STRIPES];
+
+    private Map<Long, TransactionState> transactions = new ConcurrentHashMap<>();
+
+    private AtomicLong numValidations = new AtomicLong();
+    private AtomicLong numValidationFailures = new AtomicLong();
+
+    public OptimisticValidator() {
+        for (int i = 0; i < NUM_STRIPES; ++i) {
+            stripes[i] = new Object();
+        }
+    }
+
+    private static int slotFor(long pageNum) {
+        // page numbers differ mostly in their low bits (within a partition) and in
+        // their high bits (across partitions): mix both into the top bits
+        return (int) ((pageNum * 0x9E3779B97F4A7C15L) >>> (64 - 16));
+    }
+
+    private Object stripeFor(int slot) {
+        return stripes[slot & (NUM_STRIPES - 1)];
+    }
+
+    private TransactionState stateFor(long transNum) {
+        return transactions.computeIfAbsent(transNum, t -> new TransactionState());
+    }
+
+    /**
+     * Records a read of a page by an optimistic transaction.
+     *
+     * @param transNum transaction number
+     * @param pageNum page read
+     */
+    public void recordRead(long transNum, long pageNum) {
+        TransactionState state = stateFor(transNum);
+        int slot = slotFor(pageNum);
+        if (state.readVersions.containsKey(slot)) {
+            return;
+        }
+        long version;
+        synchronized (stripeFor(slot)) {
+            version = versions[slot];
+        }
+        state.readVersions.put(slot, version);
+    }
+
+    /**
+     * Records a write of a page by a transaction (optimistic or not). Must be called
+     * before the page is changed.
+     *
+     * @param transNum transaction number
+     * @param pageNum page written
+     */
+    public void recordWrite(long transNum, long pageNum) {
+        TransactionState state = stateFor(transNum);
+        int slot = slotFor(pageNum);
+        if (!state.writtenSlots.add(slot)) {
+            return;
+        }
+        synchronized (stripeFor(slot)) {
+            ++numWriters[slot];
+        }
+    }
+
+    /**
+     * Validates the reads of an optimistic transaction. Must be called before it
+     * commits.
+     *
+     * @param transNum transaction number
+     * @throws ValidationException if a page read has been written since, or is
+     * being written, by another transaction
+     */
+    public void validate(long transNum) {
+        numValidations.incrementAndGet();
+        TransactionState state = transactions.get(transNum);
+        if (state == null) {
+            return;
+        }
+        for (Map.Entry<Integer, Long> entry : state.readVersions.entrySet()) {
+            int slot = entry.getKey();
+            // the transaction's own write of the slot does not count
+            int ownWrites = state.writtenSlots.contains(slot) ? 1 : 0;
+            synchronized (stripeFor(slot)) {
+                if (versions[slot] != entry.getValue() || numWriters[slot] > ownWrites) {
+                    numValidationFailures.incrementAndGet();
+                    throw new ValidationException("transaction " + transNum +
+                                                  " read a page which has been written since");
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets a transaction's read and write sets, and bumps the versions of the
+     * pages it wrote. Must be called once the transaction has committed, or rolled
+     * back its changes.
+     *
+     * @param transNum transaction number
+     */
+    public void end(long transNum) {
+        TransactionState state = transactions.remove(transNum);
+        if (state == null) {
+            return;
+        }
+        for (int slot : state.writtenSlots) {
+            synchronized (stripeFor(slot)) {
+                ++versions[slot];
+                --numWriters[slot];
+            }
+        }
+    }
+
+    /**
+     * @return number of validations done
+     */
+    public long getNumValidations() {
+        return numValidations.get();
+    }
+
+    /**
+     * @return number of validations failed
+     */
+    public long getNumValidationFailures() {
+        return numValidationFailures.get();
+    }
+}
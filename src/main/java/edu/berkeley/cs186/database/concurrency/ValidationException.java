@@ -0,0 +1,13 @@
+package edu.berkeley.cs186.database.concurrency;
+
+/**
+ * Thrown when an optimistic transaction fails validation at commit, because a page
+ * it read was written by another transaction in the meantime. The transaction has
+ * been rolled back, and should be retried.
+ */
+@SuppressWarnings("serial")
+public class ValidationException extends RuntimeException {
+    ValidationException(String message) {
+        super(message);
+    }
+}
@@ -476,6 +476,7 @@ public class BPlusTree {
             this.leaf = leaf;
             this.iterator = iterator;
             this.siblingPresent = true;
+            leaf.prefetchRightSibling();
             if (checkEmptyPage()) {
                 move();
             }
@@ -510,6 +511,7 @@ public class BPlusTree {
                 return;
             }
             leaf = sibling.get();
+            leaf.prefetchRightSibling();
             iterator = leaf.scanAll();
             if (checkEmptyPage()) {
                 move();
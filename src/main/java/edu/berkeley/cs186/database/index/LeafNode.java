@@ -289,6 +289,14 @@ class LeafNode extends BPlusNode {
         return Optional.of(LeafNode.fromBytes(metadata, bufferManager, treeContext, pageNum));
     }
 
+    /**
+     * Hints to the buffer manager that the right sibling of this leaf (if any) is
+     * about to be read, so that it can be loaded while this leaf is processed.
+     */
+    void prefetchRightSibling() {
+        rightSibling.ifPresent(bufferManager::prefetch);
+    }
+
     /** Serializes this leaf to its page. */
     private void sync() {
         page.pin();
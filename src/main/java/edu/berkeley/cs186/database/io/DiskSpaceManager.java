@@ -65,6 +65,20 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Writes to a run of consecutive pages of one partition: bufs[i] is written to
+     * page + i. Implementations may issue this as fewer (vectored) writes than
+     * calling writePage on each page would.
+     *
+     * @param page number of first page to be written
+     * @param bufs byte buffers that contain the new page data
+     */
+    default void writePages(long page, byte[][] bufs) {
+        for (int i = 0; i < bufs.length; ++i) {
+            writePage(page + i, bufs[i]);
+        }
+    }
+
     /**
      * Checks if a page is allocated
      *
@@ -98,7 +98,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 int fileNum = Integer.parseInt(f.getName());
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = this.createPartitionHandle(fileNum, recoveryManager);
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -137,7 +137,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
+            pi = this.createPartitionHandle(partNum, recoveryManager);
             this.partInfo.put(partNum, pi);
 
             pi.partitionLock.lock();
@@ -312,6 +312,35 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public void writePages(long page, byte[][] bufs) {
+        for (byte[] buf : bufs) {
+            if (buf.length != PAGE_SIZE) {
+                throw new IllegalArgumentException("writePages expects page-sized buffers");
+            }
+        }
+        int partNum = DiskSpaceManager.getPartNum(page);
+        int pageNum = DiskSpaceManager.getPageNum(page);
+        if (DiskSpaceManager.getPartNum(page + bufs.length - 1) != partNum) {
+            throw new IllegalArgumentException("writePages cannot span multiple partitions");
+        }
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+            pi.partitionLock.lock();
+        } finally {
+            this.managerLock.unlock();
+        }
+        try {
+            pi.writePages(pageNum, bufs);
+        } catch (IOException e) {
+            throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
+        } finally {
+            pi.partitionLock.unlock();
+        }
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
@@ -331,6 +360,18 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    /**
+     * Creates the handle used to access a partition's OS file. Subclasses may override
+     * this to change how data pages are read from and written to disk.
+     *
+     * @param partNum partition number
+     * @param recoveryManager recovery manager
+     * @return new (unopened) partition handle
+     */
+    PartitionHandle createPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new PartitionHandle(partNum, recoveryManager);
+    }
+
     // Gets PartInfo, throws exception if not found.
     private PartitionHandle getPartInfo(int partNum) {
         PartitionHandle pi = this.partInfo.get(partNum);
@@ -0,0 +1,31 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * Disk space manager that uses the same on-disk format as DiskSpaceManagerImpl, but
+ * accesses data pages through memory-mapped segments of each partition's OS file
+ * (see MappedPartitionHandle). Reading a page is a memory copy out of the OS page
+ * cache, instead of a read call per page; writing a page is a memory copy followed
+ * by a force of the segment.
+ *
+ * Since the format is unchanged, a database directory can be opened by either
+ * implementation. Note that mapping a segment grows the OS file to the end of the
+ * segment, so partition files are larger (but sparse) under this implementation.
+ */
+public class MappedDiskSpaceManager extends DiskSpaceManagerImpl {
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager) {
+        super(dbDir, recoveryManager);
+    }
+
+    @Override
+    PartitionHandle createPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new MappedPartitionHandle(partNum, recoveryManager);
+    }
+}
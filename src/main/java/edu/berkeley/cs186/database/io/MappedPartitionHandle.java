@@ -0,0 +1,147 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
+
+/**
+ * Partition handle that serves data page reads and writes out of memory-mapped
+ * regions of the partition's OS file, rather than issuing a read/write call on the
+ * file channel for every page.
+ *
+ * The file is mapped lazily in fixed-size segments of SEGMENT_PAGES pages each.
+ * Mapping a segment past the current end of the file grows the file to cover
+ * the whole segment. Master and header pages are still read and written through the
+ * file channel; both paths go through the OS page cache, so they see each other's
+ * changes.
+ */
+class MappedPartitionHandle extends PartitionHandle {
+    // Number of pages (of the OS file, not data pages) covered by each mapped segment
+    static final int SEGMENT_PAGES = 1024;
+    static final long SEGMENT_SIZE = (long) SEGMENT_PAGES * PAGE_SIZE;
+
+    // Mapped segments of the OS file, indexed by (file offset / SEGMENT_SIZE).
+    // Entries are null until the segment is first accessed.
+    private List<MappedByteBuffer> segments;
+
+    MappedPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        super(partNum, recoveryManager);
+        this.segments = new ArrayList<>();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            // Mapped buffers are unmapped when garbage collected; Java offers no way
+            // of releasing them explicitly, so all we can do is drop our references.
+            this.segments.clear();
+        } finally {
+            this.partitionLock.unlock();
+        }
+        super.close();
+    }
+
+    /**
+     * Reads in a data page by copying it out of its mapped segment. Assumes that the
+     * partition lock is held.
+     * @param pageNum data page number to read in
+     * @param buf output buffer to be filled with page - assumed to be page size
+     */
+    @Override
+    void readPage(int pageNum, byte[] buf) throws IOException {
+        if (this.isNotAllocatedPage(pageNum)) {
+            throw new PageException("page " + pageNum + " is not allocated");
+        }
+        long offset = PartitionHandle.dataPageOffset(pageNum);
+        ByteBuffer b = this.getSegment(offset).duplicate();
+        b.position((int) (offset % SEGMENT_SIZE));
+        b.get(buf, 0, PAGE_SIZE);
+    }
+
+    /**
+     * Writes to a data page by copying it into its mapped segment, and forcing the
+     * segment to disk. Assumes that the partition lock is held.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page - assumed to be page size
+     */
+    @Override
+    void writePage(int pageNum, byte[] buf) throws IOException {
+        if (this.isNotAllocatedPage(pageNum)) {
+            throw new PageException("page " + pageNum + " is not allocated");
+        }
+        long offset = PartitionHandle.dataPageOffset(pageNum);
+        MappedByteBuffer segment = this.getSegment(offset);
+        ByteBuffer b = segment.duplicate();
+        b.position((int) (offset % SEGMENT_SIZE));
+        b.put(buf, 0, PAGE_SIZE);
+        // Only the dirty pages of the segment are actually written out by the OS.
+        segment.force();
+
+        long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+        recoveryManager.diskIOHook(vpn);
+    }
+
+    /**
+     * Writes to a run of consecutive data pages by copying them into their mapped
+     * segments, forcing each touched segment once. Assumes that the partition lock
+     * is held.
+     * @param pageNum data page number of the first page to write to
+     * @param bufs input buffers with new contents of pages - assumed to be page size
+     */
+    @Override
+    void writePages(int pageNum, byte[][] bufs) throws IOException {
+        for (int i = 0; i < bufs.length; ++i) {
+            if (this.isNotAllocatedPage(pageNum + i)) {
+                throw new PageException("page " + (pageNum + i) + " is not allocated");
+            }
+        }
+        MappedByteBuffer segment = null;
+        for (int i = 0; i < bufs.length; ++i) {
+            long offset = PartitionHandle.dataPageOffset(pageNum + i);
+            MappedByteBuffer next = this.getSegment(offset);
+            if (segment != null && segment != next) {
+                segment.force();
+            }
+            segment = next;
+            ByteBuffer b = segment.duplicate();
+            b.position((int) (offset % SEGMENT_SIZE));
+            b.put(bufs[i], 0, PAGE_SIZE);
+        }
+        if (segment != null) {
+            segment.force();
+        }
+
+        for (int i = 0; i < bufs.length; ++i) {
+            long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum + i);
+            recoveryManager.diskIOHook(vpn);
+        }
+    }
+
+    /**
+     * Gets the segment containing a file offset, mapping it (and growing the file)
+     * if necessary. Assumes that the partition lock is held.
+     * @param offset offset in OS file
+     * @return mapped segment containing offset
+     */
+    private MappedByteBuffer getSegment(long offset) throws IOException {
+        int segmentIndex = (int) (offset / SEGMENT_SIZE);
+        while (this.segments.size() <= segmentIndex) {
+            this.segments.add(null);
+        }
+        MappedByteBuffer segment = this.segments.get(segmentIndex);
+        if (segment == null) {
+            segment = this.fileChannel.map(FileChannel.MapMode.READ_WRITE,
+                                           segmentIndex * SEGMENT_SIZE, SEGMENT_SIZE);
+            this.segments.set(segmentIndex, segment);
+        }
+        return segment;
+    }
+}
@@ -23,7 +23,7 @@ class PartitionHandle implements AutoCloseable {
 
     // Underlying OS file/file channel.
     private RandomAccessFile file;
-    private FileChannel fileChannel;
+    FileChannel fileChannel;
 
     // Contents of the master page of this partition
     // Ideally would be an unsigned short array but Java doesn't have unsigned types
@@ -33,10 +33,10 @@ class PartitionHandle implements AutoCloseable {
     private byte[][] headerPages;
 
     // Recovery manager
-    private RecoveryManager recoveryManager;
+    RecoveryManager recoveryManager;
 
     // Partition number
-    private int partNum;
+    int partNum;
 
     PartitionHandle(int partNum, RecoveryManager recoveryManager) {
         this.masterPage = new int[MAX_HEADER_PAGES];
@@ -260,6 +260,46 @@ class PartitionHandle implements AutoCloseable {
         recoveryManager.diskIOHook(vpn);
     }
 
+    /**
+     * Writes to a run of consecutive data pages, using one gathering write for each
+     * stretch of the run that is contiguous in the OS file. Assumes that the partition
+     * lock is held.
+     * @param pageNum data page number of the first page to write to
+     * @param bufs input buffers with new contents of pages - assumed to be page size
+     */
+    void writePages(int pageNum, byte[][] bufs) throws IOException {
+        for (int i = 0; i < bufs.length; ++i) {
+            if (this.isNotAllocatedPage(pageNum + i)) {
+                throw new PageException("page " + (pageNum + i) + " is not allocated");
+            }
+        }
+        int start = 0;
+        while (start < bufs.length) {
+            // data pages are contiguous in the file up to the next header page
+            int end = start + 1;
+            while (end < bufs.length && (pageNum + end) % DATA_PAGES_PER_HEADER != 0) {
+                ++end;
+            }
+            ByteBuffer[] b = new ByteBuffer[end - start];
+            long remaining = 0;
+            for (int i = start; i < end; ++i) {
+                b[i - start] = ByteBuffer.wrap(bufs[i]);
+                remaining += PAGE_SIZE;
+            }
+            this.fileChannel.position(PartitionHandle.dataPageOffset(pageNum + start));
+            while (remaining > 0) {
+                remaining -= this.fileChannel.write(b);
+            }
+            start = end;
+        }
+        this.fileChannel.force(false);
+
+        for (int i = 0; i < bufs.length; ++i) {
+            long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum + i);
+            recoveryManager.diskIOHook(vpn);
+        }
+    }
+
     /**
      * Checks if page number is for an unallocated data page
      * @param pageNum data page number
@@ -322,7 +362,7 @@ class PartitionHandle implements AutoCloseable {
      * @param pageNum data page number
      * @return offset in OS file for data page
      */
-    private static long dataPageOffset(int pageNum) {
+    static long dataPageOffset(int pageNum) {
         // Consider the layout if we had 4 data pages per header:
         // Offset (in pages):  0  1  2  3  4  5  6  7  8  9 10
         // Page Type:         [M][H][D][D][D][D][H][D][D][D][D]
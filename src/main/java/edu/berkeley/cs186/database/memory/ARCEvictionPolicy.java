@@ -0,0 +1,272 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Implementation of the ARC (Adaptive Replacement Cache) eviction policy, which
+ * is resistant to sequential scans flushing out frequently used pages.
+ *
+ * Resident frames are kept in two LRU lists: T1, of pages referenced only once
+ * since they were loaded, and T2, of pages referenced at least twice. Pages
+ * recently evicted from each list are remembered (by page number only) in the
+ * ghost lists B1 and B2. A page loaded again while in B1 means T1 is too small,
+ * and a page loaded again while in B2 means T2 is too small; the target size p
+ * of T1 is adjusted accordingly, and eviction takes from T1 while it is larger
+ * than p. A full scan of a large table therefore only cycles pages through T1,
+ * leaving the pages of T2 (e.g. inner nodes of an index) in memory.
+ *
+ * Every read from or write to a frame counts as a hit, so a single access to a
+ * page (e.g. reading a record) usually produces several hits in a row. Hits are
+ * therefore only counted as a new reference if at least correlatedReferencePeriod
+ * other pages have been loaded since the last reference to the frame. The first hit
+ * on a frame is never a new reference: pages may be loaded (by the prefetcher) well
+ * before they are first used.
+ *
+ * Hits are reported while holding only the lock of the frame hit, so they may run
+ * concurrently with each other and with the other calls (made under the buffer
+ * manager's stripe lock). Every call therefore synchronizes on the policy, which
+ * guards the lists.
+ */
+public class ARCEvictionPolicy implements EvictionPolicy {
+    private static final int DEFAULT_CORRELATED_REFERENCE_PERIOD = 1;
+
+    // Resident frames referenced once (T1) and more than once (T2)
+    private TagList recent;
+    private TagList frequent;
+
+    // Page numbers of frames recently evicted from T1 (B1) and T2 (B2), in order of
+    // least to most recently evicted
+    private LinkedHashSet<Long> recentGhosts;
+    private LinkedHashSet<Long> frequentGhosts;
+
+    // Target size of T1
+    private int target;
+
+    // Number of frames in the buffer, known once the first eviction happens
+    private int capacity;
+
+    // Number of pages loaded so far, used as a clock for detecting correlated hits
+    private long numLoads;
+    private int correlatedReferencePeriod;
+
+    // Frame returned by the last call to evict, which is remembered in a ghost list
+    // when cleaned up
+    private BufferFrame victim;
+
+    private class Tag {
+        Tag prev = null;
+        Tag next = null;
+        BufferFrame cur = null;
+        TagList list = null;
+        boolean referenced = false;
+        long lastReference = 0;
+
+        @Override
+        public String toString() {
+            String sprev = (prev == null || prev.cur == null) ? "null" : prev.cur.toString();
+            String snext = (next == null || next.cur == null) ? "null" : next.cur.toString();
+            String scur = cur == null ? "null" : cur.toString();
+            return scur + " (prev=" + sprev + ", next=" + snext + ")";
+        }
+    }
+
+    // Doubly-linked list between frames, in order of least to most recently used.
+    private class TagList {
+        Tag head = new Tag();
+        Tag tail = new Tag();
+        int size = 0;
+
+        TagList() {
+            head.next = tail;
+            tail.prev = head;
+        }
+
+        void append(Tag tag) {
+            tag.next = tail;
+            tag.prev = tail.prev;
+            tail.prev.next = tag;
+            tail.prev = tag;
+            tag.list = this;
+            ++size;
+        }
+
+        void remove(Tag tag) {
+            tag.prev.next = tag.next;
+            tag.next.prev = tag.prev;
+            tag.prev = tag.next = tag;
+            tag.list = null;
+            --size;
+        }
+
+        // least recently used unpinned frame, or null if everything is pinned
+        BufferFrame firstUnpinned() {
+            Tag tag = head.next;
+            while (tag.cur != null && tag.cur.isPinned()) {
+                tag = tag.next;
+            }
+            return tag.cur;
+        }
+    }
+
+    public ARCEvictionPolicy() {
+        this(DEFAULT_CORRELATED_REFERENCE_PERIOD);
+    }
+
+    /**
+     * @param correlatedReferencePeriod number of page loads that must happen between
+     *                                  two hits on a frame for the second to count as
+     *                                  a separate reference
+     */
+    public ARCEvictionPolicy(int correlatedReferencePeriod) {
+        this.recent = new TagList();
+        this.frequent = new TagList();
+        this.recentGhosts = new LinkedHashSet<>();
+        this.frequentGhosts = new LinkedHashSet<>();
+        this.target = 0;
+        this.capacity = 0;
+        this.numLoads = 0;
+        this.correlatedReferencePeriod = correlatedReferencePeriod;
+        this.victim = null;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame. Pages that were recently evicted go
+     * straight into T2, adapting the target size of T1 in favor of the list they
+     * were evicted from; other pages go into T1.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        ++this.numLoads;
+        Tag frameTag = new Tag();
+        frameTag.cur = frame;
+        frameTag.lastReference = this.numLoads;
+        frame.tag = frameTag;
+
+        Long pageNum = frame.getPageNum();
+        if (this.recentGhosts.remove(pageNum)) {
+            int delta = Math.max(this.frequentGhosts.size() / (this.recentGhosts.size() + 1), 1);
+            this.target = Math.min(this.target + delta, this.capacity);
+            this.frequent.append(frameTag);
+        } else if (this.frequentGhosts.remove(pageNum)) {
+            int delta = Math.max(this.recentGhosts.size() / (this.frequentGhosts.size() + 1), 1);
+            this.target = Math.max(this.target - delta, 0);
+            this.frequent.append(frameTag);
+        } else {
+            this.recent.append(frameTag);
+        }
+    }
+
+    /**
+     * Called when a frame is hit. Moves the frame to the most recently used end of
+     * T2, unless this is the first hit on the frame, or the hit is correlated with
+     * the previous reference to the frame.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        Tag frameTag = (Tag) frame.tag;
+        if (frameTag.list == null) {
+            return;
+        }
+        long sinceLastReference = this.numLoads - frameTag.lastReference;
+        boolean firstReference = !frameTag.referenced;
+        frameTag.referenced = true;
+        frameTag.lastReference = this.numLoads;
+        if (frameTag.list == this.recent &&
+                (firstReference || sinceLastReference < this.correlatedReferencePeriod)) {
+            return;
+        }
+        frameTag.list.remove(frameTag);
+        this.frequent.append(frameTag);
+    }
+
+    /**
+     * Called when a frame needs to be evicted. Evicts the least recently used
+     * unpinned frame of T1 if T1 is above its target size, and of T2 otherwise
+     * (falling back to the other list if every frame in the chosen one is pinned).
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.capacity = frames.length;
+        boolean fromRecent = this.recent.size > 0 &&
+                             (this.recent.size > this.target || this.frequent.size == 0);
+        TagList first = fromRecent ? this.recent : this.frequent;
+        TagList second = fromRecent ? this.frequent : this.recent;
+        BufferFrame frame = first.firstUnpinned();
+        if (frame == null) {
+            frame = second.firstUnpinned();
+        }
+        if (frame == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        this.victim = frame;
+        return frame;
+    }
+
+    /**
+     * Called when the frame returned by the last call to evict is not evicted after
+     * all. The frame is no longer remembered in a ghost list when it is cleaned up.
+     * @param frame frame that was returned by evict
+     */
+    @Override
+    public synchronized void cancelEviction(BufferFrame frame) {
+        if (frame == this.victim) {
+            this.victim = null;
+        }
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk). Only evicted frames are remembered
+     * in the ghost lists.
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        Tag frameTag = (Tag) frame.tag;
+        TagList list = frameTag.list;
+        if (list == null) {
+            return;
+        }
+        list.remove(frameTag);
+        if (frame != this.victim) {
+            return;
+        }
+        this.victim = null;
+        Long pageNum = frame.getPageNum();
+        if (list == this.recent) {
+            this.recentGhosts.add(pageNum);
+        } else {
+            this.frequentGhosts.add(pageNum);
+        }
+        this.trimGhosts();
+    }
+
+    /**
+     * Drops the oldest ghost entries so that T1 and B1 together hold at most
+     * capacity pages, and all four lists together at most 2 * capacity pages.
+     */
+    private void trimGhosts() {
+        while (!this.recentGhosts.isEmpty() &&
+                this.recent.size + this.recentGhosts.size() > this.capacity) {
+            removeOldest(this.recentGhosts);
+        }
+        while (!this.frequentGhosts.isEmpty() &&
+                this.recent.size + this.frequent.size + this.recentGhosts.size()
+                + this.frequentGhosts.size() > 2 * this.capacity) {
+            removeOldest(this.frequentGhosts);
+        }
+    }
+
+    private static void removeOldest(LinkedHashSet<Long> ghosts) {
+        Iterator<Long> iter = ghosts.iterator();
+        iter.next();
+        iter.remove();
+    }
+}
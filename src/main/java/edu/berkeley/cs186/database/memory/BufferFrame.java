@@ -1,28 +1,43 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Buffer frame.
  */
 abstract class BufferFrame {
+    // pin count of a frame that has been claimed for eviction, and can no longer be pinned
+    private static final int CLAIMED = Integer.MIN_VALUE;
+
+    private static final AtomicIntegerFieldUpdater<BufferFrame> PIN_COUNT =
+        AtomicIntegerFieldUpdater.newUpdater(BufferFrame.class, "pinCount");
+
     Object tag = null;
-    private int pinCount = 0;
+    private volatile int pinCount = 0;
 
     /**
      * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
      * buffer frame gets pinned.
      */
     void pin() {
-        ++pinCount;
+        if (!tryIncrementPinCount()) {
+            throw new IllegalStateException("cannot pin frame claimed for eviction");
+        }
     }
 
     /**
      * Unpin buffer frame.
      */
     void unpin() {
-        if (!isPinned()) {
-            throw new IllegalStateException("cannot unpin unpinned frame");
+        while (true) {
+            int count = this.pinCount;
+            if (count <= 0) {
+                throw new IllegalStateException("cannot unpin unpinned frame");
+            }
+            if (PIN_COUNT.compareAndSet(this, count, count - 1)) {
+                return;
+            }
         }
-        --pinCount;
     }
 
     /**
@@ -32,6 +47,31 @@ abstract class BufferFrame {
         return pinCount > 0;
     }
 
+    /**
+     * Increments the pin count, unless the frame has been claimed for eviction.
+     * @return whether the pin count was incremented
+     */
+    final boolean tryIncrementPinCount() {
+        while (true) {
+            int count = this.pinCount;
+            if (count == CLAIMED) {
+                return false;
+            }
+            if (PIN_COUNT.compareAndSet(this, count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claims an unpinned frame for eviction: once claimed, the frame can never be
+     * pinned again.
+     * @return whether the frame was unpinned (and is now claimed)
+     */
+    final boolean claimForEviction() {
+        return PIN_COUNT.compareAndSet(this, 0, CLAIMED);
+    }
+
     /**
      * @return whether this frame is valid
      */
@@ -10,8 +10,11 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
@@ -19,6 +22,27 @@ import java.util.function.BiConsumer;
  * to the page loaded (evicting and loading a new page into the frame will result in
  * a new Frame object, with the same underlying byte array), with old Frame objects
  * backed by the same byte array marked as invalid.
+ *
+ * The frames are split between one or more stripes. Every page is always loaded into
+ * a frame of the stripe its page number hashes to, and each stripe has its own page
+ * table, free list, eviction policy and lock, so that fetching pages that belong to
+ * different stripes never contends on the same lock.
+ *
+ * Fetching a page that is already loaded does not take the stripe lock: the stripe's
+ * page table is read optimistically, and the frame it points to is pinned by
+ * atomically incrementing its pin count, which fails once the frame has been claimed
+ * for eviction.
+ *
+ * Pinning a data page (through fetchPage, fetchNewPage or Page#pin) also takes the
+ * frame's latch, an exclusive, reentrant lock held until the page is unpinned, so
+ * that only one thread at a time uses a page, and a thread may read and then write
+ * a page it has pinned without other threads interleaving. Taking an uncontended
+ * latch is a single atomic operation, so hits on pages that are not in use by other
+ * threads stay cheap. Log pages are not latched: the log manager coordinates the
+ * threads appending to the log tail itself, and may unpin a page on another thread
+ * than the one that pinned it. The pins taken internally by the prefetcher and the
+ * background flusher only hold the pin count, to keep the frame from being evicted.
+ * The frame lock only serializes reads, writes and flushes of a frame's contents.
  */
 public class BufferManager implements AutoCloseable {
     // We reserve 36 bytes on each page for bookkeeping for recovery
@@ -29,85 +53,191 @@ public class BufferManager implements AutoCloseable {
     // Effective page size available to users of buffer manager.
     public static final short EFFECTIVE_PAGE_SIZE = (short) (DiskSpaceManager.PAGE_SIZE - RESERVED_SPACE);
 
-    // Buffer frames
-    private Frame[] frames;
+    // Stripes of the buffer pool, each owning a disjoint subset of the frames
+    private Stripe[] stripes;
+
+    // Total number of buffer frames
+    private int bufferSize;
 
     // Reference to the disk space manager underneath this buffer manager instance.
     private DiskSpaceManager diskSpaceManager;
 
-    // Map of page number to frame index
-    private Map<Long, Integer> pageToFrame;
+    // Recovery manager
+    private RecoveryManager recoveryManager;
 
-    // Lock on buffer manager
-    private ReentrantLock managerLock;
+    // Count of number of I/Os
+    private AtomicLong numIOs = new AtomicLong();
 
-    // Eviction policy
-    private EvictionPolicy evictionPolicy;
+    // Background flusher thread, null if not running
+    private Thread flusherThread;
 
-    // Index of first free frame
-    private int firstFreeIndex;
+    // Monitor used to wake up the background flusher early
+    private final Object flusherSignal = new Object();
 
-    // Recovery manager
-    private RecoveryManager recoveryManager;
+    // Background write-back statistics
+    private AtomicLong numPagesWrittenBack = new AtomicLong();
+    private AtomicLong numWriteBackWrites = new AtomicLong();
+    private AtomicLong numWriteBackFailures = new AtomicLong();
+    private volatile long flusherStartNanos;
 
-    // Count of number of I/Os
-    private long numIOs = 0;
+    // Read-ahead service, null if not running
+    private volatile Prefetcher prefetcher;
+    private AtomicLong numPagesPrefetched = new AtomicLong();
+
+    /**
+     * A partition of the buffer pool: a set of frames, together with the page table,
+     * free list and eviction policy for those frames. All of these are guarded by the
+     * stripe's lock.
+     */
+    private class Stripe {
+        // Buffer frames of this stripe
+        private Frame[] frames;
+
+        // Map of page number to frame index (within this stripe). Updated only while
+        // holding the stripe's lock, but may be read without it.
+        private PageTable pageTable;
+
+        // Lock on this stripe
+        private ReentrantLock lock;
+
+        // Eviction policy for this stripe's frames
+        private EvictionPolicy evictionPolicy;
+
+        // Index of first free frame
+        private int firstFreeIndex;
+
+        Stripe(int numFrames, EvictionPolicy evictionPolicy) {
+            this.frames = new Frame[numFrames];
+            for (int i = 0; i < numFrames; ++i) {
+                this.frames[i] = new Frame(this, new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
+            }
+            this.firstFreeIndex = 0;
+            this.pageTable = new PageTable(numFrames);
+            this.lock = new ReentrantLock();
+            this.evictionPolicy = evictionPolicy;
+        }
+    }
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
      * underlying byte array. Free frames use the index field to create a (singly) linked
-     * list between free frames.
+     * list between free frames of the same stripe.
      */
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
         byte[] contents;
+        private Stripe stripe;
         private int index;
         private long pageNum;
         private boolean dirty;
         private ReentrantLock frameLock;
         private boolean logPage;
 
-        Frame(byte[] contents, int nextFree) {
-            this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
+        // Page latch, held by the thread that pinned the page through pin() until it
+        // unpins it; not used for log pages. Always taken before the frame lock.
+        private ReentrantLock latch;
+
+        // Set once the page has been read into the frame; a frame found in the page
+        // table without holding the stripe lock may only be used once this is set
+        private volatile boolean loaded;
+
+        // Page handle returned by the last fetch of this frame, reused by later fetches
+        // with the same parent lock context
+        private volatile Page handle;
+
+        Frame(Stripe stripe, byte[] contents, int nextFree) {
+            this(stripe, contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
         }
 
         Frame(Frame frame) {
-            this(frame.contents, frame.index, frame.pageNum);
+            this(frame.stripe, frame.contents, frame.index, frame.pageNum);
         }
 
-        Frame(byte[] contents, int index, long pageNum) {
+        Frame(Stripe stripe, byte[] contents, int index, long pageNum) {
             this.contents = contents;
+            this.stripe = stripe;
             this.index = index;
             this.pageNum = pageNum;
             this.dirty = false;
             this.frameLock = new ReentrantLock();
+            this.latch = new ReentrantLock();
             int partNum = DiskSpaceManager.getPartNum(pageNum);
             this.logPage = partNum == LogManager.LOG_PARTITION;
         }
 
         /**
          * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
-         * buffer frame gets pinned.
+         * buffer frame gets pinned. Data pages are also latched, waiting for any
+         * other thread that has the page pinned to unpin it.
          */
         @Override
         public void pin() {
-            this.frameLock.lock();
+            this.pinUnlatched();
+            this.latch();
+        }
 
+        /**
+         * Unpin buffer frame, releasing the latch taken by pin.
+         */
+        @Override
+        public void unpin() {
+            if (!this.logPage) {
+                this.latch.unlock();
+            }
+            super.unpin();
+        }
+
+        /**
+         * Pins the frame without latching it, which never blocks. Used where the
+         * latch must not be waited for (while holding the stripe lock), and by the
+         * buffer manager's own threads, which do not use the page's contents.
+         */
+        private void pinUnlatched() {
+            if (!this.tryIncrementPinCount()) {
+                throw new IllegalStateException("pinning invalidated frame");
+            }
             if (!this.isValid()) {
+                super.unpin();
                 throw new IllegalStateException("pinning invalidated frame");
             }
-
-            super.pin();
         }
 
         /**
-         * Unpin buffer frame.
+         * Unpins a frame pinned by pinUnlatched.
          */
-        @Override
-        public void unpin() {
+        private void unpinUnlatched() {
             super.unpin();
-            this.frameLock.unlock();
+        }
+
+        /**
+         * Latches a frame pinned by pinUnlatched, if it holds a data page. Must not
+         * be called while holding the frame lock or the stripe lock, since the
+         * thread holding the latch may need either of them to unpin the page.
+         */
+        private void latch() {
+            if (this.logPage) {
+                return;
+            }
+            this.latch.lock();
+            // the page may have been freed while we waited for the latch
+            if (!this.isValid()) {
+                this.latch.unlock();
+                super.unpin();
+                throw new IllegalStateException("pinning invalidated frame");
+            }
+        }
+
+        /**
+         * Waits until the page has been read into this frame, if it is still being
+         * read in by another thread.
+         */
+        private void awaitLoad() {
+            if (!this.loaded) {
+                // the loading thread holds the frame lock until the read completes
+                this.frameLock.lock();
+                this.frameLock.unlock();
+            }
         }
 
         /**
@@ -143,8 +273,8 @@ public class BufferManager implements AutoCloseable {
             if (isFreed()) {
                 throw new IllegalStateException("cannot free free frame");
             }
-            int nextFreeIndex = firstFreeIndex;
-            firstFreeIndex = this.index;
+            int nextFreeIndex = stripe.firstFreeIndex;
+            stripe.firstFreeIndex = this.index;
             this.index = ~nextFreeIndex;
         }
 
@@ -152,8 +282,8 @@ public class BufferManager implements AutoCloseable {
             if (!isFreed()) {
                 throw new IllegalStateException("cannot unfree used frame");
             }
-            int index = firstFreeIndex;
-            firstFreeIndex = ~this.index;
+            int index = stripe.firstFreeIndex;
+            stripe.firstFreeIndex = ~this.index;
             this.index = index;
         }
 
@@ -171,7 +301,8 @@ public class BufferManager implements AutoCloseable {
         @Override
         void flush() {
             this.frameLock.lock();
-            super.pin();
+            // the frame may already be claimed for eviction, if we're flushing it to evict it
+            boolean pinned = this.tryIncrementPinCount();
             try {
                 if (!this.isValid()) {
                     return;
@@ -186,7 +317,9 @@ public class BufferManager implements AutoCloseable {
                 BufferManager.this.incrementIOs();
                 this.dirty = false;
             } finally {
-                super.unpin();
+                if (pinned) {
+                    super.unpin();
+                }
                 this.frameLock.unlock();
             }
         }
@@ -200,13 +333,15 @@ public class BufferManager implements AutoCloseable {
         @Override
         void readBytes(short position, short num, byte[] buf) {
             this.pin();
+            this.frameLock.lock();
             try {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
                 System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
-                BufferManager.this.evictionPolicy.hit(this);
+                this.stripe.evictionPolicy.hit(this);
             } finally {
+                this.frameLock.unlock();
                 this.unpin();
             }
         }
@@ -220,6 +355,7 @@ public class BufferManager implements AutoCloseable {
         @Override
         void writeBytes(short position, short num, byte[] buf) {
             this.pin();
+            this.frameLock.lock();
             try {
                 if (!this.isValid()) {
                     throw new IllegalStateException("writing to invalid buffer frame");
@@ -240,8 +376,9 @@ public class BufferManager implements AutoCloseable {
                 }
                 System.arraycopy(buf, 0, this.contents, offset, num);
                 this.dirty = true;
-                BufferManager.this.evictionPolicy.hit(this);
+                this.stripe.evictionPolicy.hit(this);
             } finally {
+                this.frameLock.unlock();
                 this.unpin();
             }
         }
@@ -257,14 +394,15 @@ public class BufferManager implements AutoCloseable {
                 if (this.isFreed()) {
                     throw new PageException("page already freed");
                 }
-                if (this.isValid()) {
-                    this.pin();
-                    return this;
+                if (!this.isValid()) {
+                    return BufferManager.this.fetchPageFrame(this.pageNum);
                 }
-                return BufferManager.this.fetchPageFrame(this.pageNum);
+                this.pinUnlatched();
             } finally {
                 this.frameLock.unlock();
             }
+            this.latch();
+            return this;
         }
 
         @Override
@@ -332,6 +470,36 @@ public class BufferManager implements AutoCloseable {
             ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
         }
 
+        /**
+         * Locks and pins this frame for write-back, without blocking. Only succeeds if
+         * the frame holds a dirty, unpinned data page whose pageLSN is at most flushedLSN.
+         * @param flushedLSN LSN up to which the log is known to be flushed
+         * @return whether the frame was locked and pinned
+         */
+        private boolean tryPinForWriteBack(long flushedLSN) {
+            if (!this.frameLock.tryLock()) {
+                return false;
+            }
+            if (this.isValid() && this.dirty && !this.logPage && !this.isPinned() &&
+                    this.getPageLSN() <= flushedLSN && this.tryIncrementPinCount()) {
+                return true;
+            }
+            this.frameLock.unlock();
+            return false;
+        }
+
+        /**
+         * Unpins and unlocks a frame pinned by tryPinForWriteBack.
+         * @param written whether the frame's contents were written to disk
+         */
+        private void unpinAfterWriteBack(boolean written) {
+            if (written) {
+                this.dirty = false;
+            }
+            super.unpin();
+            this.frameLock.unlock();
+        }
+
         private short dataOffset() {
             if (logPage) {
                 return 0;
@@ -342,7 +510,7 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
-     * Creates a new buffer manager.
+     * Creates a new buffer manager with a single stripe.
      *
      * @param diskSpaceManager the underlying disk space manager
      * @param bufferSize size of buffer (in pages)
@@ -350,83 +518,206 @@ public class BufferManager implements AutoCloseable {
      */
     public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
                          int bufferSize, EvictionPolicy evictionPolicy) {
-        this.frames = new Frame[bufferSize];
-        for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
+        this(diskSpaceManager, recoveryManager, bufferSize, () -> evictionPolicy, 1);
+    }
+
+    /**
+     * Creates a new buffer manager, with frames split evenly between numStripes stripes.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicyFactory creates the eviction policy of each stripe; called
+     *                              once per stripe
+     * @param numStripes number of stripes, between 1 and bufferSize
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, Supplier<EvictionPolicy> evictionPolicyFactory,
+                         int numStripes) {
+        if (numStripes < 1 || numStripes > bufferSize) {
+            throw new IllegalArgumentException("number of stripes must be between 1 and buffer size");
+        }
+        this.bufferSize = bufferSize;
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; ++i) {
+            int numFrames = bufferSize / numStripes + (i < bufferSize % numStripes ? 1 : 0);
+            this.stripes[i] = new Stripe(numFrames, evictionPolicyFactory.get());
         }
-        this.firstFreeIndex = 0;
         this.diskSpaceManager = diskSpaceManager;
-        this.pageToFrame = new HashMap<>();
-        this.managerLock = new ReentrantLock();
-        this.evictionPolicy = evictionPolicy;
         this.recoveryManager = recoveryManager;
     }
 
     @Override
     public void close() {
-        this.managerLock.lock();
-        try {
-            for (Frame frame : this.frames) {
-                frame.frameLock.lock();
-                try {
-                    if (frame.isPinned()) {
-                        throw new IllegalStateException("closing buffer manager but frame still pinned");
-                    }
-                    if (!frame.isValid()) {
-                        continue;
+        this.stopPrefetcher();
+        this.stopBackgroundFlusher();
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                for (Frame frame : stripe.frames) {
+                    frame.frameLock.lock();
+                    try {
+                        if (frame.isPinned()) {
+                            throw new IllegalStateException("closing buffer manager but frame still pinned");
+                        }
+                        if (!frame.isValid()) {
+                            continue;
+                        }
+                        if (!frame.claimForEviction()) {
+                            throw new IllegalStateException("closing buffer manager but frame still pinned");
+                        }
+                        stripe.evictionPolicy.cleanup(frame);
+                        frame.invalidate();
+                    } finally {
+                        frame.frameLock.unlock();
                     }
-                    evictionPolicy.cleanup(frame);
-                    frame.invalidate();
-                } finally {
-                    frame.frameLock.unlock();
                 }
+            } finally {
+                stripe.lock.unlock();
             }
-        } finally {
-            this.managerLock.unlock();
         }
     }
 
+    /**
+     * @param pageNum page number
+     * @return the stripe that pageNum is always loaded into
+     */
+    private Stripe stripeFor(long pageNum) {
+        if (this.stripes.length == 1) {
+            return this.stripes[0];
+        }
+        // spread consecutive page numbers across stripes
+        long h = pageNum * 0x9E3779B97F4A7C15L;
+        return this.stripes[(int) ((h >>> 32) % this.stripes.length)];
+    }
+
     /**
      * Fetches a buffer frame with data for the specified page. Reuses existing
-     * buffer frame if page already loaded in memory. Pins the buffer frame.
-     * Cannot be used outside the package.
+     * buffer frame if page already loaded in memory. Pins (and latches) the buffer
+     * frame. Cannot be used outside the package.
      *
      * @param pageNum page number
      * @return buffer frame with specified page loaded
      */
     Frame fetchPageFrame(long pageNum) {
-        this.managerLock.lock();
-        Frame newFrame;
-        Frame evictedFrame;
+        Frame frame = this.tryPinLoadedFrame(pageNum);
+        if (frame == null) {
+            frame = this.fetchPageFrame(pageNum, false);
+        }
+        frame.latch();
+        return frame;
+    }
+
+    /**
+     * Pins the frame of a loaded page without taking any lock. The page table is
+     * read without the stripe lock, so the frame found may since have been evicted
+     * or reused for another page; this is checked after pinning the frame (which
+     * keeps it from being evicted).
+     *
+     * @param pageNum page number
+     * @return pinned (but not latched) buffer frame with specified page loaded, or
+     * null if the page could not be found this way (in which case the caller must
+     * take the stripe lock)
+     */
+    private Frame tryPinLoadedFrame(long pageNum) {
+        Stripe stripe = this.stripeFor(pageNum);
+        int index = stripe.pageTable.get(pageNum);
+        if (index < 0) {
+            return null;
+        }
+        Frame frame = stripe.frames[index];
+        if (!frame.tryIncrementPinCount()) {
+            return null;
+        }
+        // reading loaded makes the loading thread's writes to the frame visible
+        if (frame.loaded && frame.pageNum == pageNum && frame.isValid()) {
+            return frame;
+        }
+        frame.unpinUnlatched();
+        return null;
+    }
+
+    /**
+     * Fetches a buffer frame with data for the specified page, and pins it without
+     * latching it.
+     *
+     * @param pageNum page number
+     * @param prefetch if true, only loads the page if it is not already loaded, is
+     *                 allocated, and can be loaded without writing out a dirty page;
+     *                 returns null instead of a frame in all other cases
+     * @return buffer frame with specified page loaded
+     */
+    private Frame fetchPageFrame(long pageNum, boolean prefetch) {
+        Stripe stripe = this.stripeFor(pageNum);
+        stripe.lock.lock();
+        Frame hitFrame = null;
+        Frame newFrame = null;
+        Frame evictedFrame = null;
         // figure out what frame to load data to, and update manager state
         try {
+            // pages are removed from the page table before being freed on disk, so a
+            // hit never needs to check with the disk space manager (which would
+            // serialize all hits on its own lock)
+            int loadedIndex = stripe.pageTable.get(pageNum);
+            if (loadedIndex >= 0) {
+                if (prefetch) {
+                    return null;
+                }
+                // frames are only claimed for eviction while holding the stripe lock,
+                // after being removed from the page table, so this cannot fail
+                hitFrame = stripe.frames[loadedIndex];
+                hitFrame.pinUnlatched();
+                return hitFrame;
+            }
             if (!this.diskSpaceManager.pageAllocated(pageNum)) {
+                if (prefetch) {
+                    return null;
+                }
                 throw new PageException("page " + pageNum + " not allocated");
             }
-            if (this.pageToFrame.containsKey(pageNum)) {
-                newFrame = this.frames[this.pageToFrame.get(pageNum)];
-                newFrame.pin();
-                return newFrame;
-            }
             // prioritize free frames over eviction
-            if (this.firstFreeIndex < this.frames.length) {
-                evictedFrame = this.frames[this.firstFreeIndex];
+            if (stripe.firstFreeIndex < stripe.frames.length) {
+                evictedFrame = stripe.frames[stripe.firstFreeIndex];
                 evictedFrame.setUsed();
             } else {
-                evictedFrame = (Frame) evictionPolicy.evict(frames);
-                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
-                evictionPolicy.cleanup(evictedFrame);
+                // the policy only returns unpinned frames, but a frame may be pinned
+                // (without the stripe lock) between the policy choosing it and us
+                // claiming it; in that case, ask the policy again
+                while (true) {
+                    evictedFrame = (Frame) stripe.evictionPolicy.evict(stripe.frames);
+                    if (prefetch && evictedFrame.dirty) {
+                        stripe.evictionPolicy.cancelEviction(evictedFrame);
+                        return null;
+                    }
+                    if (evictedFrame.claimForEviction()) {
+                        break;
+                    }
+                    stripe.evictionPolicy.cancelEviction(evictedFrame);
+                }
+                stripe.pageTable.remove(evictedFrame.pageNum, evictedFrame.index);
+                stripe.evictionPolicy.cleanup(evictedFrame);
+                if (evictedFrame.dirty) {
+                    // we're about to write a page back on this thread; get the flusher
+                    // working so that the next miss doesn't have to
+                    this.wakeBackgroundFlusher();
+                }
             }
             int frameIndex = evictedFrame.index;
-            newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
-            evictionPolicy.init(newFrame);
+            newFrame = stripe.frames[frameIndex] = new Frame(stripe, evictedFrame.contents, frameIndex, pageNum);
+            stripe.evictionPolicy.init(newFrame);
+            // pin before the frame becomes visible, so that it cannot be evicted before
+            // the page is read in
+            newFrame.pinUnlatched();
 
             evictedFrame.frameLock.lock();
             newFrame.frameLock.lock();
 
-            this.pageToFrame.put(pageNum, frameIndex);
+            stripe.pageTable.put(pageNum, frameIndex);
         } finally {
-            this.managerLock.unlock();
+            stripe.lock.unlock();
+            if (hitFrame != null) {
+                // the page may still be being read in by whoever loaded it
+                hitFrame.awaitLoad();
+            }
         }
         // flush evicted frame
         try {
@@ -437,18 +728,36 @@ public class BufferManager implements AutoCloseable {
         // read new page into frame
         try {
             newFrame.pageNum = pageNum;
-            newFrame.pin();
             BufferManager.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
             this.incrementIOs();
+            newFrame.loaded = true;
             return newFrame;
         } catch (PageException e) {
-            newFrame.unpin();
+            newFrame.unpinUnlatched();
             throw e;
         } finally {
             newFrame.frameLock.unlock();
         }
     }
 
+    /**
+     * Loads a page into the buffer, if it is not already loaded, without pinning it.
+     * Used by the prefetcher; gives up instead of writing out a dirty page to make
+     * room.
+     *
+     * @param pageNum page number
+     * @return whether the page was read in
+     */
+    boolean prefetchPage(long pageNum) {
+        Frame frame = this.fetchPageFrame(pageNum, true);
+        if (frame == null) {
+            return false;
+        }
+        frame.unpinUnlatched();
+        this.numPagesPrefetched.incrementAndGet();
+        return true;
+    }
+
     /**
      * Fetches the specified page, with a loaded and pinned buffer frame.
      *
@@ -468,12 +777,7 @@ public class BufferManager implements AutoCloseable {
      */
     Frame fetchNewPageFrame(int partNum) {
         long pageNum = this.diskSpaceManager.allocPage(partNum);
-        this.managerLock.lock();
-        try {
-            return fetchPageFrame(pageNum);
-        } finally {
-            this.managerLock.unlock();
-        }
+        return fetchPageFrame(pageNum);
     }
 
     /**
@@ -488,6 +792,18 @@ public class BufferManager implements AutoCloseable {
         return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
     }
 
+    /**
+     * Fetches a new page with a specific page number, with a loaded and pinned buffer frame.
+     *
+     * @param parentContext parent lock context of the new page
+     * @param pageNum       page number of the new page, which must not be allocated
+     * @return the new page
+     */
+    public Page fetchNewPage(LockContext parentContext, long pageNum) {
+        this.diskSpaceManager.allocPage(pageNum);
+        return this.fetchPage(parentContext, pageNum);
+    }
+
     /**
      * Frees a page - evicts the page from cache, and tells the disk space manager
      * that the page is no longer needed. Page must be pinned before this call,
@@ -496,22 +812,46 @@ public class BufferManager implements AutoCloseable {
      * @param page page to free
      */
     public void freePage(Page page) {
-        this.managerLock.lock();
+        Stripe stripe = this.stripeFor(page.getPageNum());
+        TransactionContext transaction = TransactionContext.getTransaction();
+        // flush before taking the stripe lock: flushing may flush the log, which
+        // fetches log pages from other stripes
+        if (transaction != null) page.flush();
+        stripe.lock.lock();
         try {
-            TransactionContext transaction = TransactionContext.getTransaction();
-            int frameIndex = this.pageToFrame.get(page.getPageNum());
+            int frameIndex = stripe.pageTable.get(page.getPageNum());
 
-            Frame frame = this.frames[frameIndex];
-            if (transaction != null) page.flush();
-            this.pageToFrame.remove(page.getPageNum(), frameIndex);
-            evictionPolicy.cleanup(frame);
+            Frame frame = stripe.frames[frameIndex];
+            stripe.pageTable.remove(page.getPageNum(), frameIndex);
+            stripe.evictionPolicy.cleanup(frame);
             frame.setFree();
 
-            this.frames[frameIndex] = new Frame(frame);
-            diskSpaceManager.freePage(page.getPageNum());
+            stripe.frames[frameIndex] = new Frame(frame);
         } finally {
-            this.managerLock.unlock();
+            stripe.lock.unlock();
         }
+        // freeing the page logs it, which may also require fetching log pages
+        diskSpaceManager.freePage(page.getPageNum());
+    }
+
+    /**
+     * Frees a page that is not pinned, without reading it in - evicts the page from
+     * cache if it is loaded, and tells the disk space manager that the page is no
+     * longer needed.
+     *
+     * @param pageNum page number of page to free
+     */
+    public void freePage(long pageNum) {
+        this.evict(pageNum);
+        diskSpaceManager.freePage(pageNum);
+    }
+
+    /**
+     * @param pageNum page number
+     * @return true if the page is allocated, false otherwise
+     */
+    public boolean pageAllocated(long pageNum) {
+        return diskSpaceManager.pageAllocated(pageNum);
     }
 
     /**
@@ -522,23 +862,25 @@ public class BufferManager implements AutoCloseable {
      * @param partNum partition number to free
      */
     public void freePart(int partNum) {
-        this.managerLock.lock();
-        try {
-            for (int i = 0; i < frames.length; ++i) {
-                Frame frame = frames[i];
-                if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
-                    this.pageToFrame.remove(frame.getPageNum(), i);
-                    evictionPolicy.cleanup(frame);
-                    frame.flush();
-                    frame.setFree();
-                    frames[i] = new Frame(frame);
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                for (int i = 0; i < stripe.frames.length; ++i) {
+                    Frame frame = stripe.frames[i];
+                    if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
+                        stripe.pageTable.remove(frame.getPageNum(), i);
+                        stripe.evictionPolicy.cleanup(frame);
+                        frame.flush();
+                        frame.setFree();
+                        stripe.frames[i] = new Frame(frame);
+                    }
                 }
+            } finally {
+                stripe.lock.unlock();
             }
-
-            diskSpaceManager.freePart(partNum);
-        } finally {
-            this.managerLock.unlock();
         }
+
+        diskSpaceManager.freePart(partNum);
     }
 
     /**
@@ -547,27 +889,29 @@ public class BufferManager implements AutoCloseable {
      * @param pageNum page number of page to evict
      */
     public void evict(long pageNum) {
-        managerLock.lock();
+        Stripe stripe = this.stripeFor(pageNum);
+        stripe.lock.lock();
         try {
-            if (!pageToFrame.containsKey(pageNum)) {
+            int frameIndex = stripe.pageTable.get(pageNum);
+            if (frameIndex < 0) {
                 return;
             }
-            evict(pageToFrame.get(pageNum));
+            evict(stripe, frameIndex);
         } finally {
-            managerLock.unlock();
+            stripe.lock.unlock();
         }
     }
 
-    private void evict(int i) {
-        Frame frame = frames[i];
+    private void evict(Stripe stripe, int i) {
+        Frame frame = stripe.frames[i];
         frame.frameLock.lock();
         try {
-            if (frame.isValid() && !frame.isPinned()) {
-                this.pageToFrame.remove(frame.pageNum, frame.index);
-                evictionPolicy.cleanup(frame);
+            if (frame.isValid() && frame.claimForEviction()) {
+                stripe.pageTable.remove(frame.pageNum, frame.index);
+                stripe.evictionPolicy.cleanup(frame);
 
-                frames[i] = new Frame(frame.contents, this.firstFreeIndex);
-                this.firstFreeIndex = i;
+                stripe.frames[i] = new Frame(stripe, frame.contents, stripe.firstFreeIndex);
+                stripe.firstFreeIndex = i;
 
                 frame.invalidate();
             }
@@ -580,8 +924,15 @@ public class BufferManager implements AutoCloseable {
      * Calls evict on every frame in sequence.
      */
     public void evictAll() {
-        for (int i = 0; i < frames.length; ++i) {
-            evict(i);
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                for (int i = 0; i < stripe.frames.length; ++i) {
+                    evict(stripe, i);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
         }
     }
 
@@ -592,7 +943,7 @@ public class BufferManager implements AutoCloseable {
      *                (has an unflushed change).
      */
     public void iterPageNums(BiConsumer<Long, Boolean> process) {
-        for (Frame frame : frames) {
+        for (Frame frame : this.allFrames()) {
             frame.frameLock.lock();
             try {
                 if (frame.isValid()) {
@@ -604,6 +955,296 @@ public class BufferManager implements AutoCloseable {
         }
     }
 
+    /**
+     * Writes back dirty, unpinned data pages until at least cleanFraction of the buffer
+     * frames are clean (either free, or holding a page with no unflushed changes). Log
+     * pages are left alone, since the log manager flushes those itself.
+     *
+     * Pages are written in order of page number, and runs of consecutive pages are
+     * written with a single call to DiskSpaceManager#writePages. Before each run is
+     * written, the log is flushed up to the largest pageLSN in the run.
+     *
+     * @param cleanFraction fraction of frames that should be clean, between 0 and 1
+     * @return number of pages written
+     */
+    public int writeBackDirtyPages(double cleanFraction) {
+        int target = (int) Math.ceil(cleanFraction * this.bufferSize);
+        List<Frame> candidates = new ArrayList<>();
+        int numClean = 0;
+        for (Frame frame : this.allFrames()) {
+            if (!frame.isValid() || !frame.dirty) {
+                ++numClean;
+            } else if (!frame.logPage && !frame.isPinned()) {
+                candidates.add(frame);
+            }
+        }
+        if (numClean >= target) {
+            return 0;
+        }
+        return writeBackRuns(candidates, target - numClean);
+    }
+
+    /**
+     * Writes back the given data pages, if they are loaded, dirty and unpinned, in the
+     * same way as writeBackDirtyPages. Used to flush pages that have been dirty for a
+     * long time, so that restart recovery does not have to redo from too far back.
+     *
+     * @param pageNums page numbers of pages to write back
+     * @return number of pages written
+     */
+    public int writeBackPages(Set<Long> pageNums) {
+        List<Frame> candidates = new ArrayList<>();
+        for (Frame frame : this.allFrames()) {
+            if (frame.isValid() && frame.dirty && !frame.logPage && !frame.isPinned() &&
+                    pageNums.contains(frame.pageNum)) {
+                candidates.add(frame);
+            }
+        }
+        return writeBackRuns(candidates, candidates.size());
+    }
+
+    /**
+     * Writes back up to limit of the given frames, in order of page number, as runs of
+     * consecutive pages.
+     * @param candidates dirty, unpinned frames holding data pages
+     * @param limit maximum number of pages to write
+     * @return number of pages written
+     */
+    private int writeBackRuns(List<Frame> candidates, int limit) {
+        candidates.sort(Comparator.comparingLong(Frame::getPageNum));
+
+        int numWritten = 0;
+        int start = 0;
+        while (start < candidates.size() && numWritten < limit) {
+            int end = start + 1;
+            while (end < candidates.size() &&
+                    candidates.get(end).pageNum == candidates.get(end - 1).pageNum + 1 &&
+                    DiskSpaceManager.getPartNum(candidates.get(end).pageNum) ==
+                    DiskSpaceManager.getPartNum(candidates.get(start).pageNum)) {
+                ++end;
+            }
+            end = Math.min(end, start + limit - numWritten);
+            numWritten += writeBackRun(candidates.subList(start, end));
+            start = end;
+        }
+        return numWritten;
+    }
+
+    /**
+     * Writes back a run of frames holding consecutive pages. Frames that are in use
+     * (or were evicted or modified after the log was flushed) are skipped, splitting
+     * the run.
+     * @param run frames holding consecutive pages of a single partition
+     * @return number of pages written
+     */
+    private int writeBackRun(List<Frame> run) {
+        long maxLSN = 0;
+        for (Frame frame : run) {
+            // read without the frame lock: frame may be invalidated concurrently
+            byte[] contents = frame.contents;
+            if (contents != null) {
+                maxLSN = Math.max(maxLSN, ByteBuffer.wrap(contents).getLong(8));
+            }
+        }
+        // WAL: log records up to the pageLSN must be on disk before the page is. This must
+        // happen before we lock any frames, since flushing the log fetches log pages.
+        recoveryManager.pageFlushHook(maxLSN);
+
+        int numWritten = 0;
+        List<Frame> pinned = new ArrayList<>();
+        for (Frame frame : run) {
+            if (!pinned.isEmpty() && frame.pageNum != pinned.get(pinned.size() - 1).pageNum + 1) {
+                numWritten += writeBackPinned(pinned);
+                pinned.clear();
+            }
+            if (frame.tryPinForWriteBack(maxLSN)) {
+                pinned.add(frame);
+            } else if (!pinned.isEmpty()) {
+                numWritten += writeBackPinned(pinned);
+                pinned.clear();
+            }
+        }
+        if (!pinned.isEmpty()) {
+            numWritten += writeBackPinned(pinned);
+        }
+        return numWritten;
+    }
+
+    /**
+     * Writes frames holding consecutive pages, pinned by tryPinForWriteBack, to disk in
+     * one call, and unpins them.
+     */
+    private int writeBackPinned(List<Frame> pinned) {
+        byte[][] bufs = new byte[pinned.size()][];
+        for (int i = 0; i < bufs.length; ++i) {
+            bufs[i] = pinned.get(i).contents;
+        }
+        boolean written = false;
+        try {
+            diskSpaceManager.writePages(pinned.get(0).pageNum, bufs);
+            written = true;
+        } finally {
+            for (Frame frame : pinned) {
+                frame.unpinAfterWriteBack(written);
+            }
+        }
+        for (int i = 0; i < bufs.length; ++i) {
+            this.incrementIOs();
+        }
+        numPagesWrittenBack.addAndGet(bufs.length);
+        numWriteBackWrites.incrementAndGet();
+        return bufs.length;
+    }
+
+    /**
+     * Starts background threads that load pages hinted through prefetch into the
+     * buffer. Does nothing if the prefetcher is already running.
+     *
+     * @param numThreads number of threads loading pages
+     * @param maxOutstandingHints number of hints that may be queued at once; further
+     *                            hints are dropped until the threads catch up
+     */
+    public synchronized void startPrefetcher(int numThreads, int maxOutstandingHints) {
+        if (this.prefetcher != null) {
+            return;
+        }
+        this.prefetcher = new Prefetcher(this, numThreads, maxOutstandingHints);
+    }
+
+    /**
+     * Stops the prefetcher, if running, and waits for its threads to exit.
+     */
+    public synchronized void stopPrefetcher() {
+        if (this.prefetcher == null) {
+            return;
+        }
+        Prefetcher prefetcher = this.prefetcher;
+        this.prefetcher = null;
+        prefetcher.close();
+    }
+
+    /**
+     * Hints that a page is about to be fetched, so that the prefetcher (if running)
+     * can load it in the background. Does nothing if the prefetcher is not running.
+     *
+     * @param pageNum page number of page that will be fetched soon
+     */
+    public void prefetch(long pageNum) {
+        Prefetcher prefetcher = this.prefetcher;
+        if (prefetcher != null) {
+            prefetcher.hint(pageNum);
+        }
+    }
+
+    /**
+     * @return number of pages loaded by the prefetcher
+     */
+    public long getNumPagesPrefetched() {
+        return numPagesPrefetched.get();
+    }
+
+    /**
+     * Starts a background thread that periodically calls writeBackDirtyPages, so that
+     * evicting a page rarely requires writing it out on the evicting thread. The thread
+     * also runs whenever a dirty page is evicted. Does nothing if the flusher is
+     * already running.
+     *
+     * A round that fails with a PageException (a page being freed from under the
+     * flusher, or a failed write) is counted in getNumWriteBackFailures, and the
+     * flusher carries on; any other exception stops the flusher thread.
+     *
+     * @param cleanFraction fraction of frames to keep clean, between 0 and 1
+     * @param intervalMillis maximum time between runs of the flusher
+     */
+    public synchronized void startBackgroundFlusher(double cleanFraction, long intervalMillis) {
+        if (cleanFraction < 0 || cleanFraction > 1) {
+            throw new IllegalArgumentException("cleanFraction must be between 0 and 1");
+        }
+        if (this.flusherThread != null) {
+            return;
+        }
+        this.flusherStartNanos = System.nanoTime();
+        this.flusherThread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    this.writeBackDirtyPages(cleanFraction);
+                } catch (PageException e) {
+                    // a page was freed from under us, or the write failed; the pages
+                    // that were not written stay dirty, and are tried again on the
+                    // next round
+                    numWriteBackFailures.incrementAndGet();
+                }
+                synchronized (flusherSignal) {
+                    try {
+                        flusherSignal.wait(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "buffer-flusher");
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    /**
+     * Stops the background flusher, if running, and waits for it to exit.
+     */
+    public synchronized void stopBackgroundFlusher() {
+        if (this.flusherThread == null) {
+            return;
+        }
+        this.flusherThread.interrupt();
+        try {
+            this.flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.flusherThread = null;
+    }
+
+    private void wakeBackgroundFlusher() {
+        if (this.flusherThread != null) {
+            synchronized (flusherSignal) {
+                flusherSignal.notify();
+            }
+        }
+    }
+
+    /**
+     * @return number of pages written to disk by writeBackDirtyPages
+     */
+    public long getNumPagesWrittenBack() {
+        return numPagesWrittenBack.get();
+    }
+
+    /**
+     * @return number of (possibly multi-page) writes issued by writeBackDirtyPages
+     */
+    public long getNumWriteBackWrites() {
+        return numWriteBackWrites.get();
+    }
+
+    /**
+     * @return number of rounds of the background flusher that failed to write back
+     * pages (see startBackgroundFlusher)
+     */
+    public long getNumWriteBackFailures() {
+        return numWriteBackFailures.get();
+    }
+
+    /**
+     * @return average number of pages written back per second since the background
+     * flusher was last started, or 0 if it was never started
+     */
+    public double getWriteBackRate() {
+        if (this.flusherStartNanos == 0) {
+            return 0;
+        }
+        double seconds = (System.nanoTime() - this.flusherStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        return seconds > 0 ? numPagesWrittenBack.get() / seconds : 0;
+    }
+
     /**
      * Get the number of I/Os since the buffer manager was started, excluding anything used in disk
      * space management, and not counting allocation/free. This is not really useful except as a
@@ -611,7 +1252,7 @@ public class BufferManager implements AutoCloseable {
      * @return number of I/Os
      */
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.get();
     }
 
     public static boolean logIOs;
@@ -626,17 +1267,36 @@ public class BufferManager implements AutoCloseable {
                 }
             }
         }
-        ++numIOs;
+        numIOs.incrementAndGet();
+    }
+
+    /**
+     * @return the frames of every stripe. This is a snapshot: frames may be replaced
+     * (as pages are loaded and evicted) while the caller iterates over it.
+     */
+    private List<Frame> allFrames() {
+        List<Frame> frames = new ArrayList<>(this.bufferSize);
+        for (Stripe stripe : this.stripes) {
+            frames.addAll(Arrays.asList(stripe.frames));
+        }
+        return frames;
     }
 
     /**
-     * Wraps a frame in a page object.
+     * Wraps a frame in a page object. The page object is cached on the frame, and
+     * returned again for later fetches of the frame with the same parent context.
      * @param parentContext parent lock context of the page
      * @param pageNum page number
      * @param frame frame for the page
      * @return page object
      */
     private Page frameToPage(LockContext parentContext, long pageNum, Frame frame) {
-        return new Page(parentContext.childContext(pageNum), frame);
+        Page page = frame.handle;
+        // a handle whose locking was disabled no longer has parentContext as its parent
+        if (page == null || page.getLockContext().parentContext() != parentContext) {
+            page = new Page(parentContext.childContext(pageNum), frame);
+            frame.handle = page;
+        }
+        return page;
     }
 }
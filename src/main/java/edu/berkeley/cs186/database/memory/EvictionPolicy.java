@@ -11,7 +11,9 @@ public interface EvictionPolicy {
     void init(BufferFrame frame);
 
     /**
-     * Called when a frame is hit.
+     * Called when a frame is hit. Unlike the other calls, which the buffer manager
+     * makes under a single lock, hits may be reported concurrently with each other
+     * and with the other calls.
      * @param frame Frame object that is being read from/written to
      */
     void hit(BufferFrame frame);
@@ -24,6 +26,16 @@ public interface EvictionPolicy {
      */
     BufferFrame evict(BufferFrame[] frames);
 
+    /**
+     * Called when the frame returned by the last call to evict is not evicted
+     * after all (e.g. if it was pinned again before it could be claimed, or the
+     * buffer manager chose not to write it out). The frame stays loaded, and may
+     * later be removed for other reasons. Does nothing by default.
+     * @param frame frame that was returned by evict
+     */
+    default void cancelEviction(BufferFrame frame) {
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
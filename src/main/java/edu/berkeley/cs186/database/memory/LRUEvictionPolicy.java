@@ -3,6 +3,8 @@ package edu.berkeley.cs186.database.memory;
 /**
  * Implementation of LRU eviction policy, which works by creating a
  * doubly-linked list between frames in order of ascending use time.
+ * Hits may be reported concurrently with each other and with the other calls,
+ * so every call synchronizes on the policy, which guards the list.
  */
 public class LRUEvictionPolicy implements EvictionPolicy {
     private Tag listHead;
@@ -36,7 +38,7 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      * @param frame new frame to be initialized
      */
     @Override
-    public void init(BufferFrame frame) {
+    public synchronized void init(BufferFrame frame) {
         Tag frameTag = new Tag();
         frameTag.next = listTail;
         frameTag.prev = listTail.prev;
@@ -51,7 +53,7 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      * @param frame Frame object that is being read from/written to
      */
     @Override
-    public void hit(BufferFrame frame) {
+    public synchronized void hit(BufferFrame frame) {
         Tag frameTag = (Tag) frame.tag;
         frameTag.prev.next = frameTag.next;
         frameTag.next.prev = frameTag.prev;
@@ -68,7 +70,7 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      * @throws IllegalStateException if everything is pinned
      */
     @Override
-    public BufferFrame evict(BufferFrame[] frames) {
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
         Tag frameTag = this.listHead.next;
         while (frameTag.cur != null && frameTag.cur.isPinned()) {
             frameTag = frameTag.next;
@@ -86,7 +88,7 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      * @param frame frame being removed
      */
     @Override
-    public void cleanup(BufferFrame frame) {
+    public synchronized void cleanup(BufferFrame frame) {
         Tag frameTag = (Tag) frame.tag;
         frameTag.prev.next = frameTag.next;
         frameTag.next.prev = frameTag.prev;
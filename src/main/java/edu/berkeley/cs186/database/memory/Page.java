@@ -147,6 +147,13 @@ public class Page {
         this.frame.unpin();
     }
 
+    /**
+     * @return the lock context of this page
+     */
+    LockContext getLockContext() {
+        return this.lockContext;
+    }
+
     /**
      * @return the virtual page number of this page
      */
@@ -0,0 +1,124 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.util.Arrays;
+
+/**
+ * Hash table from page numbers to frame indices, using open addressing with
+ * linear probing over primitive arrays, so that lookups neither box page numbers
+ * nor allocate.
+ *
+ * The table never grows: it is sized for a fixed maximum number of entries (the
+ * number of frames it indexes), at a load factor of at most 1/2. Removal shifts
+ * later entries of the probe sequence back instead of leaving tombstones.
+ *
+ * This class is not thread-safe. Lookups may race with updates, in which case
+ * they may return a wrong result (but always terminate); callers that look up
+ * entries without holding the lock that serializes updates must validate the
+ * result some other way.
+ */
+class PageTable {
+    private static final long EMPTY = DiskSpaceManager.INVALID_PAGE_NUM;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    /**
+     * @param maxEntries maximum number of entries the table will ever hold
+     */
+    PageTable(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(maxEntries, 1) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        this.size = 0;
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**
+     * @param pageNum page number
+     * @return frame index that pageNum maps to, or -1 if it is not in the table
+     */
+    int get(long pageNum) {
+        int slot = this.slotFor(pageNum);
+        for (int i = 0; i <= this.mask; ++i) {
+            long key = this.keys[slot];
+            if (key == pageNum) {
+                return this.values[slot];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Maps pageNum to index, replacing any previous mapping of pageNum.
+     */
+    void put(long pageNum, int index) {
+        int slot = this.slotFor(pageNum);
+        while (this.keys[slot] != EMPTY && this.keys[slot] != pageNum) {
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.keys[slot] == EMPTY) {
+            if (this.size * 2 >= this.keys.length) {
+                throw new IllegalStateException("page table is full");
+            }
+            ++this.size;
+        }
+        this.values[slot] = index;
+        this.keys[slot] = pageNum;
+    }
+
+    /**
+     * Removes the mapping of pageNum, if it maps to index.
+     * @return whether the mapping was removed
+     */
+    boolean remove(long pageNum, int index) {
+        int slot = this.slotFor(pageNum);
+        while (this.keys[slot] != pageNum) {
+            if (this.keys[slot] == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.values[slot] != index) {
+            return false;
+        }
+        // shift back later entries of the probe sequence that can fill the hole
+        int hole = slot;
+        int next = (hole + 1) & this.mask;
+        while (this.keys[next] != EMPTY) {
+            int home = this.slotFor(this.keys[next]);
+            // entry at next can move to hole if its home slot is not in (hole, next]
+            if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                this.keys[hole] = this.keys[next];
+                this.values[hole] = this.values[next];
+                hole = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.keys[hole] = EMPTY;
+        --this.size;
+        return true;
+    }
+
+    /**
+     * @return number of entries in the table
+     */
+    int size() {
+        return this.size;
+    }
+
+    private int slotFor(long pageNum) {
+        // use the high bits of a multiplicative hash; consecutive page numbers spread out
+        return (int) ((pageNum * 0xC6A4A7935BD1E995L) >>> this.shift) & this.mask;
+    }
+}
@@ -0,0 +1,87 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.PageException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Read-ahead service for the buffer manager. Accepts hints for pages that are
+ * about to be fetched (e.g. the next data pages of a table scan, or the right
+ * sibling of a B+ tree leaf), and loads them into the buffer on background
+ * threads, so that the scan finds them in memory instead of blocking on a read.
+ *
+ * Hints are only hints: they are dropped if the queue is full, and the page is
+ * not loaded if it is already in memory, if it has been freed, or if loading it
+ * would require writing out a dirty page.
+ */
+class Prefetcher {
+    private BufferManager bufferManager;
+
+    // Pages waiting to be loaded, in the order they were hinted
+    private BlockingQueue<Long> queue;
+
+    private Thread[] workers;
+
+    /**
+     * @param bufferManager buffer manager to load pages into
+     * @param numThreads number of threads loading pages
+     * @param queueCapacity maximum number of outstanding hints
+     */
+    Prefetcher(BufferManager bufferManager, int numThreads, int queueCapacity) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("prefetcher needs at least one thread");
+        }
+        this.bufferManager = bufferManager;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = new Thread[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            this.workers[i] = new Thread(this::run, "buffer-prefetcher-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a page to be loaded. Never blocks.
+     * @param pageNum page number of page that will be fetched soon
+     */
+    void hint(long pageNum) {
+        this.queue.offer(pageNum);
+    }
+
+    /**
+     * Stops the worker threads and waits for them to exit. Hints that have not
+     * been processed yet are discarded.
+     */
+    void close() {
+        for (Thread worker : this.workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : this.workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.queue.clear();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long pageNum;
+            try {
+                pageNum = this.queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                this.bufferManager.prefetchPage(pageNum);
+            } catch (PageException | IllegalStateException e) {
+                // the page was freed from under us (or could not be read), or
+                // everything is pinned; it was only a hint
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.HashFunc;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.query.disk.Partition;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.Record;
+
+import java.util.*;
+
+/**
+ * Computes the projections of a GROUP BY query by grace hash aggregation, for
+ * queries with more groups than fit in memory.
+ *
+ * The records of the source are first hashed on their group by columns into B-1
+ * partitions on disk, B being the work memory size. Each partition is then
+ * aggregated in an in-memory hash table of groups, as in HashAggregateOperator.
+ * If a partition has more groups than the table holds, the table is dropped and
+ * the partition is hashed again into B-1 partitions with another hash function,
+ * as GHJOperator#run does with partitions that are too large to build. A partition
+ * that cannot be split that way (there is a single partition when B is 2, and
+ * hashing again may keep failing) is aggregated as HashAggregateOperator does
+ * instead, spilling the groups that do not fit.
+ */
+class GraceHashAggregateOperator extends HashAggregateOperator {
+    // Number of passes after which a partition is no longer hashed again
+    private static final int MAX_PASSES = 5;
+
+    /**
+     * @param source the source operator, whose records are grouped
+     * @param transaction the transaction containing this operator
+     * @param columns the names of the output columns
+     * @param expressions the expression computing each output column
+     * @param groupByColumns the columns to group on
+     */
+    GraceHashAggregateOperator(QueryOperator source, TransactionContext transaction, List<String> columns,
+                               List<Expression> expressions, List<String> groupByColumns) {
+        super(source, transaction, columns, expressions, groupByColumns);
+    }
+
+    @Override
+    Iterator<Record> aggregate(Iterator<Record> records) {
+        return new GraceHashAggregateIterator(records);
+    }
+
+    @Override
+    public String str() {
+        String columns = "(" + String.join(", ", this.outputColumns) + ")";
+        String groupBy = "(" + String.join(", ", this.groupByColumns) + ")";
+        return "Grace Hash Aggregate (cost=" + this.estimateIOCost() + ")" +
+                "\n\tcolumns: " + columns +
+                "\n\tgroup by: " + groupBy;
+    }
+
+    @Override
+    public int estimateIOCost() {
+        // Every record is written to a partition and read back once, assuming
+        // that no partition has to be hashed again
+        return this.getSource().estimateIOCost() + 2 * this.getSource().estimateStats().getNumPages();
+    }
+
+    private class GraceHashAggregateIterator implements Iterator<Record> {
+        private GroupTable table;
+        // Partitions left to aggregate, with the pass that hashed them
+        private Deque<Pair<Partition, Integer>> partitions;
+        // The results of the groups in memory
+        private Iterator<Record> results;
+
+        private GraceHashAggregateIterator(Iterator<Record> sourceIterator) {
+            this.table = new GroupTable();
+            this.partitions = new ArrayDeque<>();
+            this.results = Collections.emptyIterator();
+            this.partition(sourceIterator, 1);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.results.hasNext() && !this.partitions.isEmpty()) {
+                Pair<Partition, Integer> partition = this.partitions.removeFirst();
+                this.aggregate(partition.getFirst(), partition.getSecond());
+            }
+            return this.results.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            return this.results.next();
+        }
+
+        /**
+         * Hashes `records` on their group by columns into B-1 partitions, with the
+         * hash function of `pass`, and adds the partitions that are not empty to
+         * the partitions left to aggregate.
+         */
+        private void partition(Iterator<Record> records, int pass) {
+            assert pass >= 1 && pass <= MAX_PASSES;
+
+            Partition[] partitions = new Partition[Math.max(1, numBuffers - 1)];
+            boolean[] used = new boolean[partitions.length];
+            for (int i = 0; i < partitions.length; i++) {
+                partitions[i] = new Partition(transaction, sourceSchema);
+            }
+            while (records.hasNext()) {
+                Record record = records.next();
+                int partitionNum = HashFunc.hashRecord(this.table.getKey(record), pass) % partitions.length;
+                if (partitionNum < 0) partitionNum += partitions.length;
+                partitions[partitionNum].add(record);
+                used[partitionNum] = true;
+            }
+            for (int i = 0; i < partitions.length; i++) {
+                if (used[i]) this.partitions.addLast(new Pair<>(partitions[i], pass));
+            }
+        }
+
+        /**
+         * Aggregates the records of `partition` in the hash table, and sets results
+         * to the results of its groups. If the partition has more groups than fit
+         * in the table, hashes it again with the hash function of the next pass
+         * instead, or, if that cannot split it, sets results to the results of
+         * HashAggregateOperator's aggregation of it.
+         */
+        private void aggregate(Partition partition, int pass) {
+            Iterator<Record> records = partition.iterator();
+            while (records.hasNext()) {
+                Record record = records.next();
+                if (!this.table.add(this.table.getKey(record), record)) {
+                    this.table.clear();
+                    if (numBuffers - 1 <= 1 || pass == MAX_PASSES) {
+                        this.results = GraceHashAggregateOperator.super.aggregate(partition.iterator());
+                    } else {
+                        this.partition(partition.iterator(), pass + 1);
+                    }
+                    return;
+                }
+            }
+            this.results = this.table.results();
+        }
+    }
+}
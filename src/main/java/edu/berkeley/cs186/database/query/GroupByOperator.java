@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -49,6 +50,15 @@ class GroupByOperator extends QueryOperator {
         return new GroupByIterator();
     }
 
+    /**
+     * Returns the batches of each group in turn, with an empty batch between the
+     * batches of different groups (as iterator() does with MARKER).
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        return new GroupByBatchIterator();
+    }
+
     @Override
     protected Schema computeSchema() {
         return this.getSource().getSchema();
@@ -78,6 +88,33 @@ class GroupByOperator extends QueryOperator {
         return this.getSource().estimateIOCost();
     }
 
+    /**
+     * Adds each record to the temp table of its group.
+     *
+     * @return the name of the temp table of each group, by the values of the group
+     * by columns
+     */
+    private Map<Record, String> partition(Iterator<Record> sourceIterator) {
+        Map<Record, String> hashGroupTempTables = new HashMap<>();
+        while (sourceIterator.hasNext()) {
+            Record record = sourceIterator.next();
+            List<DataBox> values = new ArrayList<>();
+            for (int index: groupByColumnIndices) {
+                values.add(record.getValue(index));
+            }
+            Record key = new Record(values);
+            String tableName;
+            if (hashGroupTempTables.containsKey(key)) {
+                tableName = hashGroupTempTables.get(key);
+            } else {
+                tableName = this.transaction.createTempTable(this.getSource().getSchema());
+                hashGroupTempTables.put(key, tableName);
+            }
+            this.transaction.addRecord(tableName, record);
+        }
+        return hashGroupTempTables;
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      * Returns a marker record between the records of different groups, e.g.
@@ -91,26 +128,9 @@ class GroupByOperator extends QueryOperator {
 
         private GroupByIterator() {
             Iterator<Record> sourceIterator = GroupByOperator.this.getSource().iterator();
-            this.hashGroupTempTables = new HashMap<>();
+            this.hashGroupTempTables = partition(sourceIterator);
             this.currCount = 0;
             this.recordIterator = null;
-            while (sourceIterator.hasNext()) {
-                Record record = sourceIterator.next();
-                List<DataBox> values = new ArrayList<>();
-                for (int index: groupByColumnIndices) {
-                    values.add(record.getValue(index));
-                }
-                Record key = new Record(values);
-                String tableName;
-                if (this.hashGroupTempTables.containsKey(key)) {
-                    tableName = this.hashGroupTempTables.get(key);;
-                } else {
-                    tableName = GroupByOperator.this.transaction.createTempTable(
-                            GroupByOperator.this.getSource().getSchema());
-                    this.hashGroupTempTables.put(key, tableName);
-                }
-                GroupByOperator.this.transaction.addRecord(tableName, record);
-            }
             this.tableNames = hashGroupTempTables.values().iterator();
         }
 
@@ -144,4 +164,46 @@ class GroupByOperator extends QueryOperator {
             throw new NoSuchElementException();
         }
     }
+
+    /**
+     * An iterator over the batches of the temp table of each group, with an empty
+     * batch between groups.
+     */
+    private class GroupByBatchIterator implements Iterator<RecordBatch> {
+        private Iterator<String> tableNames;
+        private Iterator<RecordBatch> batchIterator;
+        private boolean separate;
+
+        private GroupByBatchIterator() {
+            Iterator<RecordBatch> sourceIterator = GroupByOperator.this.getSource().batchIterator();
+            this.tableNames = partition(RecordBatch.toRecords(sourceIterator)).values().iterator();
+            this.batchIterator = null;
+            this.separate = false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.batchIterator != null && this.batchIterator.hasNext()) {
+                return true;
+            }
+            return this.tableNames.hasNext();
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (this.batchIterator != null && this.batchIterator.hasNext()) {
+                return this.batchIterator.next();
+            }
+            if (!this.tableNames.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (this.separate) {
+                this.separate = false;
+                return RecordBatch.empty(GroupByOperator.this.getSchema());
+            }
+            this.batchIterator = GroupByOperator.this.transaction.getBatchIterator(this.tableNames.next());
+            this.separate = true;
+            return this.next();
+        }
+    }
 }
@@ -0,0 +1,321 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.HashFunc;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.disk.Partition;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.PageDirectory;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Table;
+
+import java.util.*;
+
+/**
+ * Computes the projections of a GROUP BY query by hash aggregation, in place of a
+ * GroupByOperator followed by a ProjectOperator.
+ *
+ * Records are grouped in an in-memory hash table, which holds for each group its
+ * first record (which expressions without aggregates are evaluated on) and its
+ * own copy of the aggregate expressions, updated with each of its records. The
+ * table holds as many groups as there are records of the source in B-1 pages, B
+ * being the work memory size (one page is left for reading the source). Once it is
+ * full, the records of groups that are not in the table are hashed into B-1
+ * partitions on disk, each of which is then aggregated in the same way, with
+ * another hash function. Each group is in memory in exactly one pass, so every
+ * pass outputs the groups it holds, and partitions only have groups left over.
+ */
+class HashAggregateOperator extends ProjectOperator {
+    protected TransactionContext transaction;
+    protected int numBuffers;
+    private int maxGroups;
+
+    /**
+     * @param source the source operator, whose records are grouped
+     * @param transaction the transaction containing this operator
+     * @param columns the names of the output columns
+     * @param expressions the expression computing each output column
+     * @param groupByColumns the columns to group on
+     */
+    HashAggregateOperator(QueryOperator source, TransactionContext transaction, List<String> columns,
+                          List<Expression> expressions, List<String> groupByColumns) {
+        super(source, columns, expressions, groupByColumns);
+        this.transaction = transaction;
+        this.numBuffers = transaction.getWorkMemSize();
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, this.sourceSchema);
+        this.maxGroups = Math.max(1, (this.numBuffers - 1) * recordsPerPage);
+        this.stats = this.estimateStats();
+    }
+
+    /**
+     * @return true if the given expressions can be aggregated by this operator:
+     * each group aggregates its own copies of the expressions, which are made by
+     * reparsing them (as Expression#toCNF does), and some expressions do not print
+     * back to themselves (e.g. string literals, which print without quotes).
+     */
+    static boolean canCopy(List<Expression> expressions) {
+        for (Expression expression : expressions) {
+            Expression copy;
+            try {
+                copy = Expression.fromString(expression.toString());
+            } catch (RuntimeException e) {
+                return false;
+            }
+            if (!copy.toString().equals(expression.toString()) ||
+                    !copy.getDependencies().equals(expression.getDependencies())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of groups held in memory at a time
+     */
+    int getMaxGroups() {
+        return this.maxGroups;
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return this.aggregate(this.getSource().iterator());
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        Iterator<Record> records = this.aggregate(RecordBatch.toRecords(this.getSource().batchIterator()));
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                List<Record> batch = new ArrayList<>();
+                while (batch.size() < RecordBatch.BATCH_SIZE && records.hasNext()) {
+                    batch.add(records.next());
+                }
+                return RecordBatch.boxed(batch, getSchema());
+            }
+        };
+    }
+
+    /**
+     * @param records the records of the source
+     * @return an iterator over the output records of the groups of `records`
+     */
+    Iterator<Record> aggregate(Iterator<Record> records) {
+        return new HashAggregateIterator(records);
+    }
+
+    @Override
+    public String str() {
+        String columns = "(" + String.join(", ", this.outputColumns) + ")";
+        String groupBy = "(" + String.join(", ", this.groupByColumns) + ")";
+        return "Hash Aggregate (cost=" + this.estimateIOCost() + ")" +
+                "\n\tcolumns: " + columns +
+                "\n\tgroup by: " + groupBy;
+    }
+
+    /**
+     * The state of a group in the hash table.
+     */
+    private static class Group {
+        // The first record of the group
+        Record base;
+        // The group's copy of each expression with an aggregate, and null in
+        // place of expressions without
+        List<Expression> aggregates;
+
+        Group(Record base, List<Expression> aggregates) {
+            this.base = base;
+            this.aggregates = aggregates;
+        }
+    }
+
+    /**
+     * An in-memory hash table of up to getMaxGroups() groups. The copies of the
+     * aggregate expressions of groups that have been output or dropped are reset
+     * and reused for new groups.
+     */
+    class GroupTable {
+        // Indices of the group by columns in the source schema
+        private List<Integer> groupByIndices;
+        private Map<Record, Group> groups;
+        private Deque<List<Expression>> freeAggregates;
+
+        GroupTable() {
+            this.groupByIndices = new ArrayList<>();
+            for (String column : groupByColumns) {
+                this.groupByIndices.add(sourceSchema.findField(column));
+            }
+            this.groups = new LinkedHashMap<>();
+            this.freeAggregates = new ArrayDeque<>();
+        }
+
+        /**
+         * @return the values of the group by columns of `record`
+         */
+        Record getKey(Record record) {
+            List<DataBox> values = new ArrayList<>();
+            for (int index : this.groupByIndices) {
+                values.add(record.getValue(index));
+            }
+            return new Record(values);
+        }
+
+        /**
+         * Adds `record` to its group, whose key is `key`, creating the group if it
+         * is not in the table.
+         *
+         * @return false (without adding the record) if the group is not in the
+         * table and the table is full
+         */
+        boolean add(Record key, Record record) {
+            Group group = this.groups.get(key);
+            if (group == null) {
+                if (this.groups.size() >= maxGroups) return false;
+                group = new Group(record, this.newAggregates());
+                this.groups.put(key, group);
+            }
+            for (Expression aggregate : group.aggregates) {
+                if (aggregate != null) aggregate.update(record);
+            }
+            return true;
+        }
+
+        /**
+         * Drops every group in the table, without output.
+         */
+        void clear() {
+            for (Group group : this.groups.values()) {
+                for (Expression aggregate : group.aggregates) {
+                    if (aggregate != null) aggregate.reset();
+                }
+                this.freeAggregates.addLast(group.aggregates);
+            }
+            this.groups.clear();
+        }
+
+        /**
+         * Empties the table.
+         *
+         * @return an iterator over the output records of the groups that were in
+         * the table, evaluated as they are returned
+         */
+        Iterator<Record> results() {
+            Iterator<Group> groupIterator = this.groups.values().iterator();
+            this.groups = new LinkedHashMap<>();
+            return new Iterator<Record>() {
+                @Override
+                public boolean hasNext() {
+                    return groupIterator.hasNext();
+                }
+
+                @Override
+                public Record next() {
+                    return GroupTable.this.evaluate(groupIterator.next());
+                }
+            };
+        }
+
+        // Returns copies of the expressions with aggregates, for a new group
+        private List<Expression> newAggregates() {
+            if (!this.freeAggregates.isEmpty()) {
+                return this.freeAggregates.removeFirst();
+            }
+            List<Expression> aggregates = new ArrayList<>();
+            for (Expression expression : expressions) {
+                if (expression.hasAgg()) {
+                    Expression copy = Expression.fromString(expression.toString());
+                    copy.setSchema(sourceSchema);
+                    aggregates.add(copy);
+                } else {
+                    aggregates.add(null);
+                }
+            }
+            return aggregates;
+        }
+
+        // Computes the output record of a group, and frees its aggregates
+        private Record evaluate(Group group) {
+            List<DataBox> values = new ArrayList<>();
+            for (int i = 0; i < expressions.size(); i++) {
+                Expression aggregate = group.aggregates.get(i);
+                if (aggregate != null) {
+                    values.add(aggregate.evaluate(group.base));
+                    aggregate.reset();
+                } else {
+                    values.add(expressions.get(i).evaluate(group.base));
+                }
+            }
+            this.freeAggregates.addLast(group.aggregates);
+            return new Record(values);
+        }
+    }
+
+    private class HashAggregateIterator implements Iterator<Record> {
+        private GroupTable table;
+        // Partitions left to aggregate, with the pass that aggregates them
+        private Deque<Pair<Partition, Integer>> partitions;
+        // The results of the groups in memory
+        private Iterator<Record> results;
+
+        private HashAggregateIterator(Iterator<Record> sourceIterator) {
+            this.table = new GroupTable();
+            this.partitions = new ArrayDeque<>();
+            this.aggregate(sourceIterator, 1);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.results.hasNext() && !this.partitions.isEmpty()) {
+                Pair<Partition, Integer> partition = this.partitions.removeFirst();
+                this.aggregate(partition.getFirst().iterator(), partition.getSecond());
+            }
+            return this.results.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            return this.results.next();
+        }
+
+        /**
+         * Aggregates `records` in the hash table, spilling the records of groups
+         * that do not fit to partitions aggregated by the next pass, and sets
+         * results to the results of the groups in the table.
+         */
+        private void aggregate(Iterator<Record> records, int pass) {
+            Partition[] spilled = null;
+            boolean[] used = null;
+            while (records.hasNext()) {
+                Record record = records.next();
+                Record key = this.table.getKey(record);
+                if (this.table.add(key, record)) continue;
+                if (spilled == null) {
+                    spilled = new Partition[Math.max(1, numBuffers - 1)];
+                    used = new boolean[spilled.length];
+                    for (int i = 0; i < spilled.length; i++) {
+                        spilled[i] = new Partition(transaction, sourceSchema);
+                    }
+                }
+                int partitionNum = HashFunc.hashRecord(key, pass) % spilled.length;
+                if (partitionNum < 0) partitionNum += spilled.length;
+                spilled[partitionNum].add(record);
+                used[partitionNum] = true;
+            }
+            if (spilled != null) {
+                for (int i = 0; i < spilled.length; i++) {
+                    if (used[i]) this.partitions.addLast(new Pair<>(spilled[i], pass + 1));
+                }
+            }
+            this.results = this.table.results();
+        }
+    }
+}
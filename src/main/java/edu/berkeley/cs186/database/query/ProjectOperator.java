@@ -2,7 +2,9 @@ package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.ColumnVector;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -10,17 +12,17 @@ import java.util.*;
 
 public class ProjectOperator extends QueryOperator {
     // A list of column names to use in the output of this operator
-    private List<String> outputColumns;
+    protected List<String> outputColumns;
 
     // The names of columns in the GROUP BY clause of this query.
-    private List<String> groupByColumns;
+    protected List<String> groupByColumns;
 
     // Schema of the source operator
-    private Schema sourceSchema;
+    protected Schema sourceSchema;
 
     // List of expressions that will be evaluated for each record. Each
     // expression corresponds to one of the column names in outputColumns.
-    private List<Expression> expressions;
+    protected List<Expression> expressions;
 
     /**
      * Creates a new ProjectOperator that reads tuples from source and filters
@@ -99,6 +101,11 @@ public class ProjectOperator extends QueryOperator {
         return new ProjectIterator();
     }
 
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        return new ProjectBatchIterator();
+    }
+
     @Override
     public String str() {
         String columns = "(" + String.join(", ", this.outputColumns) + ")";
@@ -167,4 +174,113 @@ public class ProjectOperator extends QueryOperator {
             return new Record(values);
         }
     }
+
+    /**
+     * Projects the batches of the source. Columns referred to by the expressions
+     * are shared with the source batches; other expressions (and aggregates) are
+     * evaluated on each record, into boxed column vectors.
+     */
+    private class ProjectBatchIterator implements Iterator<RecordBatch> {
+        private Iterator<RecordBatch> sourceIterator;
+        private boolean hasAgg = false;
+        // The next non-empty source batch, for aggregation
+        private RecordBatch currBatch;
+        private RecordBatch nextBatch;
+
+        private ProjectBatchIterator() {
+            this.sourceIterator = ProjectOperator.this.getSource().batchIterator();
+            for (Expression func: expressions) {
+                this.hasAgg |= func.hasAgg();
+            }
+            this.currBatch = null;
+            this.nextBatch = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.nextBatch != null) return true;
+            if (!this.hasAgg && groupByColumns.size() == 0) {
+                while (this.nextBatch == null && this.sourceIterator.hasNext()) {
+                    RecordBatch batch = this.sourceIterator.next();
+                    if (!batch.isEmpty()) this.nextBatch = project(batch);
+                }
+                return this.nextBatch != null;
+            }
+            List<Record> groups = new ArrayList<>();
+            while (groups.size() < RecordBatch.BATCH_SIZE && this.advance()) {
+                groups.add(this.aggregateGroup());
+            }
+            if (groups.size() > 0) this.nextBatch = RecordBatch.boxed(groups, getSchema());
+            return this.nextBatch != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+
+        private RecordBatch project(RecordBatch batch) {
+            List<ColumnVector> columns = new ArrayList<>();
+            DataBox[][] computed = new DataBox[expressions.size()][];
+            boolean hasComputed = false;
+            for (int j = 0; j < expressions.size(); j++) {
+                int col = expressions.get(j).columnIndex();
+                if (col >= 0) {
+                    columns.add(batch.getColumn(col));
+                } else {
+                    computed[j] = new DataBox[batch.getNumRows()];
+                    columns.add(ColumnVector.boxed(expressions.get(j).getType(), computed[j]));
+                    hasComputed = true;
+                }
+            }
+            if (hasComputed) {
+                for (int i = 0; i < batch.size(); i++) {
+                    Record record = batch.getRecord(i);
+                    for (int j = 0; j < expressions.size(); j++) {
+                        if (computed[j] != null) {
+                            computed[j][batch.getRow(i)] = expressions.get(j).evaluate(record);
+                        }
+                    }
+                }
+            }
+            return batch.withColumns(columns);
+        }
+
+        // Moves currBatch to the next non-empty source batch, if there is one
+        private boolean advance() {
+            while (this.currBatch == null && this.sourceIterator.hasNext()) {
+                RecordBatch batch = this.sourceIterator.next();
+                if (!batch.isEmpty()) this.currBatch = batch;
+            }
+            return this.currBatch != null;
+        }
+
+        // Aggregates the records of a group, from currBatch up to the next empty
+        // batch (see GroupByOperator#batchIterator) or the end of the source
+        private Record aggregateGroup() {
+            Record base = this.currBatch.getRecord(0); // We'll draw the GROUP BY values from here
+            while (true) {
+                for (int i = 0; i < this.currBatch.size(); i++) {
+                    Record curr = this.currBatch.getRecord(i);
+                    for (Expression dataFunction: expressions) {
+                        if (dataFunction.hasAgg()) dataFunction.update(curr);
+                    }
+                }
+                this.currBatch = null;
+                if (!this.sourceIterator.hasNext()) break;
+                RecordBatch batch = this.sourceIterator.next();
+                if (batch.isEmpty()) break;
+                this.currBatch = batch;
+            }
+            List<DataBox> values = new ArrayList<>();
+            for (Expression dataFunction: expressions) {
+                values.add(dataFunction.evaluate(base));
+                if (dataFunction.hasAgg()) dataFunction.reset();
+            }
+            return new Record(values);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -28,6 +29,7 @@ public abstract class QueryOperator implements Iterable<Record> {
         GROUP_BY,
         SORT,
         LIMIT,
+        TOP_N,
         MATERIALIZE
     }
 
@@ -151,6 +153,18 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract Iterator<Record> iterator();
 
+    /**
+     * By default, batches the records of iterator(). Operators that can process
+     * records column by column override this, and consume the batches of their
+     * source. Batches are not empty, except those that GroupByOperator returns
+     * between groups.
+     *
+     * @return an iterator over the output records of this operator, in batches
+     */
+    public Iterator<RecordBatch> batchIterator() {
+        return RecordBatch.fromRecords(this.iterator(), this.getSchema());
+    }
+
     /**
      * @return true if the records of this query operator are materialized in a
      * table.
@@ -8,6 +8,8 @@ import edu.berkeley.cs186.database.query.join.BNLJOperator;
 import edu.berkeley.cs186.database.query.join.SNLJOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.*;
 
@@ -427,6 +429,101 @@ public class QueryPlan {
         }
     }
 
+    /**
+     * Sets the final operator to a HashAggregateOperator computing the project
+     * columns of each group, with the original final operator as its source, if
+     * there are both group by and project columns. A GraceHashAggregateOperator is
+     * used instead if the estimated number of groups (see estimateNumGroups) is
+     * more than the hash aggregate holds in memory, and there are at least 3
+     * buffers (with 2, it would have a single partition). Otherwise (or if the project
+     * expressions cannot be copied for each group), adds a GroupByOperator and a
+     * ProjectOperator, as addGroupBy and addProject do.
+     */
+    private void addGroupByAndProject() {
+        if (this.groupByColumns.size() > 0 && !this.projectColumns.isEmpty()) {
+            if (this.finalOperator == null) throw new RuntimeException(
+                    "Can't add GroupBy onto null finalOperator."
+            );
+            List<Expression> expressions = this.projectFunctions;
+            if (expressions == null) {
+                expressions = new ArrayList<>();
+                for (String column: this.projectColumns) {
+                    expressions.add(Expression.fromString(column));
+                }
+            }
+            if (HashAggregateOperator.canCopy(expressions)) {
+                HashAggregateOperator aggregate = new HashAggregateOperator(
+                        this.finalOperator,
+                        this.transaction,
+                        this.projectColumns,
+                        expressions,
+                        this.groupByColumns
+                );
+                if (this.estimateNumGroups() > aggregate.getMaxGroups() &&
+                        this.transaction.getWorkMemSize() >= 3) {
+                    aggregate = new GraceHashAggregateOperator(
+                            this.finalOperator,
+                            this.transaction,
+                            this.projectColumns,
+                            expressions,
+                            this.groupByColumns
+                    );
+                }
+                this.finalOperator = aggregate;
+                return;
+            }
+        }
+        this.addGroupBy();
+        this.addProject();
+    }
+
+    /**
+     * @return an estimate of the number of groups of the final operator's records,
+     * the product of the numbers of distinct values of the group by columns, up to
+     * the number of records. Columns without histograms (see
+     * Table#buildStatistics), whose number of distinct values is 0, are left out.
+     */
+    private long estimateNumGroups() {
+        TableStats stats = this.finalOperator.estimateStats();
+        List<Histogram> histograms = stats.getHistograms();
+        long numGroups = 1;
+        for (String column : this.groupByColumns) {
+            int index = this.finalOperator.getSchema().findField(column);
+            if (index >= histograms.size()) continue;
+            int numDistinct = histograms.get(index).getNumDistinct();
+            if (numDistinct > 0) {
+                numGroups = Math.min(numGroups * numDistinct, stats.getNumRecords());
+            }
+        }
+        return numGroups;
+    }
+
+    /**
+     * Sets the final operator to a TopNOperator with the original final operator
+     * as its source, if there are both a sort that the final operator is not
+     * already sorted by and a limit, and limit + offset records fit in work
+     * memory. Otherwise, adds a SortOperator and a LimitOperator, as addSort and
+     * addLimit do.
+     */
+    private void addSortAndLimit() {
+        if (this.sortColumn != null && this.limit >= 0 &&
+                !this.finalOperator.sortedBy().contains(sortColumn.toLowerCase())) {
+            TopNOperator topN = new TopNOperator(
+                    this.transaction,
+                    this.finalOperator,
+                    this.sortColumn,
+                    this.limit,
+                    this.offset
+            );
+            if (topN.fitsInMemory()) {
+                this.finalOperator = topN;
+                return;
+            }
+        }
+        this.addSort();
+        this.addLimit();
+    }
+
     // Join ////////////////////////////////////////////////////////////////////
 
     /**
@@ -776,10 +873,8 @@ public class QueryPlan {
         // pass, add group by, project, sort and limit operators, and return an
         // iterator over the final operator.
         this.finalOperator = minCostOperator(prevMap);
-        this.addGroupBy();
-        this.addProject();
-        this.addSort();
-        this.addLimit();
+        this.addGroupByAndProject();
+        this.addSortAndLimit();
         return this.finalOperator.iterator();
     }
 
@@ -862,10 +957,8 @@ public class QueryPlan {
             // add joins, selects, group by's and projects to our plan
             this.addJoinsNaive();
             this.addSelectsNaive();
-            this.addGroupBy();
-            this.addProject();
-            this.addSort();
-            this.addLimit();
+            this.addGroupByAndProject();
+            this.addSortAndLimit();
         }
         return this.finalOperator.iterator();
     }
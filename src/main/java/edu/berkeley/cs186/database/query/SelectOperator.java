@@ -2,11 +2,15 @@ package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.ColumnVector;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public class SelectOperator extends QueryOperator {
@@ -75,6 +79,139 @@ public class SelectOperator extends QueryOperator {
     @Override
     public Iterator<Record> iterator() { return new SelectIterator(); }
 
+    @Override
+    public Iterator<RecordBatch> batchIterator() { return new SelectBatchIterator(); }
+
+    /**
+     * @return a batch of the records of `batch` that satisfy the predicate. Values
+     * of the type of this.value are compared in their column vectors' arrays, and
+     * strings once per dictionary entry; other values are compared as DataBoxes.
+     */
+    private RecordBatch filter(RecordBatch batch) {
+        ColumnVector column = batch.getColumn(this.columnIndex);
+        int[] positions = new int[batch.size()];
+        int n = 0;
+        TypeId typeId = column.isBoxed() ? null : column.getType().getTypeId();
+        if (typeId == TypeId.INT && this.value.getTypeId() == TypeId.INT) {
+            int[] ints = column.getInts();
+            int v = this.value.getInt();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (satisfies(Integer.compare(ints[batch.getRow(i)], v))) positions[n++] = i;
+            }
+        } else if (typeId == TypeId.LONG && this.value.getTypeId() == TypeId.LONG) {
+            long[] longs = column.getLongs();
+            long v = this.value.getLong();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (satisfies(Long.compare(longs[batch.getRow(i)], v))) positions[n++] = i;
+            }
+        } else if (typeId == TypeId.FLOAT && this.value.getTypeId() == TypeId.FLOAT) {
+            float[] floats = column.getFloats();
+            float v = this.value.getFloat();
+            for (int i = 0; i < batch.size(); ++i) {
+                float f = floats[batch.getRow(i)];
+                // FloatDataBox#equals compares with ==, and compareTo with Float.compare
+                boolean matches;
+                if (this.operator == PredicateOperator.EQUALS) matches = f == v;
+                else if (this.operator == PredicateOperator.NOT_EQUALS) matches = f != v;
+                else matches = satisfies(Float.compare(f, v));
+                if (matches) positions[n++] = i;
+            }
+        } else if (typeId == TypeId.BOOL && this.value.getTypeId() == TypeId.BOOL) {
+            boolean[] bools = column.getBools();
+            boolean v = this.value.getBool();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (satisfies(Boolean.compare(bools[batch.getRow(i)], v))) positions[n++] = i;
+            }
+        } else if (typeId == TypeId.STRING && this.value.getTypeId() == TypeId.STRING) {
+            List<String> dictionary = column.getDictionary();
+            boolean[] matches = new boolean[dictionary.size()];
+            for (int code = 0; code < dictionary.size(); ++code) {
+                matches[code] = satisfies(dictionary.get(code).compareTo(this.value.getString()));
+            }
+            int[] codes = column.getCodes();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (matches[codes[batch.getRow(i)]]) positions[n++] = i;
+            }
+        } else {
+            for (int i = 0; i < batch.size(); ++i) {
+                if (matches(column.get(batch.getRow(i)))) positions[n++] = i;
+            }
+        }
+        return batch.select(positions, n);
+    }
+
+    /**
+     * @return true if `v` satisfies the predicate
+     */
+    private boolean matches(DataBox v) {
+        switch (this.operator) {
+        case EQUALS:
+            return v.equals(this.value);
+        case NOT_EQUALS:
+            return !v.equals(this.value);
+        default:
+            return satisfies(v.compareTo(this.value));
+        }
+    }
+
+    /**
+     * @return true if a value comparing to this.value as `cmp` (see
+     * Comparable#compareTo) satisfies the predicate
+     */
+    private boolean satisfies(int cmp) {
+        switch (this.operator) {
+        case EQUALS:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_EQUALS:
+            return cmp <= 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        case GREATER_THAN_EQUALS:
+            return cmp >= 0;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * An iterator over the batches of records of the source that satisfy the
+     * predicate, skipping empty batches.
+     */
+    private class SelectBatchIterator implements Iterator<RecordBatch> {
+        private Iterator<RecordBatch> sourceIterator;
+        private RecordBatch nextBatch;
+
+        private SelectBatchIterator() {
+            this.sourceIterator = SelectOperator.this.getSource().batchIterator();
+            this.nextBatch = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.nextBatch == null && this.sourceIterator.hasNext()) {
+                RecordBatch batch = filter(this.sourceIterator.next());
+                if (!batch.isEmpty()) {
+                    this.nextBatch = batch;
+                }
+            }
+            return this.nextBatch != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
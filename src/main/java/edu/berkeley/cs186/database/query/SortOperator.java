@@ -2,30 +2,41 @@
 package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.TransactionContext;
-import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class SortOperator extends QueryOperator {
     protected Comparator<Record> comparator;
     private TransactionContext transaction;
     private Run sortedRecords;
     private int numBuffers;
+    // The number of blocks sorted at once (see generateRunsParallel)
+    private int parallelism;
     private int sortColumnIndex;
     private String sortColumnName;
+    // The type of the sort column, which key prefixes are computed for
+    private Type sortColumnType;
 
     public SortOperator(TransactionContext transaction, QueryOperator source,
                         String columnName) {
         super(OperatorType.SORT, source);
         this.transaction = transaction;
         this.numBuffers = this.transaction.getWorkMemSize();
+        this.parallelism = this.transaction.getSortParallelism();
         this.sortColumnIndex = getSchema().findField(columnName);
         this.sortColumnName = getSchema().getFieldName(this.sortColumnIndex);
+        this.sortColumnType = getSchema().getFieldType(this.sortColumnIndex);
         this.comparator = new RecordComparator();
     }
 
@@ -36,6 +47,60 @@ public class SortOperator extends QueryOperator {
         }
     }
 
+    /**
+     * Returns a normalized prefix of the sort key of `record`: a long whose signed
+     * order is the order of the keys, as far as the prefix goes. Prefixes of ints,
+     * longs, floats and booleans are the whole key; prefixes of strings hold their
+     * first four characters, and prefixes of byte arrays are all 0.
+     */
+    private long keyPrefix(Record record) {
+        DataBox key = record.getValue(this.sortColumnIndex);
+        switch (this.sortColumnType.getTypeId()) {
+            case BOOL: return key.getBool() ? 1 : 0;
+            case INT: return key.getInt();
+            case LONG: return key.getLong();
+            case FLOAT: {
+                // flip the bits of negative floats below the sign bit, so that
+                // the bits order as Float.compare does
+                int bits = Float.floatToIntBits(key.getFloat());
+                return bits ^ ((bits >> 31) & 0x7fffffff);
+            }
+            case STRING: {
+                String string = key.getString();
+                long prefix = 0;
+                for (int i = 0; i < 4; i++) {
+                    prefix = (prefix << 16) | (i < string.length() ? string.charAt(i) : 0);
+                }
+                // unsigned order, as signed
+                return prefix ^ Long.MIN_VALUE;
+            }
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return true if records whose key prefixes are equal have equal keys
+     */
+    private boolean isPrefixExact() {
+        switch (this.sortColumnType.getTypeId()) {
+            case BOOL:
+            case INT:
+            case LONG:
+            case FLOAT: return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Compares records r1 and r2, whose key prefixes are p1 and p2, by their key
+     * prefixes and then, if the prefixes are equal but not exact, by comparator.
+     */
+    private int compare(Record r1, long p1, Record r2, long p2, boolean exact) {
+        int cmp = Long.compare(p1, p2);
+        if (cmp != 0 || exact) return cmp;
+        return this.comparator.compare(r1, r2);
+    }
+
     @Override
     public TableStats estimateStats() {
         return getSource().estimateStats();
@@ -49,7 +114,10 @@ public class SortOperator extends QueryOperator {
     @Override
     public int estimateIOCost() {
         int N = getSource().estimateStats().getNumPages();
-        double pass0Runs = Math.ceil(N / (double)numBuffers);
+        // replacement selection makes runs of 2B pages on average, and parallel
+        // sorts make runs of B/parallelism pages
+        double runPages = parallelism > 1 ? Math.max(1, numBuffers / parallelism) : 2.0 * numBuffers;
+        double pass0Runs = Math.ceil(N / runPages);
         double numPasses = 1 + Math.ceil(Math.log(pass0Runs) / Math.log(numBuffers - 1));
         return (int) (2 * N * numPasses) + getSource().estimateIOCost();
     }
@@ -98,67 +166,109 @@ public class SortOperator extends QueryOperator {
 
     /**
      * Given a list of sorted runs, returns a new run that is the result of
-     * merging the input runs. You should use a Priority Queue (java.util.PriorityQueue)
-     * to determine which record should be added to the output run
-     * next.
-     *
-     * You are NOT allowed to have more than runs.size() records in your
-     * priority queue at a given moment. It is recommended that your Priority
-     * Queue hold Pair<Record, Integer> objects where a Pair (r, i) is the
-     * Record r with the smallest value you are sorting on currently unmerged
-     * from run i. `i` can be useful to locate which record to add to the queue
-     * next after the smallest element is removed.
+     * merging the input runs, with a loser tree over their cursors.
      *
      * @return a single sorted run obtained by merging the input runs
      */
     public Run mergeSortedRuns(List<Run> runs) {
         assert (runs.size() <= this.numBuffers - 1);
 
-        List<Record> sortedList = new ArrayList<>();
-        PriorityQueue<Pair<Record, Integer>> PQ = new PriorityQueue<>(new RecordPairComparator());
-        List<Iterator<Record>> iteratorList = new ArrayList<>();
-
-        //traverse the runs and create an iterator for each run (add the iterators to the
-        // iterator list,
-        // and add the first record of each run to the priority queue
-        //as a Pair<Record, i>
-        for (int i = 0; i < runs.size(); i++) {
-            Iterator<Record> runI = runs.get(i).iterator();
-            iteratorList.add(runI);
-            if (runI.hasNext()) {
-                Pair<Record, Integer> firstRecord = new Pair<>(runI.next(), i);
-                PQ.add(firstRecord);
-            }
-        }
-        //pop the first element in the queue, get the first item and added to the sorted run list
-        //get the second element to know which iterator to access and which record add to the queue
-        while (!PQ.isEmpty()) {
-            Pair<Record, Integer> temp = PQ.poll();
-            Record sortedRecord = temp.getFirst();
-            int iteratorIndex = temp.getSecond();
-            sortedList.add(sortedRecord);
-
-            //if there are more items in the iterator we just dequeued, keep yielding.
-            if (iteratorList.get(iteratorIndex).hasNext()) { //selecting the iterator from which we need to add to the queue
-                PQ.add(new Pair<>(iteratorList.get(iteratorIndex).next(), iteratorIndex));//yielding record from iterator and adding it as a pair to the queue
-            }
-        }
-
-        //create a run of the sortedList
         Run sortedRun = makeRun();
-        sortedRun.addAll(sortedList);
+        if (runs.isEmpty()) return sortedRun;
+        LoserTree tree = new LoserTree(runs);
+        for (int run = tree.winner(); run >= 0; run = tree.winner()) {
+            sortedRun.add(tree.next(run));
+        }
         return sortedRun;
     }
 
     /**
-     * Compares the two (record, integer) pairs based only on the record
-     * component using the default comparator. You may find this useful for
-     * implementing mergeSortedRuns.
+     * A tournament tree over the cursors of k runs, which keeps the run with the
+     * smallest current record at its root. Each inner node holds the run that lost
+     * the match played at it, so that replacing the winner's record only replays
+     * the matches on the path from its leaf to the root: log(k) comparisons, and no
+     * allocations. The current record and key prefix of run i are at index i of
+     * heads and prefixes; heads[i] is null once run i is exhausted.
      */
-    private class RecordPairComparator implements Comparator<Pair<Record, Integer>> {
-        @Override
-        public int compare(Pair<Record, Integer> o1, Pair<Record, Integer> o2) {
-            return SortOperator.this.comparator.compare(o1.getFirst(), o2.getFirst());
+    private class LoserTree {
+        private int k;
+        private List<Iterator<Record>> cursors;
+        private Record[] heads;
+        private long[] prefixes;
+        private boolean exact;
+        // tree[0] is the winner, tree[1..k-1] are the losers of the inner nodes,
+        // and the leaf of run i is node k + i
+        private int[] tree;
+
+        private LoserTree(List<Run> runs) {
+            this.k = runs.size();
+            this.cursors = new ArrayList<>(k);
+            this.heads = new Record[k];
+            this.prefixes = new long[k];
+            this.exact = isPrefixExact();
+            this.tree = new int[k];
+            for (int i = 0; i < k; i++) {
+                this.cursors.add(runs.get(i).iterator());
+                this.advance(i);
+            }
+            // k stands for a run smaller than all others, which loses all its
+            // matches as the real runs are added
+            Arrays.fill(this.tree, k);
+            for (int i = k - 1; i >= 0; i--) {
+                this.replay(i);
+            }
+        }
+
+        /**
+         * @return the run with the smallest current record, or -1 if all the runs
+         * are exhausted
+         */
+        private int winner() {
+            int run = this.tree[0];
+            return this.heads[run] == null ? -1 : run;
+        }
+
+        /**
+         * @return the current record of `run`, the winner, moving its cursor on
+         */
+        private Record next(int run) {
+            Record record = this.heads[run];
+            this.advance(run);
+            this.replay(run);
+            return record;
+        }
+
+        private void advance(int run) {
+            Iterator<Record> cursor = this.cursors.get(run);
+            if (cursor.hasNext()) {
+                this.heads[run] = cursor.next();
+                this.prefixes[run] = keyPrefix(this.heads[run]);
+            } else {
+                this.heads[run] = null;
+            }
+        }
+
+        // Replays the matches from the leaf of `run` to the root
+        private void replay(int run) {
+            int winner = run;
+            for (int node = (run + this.k) / 2; node > 0; node /= 2) {
+                if (this.less(this.tree[node], winner)) {
+                    int loser = winner;
+                    winner = this.tree[node];
+                    this.tree[node] = loser;
+                }
+            }
+            this.tree[0] = winner;
+        }
+
+        // Returns true if the current record of run a is before run b's
+        private boolean less(int a, int b) {
+            if (a == this.k) return true;
+            if (b == this.k) return false;
+            if (this.heads[a] == null) return false;
+            if (this.heads[b] == null) return true;
+            int cmp = compare(this.heads[a], this.prefixes[a], this.heads[b], this.prefixes[b], this.exact);
+            return cmp != 0 ? cmp < 0 : a < b;
         }
     }
 
@@ -187,11 +297,9 @@ public class SortOperator extends QueryOperator {
             Run sortedGroup = mergeSortedRuns(runGroup);
             sortedRuns.add(sortedGroup);
         }
-        //possibly uneven partition
-        for (int i = 0; i < leftOver; i++) {
-            List<Run> runGroup = runs.subList(lowerBound, upperBound - 1);
-            lowerBound+=buffersAvailable;
-            upperBound+=buffersAvailable;
+        //possibly uneven partition: the leftover runs are merged into one last run
+        if (leftOver > 0) {
+            List<Run> runGroup = runs.subList(lowerBound, runs.size());
             sortedRuns.add(mergeSortedRuns(runGroup));
         }
         return sortedRuns;
@@ -199,33 +307,136 @@ public class SortOperator extends QueryOperator {
 
     /**
      * Does an external merge sort over the records of the source operator.
-     * You may find the getBlockIterator method of the QueryOperator class useful
-     * here to create your initial set of sorted runs.
      *
      * @return a single run containing all of the source operator's records in
      * sorted order.
      */
     public Run sort() {
-        // Iterator over the records of the relation we want to sort
         Iterator<Record> sourceIterator = getSource().iterator();
-        BacktrackingIterator<Record> recordIterator;
-        List<Run> sortedRuns = new ArrayList<>();
-        int numPages = getSource().estimateStats().getNumPages();
-
-        //phase 1: create sorted runs
-        while (sourceIterator.hasNext()) {
-            recordIterator = getBlockIterator(sourceIterator, getSource().getSchema(), this.numBuffers);
-            Run sortedRun = sortRun(recordIterator);
-            sortedRuns.add(sortedRun);
-        }
-
-        //phase 2: merge sorted runs
+        List<Run> sortedRuns = this.parallelism > 1
+                ? generateRunsParallel(sourceIterator)
+                : generateRuns(sourceIterator);
         while (sortedRuns.size() > 1) {
             sortedRuns = mergePass(sortedRuns);
         }
         return sortedRuns.get(0);
     }
 
+    /**
+     * Generates the initial sorted runs of `records` by replacement selection: a
+     * heap holds B pages of records, and its smallest record that is not smaller
+     * than the last one written is repeatedly written to the current run and
+     * replaced by the next input record. Records smaller than the last one written
+     * are held for the next run. Runs are 2B pages long on average on random
+     * input, and all of the input makes one run if it is sorted.
+     *
+     * @return the sorted runs, of which there is at least one
+     */
+    private List<Run> generateRuns(Iterator<Record> records) {
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, getSchema());
+        int capacity = Math.max(1, recordsPerPage * this.numBuffers);
+        boolean exact = isPrefixExact();
+
+        // the heap holds the indices of its slots; the run each slot's record
+        // belongs to orders before its key
+        Record[] slots = new Record[capacity];
+        long[] prefixes = new long[capacity];
+        int[] slotRuns = new int[capacity];
+        int[] heap = new int[capacity];
+        int size = 0;
+        while (size < capacity && records.hasNext()) {
+            slots[size] = records.next();
+            prefixes[size] = keyPrefix(slots[size]);
+            heap[size] = size;
+            size++;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, size, i, slots, prefixes, slotRuns, exact);
+        }
+
+        List<Run> runs = new ArrayList<>();
+        runs.add(makeRun());
+        int currentRun = 0;
+        while (size > 0) {
+            int slot = heap[0];
+            if (slotRuns[slot] != currentRun) {
+                runs.add(makeRun());
+                currentRun++;
+            }
+            Record last = slots[slot];
+            long lastPrefix = prefixes[slot];
+            runs.get(runs.size() - 1).add(last);
+            if (records.hasNext()) {
+                slots[slot] = records.next();
+                prefixes[slot] = keyPrefix(slots[slot]);
+                boolean smaller = compare(slots[slot], prefixes[slot], last, lastPrefix, exact) < 0;
+                slotRuns[slot] = smaller ? currentRun + 1 : currentRun;
+            } else {
+                slots[slot] = null;
+                heap[0] = heap[--size];
+            }
+            siftDown(heap, size, 0, slots, prefixes, slotRuns, exact);
+        }
+        return runs;
+    }
+
+    /**
+     * Generates the initial sorted runs of `records` with `parallelism` workers on
+     * the common fork/join pool, each of which sorts a block of B/parallelism pages
+     * of records at a time. The calling thread reads the blocks and writes the
+     * sorted blocks to runs, in order, while the next blocks are sorted: runs are
+     * temporary tables of the transaction, which are only used from its thread.
+     * There are at most `parallelism` blocks in memory at a time, including the one
+     * being read.
+     *
+     * @return the sorted runs, of which there is at least one
+     */
+    private List<Run> generateRunsParallel(Iterator<Record> records) {
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, getSchema());
+        int blockSize = Math.max(1, recordsPerPage * Math.max(1, this.numBuffers / this.parallelism));
+
+        List<Run> runs = new ArrayList<>();
+        Deque<ForkJoinTask<List<Record>>> sorting = new ArrayDeque<>();
+        while (records.hasNext()) {
+            if (sorting.size() >= this.parallelism - 1) {
+                runs.add(makeRun(sorting.removeFirst().join()));
+            }
+            List<Record> block = new ArrayList<>();
+            while (block.size() < blockSize && records.hasNext()) {
+                block.add(records.next());
+            }
+            sorting.addLast(ForkJoinPool.commonPool().submit(() -> {
+                block.sort(this.comparator);
+                return block;
+            }));
+        }
+        while (!sorting.isEmpty()) {
+            runs.add(makeRun(sorting.removeFirst().join()));
+        }
+        if (runs.isEmpty()) runs.add(makeRun());
+        return runs;
+    }
+
+    private void siftDown(int[] heap, int size, int i, Record[] slots, long[] prefixes,
+                          int[] slotRuns, boolean exact) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && slotLess(heap[child + 1], heap[child], slots, prefixes, slotRuns, exact)) {
+                child++;
+            }
+            if (!slotLess(heap[child], heap[i], slots, prefixes, slotRuns, exact)) return;
+            int tmp = heap[i];
+            heap[i] = heap[child];
+            heap[child] = tmp;
+            i = child;
+        }
+    }
+
+    private boolean slotLess(int a, int b, Record[] slots, long[] prefixes, int[] slotRuns, boolean exact) {
+        if (slotRuns[a] != slotRuns[b]) return slotRuns[a] < slotRuns[b];
+        return compare(slots[a], prefixes[a], slots[b], prefixes[b], exact) < 0;
+    }
+
     /**
      * @return a new empty run.
      */
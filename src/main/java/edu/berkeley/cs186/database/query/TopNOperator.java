@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.PageDirectory;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.*;
+
+/**
+ * Yields the records of its source in order of a column, skipping the first
+ * `offset` and yielding up to `limit` of the rest, as a SortOperator followed by a
+ * LimitOperator would. Instead of sorting all of the source, it keeps the smallest
+ * limit + offset records seen so far in a bounded heap, in one pass over the
+ * source, so the limit and offset must fit in work memory (see fitsInMemory).
+ */
+public class TopNOperator extends QueryOperator {
+    private int numBuffers;
+    private int limit;
+    private int offset;
+    private int sortColumnIndex;
+    private String sortColumnName;
+    private Comparator<Record> comparator;
+
+    public TopNOperator(TransactionContext transaction, QueryOperator source,
+                        String columnName, int limit, int offset) {
+        super(OperatorType.TOP_N, source);
+        this.numBuffers = transaction.getWorkMemSize();
+        this.limit = limit;
+        this.offset = offset;
+        this.sortColumnIndex = getSchema().findField(columnName);
+        this.sortColumnName = getSchema().getFieldName(this.sortColumnIndex);
+        this.comparator = (r1, r2) -> r1.getValue(sortColumnIndex).compareTo(r2.getValue(sortColumnIndex));
+        this.stats = this.estimateStats();
+    }
+
+    /**
+     * @return true if limit + offset records of the source fit in the B pages of
+     * work memory
+     */
+    public boolean fitsInMemory() {
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, getSchema());
+        return (long) this.limit + this.offset <= (long) recordsPerPage * this.numBuffers;
+    }
+
+    @Override
+    protected Schema computeSchema() {
+        return getSource().getSchema();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        if (this.limit == 0) return Collections.emptyIterator();
+        int n = (int) Math.min((long) this.limit + this.offset, Integer.MAX_VALUE);
+
+        // the largest kept record is at the head, to be replaced by smaller ones
+        PriorityQueue<Record> heap = new PriorityQueue<>(Math.min(n, 1024), this.comparator.reversed());
+        Iterator<Record> sourceIterator = getSource().iterator();
+        while (sourceIterator.hasNext()) {
+            Record record = sourceIterator.next();
+            if (heap.size() < n) {
+                heap.add(record);
+            } else if (this.comparator.compare(record, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(record);
+            }
+        }
+        List<Record> records = new ArrayList<>(heap);
+        records.sort(this.comparator);
+        return records.subList(Math.min(this.offset, records.size()), records.size()).iterator();
+    }
+
+    @Override
+    public String str() {
+        return "Top N (cost=" + this.estimateIOCost() + ")" +
+                "\n\tsort column: " + this.sortColumnName +
+                "\n\tlimit: " + this.limit +
+                "\n\toffset: " + this.offset;
+    }
+
+    @Override
+    public List<String> sortedBy() {
+        return Collections.singletonList(this.sortColumnName);
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return getSource().estimateStats();
+    }
+
+    @Override
+    public int estimateIOCost() {
+        // the source is read once, and nothing is written
+        return getSource().estimateIOCost();
+    }
+}
@@ -95,6 +95,14 @@ public abstract class Expression {
         for (Expression child: children) child.setSchema(schema);
     }
 
+    /**
+     * @return The index in the schema of the column this expression refers to,
+     * if it is a column reference (e.g. `int1`), and -1 otherwise.
+     */
+    public int columnIndex() {
+        return -1;
+    }
+
     /**
      * @return The set of this expression's column dependencies. For example,
      * the expression `int1 + (3 * int2)` would return a set with the elements
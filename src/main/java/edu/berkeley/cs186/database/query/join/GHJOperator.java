@@ -13,9 +13,21 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class GHJOperator extends JoinOperator {
+    // Marks the end of a worker's output (see joinInParallel)
+    private static final Record DONE = new Record();
+    // The number of joined records queued by workers before they block
+    private static final int OUTPUT_QUEUE_SIZE = 1024;
+
     private int numBuffers;
+    // The number of pairs of partitions joined at once (see joinInParallel)
+    private int parallelism;
     private Run joinedRecords;
 
     public GHJOperator(QueryOperator leftSource,
@@ -25,6 +37,7 @@ public class GHJOperator extends JoinOperator {
                        TransactionContext transaction) {
         super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.GHJ);
         this.numBuffers = transaction.getWorkMemSize();
+        this.parallelism = transaction.getJoinParallelism();
         this.stats = this.estimateStats();
         this.joinedRecords = null;
     }
@@ -83,10 +96,12 @@ public class GHJOperator extends JoinOperator {
     }
 
     /**
-     * Runs the buildAndProbe stage on a given partition. Should add any
-     * matching records found during the probing stage to this.joinedRecords.
+     * Runs the buildAndProbe stage on a given pair of partitions, building on
+     * whichever of them fits in `buffers` - 2 pages of memory. Passes any matching
+     * records found during the probing stage to `output`.
      */
-    private void buildAndProbe(Partition leftPartition, Partition rightPartition) {
+    private void buildAndProbe(Partition leftPartition, Partition rightPartition, int buffers,
+                               Consumer<Record> output) {
         // true if the probe records come from the left partition, false otherwise
         boolean probeFirst;
         // We'll build our in memory hash table with these records
@@ -98,13 +113,13 @@ public class GHJOperator extends JoinOperator {
         // The index of the join column for the probe records
         int probeColumnIndex;
 
-        if (leftPartition.getNumPages() <= this.numBuffers - 2) {
+        if (leftPartition.getNumPages() <= buffers - 2) {
             buildRecords = leftPartition;
             buildColumnIndex = getLeftColumnIndex();
             probeRecords = rightPartition;
             probeColumnIndex = getRightColumnIndex();
             probeFirst = false;
-        } else if (rightPartition.getNumPages() <= this.numBuffers - 2) {
+        } else if (rightPartition.getNumPages() <= buffers - 2) {
             buildRecords = rightPartition;
             buildColumnIndex = getRightColumnIndex();
             probeRecords = leftPartition;
@@ -116,16 +131,6 @@ public class GHJOperator extends JoinOperator {
                 "fit in B-2 pages of memory."
             );
         }
-        // TODO(proj3_part1): implement the building and probing stage
-        // You shouldn't refer to any variable starting with "left" or "right"
-        // here, use the "build" and "probe" variables we set up for you.
-        // Check out how SHJOperator implements this function if you feel stuck.
-
-        /**
-         * building phase - take each partition 1...(B-1) -> build a hash table (a separate hashtable for each partition)
-         * probe phase - take a matching partition from the probing relation, scan that partition looking
-         * for matches in memory and sending them to the output
-         */
 
         // Our hash table to build on.
         Map<DataBox, List<Record>> buildHashTable = new HashMap<>();
@@ -138,28 +143,16 @@ public class GHJOperator extends JoinOperator {
             buildHashTable.get(joinValue).add(record);
         }
 
-        //Our hash table to probe on.
-        Map<DataBox, List<Record>> probeHashTable = new HashMap<>();
-        for (Record record: probeRecords) {
-            DataBox joinValue = record.getValue(probeColumnIndex);
-            if (!probeHashTable.containsKey(joinValue)) {
-                probeHashTable.put(joinValue, new ArrayList<>());
-            }
-            probeHashTable.get(joinValue).add(record);
-        }
-
         //probing stage
         for (Record probeRecord : probeRecords) {
             DataBox probeJoinValue = probeRecord.getValue(probeColumnIndex);
             if (!buildHashTable.containsKey(probeJoinValue)) continue;
-            //join right record wit each left record with a marching key
+            // join the probe record with each build record with a matching key,
+            // left record first
             for (Record buildRecord : buildHashTable.get(probeJoinValue)) {
-                Record joinedRecord = buildRecord.concat(probeRecord);
-                //accumulate joined records in this.joinedRecords
-                this.joinedRecords.add(joinedRecord);
+                output.accept(probeFirst ? probeRecord.concat(buildRecord) : buildRecord.concat(probeRecord));
             }
         }
-
     }
 
     /**
@@ -167,6 +160,10 @@ public class GHJOperator extends JoinOperator {
      * leftRecords and rightRecords. If we can run build and probe on a
      * partition we should immediately do so, otherwise we should apply the
      * grace hash join algorithm recursively to break up the partitions further.
+     *
+     * If the join is parallel, pairs of partitions that can be built and probed
+     * in a worker's share of memory are instead joined concurrently once the
+     * others have been (see joinInParallel).
      */
     private void run(Iterable<Record> leftRecords, Iterable<Record> rightRecords, int pass) {
         assert pass >= 1;
@@ -180,20 +177,108 @@ public class GHJOperator extends JoinOperator {
         this.partition(leftPartitions, leftRecords, true, pass);
         this.partition(rightPartitions, rightRecords, false, pass);
 
+        List<Pair<Partition, Partition>> parallelPairs = new ArrayList<>();
         for (int i = 0; i < leftPartitions.length; i++) {
-            // TODO(proj3_part1): implement the rest of grace hash join
-            // If you meet the conditions to run the build and probe you should
-            // do so immediately. Otherwise you should make a recursive call.
-            List<Record> records;
-
-            if (leftPartitions[i].getNumPages() <= this.numBuffers - 2) {
-                buildAndProbe(leftPartitions[i],rightPartitions[i]);
-            } else if (rightPartitions[i].getNumPages() <= this.numBuffers - 2) {
-                buildAndProbe(rightPartitions[i], leftPartitions[i]);
+            if (this.parallelism > 1 && fits(leftPartitions[i], rightPartitions[i], this.numBuffers / this.parallelism)) {
+                parallelPairs.add(new Pair<>(leftPartitions[i], rightPartitions[i]));
+            } else if (fits(leftPartitions[i], rightPartitions[i], this.numBuffers)) {
+                buildAndProbe(leftPartitions[i], rightPartitions[i], this.numBuffers, this.joinedRecords::add);
             } else {
-                run(leftPartitions[i], rightPartitions[i], pass+=1);
+                run(leftPartitions[i], rightPartitions[i], pass + 1);
+            }
+        }
+        if (!parallelPairs.isEmpty()) {
+            joinInParallel(parallelPairs);
+        }
+    }
+
+    /**
+     * @return true if either partition fits in `buffers` - 2 pages, so that the
+     * pair can be built and probed in `buffers` pages of memory
+     */
+    private static boolean fits(Partition leftPartition, Partition rightPartition, int buffers) {
+        return Math.min(leftPartition.getNumPages(), rightPartition.getNumPages()) <= buffers - 2;
+    }
+
+    /**
+     * Builds and probes the given pairs of partitions with up to `parallelism`
+     * worker threads, which take the pairs one at a time, each in its share of
+     * B/parallelism pages of memory. Workers only read the partitions: the records
+     * they join are passed through a bounded queue to the calling thread, which
+     * adds them to joinedRecords, as a run is a temporary table of the
+     * transaction, and only its thread writes to it.
+     */
+    private void joinInParallel(List<Pair<Partition, Partition>> pairs) {
+        int share = this.numBuffers / this.parallelism;
+        int numWorkers = Math.min(this.parallelism, pairs.size());
+        BlockingQueue<Record> output = new ArrayBlockingQueue<>(OUTPUT_QUEUE_SIZE);
+        AtomicInteger nextPair = new AtomicInteger();
+        // First exception thrown by a worker or the calling thread, after which
+        // workers take no more pairs
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        for (int i = 0; i < numWorkers; ++i) {
+            Thread worker = new Thread(() -> {
+                try {
+                    int next;
+                    while (failure.get() == null && (next = nextPair.getAndIncrement()) < pairs.size()) {
+                        Pair<Partition, Partition> pair = pairs.get(next);
+                        buildAndProbe(pair.getFirst(), pair.getSecond(), share, record -> put(output, record));
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    put(output, DONE);
+                }
+            }, "ghj-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        // Records are drained (and dropped, after a failure) until every worker
+        // is done, so that none is left blocked on the queue
+        int running = numWorkers;
+        while (running > 0) {
+            Record record = take(output);
+            if (record == DONE) {
+                --running;
+            } else if (failure.get() == null) {
+                try {
+                    this.joinedRecords.add(record);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    private static void put(BlockingQueue<Record> queue, Record record) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(record);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static Record take(BlockingQueue<Record> queue) {
+        boolean interrupted = false;
+        Record record;
+        while (true) {
+            try {
+                record = queue.take();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
+        if (interrupted) Thread.currentThread().interrupt();
+        return record;
     }
 
     // Provided Helpers ////////////////////////////////////////////////////////
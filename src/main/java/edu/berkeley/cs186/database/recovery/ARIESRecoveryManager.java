@@ -34,6 +34,16 @@ public class ARIESRecoveryManager implements RecoveryManager {
     // true if redo phase of restart has terminated, false otherwise. Used
     // to prevent DPT entries from being flushed during restartRedo.
     boolean redoComplete;
+    // Number of threads redoing page updates during restartRedo; 1 to redo serially.
+    private int redoThreads = 1;
+    // LSN of the begin checkpoint record of the last completed checkpoint.
+    private volatile long lastCheckpointLSN;
+    // Held while taking a checkpoint, so that checkpoints do not interleave.
+    private Object checkpointLock = new Object();
+    // Background checkpointer, null if not running.
+    private volatile Checkpointer checkpointer;
+    // Whether page updates are logged in the compact encoding.
+    private volatile boolean compactLogRecords;
 
     public ARIESRecoveryManager(Function<Long, Transaction> newTransaction) {
         this.newTransaction = newTransaction;
@@ -78,7 +88,9 @@ public class ARIESRecoveryManager implements RecoveryManager {
      */
     @Override
     public synchronized void startTransaction(Transaction transaction) {
-        this.transactionTable.put(transaction.getTransNum(), new TransactionTableEntry(transaction));
+        TransactionTableEntry entry = new TransactionTableEntry(transaction);
+        entry.startLSN = logManager.getMinNextLSN();
+        this.transactionTable.put(transaction.getTransNum(), entry);
     }
 
     /**
@@ -95,7 +107,8 @@ public class ARIESRecoveryManager implements RecoveryManager {
         TransactionTableEntry entry = transactionTable.get(transNum);
         LogRecord transactionLogRecordToCommit = new CommitTransactionLogRecord(transNum, entry.lastLSN);
         long commitLSN = logManager.appendToLog(transactionLogRecordToCommit);
-        pageFlushHook(commitLSN);
+        // batched with other commits' flushes if group commit is running
+        logManager.groupFlushToLSN(commitLSN);
         entry.transaction.setStatus(Transaction.Status.COMMITTING);
         entry.lastLSN = commitLSN;
         return commitLSN;
@@ -186,6 +199,20 @@ public class ARIESRecoveryManager implements RecoveryManager {
         }
     }
 
+    /**
+     * Returns the number of undoable log records (page writes and partition/page
+     * allocations and frees) written by a running transaction, i.e. how much work
+     * aborting it would have to undo.
+     *
+     * @param transNum transaction number
+     * @return number of undoable log records written, or 0 if not running
+     */
+    @Override
+    public long getNumLogRecords(long transNum) {
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        return entry == null ? 0L : entry.numLogRecords;
+    }
+
     /**
      * Called before a page is flushed from the buffer cache. This
      * method is never called on a log page.
@@ -236,12 +263,30 @@ public class ARIESRecoveryManager implements RecoveryManager {
         TransactionTableEntry transactionTableEntry = transactionTable.get(transNum);
         UpdatePageLogRecord updatePageLogRecord = new UpdatePageLogRecord(transNum, pageNum,
                 transactionTableEntry.lastLSN, pageOffset, before, after);
+        updatePageLogRecord.setCompact(compactLogRecords);
         long newLSN = logManager.appendToLog(updatePageLogRecord);
         transactionTableEntry.lastLSN = newLSN;
+        ++transactionTableEntry.numLogRecords;
         dirtyPageTable.putIfAbsent(pageNum, newLSN);
+        Checkpointer checkpointer = this.checkpointer;
+        if (checkpointer != null) {
+            checkpointer.logAppended(newLSN);
+        }
         return newLSN;
     }
 
+    /**
+     * Sets whether page updates are logged in the compact encoding of
+     * UpdatePageLogRecord (see UpdatePageLogRecord#setCompact), which takes less log
+     * space at the cost of some CPU time to encode and decode. Logs may mix both
+     * encodings.
+     *
+     * @param compactLogRecords whether to log page updates in the compact encoding
+     */
+    public void setCompactLogRecords(boolean compactLogRecords) {
+        this.compactLogRecords = compactLogRecords;
+    }
+
     /**
      * Called when a new partition is allocated. A log flush is necessary,
      * since changes are visible on disk immediately after this returns.
@@ -267,6 +312,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
         transactionEntry.lastLSN = LSN;
+        ++transactionEntry.numLogRecords;
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -298,6 +344,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
         transactionEntry.lastLSN = LSN;
+        ++transactionEntry.numLogRecords;
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -329,6 +376,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
         transactionEntry.lastLSN = LSN;
+        ++transactionEntry.numLogRecords;
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -360,6 +408,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
         transactionEntry.lastLSN = LSN;
+        ++transactionEntry.numLogRecords;
         dirtyPageTable.remove(pageNum);
         // Flush log
         logManager.flushToLSN(LSN);
@@ -430,64 +479,142 @@ public class ARIESRecoveryManager implements RecoveryManager {
      *
      * Finally, the master record should be rewritten with the LSN of the
      * begin checkpoint record.
+     *
+     * The checkpoint is fuzzy: the DPT and transaction table are concurrent maps,
+     * and are copied entry by entry while transactions keep running and logging.
+     * Changes made after the begin checkpoint record are in the log after it, so
+     * restart analysis (which scans from the begin checkpoint record) sees them.
+     * Only other checkpoints are blocked while a checkpoint is taken.
      */
     @Override
-    public synchronized void checkpoint() {
-        // Create begin checkpoint log record and write to log
-        LogRecord beginRecord = new BeginCheckpointLogRecord();
-        long beginLSN = logManager.appendToLog(beginRecord);
-
-        Map<Long, Long> chkptDPT = new HashMap<>();
-        Map<Long, Pair<Transaction.Status, Long>> chkptTxnTable = new HashMap<>();
-
-
-        /**
-         * iterate through the dirtyPageTable and copy the entries. If at any point,
-         * copying the current record would cause the end checkpoint record to be too large,
-         * an end checkpoint record with the copied DPT entries should be appended to the log.
-         */
-        for (Map.Entry<Long, Long> DTPEntry : dirtyPageTable.entrySet()) {
-            boolean fits = EndCheckpointLogRecord.fitsInOneRecord(chkptDPT.size() + 1,
-                    chkptTxnTable.size() + 1);
-            if (fits) {
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            // Create begin checkpoint log record and write to log
+            LogRecord beginRecord = new BeginCheckpointLogRecord();
+            long beginLSN = logManager.appendToLog(beginRecord);
+
+            Map<Long, Long> chkptDPT = new HashMap<>();
+            Map<Long, Pair<Transaction.Status, Long>> chkptTxnTable = new HashMap<>();
+
+            /**
+             * iterate through the dirtyPageTable and copy the entries. If at any point,
+             * copying the current record would cause the end checkpoint record to be too large,
+             * an end checkpoint record with the copied DPT entries should be appended to the log.
+             */
+            for (Map.Entry<Long, Long> DTPEntry : dirtyPageTable.entrySet()) {
+                if (!EndCheckpointLogRecord.fitsInOneRecord(chkptDPT.size() + 1, chkptTxnTable.size())) {
+                    logManager.appendToLog(new EndCheckpointLogRecord(chkptDPT, chkptTxnTable));
+                    chkptDPT.clear();
+                }
                 chkptDPT.put(DTPEntry.getKey(), DTPEntry.getValue());
-            } else {
-                LogRecord endRecord = new EndCheckpointLogRecord(chkptDPT, chkptTxnTable);
-                //TODO: check if curr LSN should be added to transaction table
-                long LSN = logManager.appendToLog(endRecord);
-                chkptDPT.clear();
             }
+
+            /**
+             * iterate through the transaction table, and copy the status/lastLSN, outputting
+             * end checkpoint records only as needed.
+             */
+            for (Map.Entry<Long, TransactionTableEntry> txnTableEntry : transactionTable.entrySet()) {
+                Long transNum = txnTableEntry.getKey();
+                TransactionTableEntry transactionTableEntry = txnTableEntry.getValue();
+                if (!EndCheckpointLogRecord.fitsInOneRecord(chkptDPT.size(), chkptTxnTable.size() + 1)) {
+                    logManager.appendToLog(new EndCheckpointLogRecord(chkptDPT, chkptTxnTable));
+                    chkptDPT.clear();
+                    chkptTxnTable.clear();
+                }
+                chkptTxnTable.put(transNum, new Pair<>(transactionTableEntry.transaction.getStatus(),
+                                                       transactionTableEntry.lastLSN));
+            }
+
+            // Last end checkpoint record
+            LogRecord endRecord = new EndCheckpointLogRecord(chkptDPT, chkptTxnTable);
+            logManager.appendToLog(endRecord);
+            // Ensure checkpoint is fully flushed before updating the master record
+            flushToLSN(endRecord.getLSN());
+
+            // Update master record
+            MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
+            logManager.rewriteMasterRecord(masterRecord);
+            this.lastCheckpointLSN = beginLSN;
         }
+    }
+
+    /**
+     * @return LSN of the begin checkpoint record of the last checkpoint taken
+     */
+    long getLastCheckpointLSN() {
+        return this.lastCheckpointLSN;
+    }
 
-        /**
-         * iterate through the transaction table, and copy the status/lastLSN, outputting
-         * end checkpoint records only as needed.
-         */
-        for (Map.Entry<Long, TransactionTableEntry> txnTableEntry : transactionTable.entrySet()) {
-            Long transNum = txnTableEntry.getKey();
-            TransactionTableEntry transactionTableEntry = txnTableEntry.getValue();
-            boolean fits = EndCheckpointLogRecord.fitsInOneRecord(chkptDPT.size() + 1,
-                    chkptTxnTable.size() + 1);
-            if (fits) {
-                chkptTxnTable.put(transNum, new Pair<>(transactionTableEntry.transaction.getStatus(), transactionTableEntry.lastLSN));
-            } else {
-                LogRecord endRecord = new EndCheckpointLogRecord(chkptDPT, chkptTxnTable);
-                //TODO: double check if need to save the lastLSN
-                long LSN = logManager.appendToLog(endRecord);
-                chkptDPT.clear();
-                chkptTxnTable.clear();
+    /**
+     * Writes back dirty pages whose recLSN is before the last checkpoint, so that
+     * the next checkpoint's DPT (and with it the start of the redo pass) only goes
+     * back as far as the last checkpoint. Pages that are pinned are left alone.
+     */
+    void writeBackOldPages() {
+        long lastCheckpointLSN = this.lastCheckpointLSN;
+        Set<Long> oldPages = new HashSet<>();
+        for (Map.Entry<Long, Long> entry : dirtyPageTable.entrySet()) {
+            if (entry.getValue() < lastCheckpointLSN) {
+                oldPages.add(entry.getKey());
             }
         }
+        if (!oldPages.isEmpty()) {
+            bufferManager.writeBackPages(oldPages);
+        }
+    }
+
+    /**
+     * Truncates the log up to the recovery horizon: the oldest of the last checkpoint
+     * (where restart analysis starts), the recLSN of every dirty page (where redo may
+     * have to start), and the first record of every running transaction (which undo
+     * may have to reach). Log pages entirely before the horizon are freed.
+     *
+     * Must not be called by a thread running a transaction.
+     *
+     * @return number of log pages freed
+     */
+    public int truncateLog() {
+        long horizon = this.lastCheckpointLSN;
+        for (long recLSN : dirtyPageTable.values()) {
+            horizon = Math.min(horizon, recLSN);
+        }
+        for (TransactionTableEntry entry : transactionTable.values()) {
+            horizon = Math.min(horizon, entry.startLSN);
+        }
+        return logManager.truncateBefore(horizon);
+    }
 
-        // Last end checkpoint record
-        LogRecord endRecord = new EndCheckpointLogRecord(chkptDPT, chkptTxnTable);
-        logManager.appendToLog(endRecord);
-        // Ensure checkpoint is fully flushed before updating the master record
-        flushToLSN(endRecord.getLSN());
+    /**
+     * Starts taking checkpoints in the background, every intervalMillis or after
+     * every logPagesBetween pages of log, whichever comes first. Pages dirty since
+     * before the previous checkpoint are written back before each checkpoint. Does
+     * nothing if the checkpointer is already running.
+     *
+     * @param intervalMillis maximum time between checkpoints
+     * @param logPagesBetween number of log pages after which a checkpoint is taken
+     */
+    public synchronized void startCheckpointer(long intervalMillis, long logPagesBetween) {
+        if (this.checkpointer != null) {
+            return;
+        }
+        this.checkpointer = new Checkpointer(this, intervalMillis, logPagesBetween);
+    }
 
-        // Update master record
-        MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
-        logManager.rewriteMasterRecord(masterRecord);
+    /**
+     * Stops the background checkpointer, if running, and waits for a checkpoint in
+     * progress to finish.
+     * @throws IllegalStateException if the checkpointer was stopped by a failed
+     * checkpoint
+     */
+    public void stopCheckpointer() {
+        Checkpointer checkpointer;
+        synchronized (this) {
+            checkpointer = this.checkpointer;
+            this.checkpointer = null;
+        }
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
     }
 
     /**
@@ -512,12 +639,49 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
     @Override
     public void close() {
-        this.checkpoint();
-        this.logManager.close();
+        try {
+            this.stopCheckpointer();
+        } finally {
+            this.checkpoint();
+            this.logManager.close();
+        }
+    }
+
+    /**
+     * Starts group commit: commits wait for a background thread to flush the log for
+     * a whole batch of commits at once, instead of each flushing the log themselves.
+     * See LogManager#startGroupCommit.
+     *
+     * @param maxDelayMillis longest time a commit waits for its batch to fill up
+     * @param maxBatchSize number of commits after which a batch is flushed right away
+     */
+    public void startGroupCommit(long maxDelayMillis, int maxBatchSize) {
+        this.logManager.startGroupCommit(maxDelayMillis, maxBatchSize);
+    }
+
+    /**
+     * Stops group commit; commits flush the log themselves again.
+     */
+    public void stopGroupCommit() {
+        this.logManager.stopGroupCommit();
     }
 
     // Restart Recovery ////////////////////////////////////////////////////////
 
+    /**
+     * Sets the number of threads the redo pass of restart recovery uses to redo
+     * page updates. With more than one thread, updates to different pages are
+     * redone concurrently; see restartRedo.
+     *
+     * @param redoThreads number of redo threads; 1 (the default) redoes serially
+     */
+    public void setRedoThreads(int redoThreads) {
+        if (redoThreads < 1) {
+            throw new IllegalArgumentException("redoThreads must be positive");
+        }
+        this.redoThreads = redoThreads;
+    }
+
     /**
      * Called whenever the database starts up, and performs restart recovery.
      * Recovery is complete when the Runnable returned is run to termination.
@@ -587,6 +751,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         MasterLogRecord masterRecord = (MasterLogRecord) record;
         // Get start checkpoint LSN
         long LSN = masterRecord.lastCheckpointLSN;
+        this.lastCheckpointLSN = LSN;
         // Set of transactions that have completed
         Set<Long> endedTransactions = new HashSet<>();
         // TODO(proj5): implement
@@ -604,10 +769,93 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * - modifies a page (Update/UndoUpdate/Free/UndoAlloc....Page) in
      *   the dirty page table with LSN >= recLSN, the page is fetched from disk,
      *   the pageLSN is checked, and the record is redone if needed.
+     *
+     * If more than one redo thread is configured (setRedoThreads), the log is
+     * still scanned once, but page updates (Update/UndoUpdatePage) are handed to
+     * a worker chosen by page number, which checks the pageLSN and redoes them.
+     * Updates to one page are therefore redone in log order, and updates to
+     * different pages in parallel. Any other record is redone by the scanning
+     * thread once all updates before it have been redone.
      */
     void restartRedo() {
-        // TODO(proj5): implement
-        return;
+        if (dirtyPageTable.isEmpty()) {
+            return;
+        }
+        long startLSN = Collections.min(dirtyPageTable.values());
+        Iterator<LogRecord> iter = logManager.scanFrom(startLSN);
+        if (redoThreads == 1) {
+            while (iter.hasNext()) {
+                LogRecord record = iter.next();
+                if (record.isRedoable() && needsRedo(record)) {
+                    record.redo(this, diskSpaceManager, bufferManager);
+                }
+            }
+            return;
+        }
+        try (ParallelRedo workers = new ParallelRedo(redoThreads, this::redoPageUpdate)) {
+            while (iter.hasNext()) {
+                LogRecord record = iter.next();
+                if (!record.isRedoable()) {
+                    continue;
+                }
+                LogType type = record.getType();
+                if (type == LogType.UPDATE_PAGE || type == LogType.UNDO_UPDATE_PAGE) {
+                    if (inDirtyPageRange(record)) {
+                        workers.dispatch(record);
+                    }
+                } else if (needsRedo(record)) {
+                    workers.drain();
+                    record.redo(this, diskSpaceManager, bufferManager);
+                }
+            }
+        }
+    }
+
+    /**
+     * Redoes a page update if the page on disk does not already reflect it. Called
+     * by redo workers, for records already checked against the dirty page table.
+     */
+    private void redoPageUpdate(LogRecord record) {
+        if (pageLSNBefore(record)) {
+            record.redo(this, diskSpaceManager, bufferManager);
+        }
+    }
+
+    /**
+     * @return whether a redoable record must be redone during restartRedo
+     */
+    private boolean needsRedo(LogRecord record) {
+        switch (record.getType()) {
+        case UPDATE_PAGE:
+        case UNDO_UPDATE_PAGE:
+        case FREE_PAGE:
+        case UNDO_ALLOC_PAGE:
+            return inDirtyPageRange(record) && pageLSNBefore(record);
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return whether the record's page is in the dirty page table, with a recLSN
+     * at most the record's LSN
+     */
+    private boolean inDirtyPageRange(LogRecord record) {
+        Long recLSN = dirtyPageTable.get(record.getPageNum().orElseThrow(IllegalStateException::new));
+        return recLSN != null && record.getLSN() >= recLSN;
+    }
+
+    /**
+     * @return whether the pageLSN of the record's page is less than the record's LSN,
+     * i.e. the page on disk does not reflect the record
+     */
+    private boolean pageLSNBefore(LogRecord record) {
+        Page page = bufferManager.fetchPage(new DummyLockContext(), record.getPageNum().get());
+        try {
+            return page.getPageLSN() < record.getLSN();
+        } finally {
+            page.unpin();
+        }
     }
 
     /**
@@ -0,0 +1,130 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.PageException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background checkpointing for ARIESRecoveryManager. A checkpoint is taken every
+ * intervalMillis, or sooner once logPagesBetween pages of log have been written since
+ * the last checkpoint. Before each checkpoint, pages that have been dirty since before
+ * the previous checkpoint are written back, so that the redo pass of restart recovery
+ * (which starts at the smallest recLSN in the checkpointed dirty page table) never has
+ * to start much further back than the previous checkpoint. After each checkpoint, the
+ * log is truncated up to the recovery horizon (see ARIESRecoveryManager#truncateLog).
+ *
+ * If taking a checkpoint fails (other than by a page being freed while it is written
+ * back), the checkpointer stops, and the exception is rethrown when it is closed.
+ */
+class Checkpointer {
+    private ARIESRecoveryManager recoveryManager;
+    private long intervalNanos;
+    private long logPagesBetween;
+
+    // Set once enough log has been written since the last checkpoint
+    private volatile boolean requested;
+
+    // Set once the checkpointer should stop
+    private boolean closed;
+
+    // Exception that stopped the checkpointer, if taking a checkpoint failed
+    private volatile RuntimeException failure;
+
+    private Thread thread;
+
+    /**
+     * @param recoveryManager recovery manager to checkpoint
+     * @param intervalMillis maximum time between checkpoints
+     * @param logPagesBetween number of log pages written after which a checkpoint is
+     *                        taken without waiting for the interval to elapse
+     */
+    Checkpointer(ARIESRecoveryManager recoveryManager, long intervalMillis, long logPagesBetween) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive");
+        }
+        if (logPagesBetween <= 0) {
+            throw new IllegalArgumentException("logPagesBetween must be positive");
+        }
+        this.recoveryManager = recoveryManager;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.logPagesBetween = logPagesBetween;
+        this.thread = new Thread(this::run, "checkpointer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Called after a record is appended to the log, to request a checkpoint if enough
+     * log has been written since the last one.
+     * @param LSN LSN of the appended record
+     */
+    void logAppended(long LSN) {
+        if (this.requested) {
+            return;
+        }
+        long lastCheckpointPage = LogManager.getLSNPage(recoveryManager.getLastCheckpointLSN());
+        if (LogManager.getLSNPage(LSN) - lastCheckpointPage >= this.logPagesBetween) {
+            synchronized (this) {
+                this.requested = true;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops the checkpointer, waiting for a checkpoint in progress to finish.
+     * @throws IllegalStateException if the checkpointer was stopped by a failed
+     * checkpoint, with the exception it failed with as the cause
+     */
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        // not interrupted: interrupting a thread doing file I/O closes the file
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.failure != null) {
+            throw new IllegalStateException("background checkpoint failed", this.failure);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.nanoTime() + this.intervalNanos;
+                try {
+                    long remaining;
+                    while (!this.closed && !this.requested && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this.closed) {
+                    return;
+                }
+            }
+            try {
+                try {
+                    recoveryManager.writeBackOldPages();
+                } catch (PageException e) {
+                    // a page was freed from under us, so no longer needs writing back;
+                    // any others are written back before the next checkpoint
+                }
+                recoveryManager.checkpoint();
+                recoveryManager.truncateLog();
+            } catch (RuntimeException e) {
+                // would most likely fail again on every round, so stop, and report
+                // the failure when closed
+                this.failure = e;
+                return;
+            }
+            // requests made while checkpointing are satisfied by this checkpoint
+            this.requested = false;
+        }
+    }
+}
@@ -39,6 +39,11 @@ public class DummyRecoveryManager implements RecoveryManager {
         return 0L;
     }
 
+    @Override
+    public long getNumLogRecords(long transNum) {
+        return 0L;
+    }
+
     @Override
     public void pageFlushHook(long pageLSN) {}
 
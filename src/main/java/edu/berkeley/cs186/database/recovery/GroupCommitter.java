@@ -0,0 +1,149 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for the log manager. Instead of each committing transaction flushing
+ * the log itself (one page write per commit), committers register the LSN they need
+ * flushed and wait, and a single thread flushes the log once for every committer
+ * that is waiting.
+ *
+ * A batch is flushed once maxBatchSize committers are waiting, or once the first of
+ * them has waited maxDelayMillis, whichever comes first. Committers that arrive while
+ * a batch is being flushed are part of the next batch.
+ */
+class GroupCommitter {
+    private LogManager logManager;
+    private int maxBatchSize;
+    private long maxDelayNanos;
+
+    // Largest LSN requested by the current batch, and the number of committers in it
+    private long requestedLSN;
+    private int batchSize;
+
+    // When the first committer of the current batch arrived
+    private long batchStartNanos;
+
+    // Set once the group committer stops accepting committers
+    private boolean closed;
+
+    private Thread flusher;
+
+    /**
+     * @param logManager log manager whose log to flush
+     * @param maxDelayMillis longest time a committer waits for its batch to fill up
+     * @param maxBatchSize number of committers after which a batch is flushed right away
+     */
+    GroupCommitter(LogManager logManager, long maxDelayMillis, int maxBatchSize) {
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis must be nonnegative");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.logManager = logManager;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.flusher = new Thread(this::run, "log-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Waits until the log has been flushed up to LSN by the group commit thread.
+     * @param LSN LSN up to which the log must be flushed
+     * @return whether the log was flushed; false if the group committer was closed
+     * first, in which case the caller must flush the log itself
+     */
+    synchronized boolean awaitFlush(long LSN) {
+        if (this.closed) {
+            return false;
+        }
+        if (this.logManager.getFlushedLSN() >= LSN) {
+            return true;
+        }
+        if (this.batchSize == 0) {
+            this.batchStartNanos = System.nanoTime();
+            this.requestedLSN = LSN;
+        }
+        this.requestedLSN = Math.max(this.requestedLSN, LSN);
+        ++this.batchSize;
+        this.notifyAll();
+
+        // a commit must not return before it is durable, so interrupts are deferred
+        boolean interrupted = false;
+        while (this.logManager.getFlushedLSN() < LSN && !this.closed) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return this.logManager.getFlushedLSN() >= LSN;
+    }
+
+    /**
+     * Stops accepting committers, flushes the batch in progress, and waits for the
+     * group commit thread to exit.
+     */
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long LSN;
+            synchronized (this) {
+                try {
+                    while (!this.closed && !this.batchReady()) {
+                        if (this.batchSize == 0) {
+                            this.wait();
+                        } else {
+                            long remaining = this.batchStartNanos + this.maxDelayNanos - System.nanoTime();
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    this.closed = true;
+                }
+                if (this.batchSize == 0) {
+                    // closed, with nobody waiting
+                    return;
+                }
+                LSN = this.requestedLSN;
+                this.batchSize = 0;
+            }
+            // not interrupted while flushing: interrupting a thread doing file I/O
+            // closes the file
+            try {
+                this.logManager.flushToLSN(LSN);
+            } catch (RuntimeException e) {
+                // let the committers flush (and see the failure) themselves
+                synchronized (this) {
+                    this.closed = true;
+                    this.notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                this.notifyAll();
+            }
+        }
+    }
+
+    private boolean batchReady() {
+        return this.batchSize >= this.maxBatchSize ||
+               (this.batchSize > 0 && System.nanoTime() - this.batchStartNanos >= this.maxDelayNanos);
+    }
+}
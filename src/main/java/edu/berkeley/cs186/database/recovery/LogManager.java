@@ -13,11 +13,12 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The LogManager is responsible for interfacing with the log itself. The log is stored
- * on its own partition (partition 0). Since log pages are never deleted, the page number
- * is always increasing, so we assign LSNs as follow:
+ * on its own partition (partition 0). Since log pages are only ever allocated at the end
+ * of the log, the page number is always increasing, so we assign LSNs as follow:
  * - page 1: [ LSN 10000, LSN 10040, LSN 10080, ...]
  * - page 2: [ LSN 20000, LSN 20030, LSN 20055, ...]
  * - page 3: [ LSN 30000, LSN 30047, LSN 30090, ...]
@@ -33,14 +34,34 @@ import java.util.*;
  * manager when pages are fetched and evicted (fetchPageHook, fetchNewPageHook, and pageEvictHook).
  * These must be called from the buffer manager to ensure that pageLSN is up to date, and
  * that flushedLSN >= any pageLSN on disk.
+ *
+ * Appends do not take the log manager's monitor: the log tail page stays pinned while it
+ * is the tail, and an append reserves space on it by atomically advancing the tail's
+ * reserved offset, then copies its record in concurrently with other appends. Only
+ * moving on to a new tail page (when the tail is full or has been flushed) and flushing
+ * are serialized; both wait for appends still copying into the page to finish first.
+ *
+ * The log can be truncated (see truncateBefore): flushed pages at the start of the log
+ * (after page 0) that are no longer needed are freed, and are skipped by scans of the
+ * log. Truncation never goes past the checkpoint the master record points to, so a
+ * log that is opened again finds its first and last pages by starting from there.
  */
 public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     private BufferManager bufferManager;
-    private Deque<Page> unflushedLogTail;
-    private Page logTail;
-    private Buffer logTailBuffer;
-    private boolean logTailPinned = false;
-    private long flushedLSN;
+    private Deque<LogTail> unflushedLogTail;
+    // Page being appended to, null if a new page must be allocated first
+    private volatile LogTail logTail;
+    private volatile long flushedLSN;
+    // Page number of the next log page to allocate
+    private volatile long nextPageNum;
+    // First page after page 0 that has not been truncated
+    private volatile long firstLogPage = 1;
+    // LSN the master record points to; the log is not truncated past its page
+    private long masterCheckpointLSN;
+    private DummyLockContext logPageContext = new DummyLockContext("_dummyLogPageRecord");
+
+    // Group commit thread, null if not running
+    private GroupCommitter groupCommitter;
 
     public static final int LOG_PARTITION = 0;
 
@@ -48,12 +69,64 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         this.bufferManager = bufferManager;
         this.unflushedLogTail = new ArrayDeque<>();
 
-        this.logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
+        this.nextPageNum = this.findEndOfLog();
+        this.logTail = new LogTail(bufferManager.fetchNewPage(logPageContext, this.nextPageNum));
+        this.nextPageNum++;
         this.unflushedLogTail.add(this.logTail);
-        this.logTailBuffer = this.logTail.getBuffer();
-        this.logTail.unpin();
 
-        this.flushedLSN = maxLSN(this.logTail.getPageNum() - 1L);
+        this.flushedLSN = maxLSN(this.logTail.pageNum - 1L);
+    }
+
+    /**
+     * Finds the end of an existing log, and sets firstLogPage and masterCheckpointLSN
+     * from it. Pages before the page of the checkpoint the master record points to may
+     * have been truncated, but every page from there to the end of the log is allocated.
+     * @return page number of the first page after the log (0 if there is no log yet)
+     */
+    private long findEndOfLog() {
+        if (!bufferManager.pageAllocated(0L)) {
+            return 0L;
+        }
+        Page masterPage = bufferManager.fetchPage(logPageContext, 0L);
+        try {
+            Optional<LogRecord> record = LogRecord.fromBytes(masterPage.getBuffer());
+            if (record.isPresent() && record.get() instanceof MasterLogRecord) {
+                this.masterCheckpointLSN = ((MasterLogRecord) record.get()).lastCheckpointLSN;
+            }
+        } finally {
+            masterPage.unpin();
+        }
+        long start = getLSNPage(this.masterCheckpointLSN);
+
+        // pages 1 to firstLogPage - 1 are truncated; binary search for firstLogPage
+        long low = 0L;
+        long high = Math.max(start, 1L);
+        while (high - low > 1) {
+            long mid = (low + high) >>> 1;
+            if (bufferManager.pageAllocated(mid)) {
+                high = mid;
+            } else {
+                low = mid;
+            }
+        }
+        this.firstLogPage = high;
+
+        // pages start to end - 1 are allocated; find end by doubling, then binary search
+        long step = 1L;
+        while (bufferManager.pageAllocated(start + step)) {
+            step *= 2;
+        }
+        low = start + step / 2;
+        high = start + step;
+        while (high - low > 1) {
+            long mid = (low + high) >>> 1;
+            if (bufferManager.pageAllocated(mid)) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
     }
 
     /**
@@ -61,13 +134,14 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param record log record to replace first record with
      */
     public synchronized void rewriteMasterRecord(MasterLogRecord record) {
-        Page firstPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
+        Page firstPage = bufferManager.fetchPage(logPageContext, LOG_PARTITION);
         try {
             firstPage.getBuffer().put(record.toBytes());
             firstPage.flush();
         } finally {
             firstPage.unpin();
         }
+        this.masterCheckpointLSN = record.lastCheckpointLSN;
     }
 
     /**
@@ -75,35 +149,66 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param record log record to append to the log
      * @return LSN of new log record
      */
-    public synchronized long appendToLog(LogRecord record) {
+    public long appendToLog(LogRecord record) {
         byte[] bytes = record.toBytes();
-        // loop in case accessing log tail requires flushing the log in order to evict dirty page to load log tail
-        do {
-            if (logTailBuffer == null || bytes.length > DiskSpaceManager.PAGE_SIZE - logTailBuffer.position()) {
-                logTailPinned = true;
-                logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
-                unflushedLogTail.add(logTail);
-                logTailBuffer = logTail.getBuffer();
-            } else {
-                logTailPinned = true;
-                logTail.pin();
-                if (logTailBuffer == null) {
-                    logTail.unpin();
-                }
+        if (bytes.length > DiskSpaceManager.PAGE_SIZE) {
+            throw new PageException("log record does not fit on a log page");
+        }
+        while (true) {
+            LogTail tail = this.logTail;
+            int pos = tail == null ? -1 : tail.reserve(bytes.length);
+            if (pos < 0) {
+                // no tail, or no room left on it
+                this.nextLogTail(tail);
+                continue;
             }
-        } while (logTailBuffer == null);
-        try {
-            int pos = logTailBuffer.position();
-            logTailBuffer.put(bytes);
-            long LSN = makeLSN(unflushedLogTail.getLast().getPageNum(), pos);
+            try {
+                Buffer buf = tail.page.getBuffer();
+                buf.position(pos);
+                buf.put(bytes);
+            } finally {
+                tail.written.addAndGet(bytes.length);
+            }
+            long LSN = makeLSN(tail.pageNum, pos);
             record.LSN = LSN;
             return LSN;
-        } finally {
-            logTail.unpin();
-            logTailPinned = false;
         }
     }
 
+    /**
+     * Replaces the log tail with a newly allocated log page, unless another thread
+     * already did so.
+     * @param oldTail log tail that was found to be full (or null, if there was none)
+     */
+    private synchronized void nextLogTail(LogTail oldTail) {
+        if (this.logTail != oldTail) {
+            return;
+        }
+        if (oldTail != null) {
+            this.sealLogTail();
+        }
+        // may evict a dirty page and thereby flush the log, which is fine: there is
+        // no tail to seal in the meantime
+        LogTail tail = new LogTail(bufferManager.fetchNewPage(logPageContext, this.nextPageNum));
+        this.nextPageNum++;
+        this.unflushedLogTail.add(tail);
+        this.logTail = tail;
+    }
+
+    /**
+     * Stops appends to the current log tail, waits for appends still copying into it
+     * to finish, and unpins it. Must be called while holding this object's monitor.
+     */
+    private void sealLogTail() {
+        LogTail tail = this.logTail;
+        this.logTail = null;
+        int end = tail.reserved.getAndSet(LogTail.SEALED);
+        while (tail.written.get() < end) {
+            Thread.yield();
+        }
+        tail.page.unpin();
+    }
+
     /**
      * Fetches a specific log record.
      * @param LSN LSN of record to fetch
@@ -111,7 +216,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      */
     public LogRecord fetchLogRecord(long LSN) {
         try {
-            Page logPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
+            Page logPage = bufferManager.fetchPage(logPageContext, getLSNPage(LSN));
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(getLSNIndex(LSN));
@@ -133,23 +238,121 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param LSN LSN up to which the log should be flushed
      */
     public synchronized void flushToLSN(long LSN) {
-        Iterator<Page> iter = unflushedLogTail.iterator();
         long pageNum = getLSNPage(LSN);
+        // a flushed log page is never appended to again
+        LogTail tail = this.logTail;
+        if (tail != null && tail.pageNum <= pageNum) {
+            this.sealLogTail();
+        }
+        Iterator<LogTail> iter = unflushedLogTail.iterator();
         while (iter.hasNext()) {
-            Page page = iter.next();
-            if (page.getPageNum() > pageNum) {
+            LogTail page = iter.next();
+            if (page.pageNum > pageNum) {
                 break;
             }
-            page.flush();
+            page.page.flush();
             iter.remove();
         }
         flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
-        if (unflushedLogTail.size() == 0) {
-            if (!logTailPinned) {
-                logTail = null;
+    }
+
+    /**
+     * Flushes the log to at least the specified record, like flushToLSN. If group
+     * commit is running, the flush is left to the group commit thread, which flushes
+     * the log once for every caller waiting at the time; this method then blocks
+     * until that happens.
+     * @param LSN LSN up to which the log should be flushed
+     */
+    public void groupFlushToLSN(long LSN) {
+        GroupCommitter groupCommitter;
+        synchronized (this) {
+            groupCommitter = this.groupCommitter;
+        }
+        if (groupCommitter == null || !groupCommitter.awaitFlush(LSN)) {
+            this.flushToLSN(LSN);
+        }
+    }
+
+    /**
+     * Starts group commit: a background thread that flushes the log on behalf of
+     * callers of groupFlushToLSN, in batches. Does nothing if group commit is already
+     * running.
+     *
+     * @param maxDelayMillis longest time a caller waits for other callers to join its
+     *                       batch before the batch is flushed
+     * @param maxBatchSize number of callers after which a batch is flushed right away
+     */
+    public synchronized void startGroupCommit(long maxDelayMillis, int maxBatchSize) {
+        if (this.groupCommitter != null) {
+            return;
+        }
+        this.groupCommitter = new GroupCommitter(this, maxDelayMillis, maxBatchSize);
+    }
+
+    /**
+     * Stops group commit, if running, after flushing the batch in progress, and
+     * waits for its thread to exit.
+     */
+    public void stopGroupCommit() {
+        GroupCommitter groupCommitter;
+        // not synchronized while closing: the group commit thread needs the monitor
+        // to flush the last batch
+        synchronized (this) {
+            groupCommitter = this.groupCommitter;
+            this.groupCommitter = null;
+        }
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
+    }
+
+    /**
+     * Truncates the log, freeing the pages before the page of LSN, other than page 0.
+     * Pages that have not been flushed yet, and pages from the page of the checkpoint
+     * the master record points to on, are kept. Records on freed pages can no longer be
+     * fetched, and scans of the log skip them.
+     *
+     * Must not be called by a thread running a transaction: freeing pages on behalf of
+     * a transaction logs the pages' contents.
+     *
+     * @param LSN LSN of the oldest log record that must be kept
+     * @return number of log pages freed
+     */
+    public int truncateBefore(long LSN) {
+        long first;
+        long end;
+        synchronized (this) {
+            end = Math.min(getLSNPage(LSN), getLSNPage(this.masterCheckpointLSN));
+            // every page before the oldest unflushed page has been flushed
+            LogTail oldestUnflushed = this.unflushedLogTail.peekFirst();
+            end = Math.min(end, oldestUnflushed == null ? this.nextPageNum : oldestUnflushed.pageNum);
+            first = this.firstLogPage;
+            if (end <= first) {
+                return 0;
             }
-            logTailBuffer = null;
+            // scans skip these pages from now on, while they are being freed
+            this.firstLogPage = end;
         }
+        for (long pageNum = first; pageNum < end; ++pageNum) {
+            bufferManager.freePage(pageNum);
+        }
+        return (int) (end - first);
+    }
+
+    /**
+     * @return the LSN of the first record in the log after page 0 that has not been
+     * truncated, or of where it will be appended
+     */
+    public long getFirstLSN() {
+        return makeLSN(this.firstLogPage, 0);
+    }
+
+    /**
+     * @return an LSN no greater than that of any record appended after this call
+     */
+    long getMinNextLSN() {
+        // the tail, if there is one, is the page before nextPageNum
+        return makeLSN(this.nextPageNum - 1, 0);
     }
 
     /**
@@ -215,9 +418,50 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     }
 
     @Override
-    public synchronized void close() {
-        if (!this.unflushedLogTail.isEmpty()) {
-            this.flushToLSN(maxLSN(unflushedLogTail.getLast().getPageNum()));
+    public void close() {
+        this.stopGroupCommit();
+        synchronized (this) {
+            if (!this.unflushedLogTail.isEmpty()) {
+                this.flushToLSN(maxLSN(unflushedLogTail.getLast().pageNum));
+            }
+        }
+    }
+
+    /**
+     * A log page that has been appended to but not flushed. Space on the page is
+     * reserved by advancing reserved, and written counts the bytes of reserved space
+     * whose records have been copied in; once reserved is sealed, no more space can
+     * be reserved.
+     */
+    private static class LogTail {
+        // larger than any offset, so that no reservation fits after it
+        private static final int SEALED = DiskSpaceManager.PAGE_SIZE + 1;
+
+        private Page page;
+        private long pageNum;
+        private AtomicInteger reserved = new AtomicInteger();
+        private AtomicInteger written = new AtomicInteger();
+
+        private LogTail(Page page) {
+            this.page = page;
+            this.pageNum = page.getPageNum();
+        }
+
+        /**
+         * Reserves length bytes on this page.
+         * @param length number of bytes to reserve
+         * @return offset of the reserved space, or -1 if it does not fit
+         */
+        private int reserve(int length) {
+            while (true) {
+                int pos = reserved.get();
+                if (pos + length > DiskSpaceManager.PAGE_SIZE) {
+                    return -1;
+                }
+                if (reserved.compareAndSet(pos, pos + length)) {
+                    return pos;
+                }
+            }
         }
     }
 
@@ -313,7 +557,8 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
                 nextIter = null;
                 do {
-                    ++nextIndex;
+                    // truncated pages are skipped
+                    nextIndex = Math.max(nextIndex + 1, firstLogPage);
                     try {
                         Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
                         nextIter = new LogPageIterator(page, 0);
@@ -217,6 +217,8 @@ public abstract class LogRecord {
             return UndoAllocPartLogRecord.fromBytes(buf);
         case UNDO_FREE_PART:
             return UndoFreePartLogRecord.fromBytes(buf);
+        case UPDATE_PAGE_COMPACT:
+            return UpdatePageLogRecord.fromCompactBytes(buf);
         default:
             throw new UnsupportedOperationException("bad log type");
         }
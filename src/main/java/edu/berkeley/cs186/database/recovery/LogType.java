@@ -33,7 +33,10 @@ public enum LogType {
     // compensation log record for undoing a partition alloc
     UNDO_ALLOC_PART,
     // compensation log record for undoing a partition free
-    UNDO_FREE_PART;
+    UNDO_FREE_PART,
+    // compact encoding of an UPDATE_PAGE record; only used as the type byte of the
+    // encoding, since such records are read back as UPDATE_PAGE records
+    UPDATE_PAGE_COMPACT;
 
     private static LogType[] values = LogType.values();
 
@@ -0,0 +1,146 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Worker threads for the redo pass of restart recovery. Records are routed to a worker
+ * by page number, so records for the same page are redone by the same worker, in the
+ * order they were dispatched; records for different pages are redone concurrently.
+ *
+ * Records that do not belong to a single page (partition operations, page allocation)
+ * must not run concurrently with page records: the dispatcher calls drain() to wait for
+ * all dispatched records to be redone before redoing such a record itself.
+ */
+class ParallelRedo implements AutoCloseable {
+    // marks the end of a worker's queue
+    private static final LogRecord STOP = new MasterLogRecord(0);
+
+    private Consumer<LogRecord> redo;
+    private List<BlockingQueue<LogRecord>> queues = new ArrayList<>();
+    private List<Thread> workers = new ArrayList<>();
+
+    // Number of dispatched records not yet redone
+    private int pending;
+
+    // First exception thrown by a worker, rethrown to the dispatcher
+    private RuntimeException failure;
+
+    /**
+     * @param numWorkers number of worker threads
+     * @param redo redoes a single record
+     */
+    ParallelRedo(int numWorkers, Consumer<LogRecord> redo) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("numWorkers must be positive");
+        }
+        this.redo = redo;
+        for (int i = 0; i < numWorkers; ++i) {
+            BlockingQueue<LogRecord> queue = new LinkedBlockingQueue<>();
+            Thread worker = new Thread(() -> this.run(queue), "redo-worker-" + i);
+            worker.setDaemon(true);
+            this.queues.add(queue);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a record to be redone by the worker responsible for its page.
+     * @param record record to redo, which must have a page number
+     */
+    void dispatch(LogRecord record) {
+        long pageNum = record.getPageNum().orElseThrow(IllegalArgumentException::new);
+        int worker = (int) Math.floorMod(pageNum, (long) queues.size());
+        synchronized (this) {
+            this.throwIfFailed();
+            ++this.pending;
+        }
+        queues.get(worker).add(record);
+    }
+
+    /**
+     * Waits until every record dispatched so far has been redone.
+     */
+    synchronized void drain() {
+        boolean interrupted = false;
+        while (this.pending > 0) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.throwIfFailed();
+    }
+
+    /**
+     * Waits for every dispatched record to be redone and stops the workers.
+     */
+    @Override
+    public void close() {
+        try {
+            this.drain();
+        } finally {
+            for (BlockingQueue<LogRecord> queue : queues) {
+                queue.add(STOP);
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void run(BlockingQueue<LogRecord> queue) {
+        while (true) {
+            LogRecord record;
+            try {
+                record = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (record == STOP) {
+                return;
+            }
+            RuntimeException exception = null;
+            try {
+                // records queued after a failure are skipped: restart is failing anyway
+                if (!this.hasFailed()) {
+                    this.redo.accept(record);
+                }
+            } catch (RuntimeException e) {
+                exception = e;
+            }
+            synchronized (this) {
+                if (exception != null && this.failure == null) {
+                    this.failure = exception;
+                }
+                if (--this.pending == 0) {
+                    this.notifyAll();
+                }
+            }
+        }
+    }
+
+    private synchronized boolean hasFailed() {
+        return this.failure != null;
+    }
+
+    private void throwIfFailed() {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+}
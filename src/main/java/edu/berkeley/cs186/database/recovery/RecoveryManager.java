@@ -59,6 +59,13 @@ public interface RecoveryManager extends AutoCloseable {
      */
     void pageFlushHook(long pageLSN);
 
+    /**
+     * @param transNum transaction number
+     * @return number of undoable log records the running transaction has written,
+     * or 0 if it is not running
+     */
+    long getNumLogRecords(long transNum);
+
     /**
      * Called when a page has been updated on disk.
      * @param pageNum page number of page updated on disk
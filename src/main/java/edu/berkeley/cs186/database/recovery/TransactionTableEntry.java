@@ -11,7 +11,14 @@ class TransactionTableEntry {
     // Transaction object for the transaction.
     Transaction transaction;
     // lastLSN of transaction, or 0 if no log entries for the transaction exist.
-    long lastLSN = 0;
+    // Read by checkpoints while the transaction runs.
+    volatile long lastLSN = 0;
+    // LSN no greater than that of the transaction's first log record, or 0 if not
+    // known. The log is not truncated past it while the transaction runs.
+    long startLSN = 0;
+    // Number of undoable log records written by the transaction (the work an
+    // abort has to undo). Only written by the transaction's thread.
+    volatile long numLogRecords = 0;
     // map of transaction's savepoints
     private Map<String, Long> savepoints = new HashMap<>();
 
@@ -0,0 +1,163 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Helpers for the compact encoding of log records: variable-length integers, and an
+ * LZ4-style block compressor for page images.
+ *
+ * Variable-length integers are unsigned LEB128: 7 bits per byte, least significant
+ * group first, with the high bit set on every byte but the last.
+ *
+ * Compressed blocks are a sequence of (literals, match) pairs, each starting with a
+ * token byte whose high nibble is the number of literals and low nibble the match
+ * length minus MIN_MATCH; a nibble of 15 is followed by bytes of 255 and a final byte
+ * less than 255, which are added to it. The literals follow, then the match offset
+ * (2 bytes, little endian) and match extension bytes. The last pair has no match.
+ */
+class CompactEncoding {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+
+    private CompactEncoding() {}
+
+    static void putVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long getVarLong(Buffer buf) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed variable-length integer");
+    }
+
+    /**
+     * @return the compressed form of src, in the format described above
+     */
+    static byte[] compress(byte[] src) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(src.length / 2 + 16);
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= src.length) {
+            int h = hash(src, i);
+            int ref = table[h];
+            table[h] = i;
+            if (ref >= 0 && i - ref <= MAX_OFFSET && matches(src, ref, i)) {
+                int length = MIN_MATCH;
+                while (i + length < src.length && src[ref + length] == src[i + length]) {
+                    ++length;
+                }
+                writeSequence(out, src, anchor, i - anchor, i - ref, length);
+                i += length;
+                anchor = i;
+            } else {
+                ++i;
+            }
+        }
+        writeSequence(out, src, anchor, src.length - anchor, 0, 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param src compressed block, as returned by compress
+     * @param length length of the uncompressed data
+     * @return the uncompressed data
+     */
+    static byte[] decompress(byte[] src, int length) {
+        byte[] dst = new byte[length];
+        int in = 0;
+        int out = 0;
+        while (true) {
+            int token = src[in++] & 0xFF;
+            int numLiterals = token >>> 4;
+            if (numLiterals == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xFF;
+                    numLiterals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, in, dst, out, numLiterals);
+            in += numLiterals;
+            out += numLiterals;
+            if (in == src.length) {
+                break;
+            }
+            int offset = (src[in] & 0xFF) | (src[in + 1] & 0xFF) << 8;
+            in += 2;
+            int matchLength = (token & 0xF);
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            // byte by byte: the match may overlap the bytes it produces
+            for (int j = 0; j < matchLength; ++j, ++out) {
+                dst[out] = dst[out - offset];
+            }
+        }
+        if (out != length) {
+            throw new IllegalArgumentException("compressed block has wrong length");
+        }
+        return dst;
+    }
+
+    /**
+     * Writes numLiterals bytes of src starting at start, followed by a match of
+     * matchLength bytes at the given offset back (no match if matchLength is 0).
+     */
+    private static void writeSequence(ByteArrayOutputStream out, byte[] src, int start, int numLiterals,
+                                      int offset, int matchLength) {
+        int matchNibble = matchLength == 0 ? 0 : Math.min(matchLength - MIN_MATCH, 15);
+        out.write(Math.min(numLiterals, 15) << 4 | matchNibble);
+        if (numLiterals >= 15) {
+            writeLength(out, numLiterals - 15);
+        }
+        out.write(src, start, numLiterals);
+        if (matchLength == 0) {
+            return;
+        }
+        out.write(offset & 0xFF);
+        out.write(offset >>> 8);
+        if (matchLength - MIN_MATCH >= 15) {
+            writeLength(out, matchLength - MIN_MATCH - 15);
+        }
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        while (length >= 255) {
+            out.write(255);
+            length -= 255;
+        }
+        out.write(length);
+    }
+
+    private static boolean matches(byte[] src, int ref, int i) {
+        return src[ref] == src[i] && src[ref + 1] == src[i + 1] &&
+               src[ref + 2] == src[i + 2] && src[ref + 3] == src[i + 3];
+    }
+
+    private static int hash(byte[] src, int i) {
+        int v = (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | src[i + 3] << 24;
+        return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
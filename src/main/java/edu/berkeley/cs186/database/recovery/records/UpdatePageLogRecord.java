@@ -10,17 +10,24 @@ import edu.berkeley.cs186.database.recovery.LogRecord;
 import edu.berkeley.cs186.database.recovery.LogType;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 
 public class UpdatePageLogRecord extends LogRecord {
+    // images at least this long are compressed in the compact encoding, if that helps
+    private static final int COMPRESSION_THRESHOLD = 64;
+    // flag bits of the compact encoding
+    private static final int COMPRESSED = 1;
+
     private long transNum; // transaction that updated the page
     private long pageNum; // page that was updated
     private long prevLSN; // previous log's LSN
     public short offset; // position of first changed byte
     public byte[] before; // old bytes (before update)
     public byte[] after; // new bytes (after update)
+    private boolean compact; // whether toBytes uses the compact encoding
 
     /**
      * @param transNum transaction number of transaction that updated the page
@@ -41,6 +48,27 @@ public class UpdatePageLogRecord extends LogRecord {
         this.after = after;
     }
 
+    /**
+     * Chooses the compact encoding (type UPDATE_PAGE_COMPACT) for this record when it
+     * is written to the log. The compact encoding stores numbers as variable-length
+     * integers, and the before image as its XOR with the after image, so that bytes
+     * the update did not change are zero; images of at least COMPRESSION_THRESHOLD
+     * bytes are compressed if that makes them smaller. Either encoding is read back
+     * as an UpdatePageLogRecord.
+     *
+     * @param compact whether to use the compact encoding
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * @return whether this record is written in the compact encoding
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
     @Override
     public Optional<Long> getTransNum() {
         return Optional.of(transNum);
@@ -85,6 +113,9 @@ public class UpdatePageLogRecord extends LogRecord {
 
     @Override
     public byte[] toBytes() {
+        if (compact) {
+            return toCompactBytes();
+        }
         byte[] b = new byte[31 + before.length + after.length];
         ByteBuffer.wrap(b)
         .put((byte) getType().getValue())
@@ -110,6 +141,68 @@ public class UpdatePageLogRecord extends LogRecord {
         return Optional.of(new UpdatePageLogRecord(transNum, pageNum, prevLSN, offset, before, after));
     }
 
+    /**
+     * Compact encoding: type, then transNum, pageNum, prevLSN, offset and image
+     * length as variable-length integers, then a flags byte, then the after image
+     * followed by the XOR of the before and after images - compressed (preceded by
+     * its compressed length) if the COMPRESSED flag is set.
+     */
+    private byte[] toCompactBytes() {
+        byte[] images = new byte[2 * after.length];
+        System.arraycopy(after, 0, images, 0, after.length);
+        for (int i = 0; i < before.length; ++i) {
+            images[after.length + i] = (byte) (before[i] ^ after[i]);
+        }
+        int flags = 0;
+        if (images.length >= 2 * COMPRESSION_THRESHOLD) {
+            byte[] compressed = CompactEncoding.compress(images);
+            if (compressed.length < images.length) {
+                images = compressed;
+                flags |= COMPRESSED;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(24 + images.length);
+        out.write(LogType.UPDATE_PAGE_COMPACT.getValue());
+        CompactEncoding.putVarLong(out, transNum);
+        CompactEncoding.putVarLong(out, pageNum);
+        CompactEncoding.putVarLong(out, prevLSN);
+        CompactEncoding.putVarLong(out, offset);
+        CompactEncoding.putVarLong(out, after.length);
+        out.write(flags);
+        if ((flags & COMPRESSED) != 0) {
+            CompactEncoding.putVarLong(out, images.length);
+        }
+        out.write(images, 0, images.length);
+        return out.toByteArray();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        int length = (int) CompactEncoding.getVarLong(buf);
+        int flags = buf.get();
+        byte[] images;
+        if ((flags & COMPRESSED) != 0) {
+            byte[] compressed = new byte[(int) CompactEncoding.getVarLong(buf)];
+            buf.get(compressed);
+            images = CompactEncoding.decompress(compressed, 2 * length);
+        } else {
+            images = new byte[2 * length];
+            buf.get(images);
+        }
+        byte[] after = Arrays.copyOfRange(images, 0, length);
+        byte[] before = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            before[i] = (byte) (images[length + i] ^ after[i]);
+        }
+        UpdatePageLogRecord record = new UpdatePageLogRecord(transNum, pageNum, prevLSN, offset, before, after);
+        record.compact = true;
+        return Optional.of(record);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
@@ -0,0 +1,255 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.*;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of one column of a RecordBatch, stored in a primitive array
+ * according to the column's type:
+ *
+ *   - BOOL columns in getBools(),
+ *   - INT columns in getInts(),
+ *   - FLOAT columns in getFloats(),
+ *   - LONG columns in getLongs(), and
+ *   - STRING columns as codes in getCodes(), indexing the distinct strings of the
+ *     column in getDictionary().
+ *
+ * Byte array columns, and columns computed by expressions (see boxed), are stored
+ * as DataBoxes, in getValues().
+ *
+ *   ColumnVector v = new ColumnVector(Type.stringType(4), 3);
+ *   v.append(new StringDataBox("a", 4));
+ *   v.append(new StringDataBox("b", 4));
+ *   v.append(new StringDataBox("a", 4));
+ *   v.getCodes();      // [0, 1, 0]
+ *   v.getDictionary(); // ["a", "b"]
+ *   v.get(2);          // StringDataBox("a", 4)
+ */
+public class ColumnVector {
+    private Type type;
+    private boolean boxed;
+    private int size;
+
+    // Values, in the array matching the type (the others are null).
+    private boolean[] bools;
+    private int[] ints;
+    private float[] floats;
+    private long[] longs;
+    private DataBox[] values;
+
+    // Distinct strings of a STRING column, by code (stored in ints).
+    private List<String> dictionary;
+    private Map<String, Integer> codes;
+
+    /**
+     * Creates an empty column vector of the given type, holding up to `capacity`
+     * values.
+     */
+    public ColumnVector(Type type, int capacity) {
+        this(type, capacity, false);
+    }
+
+    private ColumnVector(Type type, int capacity, boolean boxed) {
+        this.type = type;
+        this.boxed = boxed || type.getTypeId() == TypeId.BYTE_ARRAY;
+        this.size = 0;
+        if (this.boxed) {
+            this.values = new DataBox[capacity];
+            return;
+        }
+        switch (type.getTypeId()) {
+        case BOOL:
+            this.bools = new boolean[capacity];
+            break;
+        case INT:
+            this.ints = new int[capacity];
+            break;
+        case FLOAT:
+            this.floats = new float[capacity];
+            break;
+        case LONG:
+            this.longs = new long[capacity];
+            break;
+        case STRING:
+            this.ints = new int[capacity];
+            this.dictionary = new ArrayList<>();
+            this.codes = new HashMap<>();
+            break;
+        default:
+            throw new IllegalArgumentException("Unhandled TypeId " + type.getTypeId());
+        }
+    }
+
+    /**
+     * Creates a column vector of the given DataBoxes, stored as they are. Used for
+     * values computed one record at a time, which are already boxed.
+     */
+    public static ColumnVector boxed(Type type, DataBox[] values) {
+        ColumnVector vector = new ColumnVector(type, 0, true);
+        vector.values = values;
+        vector.size = values.length;
+        return vector;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return true if the values are stored as DataBoxes, in getValues()
+     */
+    public boolean isBoxed() {
+        return this.boxed;
+    }
+
+    /**
+     * @return the number of values in this vector
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean[] getBools() {
+        return this.bools;
+    }
+
+    public int[] getInts() {
+        return this.dictionary == null ? this.ints : null;
+    }
+
+    public float[] getFloats() {
+        return this.floats;
+    }
+
+    public long[] getLongs() {
+        return this.longs;
+    }
+
+    /**
+     * @return the dictionary codes of the values of a STRING column
+     */
+    public int[] getCodes() {
+        return this.dictionary == null ? null : this.ints;
+    }
+
+    /**
+     * @return the distinct strings of a STRING column, indexed by code
+     */
+    public List<String> getDictionary() {
+        return this.dictionary;
+    }
+
+    public DataBox[] getValues() {
+        return this.values;
+    }
+
+    /**
+     * Appends a value to this vector. The value must be of the vector's type,
+     * unless the vector is boxed.
+     */
+    public void append(DataBox value) {
+        if (this.boxed) {
+            this.values[this.size++] = value;
+            return;
+        }
+        switch (this.type.getTypeId()) {
+        case BOOL:
+            this.bools[this.size++] = value.getBool();
+            break;
+        case INT:
+            this.ints[this.size++] = value.getInt();
+            break;
+        case FLOAT:
+            this.floats[this.size++] = value.getFloat();
+            break;
+        case LONG:
+            this.longs[this.size++] = value.getLong();
+            break;
+        case STRING:
+            this.ints[this.size++] = encode(value.getString());
+            break;
+        default:
+            throw new IllegalArgumentException("Unhandled TypeId " + this.type.getTypeId());
+        }
+    }
+
+    /**
+     * Decodes a value serialized as by DataBox#toBytes, and appends it to this
+     * vector, without creating a DataBox for it (unless the vector is boxed).
+     */
+    void append(Buffer buf) {
+        if (this.boxed) {
+            this.values[this.size++] = DataBox.fromBytes(buf, this.type);
+            return;
+        }
+        switch (this.type.getTypeId()) {
+        case BOOL:
+            this.bools[this.size++] = buf.get() == 1;
+            break;
+        case INT:
+            this.ints[this.size++] = buf.getInt();
+            break;
+        case FLOAT:
+            this.floats[this.size++] = buf.getFloat();
+            break;
+        case LONG:
+            this.longs[this.size++] = buf.getLong();
+            break;
+        case STRING: {
+            byte[] bytes = new byte[this.type.getSizeInBytes()];
+            buf.get(bytes);
+            // trailing null bytes are padding (see StringDataBox)
+            int length = bytes.length;
+            while (length > 0 && bytes[length - 1] == 0) {
+                --length;
+            }
+            this.ints[this.size++] = encode(new String(bytes, 0, length, Charset.forName("UTF-8")));
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unhandled TypeId " + this.type.getTypeId());
+        }
+    }
+
+    private int encode(String s) {
+        Integer code = this.codes.get(s);
+        if (code == null) {
+            code = this.dictionary.size();
+            this.dictionary.add(s);
+            this.codes.put(s, code);
+        }
+        return code;
+    }
+
+    /**
+     * @return the value at index `row` of this vector, as a DataBox
+     */
+    public DataBox get(int row) {
+        if (row < 0 || row >= this.size) {
+            throw new IndexOutOfBoundsException("row " + row + " of a vector of size " + this.size);
+        }
+        if (this.boxed) {
+            return this.values[row];
+        }
+        switch (this.type.getTypeId()) {
+        case BOOL:
+            return new BoolDataBox(this.bools[row]);
+        case INT:
+            return new IntDataBox(this.ints[row]);
+        case FLOAT:
+            return new FloatDataBox(this.floats[row]);
+        case LONG:
+            return new LongDataBox(this.longs[row]);
+        case STRING:
+            return new StringDataBox(this.dictionary.get(this.ints[row]), this.type.getSizeInBytes());
+        default:
+            throw new IllegalArgumentException("Unhandled TypeId " + this.type.getTypeId());
+        }
+    }
+}
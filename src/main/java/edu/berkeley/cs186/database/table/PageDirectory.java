@@ -47,6 +47,9 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     private static final short HEADER_ENTRY_COUNT = (BufferManager.EFFECTIVE_PAGE_SIZE -
             HEADER_HEADER_SIZE) / DataPageEntry.SIZE;
 
+    // number of entries ahead of a scan whose data pages are hinted to the prefetcher
+    private static final int READ_AHEAD_ENTRIES = 16;
+
     // size of the header in data pages
     private static final short DATA_HEADER_SIZE = 10;
 
@@ -393,6 +396,9 @@ public class PageDirectory implements BacktrackingIterable<Page> {
 
         // iterator over the data pages managed by this header page
         private class HeaderPageIterator extends IndexBacktrackingIterator<Page> {
+            // last entry whose data page was hinted to the buffer manager
+            private int prefetchedIndex = -1;
+
             private HeaderPageIterator() {
                 super(HEADER_ENTRY_COUNT);
             }
@@ -422,11 +428,33 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    this.prefetchAfter(b, index);
                     return new DataPage(pageDirectoryId, bufferManager.fetchPage(lockContext, dpe.pageNum));
                 } finally {
                     HeaderPage.this.page.unpin();
                 }
             }
+
+            // hints the data pages of the READ_AHEAD_ENTRIES entries after index to the
+            // buffer manager, once the scan is halfway through the previous batch
+            private void prefetchAfter(Buffer b, int index) {
+                if (this.prefetchedIndex > index + READ_AHEAD_ENTRIES / 2) {
+                    return;
+                }
+                int start = Math.max(index, this.prefetchedIndex) + 1;
+                int end = Math.min(index + READ_AHEAD_ENTRIES, HEADER_ENTRY_COUNT - 1);
+                if (start > end) {
+                    return;
+                }
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * start);
+                for (int i = start; i <= end; ++i) {
+                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    if (dpe.isValid()) {
+                        bufferManager.prefetch(dpe.pageNum);
+                    }
+                }
+                this.prefetchedIndex = end;
+            }
         }
     }
 
@@ -0,0 +1,230 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A batch of records stored column by column, in one ColumnVector per field of
+ * their schema, for operators that process many records per call (see
+ * QueryOperator#batchIterator).
+ *
+ * A batch may have a selection vector: the (increasing) indices of the rows of
+ * its vectors that are in the batch. Filtering a batch only builds a new selection
+ * vector, and leaves the column vectors as they are. The i-th record of a batch is
+ * at row getRow(i) of its vectors.
+ *
+ *   for (int i = 0; i < batch.size(); ++i) {
+ *       int x = batch.getColumn(0).getInts()[batch.getRow(i)];
+ *       ...
+ *   }
+ */
+public class RecordBatch {
+    // The maximum number of records of batches built from records.
+    public static final int BATCH_SIZE = 1024;
+
+    private List<ColumnVector> columns;
+    private int numRows;
+
+    // The rows in the batch, or null if all the rows of the vectors are.
+    private int[] selection;
+    private int numSelected;
+
+    /**
+     * Creates a batch of all the rows of `columns`, which must all be of size
+     * `numRows`.
+     */
+    public RecordBatch(List<ColumnVector> columns, int numRows) {
+        this.columns = columns;
+        this.numRows = numRows;
+        this.selection = null;
+        this.numSelected = numRows;
+    }
+
+    /**
+     * Creates a batch of the rows of `columns` in the first `numSelected` entries of
+     * `selection`.
+     */
+    public RecordBatch(List<ColumnVector> columns, int numRows, int[] selection, int numSelected) {
+        this.columns = columns;
+        this.numRows = numRows;
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    /**
+     * Creates an empty batch of the given schema.
+     */
+    public static RecordBatch empty(Schema schema) {
+        List<ColumnVector> columns = new ArrayList<>();
+        for (Type type : schema.getFieldTypes()) {
+            columns.add(new ColumnVector(type, 0));
+        }
+        return new RecordBatch(columns, 0);
+    }
+
+    /**
+     * @return the number of records in this batch
+     */
+    public int size() {
+        return this.numSelected;
+    }
+
+    public boolean isEmpty() {
+        return this.numSelected == 0;
+    }
+
+    /**
+     * @return the row of the column vectors holding the i-th record of this batch
+     */
+    public int getRow(int i) {
+        return this.selection == null ? i : this.selection[i];
+    }
+
+    /**
+     * @return the selection vector of this batch, or null if all the rows of its
+     * vectors are in the batch
+     */
+    public int[] getSelection() {
+        return this.selection;
+    }
+
+    /**
+     * @return the number of rows of the column vectors, selected or not
+     */
+    public int getNumRows() {
+        return this.numRows;
+    }
+
+    public int getNumColumns() {
+        return this.columns.size();
+    }
+
+    public ColumnVector getColumn(int i) {
+        return this.columns.get(i);
+    }
+
+    public List<ColumnVector> getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * @return a batch of the records of this batch at the positions in the first
+     * `n` entries of `positions` (which must be increasing), sharing this batch's
+     * column vectors
+     */
+    public RecordBatch select(int[] positions, int n) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; ++i) {
+            rows[i] = getRow(positions[i]);
+        }
+        return new RecordBatch(this.columns, this.numRows, rows, n);
+    }
+
+    /**
+     * @return a batch of the records of this batch, with the given column vectors
+     * (of the same number of rows as this batch's) in place of its own
+     */
+    public RecordBatch withColumns(List<ColumnVector> columns) {
+        return new RecordBatch(columns, this.numRows, this.selection, this.numSelected);
+    }
+
+    /**
+     * @return the i-th record of this batch
+     */
+    public Record getRecord(int i) {
+        int row = getRow(i);
+        List<DataBox> values = new ArrayList<>(this.columns.size());
+        for (ColumnVector column : this.columns) {
+            values.add(column.get(row));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * @return a batch of the given records of the given schema, with the values of
+     * each column stored as they are, in a boxed column vector (see
+     * ColumnVector#boxed)
+     */
+    public static RecordBatch boxed(List<Record> records, Schema schema) {
+        List<ColumnVector> columns = new ArrayList<>();
+        for (int i = 0; i < schema.size(); ++i) {
+            DataBox[] values = new DataBox[records.size()];
+            for (int j = 0; j < records.size(); ++j) {
+                values[j] = records.get(j).getValue(i);
+            }
+            columns.add(ColumnVector.boxed(schema.getFieldType(i), values));
+        }
+        return new RecordBatch(columns, records.size());
+    }
+
+    /**
+     * @param records an iterator of records
+     * @param schema the schema of the records
+     * @return an iterator over batches of up to BATCH_SIZE of the records, for
+     * operators that only produce records
+     */
+    public static Iterator<RecordBatch> fromRecords(Iterator<Record> records, Schema schema) {
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<ColumnVector> columns = new ArrayList<>();
+                for (Type type : schema.getFieldTypes()) {
+                    columns.add(new ColumnVector(type, BATCH_SIZE));
+                }
+                int numRows = 0;
+                for (; numRows < BATCH_SIZE && records.hasNext(); ++numRows) {
+                    Record record = records.next();
+                    for (int i = 0; i < columns.size(); ++i) {
+                        columns.get(i).append(record.getValue(i));
+                    }
+                }
+                return new RecordBatch(columns, numRows);
+            }
+        };
+    }
+
+    /**
+     * @param batches an iterator of batches
+     * @return an iterator over the records of the batches, for operators that only
+     * consume records
+     */
+    public static Iterator<Record> toRecords(Iterator<RecordBatch> batches) {
+        return new Iterator<Record>() {
+            private RecordBatch batch = null;
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (this.batch == null || this.index >= this.batch.size()) {
+                    if (!batches.hasNext()) {
+                        return false;
+                    }
+                    this.batch = batches.next();
+                    this.index = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.batch.getRecord(this.index++);
+            }
+        };
+    }
+}
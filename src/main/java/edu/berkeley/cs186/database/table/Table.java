@@ -1,8 +1,10 @@
 package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.iterator.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.ConcatBacktrackingIterator;
@@ -10,13 +12,14 @@ import edu.berkeley.cs186.database.common.iterator.IndexBacktrackingIterator;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.concurrency.OptimisticValidator;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
 
 /**
  * # Overview
@@ -109,6 +112,12 @@ public class Table implements BacktrackingIterable<Record> {
     // The lock context of the table.
     private LockContext tableContext;
 
+    // Prior versions of records, for snapshot reads, or null if not kept.
+    private VersionStore versionStore;
+
+    // Validator of optimistic transactions, or null if there are none.
+    private OptimisticValidator validator;
+
     // Statistics about the contents of the database.
     Map<String, TableStats> stats;
 
@@ -123,6 +132,8 @@ public class Table implements BacktrackingIterable<Record> {
         this.pageDirectory = pageDirectory;
         this.schema = schema;
         this.tableContext = lockContext;
+        // pages have no lock context until they are locked
+        this.tableContext.setCapacity(pageDirectory.getNumDataPages());
 
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(pageDirectory.getEffectivePageSize(), schema);
         this.numRecordsPerPage = computeNumRecordsPerPage(pageDirectory.getEffectivePageSize(), schema);
@@ -168,6 +179,23 @@ public class Table implements BacktrackingIterable<Record> {
         return pageDirectory.getPartNum();
     }
 
+    /**
+     * Keeps prior versions of the records of this table in `versionStore`, so that
+     * they can be read in snapshots (see getRecord(RecordId, long) and
+     * snapshotIterator). Must be set before the table is changed.
+     */
+    public void setVersionStore(VersionStore versionStore) {
+        this.versionStore = versionStore;
+    }
+
+    /**
+     * Records the pages read by optimistic transactions, and the pages written by
+     * all transactions, in `validator`. Must be set before the table is changed.
+     */
+    public void setOptimisticValidator(OptimisticValidator validator) {
+        this.validator = validator;
+    }
+
     private byte[] getBitMap(Page page) {
         if (bitmapSizeInBytes > 0) {
             byte[] bytes = new byte[bitmapSizeInBytes];
@@ -262,6 +290,12 @@ public class Table implements BacktrackingIterable<Record> {
                 entryNum = 0;
             }
             assert (entryNum < numRecordsPerPage);
+            RecordId rid = new RecordId(page.getPageNum(), (short) entryNum);
+            if (versionStore != null) {
+                versionStore.recordWrite(rid, null);
+            }
+            recordWrite(page.getPageNum());
+            recordWrite(getRecordSetKey());
 
             // Insert the record and update the bitmap.
             insertRecord(page, entryNum, record);
@@ -270,7 +304,7 @@ public class Table implements BacktrackingIterable<Record> {
 
             // Update the metadata.
             stats.get(name).addRecord(record);
-            return new RecordId(page.getPageNum(), (short) entryNum);
+            return rid;
         } finally {
             page.unpin();
         }
@@ -282,6 +316,7 @@ public class Table implements BacktrackingIterable<Record> {
      */
     public synchronized Record getRecord(RecordId rid) {
         validateRecordId(rid);
+        recordRead(rid.getPageNum());
         Page page = fetchPage(rid.getPageNum());
         try {
             byte[] bitmap = getBitMap(page);
@@ -314,6 +349,10 @@ public class Table implements BacktrackingIterable<Record> {
 
         Record newRecord = schema.verify(updated);
         Record oldRecord = getRecord(rid);
+        if (versionStore != null) {
+            versionStore.recordWrite(rid, oldRecord);
+        }
+        recordWrite(rid.getPageNum());
 
         Page page = fetchPage(rid.getPageNum());
         try {
@@ -342,6 +381,11 @@ public class Table implements BacktrackingIterable<Record> {
         Page page = fetchPage(rid.getPageNum());
         try {
             Record record = getRecord(rid);
+            if (versionStore != null) {
+                versionStore.recordWrite(rid, record);
+            }
+            recordWrite(rid.getPageNum());
+            recordWrite(getRecordSetKey());
 
             byte[] bitmap = getBitMap(page);
             Bits.setBit(bitmap, rid.getEntryNum(), Bits.Bit.ZERO);
@@ -357,6 +401,33 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    // Snapshot reads //////////////////////////////////////////////////////////
+    // Reads of a snapshot of the version store (see VersionStore#beginSnapshot).
+    // They take no locks, and are not blocked by (nor block) writers.
+
+    /**
+     * Retrieves a record as it was in a snapshot, throwing an exception if no such
+     * record existed.
+     */
+    public Record getRecord(RecordId rid, long snapshot) {
+        checkVersioned();
+        validateRecordId(rid);
+        Record record = versionStore.read(snapshot, rid, () -> readRecord(rid));
+        if (record == null) {
+            String msg = String.format("Record %s does not exist.", rid);
+            throw new DatabaseException(msg);
+        }
+        return record;
+    }
+
+    /**
+     * @return an iterator over all the records of the table in a snapshot
+     */
+    public BacktrackingIterator<Record> snapshotIterator(long snapshot) {
+        checkVersioned();
+        return new ConcatBacktrackingIterator<>(new SnapshotPageIterator(snapshot));
+    }
+
     @Override
     public String toString() {
         return "Table " + name;
@@ -371,6 +442,58 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    // Reads a record from its page without locking, returning null if it (or its
+    // page) does not exist.
+    private Record readRecord(RecordId rid) {
+        Page page;
+        try {
+            page = pageDirectory.getPage(rid.getPageNum());
+        } catch (PageException e) {
+            return null;
+        }
+        try {
+            byte[] bitmap = getBitMap(page);
+            if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
+                return null;
+            }
+            int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
+            Buffer buf = page.getBuffer();
+            buf.position(offset);
+            return Record.fromBytes(buf, schema);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    // Records a read by the current transaction, if it is optimistic. Must be
+    // called before reading.
+    private void recordRead(long pageNum) {
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (validator != null && transaction != null && transaction.isOptimistic()) {
+            validator.recordRead(transaction.getTransNum(), pageNum);
+        }
+    }
+
+    // Records a write by the current transaction. Must be called before writing.
+    private void recordWrite(long pageNum) {
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (validator != null && transaction != null) {
+            validator.recordWrite(transaction.getTransNum(), pageNum);
+        }
+    }
+
+    // The page number under which changes to the set of records of the table are
+    // validated: the first header page of the table, which holds no records.
+    private long getRecordSetKey() {
+        return DiskSpaceManager.getVirtualPageNum(getPartNum(), 0);
+    }
+
+    private void checkVersioned() {
+        if (versionStore == null) {
+            throw new DatabaseException("prior versions of " + name + " are not kept");
+        }
+    }
+
     private int numRecordsOnPage(Page page) {
         byte[] bitmap = getBitMap(page);
         int numRecords = 0;
@@ -407,6 +530,7 @@ public class Table implements BacktrackingIterable<Record> {
     public BacktrackingIterator<RecordId> ridIterator() {
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(tableContext, LockType.NL);
+        recordRead(getRecordSetKey());
 
         BacktrackingIterator<Page> iter = pageDirectory.iterator();
         return new ConcatBacktrackingIterator<>(new PageIterator(iter, false));
@@ -424,6 +548,16 @@ public class Table implements BacktrackingIterable<Record> {
         return new RecordIterator(rids);
     }
 
+    /**
+     * @return an iterator over all the records of the table, in batches of the
+     * records of each page, decoded directly into column vectors
+     */
+    public Iterator<RecordBatch> batchIterator() {
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.NL);
+        recordRead(getRecordSetKey());
+        return new BatchIterator(pageDirectory.iterator());
+    }
+
     public BacktrackingIterator<Page> pageIterator() {
         return pageDirectory.iterator();
     }
@@ -520,6 +654,158 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Iterator over the records of each page of the table in a snapshot, followed
+     * by the records in the snapshot whose pages have since been freed.
+     *
+     * The records of a page are those whose bits are set in its bitmap, and those
+     * that have prior versions; the latter are looked up after the bitmap is read,
+     * so that a record deleted in between is not missed. Backtracking is done by
+     * ConcatBacktrackingIterator, over the pages it has already read.
+     */
+    private class SnapshotPageIterator implements BacktrackingIterator<BacktrackingIterable<Record>> {
+        private long snapshot;
+        private BacktrackingIterator<Page> sourceIterator = pageDirectory.iterator();
+        private Set<Long> seenPageNums = new HashSet<>();
+        private boolean seenFreedPages = false;
+
+        private SnapshotPageIterator(long snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return sourceIterator.hasNext() || !seenFreedPages;
+        }
+
+        @Override
+        public BacktrackingIterable<Record> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<RecordId> rids = new ArrayList<>();
+            if (sourceIterator.hasNext()) {
+                Page page = sourceIterator.next();
+                long pageNum = page.getPageNum();
+                byte[] bitmap;
+                try {
+                    bitmap = getBitMap(page);
+                } finally {
+                    page.unpin();
+                }
+                seenPageNums.add(pageNum);
+                boolean[] entries = new boolean[numRecordsPerPage];
+                for (int i = 0; i < numRecordsPerPage; ++i) {
+                    entries[i] = Bits.getBit(bitmap, i) == Bits.Bit.ONE;
+                }
+                for (RecordId rid : versionStore.getVersionedRecordIds(pageNum)) {
+                    entries[rid.getEntryNum()] = true;
+                }
+                for (int i = 0; i < numRecordsPerPage; ++i) {
+                    if (entries[i]) {
+                        rids.add(new RecordId(pageNum, (short) i));
+                    }
+                }
+            } else {
+                seenFreedPages = true;
+                for (RecordId rid : versionStore.getPartitionVersionedRecordIds(getPartNum())) {
+                    if (!seenPageNums.contains(rid.getPageNum())) {
+                        rids.add(rid);
+                    }
+                }
+                Collections.sort(rids);
+            }
+            List<Record> records = new ArrayList<>();
+            for (RecordId rid : rids) {
+                Record record = versionStore.read(snapshot, rid, () -> readRecord(rid));
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return () -> new ArrayBacktrackingIterator<>(records);
+        }
+
+        @Override
+        public void markPrev() {
+            throw new UnsupportedOperationException("cannot backtrack over pages of a snapshot");
+        }
+
+        @Override
+        public void markNext() {
+            throw new UnsupportedOperationException("cannot backtrack over pages of a snapshot");
+        }
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException("cannot backtrack over pages of a snapshot");
+        }
+    }
+
+    /**
+     * Iterator over the batches of records of each page of the table, skipping
+     * pages without records.
+     */
+    private class BatchIterator implements Iterator<RecordBatch> {
+        private Iterator<Page> sourceIterator;
+        private RecordBatch nextBatch;
+
+        private BatchIterator(Iterator<Page> sourceIterator) {
+            this.sourceIterator = sourceIterator;
+            this.nextBatch = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.nextBatch == null && this.sourceIterator.hasNext()) {
+                Page page = this.sourceIterator.next();
+                RecordBatch batch;
+                try {
+                    batch = readBatch(page);
+                } finally {
+                    page.unpin();
+                }
+                if (!batch.isEmpty()) {
+                    this.nextBatch = batch;
+                }
+            }
+            return this.nextBatch != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+    }
+
+    // Decodes the records of a page into a batch.
+    private synchronized RecordBatch readBatch(Page page) {
+        recordRead(page.getPageNum());
+        List<Type> types = schema.getFieldTypes();
+        List<ColumnVector> columns = new ArrayList<>(types.size());
+        for (Type type : types) {
+            columns.add(new ColumnVector(type, numRecordsPerPage));
+        }
+        byte[] bitmap = getBitMap(page);
+        Buffer buf = page.getBuffer();
+        int numRows = 0;
+        for (int i = 0; i < numRecordsPerPage; ++i) {
+            if (Bits.getBit(bitmap, i) == Bits.Bit.ZERO) {
+                continue;
+            }
+            buf.position(bitmapSizeInBytes + i * schema.getSizeInBytes());
+            for (ColumnVector column : columns) {
+                column.append(buf);
+            }
+            ++numRows;
+        }
+        return new RecordBatch(columns, numRows);
+    }
+
     /**
      * Wraps an iterator of record ids to form an iterator over records.
      */
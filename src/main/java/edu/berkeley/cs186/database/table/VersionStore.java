@@ -0,0 +1,312 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Prior versions of records, for snapshot reads (multiversion concurrency control).
+ *
+ * Pages always hold the latest version of each record. Before a record is inserted,
+ * updated or deleted, Table records the version it replaces (its before image, or
+ * nothing for an insert) here, in a chain of versions of the record, newest first.
+ * The version is pending until the writing transaction commits, when it is stamped
+ * with the commit timestamp of the transaction: it was the current version of the
+ * record until that commit. If the transaction aborts, its versions are discarded
+ * once its changes have been rolled back.
+ *
+ * A snapshot is the commit timestamp of the last transaction committed when it was
+ * taken. The version of a record in a snapshot is found by starting from the record
+ * on its page, and going back to the before image of every version that is pending,
+ * or was replaced after the snapshot. Readers of snapshots take no locks on records
+ * or pages: a read is retried if a version of a record of the same stripe was added
+ * or discarded while reading the page. Pages may be freed once their last record is
+ * deleted, so scans of a snapshot also go through the records that have versions but
+ * whose pages were not found.
+ *
+ * Versions replaced no later than the oldest running snapshot (or the last commit, if
+ * no snapshot is running) are not needed by any snapshot, and are garbage collected
+ * whenever a transaction commits or a snapshot ends.
+ */
+public class VersionStore {
+    private static final int NUM_STRIPES = 64;
+
+    // A prior version of a record. Immutable but for endTimestamp and next.
+    private static class Version {
+        RecordId rid;
+        // The record before it was replaced, or null if it did not exist
+        Record before;
+        // Commit timestamp of the transaction that replaced this version, or 0
+        // while that transaction is running
+        volatile long endTimestamp;
+        // The next (older) version of the record, or null
+        Version next;
+
+        Version(RecordId rid, Record before, Version next) {
+            this.rid = rid;
+            this.before = before;
+            this.next = next;
+        }
+    }
+
+    // A stripe of version chains, by hash of page number (so that the chains of the
+    // records of a page are in the same stripe). Guarded by its monitor.
+    private static class Stripe {
+        Map<RecordId, Version> chains = new HashMap<>();
+        // Number of versions added to, or discarded from, chains of the stripe
+        // (anything that changes the pages of its records; not garbage collection)
+        long numChanges;
+    }
+
+    private Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+    // Pending versions of each running transaction, in the order they were made
+    private Map<Long, List<Version>> pending = new ConcurrentHashMap<>();
+
+    // Number of versions in all chains
+    private AtomicLong numVersions = new AtomicLong();
+
+    // The fields below are guarded by this object's monitor.
+
+    // Commit timestamp of the last transaction committed
+    private long lastCommitTimestamp = 0;
+    // Number of running snapshots at each timestamp
+    private TreeMap<Long, Integer> snapshots = new TreeMap<>();
+    // Committed versions, in order of commit timestamp
+    private Deque<Version> committed = new ArrayDeque<>();
+
+    public VersionStore() {
+        for (int i = 0; i < NUM_STRIPES; ++i) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripeFor(long pageNum) {
+        int hash = Long.hashCode(pageNum);
+        hash ^= hash >>> 16;
+        return stripes[hash & (NUM_STRIPES - 1)];
+    }
+
+    private Stripe stripeFor(RecordId rid) {
+        return stripeFor(rid.getPageNum());
+    }
+
+    /**
+     * Records the version of a record about to be replaced by the current
+     * transaction. Must be called before the record's page is changed. Writes made
+     * outside of a transaction are not versioned.
+     *
+     * @param rid record about to be inserted, updated or deleted
+     * @param before the record before the write, or null for an insert
+     */
+    void recordWrite(RecordId rid, Record before) {
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (transaction == null) {
+            return;
+        }
+        Stripe stripe = stripeFor(rid);
+        Version version;
+        synchronized (stripe) {
+            version = new Version(rid, before, stripe.chains.get(rid));
+            stripe.chains.put(rid, version);
+            ++stripe.numChanges;
+        }
+        pending.computeIfAbsent(transaction.getTransNum(), t -> new ArrayList<>()).add(version);
+        numVersions.incrementAndGet();
+    }
+
+    /**
+     * Commits the versions made by a transaction, stamping them with a new commit
+     * timestamp. Must be called once the transaction has committed, before it
+     * releases its locks.
+     *
+     * @param transNum transaction number
+     */
+    public void commit(long transNum) {
+        List<Version> versions = pending.remove(transNum);
+        if (versions == null) {
+            return;
+        }
+        synchronized (this) {
+            // snapshots taken from now on see the transaction's writes
+            long timestamp = ++lastCommitTimestamp;
+            for (Version version : versions) {
+                version.endTimestamp = timestamp;
+                committed.addLast(version);
+            }
+        }
+        this.collectGarbage();
+    }
+
+    /**
+     * Discards the pending versions made by a transaction. Must be called once an
+     * aborting transaction has rolled back its changes; does nothing for a
+     * committed transaction.
+     *
+     * @param transNum transaction number
+     */
+    public void end(long transNum) {
+        List<Version> versions = pending.remove(transNum);
+        if (versions == null) {
+            return;
+        }
+        for (Version version : versions) {
+            remove(version, true);
+        }
+    }
+
+    /**
+     * Starts a snapshot of all transactions committed so far. endSnapshot must be
+     * called when the snapshot is no longer needed.
+     *
+     * @return the snapshot's timestamp
+     */
+    public synchronized long beginSnapshot() {
+        long snapshot = lastCommitTimestamp;
+        snapshots.merge(snapshot, 1, Integer::sum);
+        return snapshot;
+    }
+
+    /**
+     * Ends a snapshot started by beginSnapshot.
+     *
+     * @param snapshot the snapshot's timestamp
+     */
+    public void endSnapshot(long snapshot) {
+        synchronized (this) {
+            snapshots.computeIfPresent(snapshot, (s, count) -> count == 1 ? null : count - 1);
+        }
+        this.collectGarbage();
+    }
+
+    /**
+     * Reads the version of a record in a snapshot.
+     *
+     * @param snapshot the snapshot's timestamp
+     * @param rid record to read
+     * @param current reads the record from its page, returning null if it does not
+     *                exist
+     * @return the record in the snapshot, or null if it did not exist
+     */
+    Record read(long snapshot, RecordId rid, Supplier<Record> current) {
+        Stripe stripe = stripeFor(rid);
+        while (true) {
+            long numChanges;
+            synchronized (stripe) {
+                numChanges = stripe.numChanges;
+            }
+            Record record = current.get();
+            synchronized (stripe) {
+                // a write that started while reading the page may have torn it
+                if (stripe.numChanges != numChanges) {
+                    continue;
+                }
+                for (Version version = stripe.chains.get(rid); version != null; version = version.next) {
+                    long endTimestamp = version.endTimestamp;
+                    if (endTimestamp != 0 && endTimestamp <= snapshot) {
+                        break;
+                    }
+                    record = version.before;
+                }
+                return record;
+            }
+        }
+    }
+
+    /**
+     * @param pageNum page of a table
+     * @return ids of the records of the page that have prior versions
+     */
+    List<RecordId> getVersionedRecordIds(long pageNum) {
+        List<RecordId> rids = new ArrayList<>();
+        Stripe stripe = stripeFor(pageNum);
+        synchronized (stripe) {
+            for (RecordId rid : stripe.chains.keySet()) {
+                if (rid.getPageNum() == pageNum) {
+                    rids.add(rid);
+                }
+            }
+        }
+        return rids;
+    }
+
+    /**
+     * @param partNum partition of a table
+     * @return ids of the records of the table that have prior versions
+     */
+    List<RecordId> getPartitionVersionedRecordIds(int partNum) {
+        List<RecordId> rids = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (RecordId rid : stripe.chains.keySet()) {
+                    if (DiskSpaceManager.getPartNum(rid.getPageNum()) == partNum) {
+                        rids.add(rid);
+                    }
+                }
+            }
+        }
+        return rids;
+    }
+
+    /**
+     * @return number of prior versions of records held
+     */
+    public long getNumVersions() {
+        return numVersions.get();
+    }
+
+    /**
+     * Removes the committed versions that no running or future snapshot can read:
+     * those replaced no later than the oldest running snapshot, or than the last
+     * commit if no snapshot is running.
+     */
+    private void collectGarbage() {
+        List<Version> garbage = new ArrayList<>();
+        synchronized (this) {
+            long horizon = snapshots.isEmpty() ? lastCommitTimestamp : snapshots.firstKey();
+            while (!committed.isEmpty() && committed.peekFirst().endTimestamp <= horizon) {
+                garbage.add(committed.pollFirst());
+            }
+        }
+        for (Version version : garbage) {
+            remove(version, false);
+        }
+    }
+
+    /**
+     * Removes a version from its record's chain.
+     *
+     * @param discarded whether the version is discarded (rather than garbage
+     *                  collected), so that its record's page may have changed
+     */
+    private void remove(Version version, boolean discarded) {
+        Stripe stripe = stripeFor(version.rid);
+        synchronized (stripe) {
+            if (discarded) {
+                ++stripe.numChanges;
+            }
+            Version head = stripe.chains.get(version.rid);
+            if (head == version) {
+                if (version.next == null) {
+                    stripe.chains.remove(version.rid);
+                } else {
+                    stripe.chains.put(version.rid, version.next);
+                }
+            } else {
+                Version prev = head;
+                while (prev != null && prev.next != version) {
+                    prev = prev.next;
+                }
+                if (prev == null) {
+                    return;
+                }
+                prev.next = version.next;
+            }
+        }
+        numVersions.decrementAndGet();
+    }
+}
@@ -0,0 +1,222 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestDatabaseMultiversion {
+    private static final String TestDir = "testDatabaseMultiversion";
+    private static final String TABLE = "mvccTable";
+    private Database db;
+    private List<RecordId> rids;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder(TestDir);
+        // with the recovery manager, so that aborted transactions are rolled back
+        this.db = new Database(testDir.getAbsolutePath(), 32, new DummyLockManager(),
+                               new ClockEvictionPolicy(), true);
+        this.db.setWorkMem(4);
+        this.db.waitAllTransactions();
+        this.db.enableMultiversioning();
+
+        Schema schema = new Schema().add("id", Type.intType()).add("value", Type.intType());
+        this.rids = new ArrayList<>();
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(schema, TABLE);
+            for (int i = 0; i < 10; ++i) {
+                rids.add(t.getTransactionContext().addRecord(TABLE, record(i, i)));
+            }
+        }
+    }
+
+    @After
+    public void afterEach() {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        this.db.close();
+    }
+
+    private static Record record(int id, int value) {
+        return new Record(id, value);
+    }
+
+    // Makes t the transaction running on this thread.
+    private static void switchTo(Transaction t) {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        TransactionContext.setTransaction(t.getTransactionContext());
+    }
+
+    private static List<Record> scan(Transaction t) {
+        List<Record> records = new ArrayList<>();
+        Iterator<Record> iter = t.getTransactionContext().getRecordIterator(TABLE);
+        iter.forEachRemaining(records::add);
+        return records;
+    }
+
+    private static List<Record> expected(int n, int updatedId, int updatedValue) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            records.add(record(i, i == updatedId ? updatedValue : i));
+        }
+        return records;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSnapshotIsolatedFromWriters() {
+        Transaction writer = db.beginTransaction();
+        writer.getTransactionContext().updateRecord(TABLE, rids.get(0), record(0, 100));
+        RecordId added = writer.getTransactionContext().addRecord(TABLE, record(10, 10));
+        writer.getTransactionContext().deleteRecord(TABLE, rids.get(9));
+
+        // snapshot taken while the writer is running
+        TransactionContext.unsetTransaction();
+        Transaction before = db.beginSnapshotTransaction();
+        assertEquals(record(0, 0), before.getTransactionContext().getRecord(TABLE, rids.get(0)));
+        assertEquals(record(9, 9), before.getTransactionContext().getRecord(TABLE, rids.get(9)));
+        assertEquals(expected(10, -1, 0), scan(before));
+
+        switchTo(writer);
+        writer.commit();
+
+        // the older snapshot is unaffected by the commit; a new one sees it
+        switchTo(before);
+        assertEquals(expected(10, -1, 0), scan(before));
+        before.commit();
+
+        Transaction after = db.beginSnapshotTransaction();
+        List<Record> records = expected(11, 0, 100);
+        records.remove(9);
+        assertEquals(records, scan(after));
+        assertEquals(record(10, 10), after.getTransactionContext().getRecord(TABLE, added));
+        try {
+            after.getTransactionContext().getRecord(TABLE, rids.get(9));
+            fail();
+        } catch (DatabaseException e) {
+            /* do nothing */
+        }
+        after.commit();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSnapshotIgnoresAbortedWrites() {
+        Transaction writer = db.beginTransaction();
+        writer.getTransactionContext().updateRecord(TABLE, rids.get(3), record(3, 300));
+        writer.getTransactionContext().deleteRecord(TABLE, rids.get(4));
+
+        TransactionContext.unsetTransaction();
+        Transaction snapshot = db.beginSnapshotTransaction();
+        assertEquals(expected(10, -1, 0), scan(snapshot));
+
+        switchTo(writer);
+        writer.rollback();
+
+        switchTo(snapshot);
+        assertEquals(expected(10, -1, 0), scan(snapshot));
+        snapshot.commit();
+
+        // versions of the aborted transaction are discarded
+        assertEquals(0, db.getVersionStore().getNumVersions());
+        try (Transaction t = db.beginSnapshotTransaction()) {
+            assertEquals(expected(10, -1, 0), scan(t));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGarbageCollection() {
+        Transaction snapshot = db.beginSnapshotTransaction();
+        TransactionContext.unsetTransaction();
+
+        for (int i = 0; i < 5; ++i) {
+            try (Transaction writer = db.beginTransaction()) {
+                writer.getTransactionContext().updateRecord(TABLE, rids.get(1), record(1, 10 + i));
+            }
+        }
+        // every version is kept while the snapshot that may read it runs
+        assertEquals(5, db.getVersionStore().getNumVersions());
+
+        switchTo(snapshot);
+        assertEquals(expected(10, -1, 0), scan(snapshot));
+        snapshot.commit();
+        assertEquals(0, db.getVersionStore().getNumVersions());
+
+        try (Transaction t = db.beginSnapshotTransaction()) {
+            assertEquals(expected(10, 1, 14), scan(t));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSnapshotLookups() {
+        try (Transaction t = db.beginTransaction()) {
+            t.createIndex(TABLE, "id", false);
+        }
+        Transaction writer = db.beginTransaction();
+        writer.getTransactionContext().updateRecord(TABLE, rids.get(5), record(5, 500));
+
+        TransactionContext.unsetTransaction();
+        try (Transaction t = db.beginSnapshotTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            Iterator<Record> iter = context.lookupKey(TABLE, "id", new IntDataBox(5));
+            assertEquals(record(5, 5), iter.next());
+            assertFalse(iter.hasNext());
+            assertTrue(context.contains(TABLE, "id", new IntDataBox(9)));
+            assertFalse(context.contains(TABLE, "id", new IntDataBox(10)));
+
+            List<Record> records = new ArrayList<>();
+            context.sortedScanFrom(TABLE, "id", new IntDataBox(7)).forEachRemaining(records::add);
+            assertEquals(expected(10, -1, 0).subList(7, 10), records);
+        }
+
+        switchTo(writer);
+        writer.commit();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSnapshotTransactionIsReadOnly() {
+        try (Transaction t = db.beginSnapshotTransaction()) {
+            try {
+                t.getTransactionContext().addRecord(TABLE, record(10, 10));
+                fail();
+            } catch (DatabaseException e) {
+                /* do nothing */
+            }
+            try {
+                t.dropTable(TABLE);
+                fail();
+            } catch (DatabaseException e) {
+                /* do nothing */
+            }
+        }
+    }
+}
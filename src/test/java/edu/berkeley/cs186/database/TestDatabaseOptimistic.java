@@ -0,0 +1,221 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.concurrency.ValidationException;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestDatabaseOptimistic {
+    private static final String TestDir = "testDatabaseOptimistic";
+    private static final String TABLE_A = "tableA";
+    private static final String TABLE_B = "tableB";
+    private Database db;
+    private List<RecordId> ridsA;
+    private List<RecordId> ridsB;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder(TestDir);
+        // with the recovery manager, so that transactions failing validation are
+        // rolled back
+        this.db = new Database(testDir.getAbsolutePath(), 32, new DummyLockManager(),
+                               new ClockEvictionPolicy(), true);
+        this.db.setWorkMem(4);
+        this.db.waitAllTransactions();
+        this.db.enableOptimisticTransactions();
+
+        Schema schema = new Schema().add("id", Type.intType()).add("value", Type.intType());
+        this.ridsA = new ArrayList<>();
+        this.ridsB = new ArrayList<>();
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(schema, TABLE_A);
+            t.createTable(schema, TABLE_B);
+            for (int i = 0; i < 10; ++i) {
+                ridsA.add(t.getTransactionContext().addRecord(TABLE_A, new Record(i, i)));
+                ridsB.add(t.getTransactionContext().addRecord(TABLE_B, new Record(i, i)));
+            }
+        }
+    }
+
+    @After
+    public void afterEach() {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        this.db.close();
+    }
+
+    // Makes t the transaction running on this thread.
+    private static void switchTo(Transaction t) {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        TransactionContext.setTransaction(t.getTransactionContext());
+    }
+
+    // Runs a committed update of a record in another transaction.
+    private void update(String tableName, RecordId rid, Record record) {
+        TransactionContext current = TransactionContext.getTransaction();
+        if (current != null) {
+            TransactionContext.unsetTransaction();
+        }
+        try (Transaction t = db.beginTransaction()) {
+            t.getTransactionContext().updateRecord(tableName, rid, record);
+        }
+        if (current != null) {
+            TransactionContext.setTransaction(current);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNoConflict() {
+        Transaction t = db.beginOptimisticTransaction();
+        assertEquals(new Record(0, 0), t.getTransactionContext().getRecord(TABLE_A, ridsA.get(0)));
+        t.getTransactionContext().updateRecord(TABLE_A, ridsA.get(1), new Record(1, 100));
+        // a write of a page that was not read does not conflict
+        update(TABLE_B, ridsB.get(0), new Record(0, 100));
+        t.commit();
+
+        assertEquals(1, db.getOptimisticValidator().getNumValidations());
+        assertEquals(0, db.getOptimisticValidator().getNumValidationFailures());
+        try (Transaction check = db.beginTransaction()) {
+            assertEquals(new Record(1, 100), check.getTransactionContext().getRecord(TABLE_A, ridsA.get(1)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCommittedWriteFailsValidation() {
+        Transaction t = db.beginOptimisticTransaction();
+        assertEquals(new Record(0, 0), t.getTransactionContext().getRecord(TABLE_A, ridsA.get(0)));
+        t.getTransactionContext().updateRecord(TABLE_B, ridsB.get(0), new Record(0, 100));
+        // another record of the page read
+        update(TABLE_A, ridsA.get(1), new Record(1, 100));
+        try {
+            t.commit();
+            fail();
+        } catch (ValidationException e) {
+            /* do nothing */
+        }
+        assertEquals(Transaction.Status.COMPLETE, t.getStatus());
+        assertEquals(1, db.getOptimisticValidator().getNumValidationFailures());
+
+        // the failed transaction's write is rolled back
+        try (Transaction check = db.beginTransaction()) {
+            assertEquals(new Record(0, 0), check.getTransactionContext().getRecord(TABLE_B, ridsB.get(0)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testUncommittedWriteFailsValidation() {
+        Transaction writer = db.beginTransaction();
+        writer.getTransactionContext().updateRecord(TABLE_A, ridsA.get(0), new Record(0, 100));
+        TransactionContext.unsetTransaction();
+
+        Transaction t = db.beginOptimisticTransaction();
+        // reads the uncommitted update
+        assertEquals(new Record(0, 100), t.getTransactionContext().getRecord(TABLE_A, ridsA.get(0)));
+        try {
+            t.commit();
+            fail();
+        } catch (ValidationException e) {
+            /* do nothing */
+        }
+
+        switchTo(writer);
+        writer.rollback();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanFailsValidationOnInsert() {
+        Transaction t = db.beginOptimisticTransaction();
+        List<Record> records = new ArrayList<>();
+        t.getTransactionContext().getRecordIterator(TABLE_A).forEachRemaining(records::add);
+        assertEquals(10, records.size());
+
+        TransactionContext.unsetTransaction();
+        try (Transaction writer = db.beginTransaction()) {
+            writer.getTransactionContext().addRecord(TABLE_A, new Record(10, 10));
+        }
+
+        switchTo(t);
+        try {
+            t.commit();
+            fail();
+        } catch (ValidationException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLookupFailsValidationOnInsert() {
+        try (Transaction t = db.beginTransaction()) {
+            t.createIndex(TABLE_A, "id", false);
+        }
+
+        Transaction t = db.beginOptimisticTransaction();
+        assertFalse(t.getTransactionContext().lookupKey(TABLE_A, "id", new IntDataBox(10)).hasNext());
+        assertFalse(t.getTransactionContext().contains(TABLE_A, "id", new IntDataBox(10)));
+
+        TransactionContext.unsetTransaction();
+        try (Transaction writer = db.beginTransaction()) {
+            writer.getTransactionContext().addRecord(TABLE_A, new Record(10, 10));
+        }
+
+        switchTo(t);
+        try {
+            t.commit();
+            fail();
+        } catch (ValidationException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRunOptimisticTransactionRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+        int numTransactions = db.runOptimisticTransaction(t -> {
+            Record record = t.getTransactionContext().getRecord(TABLE_A, ridsA.get(0));
+            if (attempts.incrementAndGet() == 1) {
+                // conflicts with the first attempt only
+                update(TABLE_A, ridsA.get(0), new Record(0, 100));
+            }
+            int value = record.getValue(1).getInt();
+            t.getTransactionContext().updateRecord(TABLE_B, ridsB.get(0), new Record(0, value + 1));
+        }, 3);
+        assertEquals(2, numTransactions);
+
+        // the value read by the second (committed) attempt is the updated one
+        try (Transaction check = db.beginTransaction()) {
+            assertEquals(new Record(0, 101), check.getTransactionContext().getRecord(TABLE_B, ridsB.get(0)));
+        }
+    }
+}
@@ -406,4 +406,55 @@ public class TestLockContext {
         assertEquals(0, dbLockContext.getNumChildren(t1));
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testSaturation() {
+        TransactionContext t1 = transactions[1];
+        tableLockContext.setCapacity(10);
+        assertEquals(10, tableLockContext.capacity());
+        dbLockContext.acquire(t1, LockType.IX);
+        tableLockContext.acquire(t1, LockType.IX);
+        for (int i = 0; i < 4; ++i) {
+            tableLockContext.childContext(i).acquire(t1, LockType.X);
+        }
+        assertEquals(0.4, tableLockContext.saturation(t1), 1e-9);
+        assertEquals(0, tableLockContext.saturation(transactions[2]), 1e-9);
+
+        // Without a set capacity, the capacity is the number of child contexts
+        assertEquals(1, dbLockContext.capacity());
+        assertEquals(1.0, dbLockContext.saturation(t1), 1e-9);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testShouldEscalate() {
+        TransactionContext t1 = transactions[1];
+        tableLockContext.setCapacity(20);
+        dbLockContext.acquire(t1, LockType.IX);
+        tableLockContext.acquire(t1, LockType.IX);
+        for (int i = 0; i < 4; ++i) {
+            tableLockContext.childContext(i).acquire(t1, LockType.X);
+        }
+
+        // Disabled by default
+        assertFalse(tableLockContext.shouldEscalate(t1));
+
+        lockManager.setEscalationThresholds(0, 5);
+        assertFalse(tableLockContext.shouldEscalate(t1));
+        tableLockContext.childContext(4).acquire(t1, LockType.X);
+        assertTrue(tableLockContext.shouldEscalate(t1));
+        assertFalse(tableLockContext.shouldEscalate(transactions[2]));
+
+        // 5 of 20 pages
+        lockManager.setEscalationThresholds(0.25, 0);
+        assertTrue(tableLockContext.shouldEscalate(t1));
+        lockManager.setEscalationThresholds(0.5, 0);
+        assertFalse(tableLockContext.shouldEscalate(t1));
+
+        // Too few children to escalate by saturation
+        tableLockContext.setCapacity(5);
+        lockManager.setEscalationThresholds(0.5, 0);
+        assertFalse(tableLockContext.shouldEscalate(t1));
+    }
+
 }
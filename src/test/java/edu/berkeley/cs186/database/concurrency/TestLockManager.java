@@ -342,6 +342,62 @@ public class TestLockManager {
         runner.joinAll();
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testAcquireReleaseKeepsAcquisitionOrder() {
+        /**
+         * Transaction 0 acquires an S lock on table0, then an X lock on table1
+         * Transaction 0 acquires an X lock on table0 and releases its S lock
+         */
+        DeterministicRunner runner = new DeterministicRunner(1);
+        runner.run(0, () -> {
+            lockman.acquire(transactions[0], tables[0], LockType.S);
+            lockman.acquire(transactions[0], tables[1], LockType.X);
+            lockman.acquireAndRelease(transactions[0], tables[0], LockType.X,
+                                      Collections.singletonList(tables[0]));
+        });
+
+        // The lock on table0 should still come first
+        List<Lock> expectedLocks = Arrays.asList(new Lock(tables[0], LockType.X, 0L),
+                                                 new Lock(tables[1], LockType.X, 0L));
+        assertEquals(expectedLocks, lockman.getLocks(transactions[0]));
+
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueuedAcquireReleaseAcrossResources() {
+        /**
+         * Transaction 0 acquires an X lock on table0
+         * Transaction 1 acquires an X lock on table1
+         * Transaction 2 waits for an S lock on table0
+         * Transaction 1 waits for an X lock on table0, releasing table1
+         * Transaction 0 releases table0
+         */
+        DeterministicRunner runner = new DeterministicRunner(3);
+        runner.run(0, () -> lockman.acquire(transactions[0], tables[0], LockType.X));
+        runner.run(1, () -> lockman.acquire(transactions[1], tables[1], LockType.X));
+        runner.run(2, () -> lockman.acquire(transactions[2], tables[1], LockType.S));
+        runner.run(1, () -> lockman.acquireAndRelease(transactions[1], tables[0], LockType.X,
+                   Collections.singletonList(tables[1])));
+        assertTrue(transactions[1].getBlocked());
+        assertTrue(transactions[2].getBlocked());
+
+        runner.run(0, () -> lockman.release(transactions[0], tables[0]));
+
+        // Transaction 1's request is granted, and its release of table1 lets
+        // Transaction 2 acquire its lock there
+        assertEquals(Collections.singletonList(new Lock(tables[0], LockType.X, 1L)),
+                     lockman.getLocks(tables[0]));
+        assertEquals(Collections.singletonList(new Lock(tables[1], LockType.S, 2L)),
+                     lockman.getLocks(tables[1]));
+        assertFalse(transactions[1].getBlocked());
+        assertFalse(transactions[2].getBlocked());
+
+        runner.joinAll();
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testSXS() {
@@ -756,5 +812,128 @@ public class TestLockManager {
         runner.joinAll();
     }
 
+    /**
+     * Transaction 0 acquires an X lock on table0, and transaction 1 an X lock on
+     * table1; then transaction 0 waits for table1 and transaction 1 for table0.
+     * A transaction that gets a DeadlockException is recorded in `aborted`.
+     */
+    private DeterministicRunner makeDeadlock(AtomicBoolean[] aborted) {
+        DeterministicRunner runner = new DeterministicRunner(2);
+        for (int i = 0; i < 2; ++i) {
+            aborted[i] = new AtomicBoolean();
+            int transNum = i;
+            runner.run(i, () -> lockman.acquire(transactions[transNum], tables[transNum], LockType.X));
+        }
+        for (int i = 0; i < 2; ++i) {
+            int transNum = i;
+            runner.run(i, () -> {
+                try {
+                    lockman.acquire(transactions[transNum], tables[1 - transNum], LockType.X);
+                } catch (DeadlockException e) {
+                    aborted[transNum].set(true);
+                }
+            });
+        }
+        assertTrue(transactions[0].getBlocked());
+        assertTrue(transactions[1].getBlocked());
+        return runner;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDetectDeadlock() {
+        AtomicBoolean[] aborted = new AtomicBoolean[2];
+        DeterministicRunner runner = makeDeadlock(aborted);
+
+        // With equal costs, the most recently started transaction (1) is aborted
+        assertEquals(1, lockman.detectDeadlocks(t -> 0));
+        runner.join(1);
+        assertFalse(aborted[0].get());
+        assertTrue(aborted[1].get());
+        assertTrue(transactions[0].getBlocked());
+        assertEquals(Collections.singletonList(new Lock(tables[1], LockType.X, 1L)),
+                     lockman.getLocks(transactions[1]));
+        assertEquals(1, lockman.getNumDeadlockAborts());
+
+        // Nothing left to break
+        assertEquals(0, lockman.detectDeadlocks(t -> 0));
+
+        // Aborting transaction 1 lets transaction 0 through
+        lockman.release(transactions[1], tables[1]);
+        runner.join(0);
+        assertFalse(transactions[0].getBlocked());
+        assertTrue(holds(lockman, transactions[0], tables[1], LockType.X));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDeadlockVictimCost() {
+        AtomicBoolean[] aborted = new AtomicBoolean[2];
+        DeterministicRunner runner = makeDeadlock(aborted);
+
+        // Transaction 0 is cheaper to abort
+        assertEquals(1, lockman.detectDeadlocks(t -> t.getTransNum() == 0 ? 1 : 2));
+        runner.join(0);
+        assertTrue(aborted[0].get());
+        assertFalse(aborted[1].get());
+        assertTrue(transactions[1].getBlocked());
+
+        lockman.release(transactions[0], tables[0]);
+        runner.join(1);
+        assertTrue(holds(lockman, transactions[1], tables[0], LockType.X));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNoDeadlockInQueue() {
+        /**
+         * Transaction 0 acquires an S lock on table0
+         * Transaction 1 waits for an X lock on table0
+         * Transaction 2 waits for an S lock on table0, behind transaction 1
+         */
+        DeterministicRunner runner = new DeterministicRunner(3);
+        runner.run(0, () -> lockman.acquire(transactions[0], tables[0], LockType.S));
+        runner.run(1, () -> lockman.acquire(transactions[1], tables[0], LockType.X));
+        runner.run(2, () -> lockman.acquire(transactions[2], tables[0], LockType.S));
+
+        // Transactions wait for each other, but not in a cycle
+        assertEquals(0, lockman.detectDeadlocks(t -> 0));
+        assertTrue(transactions[1].getBlocked());
+        assertTrue(transactions[2].getBlocked());
+
+        /**
+         * Transaction 0 releases its S lock on table0
+         * Transaction 1 acquires an X lock on table0, then releases it
+         * Transaction 2 acquires an S lock on table0
+         */
+        runner.run(0, () -> lockman.release(transactions[0], tables[0]));
+        runner.run(1, () -> lockman.release(transactions[1], tables[0]));
+        assertFalse(transactions[2].getBlocked());
+        assertEquals(0, lockman.getNumDeadlockAborts());
+
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBackgroundDeadlockDetector() {
+        lockman.startDeadlockDetector(10, t -> 0);
+        try {
+            AtomicBoolean[] aborted = new AtomicBoolean[2];
+            DeterministicRunner runner = makeDeadlock(aborted);
+
+            runner.join(1);
+            assertTrue(aborted[1].get());
+            assertEquals(1, lockman.getNumDeadlockAborts());
+            assertTrue(lockman.getMaxDeadlockDetectionNanos() > 0);
+
+            lockman.release(transactions[1], tables[1]);
+            runner.join(0);
+            assertFalse(aborted[0].get());
+        } finally {
+            lockman.stopDeadlockDetector();
+        }
+    }
+
 }
 
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.concurrency;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.TimeoutScaling;
 import edu.berkeley.cs186.database.categories.*;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -52,6 +53,13 @@ public class TestLockUtil {
         TransactionContext.setTransaction(transaction);
     }
 
+    @After
+    public void tearDown() {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testRequestNullTransaction() {
@@ -278,5 +286,87 @@ public class TestLockUtil {
         assertEquals(Collections.emptyList(), lockManager.log);
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testOptimisticTransaction() {
+        /**
+         * Optimistic transactions should take no locks to read, but should still
+         * lock what they write.
+         */
+        TransactionContext.unsetTransaction();
+        TransactionContext optimistic = new DummyTransactionContext(lockManager, 1) {
+            @Override
+            public boolean isOptimistic() {
+                return true;
+            }
+        };
+        TransactionContext.setTransaction(optimistic);
+        lockManager.startLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[4], LockType.S);
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
+        assertEquals(Collections.emptyList(), lockManager.log);
+
+        LockUtil.ensureSufficientLockHeld(pageContexts[4], LockType.X);
+        assertEquals(LockType.X, pageContexts[4].getExplicitLockType(optimistic));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testEscalateToTableS() {
+        /**
+         * Once the transaction holds S locks on as many pages of table1 as the
+         * escalation threshold, requesting S on yet another page should escalate
+         * them to S on table1, releasing the page locks.
+         */
+        lockManager.setEscalationThresholds(0, 3);
+        dbContext.acquire(transaction, LockType.IS);
+        tableContext.acquire(transaction, LockType.IS);
+        for (int i = 0; i < 3; ++i) {
+            pageContexts[i].acquire(transaction, LockType.S);
+        }
+        lockManager.startLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[3], LockType.S);
+        assertEquals(Collections.singletonList(
+                "acquire-and-release 0 database/table1 S [database/table1, database/table1/0, " +
+                "database/table1/1, database/table1/2]"
+        ), lockManager.log);
+
+        assertEquals(LockType.S, tableContext.getExplicitLockType(transaction));
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(LockType.NL, pageContexts[i].getExplicitLockType(transaction));
+        }
+        assertEquals(0, tableContext.getNumChildren(transaction));
+        assertEquals(1, dbContext.getNumChildren(transaction));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testEscalateToTableX() {
+        /**
+         * Once the transaction holds X locks on as many pages of table1 as the
+         * escalation threshold, requesting X on yet another page should escalate
+         * them to X on table1, releasing the page locks.
+         */
+        lockManager.setEscalationThresholds(0, 3);
+        dbContext.acquire(transaction, LockType.IX);
+        tableContext.acquire(transaction, LockType.IX);
+        for (int i = 0; i < 3; ++i) {
+            pageContexts[i].acquire(transaction, LockType.X);
+        }
+        lockManager.startLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[3], LockType.X);
+        assertEquals(Collections.singletonList(
+                "acquire-and-release 0 database/table1 X [database/table1, database/table1/0, " +
+                "database/table1/1, database/table1/2]"
+        ), lockManager.log);
+
+        assertEquals(LockType.X, tableContext.getExplicitLockType(transaction));
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(LockType.NL, pageContexts[i].getExplicitLockType(transaction));
+        }
+        assertEquals(0, tableContext.getNumChildren(transaction));
+        assertEquals(1, dbContext.getNumChildren(transaction));
+    }
+
 }
 
@@ -11,6 +11,7 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 import static org.junit.Assert.*;
@@ -224,6 +225,32 @@ public class TestDiskSpaceManager {
         diskSpaceManager.close();
     }
 
+    @Test
+    public void testWritePages() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        // run of pages straddling the first and second header page
+        int firstPage = DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER - 2;
+        byte[][] bufs = new byte[4][DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < bufs.length; ++i) {
+            diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum, firstPage + i));
+            Arrays.fill(bufs[i], (byte) (i + 1));
+        }
+        long pageNum = DiskSpaceManager.getVirtualPageNum(partNum, firstPage);
+        diskSpaceManager.writePages(pageNum, bufs);
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < bufs.length; ++i) {
+            diskSpaceManager.readPage(pageNum + i, readbuf);
+            assertArrayEquals(bufs[i], readbuf);
+        }
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
     @Test
     public void testReadWriteMultiplePartitions() {
         diskSpaceManager = getDiskSpaceManager();
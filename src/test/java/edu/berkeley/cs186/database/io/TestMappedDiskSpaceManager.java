@@ -0,0 +1,135 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestMappedDiskSpaceManager {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private DiskSpaceManager diskSpaceManager;
+    private Path managerRoot;
+
+    @Before
+    public void beforeEach() throws IOException {
+        managerRoot = tempFolder.newFolder("mapped-dsm-test").toPath();
+    }
+
+    private DiskSpaceManager getDiskSpaceManager() {
+        return new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    private static byte[] pageContents(int seed) {
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf.length; ++i) {
+            buf[i] = (byte) ((Integer.valueOf(i).hashCode() >> seed) & 0xFF);
+        }
+        return buf;
+    }
+
+    @Test
+    public void testAllocPageZeroed() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf = pageContents(0);
+        diskSpaceManager.readPage(pageNum, buf);
+        assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], buf);
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadWrite() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf = pageContents(0);
+        diskSpaceManager.writePage(pageNum, buf);
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum, readbuf);
+
+        assertArrayEquals(buf, readbuf);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = PageException.class)
+    public void testReadOutOfBounds() {
+        diskSpaceManager = getDiskSpaceManager();
+        diskSpaceManager.allocPart();
+        diskSpaceManager.readPage(0, new byte[DiskSpaceManager.PAGE_SIZE]);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadWriteAcrossSegments() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        // first data page, the last page of the first segment, and pages in later segments
+        int[] dataPages = new int[] {
+            0,
+            MappedPartitionHandle.SEGMENT_PAGES - 3,
+            MappedPartitionHandle.SEGMENT_PAGES - 2,
+            5 * MappedPartitionHandle.SEGMENT_PAGES + 17,
+            DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER + 1,
+        };
+        long[] pageNums = new long[dataPages.length];
+        for (int i = 0; i < dataPages.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum, dataPages[i]));
+            diskSpaceManager.writePage(pageNums[i], pageContents(i));
+        }
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < pageNums.length; ++i) {
+            diskSpaceManager.readPage(pageNums[i], readbuf);
+            assertArrayEquals(pageContents(i), readbuf);
+        }
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testCompatibleWithDiskSpaceManagerImpl() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        diskSpaceManager.writePage(pageNum1, pageContents(0));
+        diskSpaceManager.close();
+
+        // pages written through the mapping are visible to channel reads, and vice versa
+        diskSpaceManager = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(pageContents(0), readbuf);
+        assertTrue(diskSpaceManager.pageAllocated(pageNum2));
+        diskSpaceManager.writePage(pageNum2, pageContents(8));
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(pageContents(8), readbuf);
+        long pageNum3 = diskSpaceManager.allocPage(partNum);
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 2), pageNum3);
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+}
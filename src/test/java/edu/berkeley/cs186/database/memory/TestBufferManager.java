@@ -13,6 +13,8 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -320,6 +322,310 @@ public class TestBufferManager {
         assertTrue(frame7.isValid());
     }
 
+    @Test
+    public void testWriteBackDirtyPages() {
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+
+        BufferFrame[] frames = new BufferFrame[4];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum);
+            frames[i].writeBytes((short) 67, (short) 4, expected);
+        }
+        // pinned pages are skipped, splitting the run of consecutive pages
+        frames[0].unpin();
+        frames[1].unpin();
+        frames[3].unpin();
+
+        assertEquals(3, bufferManager.writeBackDirtyPages(1.0));
+        assertEquals(2, bufferManager.getNumWriteBackWrites());
+        for (int i : new int[] {0, 1, 3}) {
+            diskSpaceManager.readPage(frames[i].getPageNum(), actual);
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, 67 + BufferManager.RESERVED_SPACE,
+                              71 + BufferManager.RESERVED_SPACE));
+        }
+        diskSpaceManager.readPage(frames[2].getPageNum(), actual);
+        assertArrayEquals(new byte[4], Arrays.copyOfRange(actual, 67 + BufferManager.RESERVED_SPACE,
+                          71 + BufferManager.RESERVED_SPACE));
+
+        // written pages are clean, so only the remaining page is written
+        frames[2].unpin();
+        assertEquals(1, bufferManager.writeBackDirtyPages(1.0));
+        assertEquals(0, bufferManager.writeBackDirtyPages(1.0));
+        assertEquals(4, bufferManager.getNumPagesWrittenBack());
+    }
+
+    @Test
+    public void testWriteBackCleanFraction() {
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        for (int i = 0; i < 5; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 67, (short) 4, expected);
+            frame.unpin();
+        }
+
+        // 5 dirty frames: 3 must be written for 60% of frames to be clean
+        assertEquals(3, bufferManager.writeBackDirtyPages(0.6));
+        assertEquals(0, bufferManager.writeBackDirtyPages(0.6));
+        assertEquals(2, bufferManager.writeBackDirtyPages(1.0));
+    }
+
+    @Test
+    public void testBackgroundFlusher() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum);
+        frame1.writeBytes((short) 67, (short) 4, expected);
+        frame1.unpin();
+
+        bufferManager.startBackgroundFlusher(1.0, 10);
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (bufferManager.getNumPagesWrittenBack() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            bufferManager.stopBackgroundFlusher();
+        }
+
+        diskSpaceManager.readPage(frame1.getPageNum(), actual);
+        assertArrayEquals(expected, Arrays.copyOfRange(actual, 67 + BufferManager.RESERVED_SPACE,
+                          71 + BufferManager.RESERVED_SPACE));
+        assertTrue(bufferManager.getWriteBackRate() > 0);
+    }
+
+    @Test
+    public void testBackgroundFlusherCountsFailures() throws InterruptedException {
+        DiskSpaceManager failing = new MemoryDiskSpaceManager() {
+            @Override
+            public void writePage(long page, byte[] buf) {
+                throw new PageException("could not write page " + page);
+            }
+        };
+        BufferManager flushing = new BufferManager(failing, new DummyRecoveryManager(), 5,
+                                                   new ClockEvictionPolicy());
+        int partNum = failing.allocPart(1);
+        BufferFrame frame = flushing.fetchNewPageFrame(partNum);
+        frame.writeBytes((short) 67, (short) 1, new byte[] { 1 });
+        frame.unpin();
+
+        flushing.startBackgroundFlusher(1.0, 10);
+        try {
+            // the flusher keeps retrying the page
+            long deadline = System.currentTimeMillis() + 10000;
+            while (flushing.getNumWriteBackFailures() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            flushing.stopBackgroundFlusher();
+        }
+        assertTrue(flushing.getNumWriteBackFailures() >= 2);
+        assertEquals(0, flushing.getNumPagesWrittenBack());
+    }
+
+    @Test
+    public void testPrefetchPage() {
+        int partNum = diskSpaceManager.allocPart(1);
+
+        long[] pageNums = new long[5];
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        // every frame is dirty, and prefetching never writes pages out
+        assertFalse(bufferManager.prefetchPage(pageNum));
+        // already loaded
+        assertFalse(bufferManager.prefetchPage(pageNums[0]));
+        // not allocated
+        assertFalse(bufferManager.prefetchPage(DiskSpaceManager.getVirtualPageNum(partNum, 100)));
+
+        bufferManager.evictAll();
+        assertTrue(bufferManager.prefetchPage(pageNum));
+        assertEquals(1, bufferManager.getNumPagesPrefetched());
+
+        long numIOs = bufferManager.getNumIOs();
+        BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+        frame.unpin();
+        assertEquals(numIOs, bufferManager.getNumIOs());
+    }
+
+    @Test
+    public void testPrefetcher() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        // hints are ignored while the prefetcher is not running
+        bufferManager.prefetch(pageNums[0]);
+
+        bufferManager.startPrefetcher(1, 16);
+        try {
+            for (long pageNum : pageNums) {
+                bufferManager.prefetch(pageNum);
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (bufferManager.getNumPagesPrefetched() < pageNums.length &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            bufferManager.stopPrefetcher();
+        }
+        assertEquals(pageNums.length, bufferManager.getNumPagesPrefetched());
+
+        long numIOs = bufferManager.getNumIOs();
+        for (long pageNum : pageNums) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+            frame.unpin();
+        }
+        assertEquals(numIOs, bufferManager.getNumIOs());
+    }
+
+    @Test
+    public void testStripedReload() {
+        BufferManager striped = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 8,
+                                                  ClockEvictionPolicy::new, 4);
+        try {
+            int partNum = diskSpaceManager.allocPart(1);
+
+            // more pages than frames, so every stripe has to evict
+            long[] pageNums = new long[32];
+            for (int i = 0; i < pageNums.length; ++i) {
+                BufferFrame frame = striped.fetchNewPageFrame(partNum);
+                frame.writeBytes((short) 0, (short) 4, new byte[] { (byte) i, 1, 2, 3 });
+                pageNums[i] = frame.getPageNum();
+                frame.unpin();
+            }
+
+            byte[] actual = new byte[4];
+            for (int i = 0; i < pageNums.length; ++i) {
+                BufferFrame frame = striped.fetchPageFrame(pageNums[i]);
+                frame.readBytes((short) 0, (short) 4, actual);
+                frame.unpin();
+                assertArrayEquals(new byte[] { (byte) i, 1, 2, 3 }, actual);
+            }
+
+            striped.freePart(partNum);
+            try {
+                striped.fetchPageFrame(pageNums[0]);
+                fail();
+            } catch (PageException e) { /* do nothing */ }
+        } finally {
+            striped.close();
+        }
+    }
+
+    @Test
+    public void testStripedConcurrentFetch() throws InterruptedException {
+        BufferManager striped = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                                                  LRUEvictionPolicy::new, 4);
+        try {
+            int partNum = diskSpaceManager.allocPart(1);
+            long[] pageNums = new long[8];
+            for (int i = 0; i < pageNums.length; ++i) {
+                BufferFrame frame = striped.fetchNewPageFrame(partNum);
+                frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+                pageNums[i] = frame.getPageNum();
+                frame.unpin();
+            }
+
+            Thread[] threads = new Thread[4];
+            boolean[] failed = new boolean[threads.length];
+            for (int t = 0; t < threads.length; ++t) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    byte[] actual = new byte[1];
+                    for (int j = 0; j < 2000; ++j) {
+                        int i = (j * 7 + id) % pageNums.length;
+                        BufferFrame frame = striped.fetchPageFrame(pageNums[i]);
+                        frame.readBytes((short) 0, (short) 1, actual);
+                        frame.unpin();
+                        if (actual[0] != (byte) i) {
+                            failed[id] = true;
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (boolean f : failed) {
+                assertFalse(f);
+            }
+        } finally {
+            striped.close();
+        }
+    }
+
+    @Test
+    public void testFetchPageReusesHandle() {
+        int partNum = diskSpaceManager.allocPart(1);
+        DummyLockContext parentContext = new DummyLockContext();
+        Page page1 = bufferManager.fetchNewPage(parentContext, partNum);
+        page1.unpin();
+
+        Page page2 = bufferManager.fetchPage(parentContext, page1.getPageNum());
+        Page page3 = bufferManager.fetchPage(parentContext, page1.getPageNum());
+        assertSame(page1, page2);
+        assertSame(page1, page3);
+        page2.unpin();
+        page3.unpin();
+
+        // a handle whose locking was disabled is not handed out again
+        page1.disableLocking();
+        Page page4 = bufferManager.fetchPage(parentContext, page1.getPageNum());
+        assertNotSame(page1, page4);
+        page4.unpin();
+    }
+
+    @Test
+    public void testPinLatchesPage() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum);
+        long pageNum = frame1.getPageNum();
+
+        // another thread fetching the page waits until it is unpinned here
+        CountDownLatch fetched = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            BufferFrame frame2 = bufferManager.fetchPageFrame(pageNum);
+            fetched.countDown();
+            frame2.unpin();
+        });
+        thread.start();
+        assertFalse(fetched.await(200, TimeUnit.MILLISECONDS));
+
+        // but this thread can pin it again
+        BufferFrame frame3 = bufferManager.fetchPageFrame(pageNum);
+        assertSame(frame1, frame3);
+        frame3.unpin();
+        assertFalse(fetched.await(200, TimeUnit.MILLISECONDS));
+
+        frame1.unpin();
+        assertTrue(fetched.await(10, TimeUnit.SECONDS));
+        thread.join(10000);
+        assertFalse(frame1.isPinned());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyStripes() {
+        new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 4, ClockEvictionPolicy::new, 5);
+    }
+
     @Test(expected = PageException.class)
     public void testMissingPart() {
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(0, 0));
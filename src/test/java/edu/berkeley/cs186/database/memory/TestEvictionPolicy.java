@@ -6,7 +6,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @Category({Proj99Tests.class, SystemTests.class})
@@ -32,7 +37,7 @@ public class TestEvictionPolicy {
 
         @Override
         long getPageNum() {
-            return 0;
+            return index;
         }
 
         @Override
@@ -193,4 +198,155 @@ public class TestEvictionPolicy {
         assertEquals(frames[2], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[2], placeholderFrames[3]}));
         policy.cleanup(frames[2]);
     }
+
+    @Test
+    public void testARCPolicy() {
+        EvictionPolicy policy = new ARCEvictionPolicy();
+        policy.init(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+        policy.init(frames[2]); policy.hit(frames[2]);
+        policy.init(frames[3]); policy.hit(frames[3]);
+
+        // referenced again after other pages were loaded: frames 0 and 1 are frequent
+        policy.hit(frames[0]);
+        policy.hit(frames[1]);
+
+        // a scan only cycles through the pages referenced once
+        assertEquals(frames[2], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[2]);
+        policy.init(frames[4]); policy.hit(frames[4]); policy.hit(frames[4]);
+
+        assertEquals(frames[3], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[4], frames[3]}));
+        policy.cleanup(frames[3]);
+        policy.init(frames[5]); policy.hit(frames[5]); policy.hit(frames[5]);
+
+        assertEquals(frames[4], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[4], frames[5]}));
+        policy.cleanup(frames[4]);
+        policy.init(frames[6]); policy.hit(frames[6]);
+
+        assertEquals(frames[5], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[6], frames[5]}));
+        policy.cleanup(frames[5]);
+
+        // page 3 was recently evicted from T1, so it is loaded straight into T2, and T2
+        // now gives up a frame to T1
+        policy.init(frames[3]); policy.hit(frames[3]);
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[6], frames[3]}));
+        policy.cleanup(frames[0]);
+        policy.init(frames[7]); policy.hit(frames[7]);
+
+        // T1 is now above its target size
+        assertEquals(frames[6], policy.evict(new BufferFrame[] {frames[7], frames[1], frames[6], frames[3]}));
+        policy.cleanup(frames[6]);
+
+        // page 0 was recently evicted from T2
+        policy.init(frames[0]); policy.hit(frames[0]);
+        frames[7].pin();
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {frames[7], frames[1], frames[0], frames[3]}));
+        policy.cleanup(frames[1]);
+        policy.init(frames[2]); policy.hit(frames[2]);
+
+        // falls back to T2 while everything in T1 is pinned
+        frames[2].pin();
+        frames[3].pin();
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[7], frames[2], frames[0], frames[3]}));
+        policy.cleanup(frames[0]);
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(new BufferFrame[] {frames[7], frames[2], placeholderFrames[0], frames[3]});
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        frames[7].unpin();
+        assertEquals(frames[7], policy.evict(new BufferFrame[] {frames[7], frames[2], placeholderFrames[0], frames[3]}));
+        policy.cleanup(frames[7]);
+    }
+
+    @Test
+    public void testARCCancelEviction() {
+        EvictionPolicy policy = new ARCEvictionPolicy();
+        policy.init(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+
+        // a frame whose eviction was cancelled is not remembered when it is removed
+        // later (e.g. because its page was freed)
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], frames[1]}));
+        policy.cancelEviction(frames[0]);
+        policy.cleanup(frames[0]);
+
+        // page 0 is loaded into T1 again, not into T2 as a recently evicted page
+        policy.init(frames[0]); policy.hit(frames[0]);
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {frames[0], frames[1]}));
+        policy.cleanup(frames[1]);
+    }
+
+    @Test
+    public void testARCConcurrentHits() throws InterruptedException {
+        EvictionPolicy policy = new ARCEvictionPolicy();
+        BufferFrame[] resident = new BufferFrame[8];
+        for (int i = 0; i < resident.length; ++i) {
+            resident[i] = frames[i];
+            policy.init(resident[i]);
+            policy.hit(resident[i]);
+        }
+        // the first half is pinned, so may be hit at any time, like pages in use;
+        // the other half is churned through evictions meanwhile
+        for (int i = 0; i < 4; ++i) {
+            frames[i].pin();
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean(false);
+        List<Thread> hitters = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            Thread hitter = new Thread(() -> {
+                try {
+                    for (int i = 0; !done.get(); ++i) {
+                        policy.hit(frames[i % 4]);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            hitters.add(hitter);
+            hitter.start();
+        }
+        try {
+            for (int i = 0; i < 20000 && failure.get() == null; ++i) {
+                BufferFrame victim = policy.evict(resident);
+                int victimIndex = Arrays.asList(resident).indexOf(victim);
+                assertTrue(victimIndex >= 4);
+                policy.cleanup(victim);
+                resident[victimIndex] = new TestFrame(8 + i);
+                policy.init(resident[victimIndex]);
+                policy.hit(resident[victimIndex]);
+            }
+        } finally {
+            done.set(true);
+            for (Thread hitter : hitters) {
+                hitter.join();
+            }
+        }
+        assertNull(failure.get());
+
+        // every resident frame is still in exactly one list
+        for (int i = 0; i < 4; ++i) {
+            frames[i].unpin();
+        }
+        Set<BufferFrame> evicted = new HashSet<>();
+        for (int i = 0; i < resident.length; ++i) {
+            BufferFrame victim = policy.evict(resident);
+            assertTrue(evicted.add(victim));
+            policy.cleanup(victim);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(resident)), evicted);
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(resident);
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
 }
@@ -0,0 +1,199 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj3Part1Tests;
+import edu.berkeley.cs186.database.categories.Proj3Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.ColumnVector;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj3Tests.class, Proj3Part1Tests.class})
+public class TestBatchExecution {
+    private static final String TABLE = "batchTable";
+    private static final int NUM_RECORDS = 1000;
+    private Database db;
+    private Transaction transaction;
+    private TransactionContext context;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("batchExecutionTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(5);
+        this.db.waitAllTransactions();
+
+        Schema schema = new Schema()
+                .add("id", Type.intType())
+                .add("name", Type.stringType(8))
+                .add("value", Type.floatType())
+                .add("big", Type.longType())
+                .add("flag", Type.boolType());
+        this.transaction = this.db.beginTransaction();
+        this.transaction.createTable(schema, TABLE);
+        this.context = this.transaction.getTransactionContext();
+        for (int i = 0; i < NUM_RECORDS; ++i) {
+            this.context.addRecord(TABLE, new Record(i, "name" + (i % 7), i / 2.0f, (long) i * i, i % 3 == 0));
+        }
+    }
+
+    @After
+    public void afterEach() {
+        this.transaction.close();
+        this.db.close();
+    }
+
+    private static List<Record> records(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        iter.forEachRemaining(records::add);
+        return records;
+    }
+
+    // Checks that the batches of an operator hold the records of its iterator
+    private static void checkBatches(QueryOperator operator) {
+        List<Record> expected = records(operator.iterator());
+        List<Record> actual = records(RecordBatch.toRecords(operator.batchIterator()));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanBatches() {
+        SequentialScanOperator scan = new SequentialScanOperator(this.context, TABLE);
+        Iterator<RecordBatch> batches = scan.batchIterator();
+        int numRecords = 0;
+        int numBatches = 0;
+        while (batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            assertFalse(batch.isEmpty());
+            assertNotNull(batch.getColumn(0).getInts());
+            assertNotNull(batch.getColumn(1).getCodes());
+            // 7 distinct names
+            assertTrue(batch.getColumn(1).getDictionary().size() <= 7);
+            numRecords += batch.size();
+            ++numBatches;
+        }
+        assertEquals(NUM_RECORDS, numRecords);
+        // one batch per page
+        assertEquals(this.context.getNumDataPages(TABLE), numBatches);
+        checkBatches(scan);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSelectBatches() {
+        List<DataBox> values = Arrays.asList(
+            new IntDataBox(500), new FloatDataBox(100.5f), new LongDataBox(250000L),
+            new StringDataBox("name3", 8), new BoolDataBox(true));
+        String[] columns = {"id", "value", "big", "name", "flag"};
+        for (int i = 0; i < columns.length; ++i) {
+            for (PredicateOperator operator : PredicateOperator.values()) {
+                QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+                checkBatches(new SelectOperator(scan, columns[i], operator, values.get(i)));
+            }
+        }
+        // literals of another numeric type than the column's
+        for (PredicateOperator operator : PredicateOperator.values()) {
+            QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+            checkBatches(new SelectOperator(scan, "id", operator, new FloatDataBox(499.5f)));
+        }
+
+        // chained selections share column vectors
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        QueryOperator select = new SelectOperator(scan, "id", PredicateOperator.LESS_THAN, new IntDataBox(100));
+        select = new SelectOperator(select, "name", PredicateOperator.EQUALS, new StringDataBox("name1", 8));
+        List<Record> records = records(RecordBatch.toRecords(select.batchIterator()));
+        assertEquals(15, records.size());
+        checkBatches(select);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testProjectBatches() {
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        QueryOperator select = new SelectOperator(scan, "id", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(900));
+        ProjectOperator project = new ProjectOperator(select, Arrays.asList("name", "id", "id * 2"),
+                                                      Collections.emptyList());
+        Iterator<RecordBatch> batches = project.batchIterator();
+        RecordBatch batch = batches.next();
+        // column references are not copied; expressions are boxed
+        assertFalse(batch.getColumn(0).isBoxed());
+        assertTrue(batch.getColumn(2).isBoxed());
+        assertEquals(new Record("name" + (900 % 7), 900, 1800), batch.getRecord(0));
+        checkBatches(project);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAggregateBatches() {
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        checkBatches(new ProjectOperator(scan, Arrays.asList("COUNT(*)", "SUM(id)", "MAX(value)"),
+                                         Collections.emptyList()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByBatches() {
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        QueryOperator groupBy = new GroupByOperator(scan, this.context, Collections.singletonList("name"));
+
+        // 7 groups, separated by empty batches
+        int numSeparators = 0;
+        Iterator<RecordBatch> batches = groupBy.batchIterator();
+        while (batches.hasNext()) {
+            if (batches.next().isEmpty()) ++numSeparators;
+        }
+        assertEquals(6, numSeparators);
+
+        List<String> columns = Arrays.asList("name", "COUNT(*)", "SUM(big)");
+        ProjectOperator project = new ProjectOperator(groupBy, columns, Collections.singletonList("name"));
+        checkBatches(project);
+        assertEquals(7, records(RecordBatch.toRecords(project.batchIterator())).size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRecordAdapters() {
+        // operators without a batch implementation batch their records
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        SortOperator sort = new SortOperator(this.context, scan, "value");
+        checkBatches(sort);
+        checkBatches(new SelectOperator(sort, "flag", PredicateOperator.EQUALS, new BoolDataBox(false)));
+
+        Schema schema = new Schema().add("s", Type.stringType(4)).add("b", Type.byteArrayType(2));
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < RecordBatch.BATCH_SIZE + 1; ++i) {
+            records.add(new Record(new StringDataBox(i % 2 == 0 ? "a" : "b", 4),
+                                   new ByteArrayDataBox(new byte[] {(byte) i, 0}, 2)));
+        }
+        Iterator<RecordBatch> batches = RecordBatch.fromRecords(records.iterator(), schema);
+        RecordBatch batch = batches.next();
+        ColumnVector strings = batch.getColumn(0);
+        assertEquals(Arrays.asList("a", "b"), strings.getDictionary());
+        assertEquals(1, strings.getCodes()[1]);
+        assertTrue(batch.getColumn(1).isBoxed());
+        assertEquals(RecordBatch.BATCH_SIZE, batch.size());
+        assertEquals(1, batches.next().size());
+        assertFalse(batches.hasNext());
+        assertEquals(records, records(RecordBatch.toRecords(RecordBatch.fromRecords(records.iterator(), schema))));
+    }
+}
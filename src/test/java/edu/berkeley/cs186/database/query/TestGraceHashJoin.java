@@ -263,4 +263,45 @@ public class TestGraceHashJoin {
         }
     }
 
+    /**
+     * Tests parallel GHJ, whose workers build on the right partitions, since
+     * the left ones do not fit in their share of memory.
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelGHJ() {
+        d.setJoinParallelism(3);
+        try(Transaction transaction = d.beginTransaction()) {
+            d.setWorkMem(12); // B=12, 4 pages per worker
+            Schema leftSchema = TestUtils.createSchemaWithAllTypes();
+            Schema rightSchema = new Schema()
+                .add("int", Type.intType())
+                .add("string", Type.stringType(10));
+
+            List<Record> leftRecords = new ArrayList<>();
+            List<Record> rightRecords = new ArrayList<>();
+            Set<Record> expectedOutput = new HashSet<>();
+
+            for (int i = 0; i < 9300; i++) {
+                leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+
+            for (int i = 186; i < 1860; i++) {
+                Record right = new Record(i, "I love 186");
+                rightRecords.add(right);
+                expectedOutput.add(TestUtils.createRecordWithAllTypesWithValue(i).concat(right));
+            }
+
+            GHJOperator ghj = new GHJOperator(
+                    new TestSourceOperator(leftRecords, leftSchema),
+                    new TestSourceOperator(rightRecords, rightSchema),
+                    "int", "int",
+                    transaction.getTransactionContext()
+            );
+
+            Set<Record> output = new HashSet<>();
+            for (Record record: ghj) output.add(record);
+            assertEquals(expectedOutput, output);
+        }
+    }
 }
@@ -0,0 +1,236 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj3Part1Tests;
+import edu.berkeley.cs186.database.categories.Proj3Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj3Tests.class, Proj3Part1Tests.class})
+public class TestHashAggregateOperator {
+    private static final String TABLE = "aggTable";
+    private Database db;
+    private Transaction transaction;
+    private TransactionContext context;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("hashAggregateTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(3);
+        this.db.waitAllTransactions();
+
+        Schema schema = new Schema().add("key", Type.intType()).add("value", Type.intType());
+        this.transaction = this.db.beginTransaction();
+        this.transaction.createTable(schema, TABLE);
+        this.context = this.transaction.getTransactionContext();
+    }
+
+    @After
+    public void afterEach() {
+        this.transaction.close();
+        this.db.close();
+    }
+
+    private static List<Record> sorted(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        iter.forEachRemaining(records::add);
+        records.sort(Comparator.comparing(r -> r.getValue(0)));
+        return records;
+    }
+
+    private HashAggregateOperator aggregate(List<String> columns) {
+        List<Expression> expressions = new ArrayList<>();
+        for (String column : columns) {
+            expressions.add(Expression.fromString(column));
+        }
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        return new HashAggregateOperator(scan, this.context, columns, expressions,
+                                         Collections.singletonList("key"));
+    }
+
+    private HashAggregateOperator graceAggregate(List<String> columns) {
+        List<Expression> expressions = new ArrayList<>();
+        for (String column : columns) {
+            expressions.add(Expression.fromString(column));
+        }
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        return new GraceHashAggregateOperator(scan, this.context, columns, expressions,
+                                              Collections.singletonList("key"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMatchesGroupBy() {
+        for (int i = 0; i < 1000; ++i) {
+            this.context.addRecord(TABLE, new Record(i % 50, i));
+        }
+        List<String> columns = Arrays.asList("key", "COUNT(*)", "SUM(value)", "MAX(value) - MIN(value)");
+        HashAggregateOperator aggregate = aggregate(columns);
+        assertTrue(aggregate.getMaxGroups() > 50);
+
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        QueryOperator groupBy = new GroupByOperator(scan, this.context, Collections.singletonList("key"));
+        ProjectOperator project = new ProjectOperator(groupBy, columns, Collections.singletonList("key"));
+        List<Record> expected = sorted(project.iterator());
+        assertEquals(50, expected.size());
+        assertEquals(expected, sorted(aggregate.iterator()));
+        assertEquals(expected, sorted(RecordBatch.toRecords(aggregate.batchIterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSpillsPartitions() {
+        HashAggregateOperator aggregate = aggregate(Arrays.asList("key", "COUNT(*)", "SUM(value)"));
+        // every other record is of a new group, so that groups are spilled from
+        // every pass
+        int numGroups = 3 * aggregate.getMaxGroups();
+        for (int i = 0; i < 2 * numGroups; ++i) {
+            this.context.addRecord(TABLE, new Record(i % 2 == 0 ? i / 2 : numGroups - 1 - i / 2, 1));
+        }
+
+        List<Record> expected = new ArrayList<>();
+        for (int key = 0; key < numGroups; ++key) {
+            expected.add(new Record(key, 2, 2));
+        }
+        assertEquals(expected, sorted(aggregate.iterator()));
+        assertEquals(expected, sorted(RecordBatch.toRecords(aggregate.batchIterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlan() {
+        for (int i = 0; i < 100; ++i) {
+            this.context.addRecord(TABLE, new Record(i % 10, i));
+        }
+        QueryPlan query = this.transaction.query(TABLE);
+        query.groupBy("key");
+        query.project("key", "COUNT(*)");
+        List<Record> records = sorted(query.execute());
+        assertTrue(query.getFinalOperator() instanceof HashAggregateOperator);
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(new Record(i, 10), records.get(i));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceMatchesHashAggregate() {
+        for (int i = 0; i < 1000; ++i) {
+            this.context.addRecord(TABLE, new Record(i % 50, i));
+        }
+        List<String> columns = Arrays.asList("key", "COUNT(*)", "SUM(value)", "MAX(value) - MIN(value)");
+        List<Record> expected = sorted(aggregate(columns).iterator());
+        assertEquals(50, expected.size());
+
+        HashAggregateOperator grace = graceAggregate(columns);
+        assertEquals(expected, sorted(grace.iterator()));
+        assertEquals(expected, sorted(RecordBatch.toRecords(grace.batchIterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceRepartitions() {
+        HashAggregateOperator grace = graceAggregate(Arrays.asList("key", "COUNT(*)", "SUM(value)"));
+        // with a work memory of 3 pages, records are hashed into 2 partitions, each
+        // with more groups than fit in memory
+        int numGroups = 3 * grace.getMaxGroups();
+        for (int i = 0; i < 2 * numGroups; ++i) {
+            this.context.addRecord(TABLE, new Record(i % numGroups, i));
+        }
+
+        List<Record> expected = new ArrayList<>();
+        for (int key = 0; key < numGroups; ++key) {
+            expected.add(new Record(key, 2, 2 * key + numGroups));
+        }
+        assertEquals(expected, sorted(grace.iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlanPicksGrace() {
+        HashAggregateOperator aggregate = aggregate(Arrays.asList("key", "COUNT(*)"));
+        int numGroups = 2 * aggregate.getMaxGroups();
+        for (int i = 0; i < numGroups; ++i) {
+            this.context.addRecord(TABLE, new Record(i, i));
+        }
+        QueryPlan query = this.transaction.query(TABLE);
+        query.groupBy("key");
+        query.project("key", "COUNT(*)");
+        query.execute();
+        // without statistics, the number of groups is unknown
+        assertFalse(query.getFinalOperator() instanceof GraceHashAggregateOperator);
+
+        this.context.getTable(TABLE).buildStatistics(10);
+        query = this.transaction.query(TABLE);
+        query.groupBy("key");
+        query.project("key", "COUNT(*)");
+        List<Record> records = sorted(query.execute());
+        assertTrue(query.getFinalOperator() instanceof GraceHashAggregateOperator);
+        assertEquals(numGroups, records.size());
+        for (int i = 0; i < numGroups; ++i) {
+            assertEquals(new Record(i, 1), records.get(i));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceWithTwoBuffers() {
+        // with a work memory of 2 pages, records are hashed into a single
+        // partition, which hashing again cannot split
+        this.db.setWorkMem(2);
+        HashAggregateOperator grace = graceAggregate(Arrays.asList("key", "COUNT(*)", "SUM(value)"));
+        int numGroups = 3 * grace.getMaxGroups();
+        for (int i = 0; i < 2 * numGroups; ++i) {
+            this.context.addRecord(TABLE, new Record(i % numGroups, i));
+        }
+
+        List<Record> expected = new ArrayList<>();
+        for (int key = 0; key < numGroups; ++key) {
+            expected.add(new Record(key, 2, 2 * key + numGroups));
+        }
+        assertEquals(expected, sorted(grace.iterator()));
+
+        // and the query plan uses the hash aggregate instead
+        this.context.getTable(TABLE).buildStatistics(10);
+        QueryPlan query = this.transaction.query(TABLE);
+        query.groupBy("key");
+        query.project("key", "COUNT(*)", "SUM(value)");
+        List<Record> records = sorted(query.execute());
+        assertTrue(query.getFinalOperator() instanceof HashAggregateOperator);
+        assertFalse(query.getFinalOperator() instanceof GraceHashAggregateOperator);
+        assertEquals(expected, records);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCanCopy() {
+        assertTrue(HashAggregateOperator.canCopy(Arrays.asList(
+            Expression.fromString("key"), Expression.fromString("COUNT(*) + 1"))));
+        // string literals print without quotes, and reparse as columns
+        Expression literal = Expression.function("MAX", Expression.literal(new StringDataBox("key", 3)));
+        assertFalse(HashAggregateOperator.canCopy(Collections.singletonList(literal)));
+    }
+}
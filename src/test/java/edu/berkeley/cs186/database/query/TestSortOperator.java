@@ -379,4 +379,130 @@ public class TestSortOperator {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    @Category(PublicTests.class)
+    public void testSortSortedInputMakesOneRun() {
+        try (Transaction transaction = d.beginTransaction()) {
+            d.setWorkMem(3); // B=3
+            List<Record> records = new ArrayList<>(400 * 9);
+            for (int i = 0; i < 400 * 9; i++) {
+                records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+
+            startCountIOs();
+            SortOperator s = new SortOperator(
+                    transaction.getTransactionContext(),
+                    new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes()),
+                    "int"
+            );
+            checkIOs(0);
+
+            // Replacement selection writes sorted input as 1 run of 9 pages,
+            // with no merge pass
+            Run sortedRun = s.sort();
+            checkIOs(9 + NEW_RUN_IOS);
+
+            Iterator<Record> iter = sortedRun.iterator();
+            int i = 0;
+            while (iter.hasNext() && i < 400 * 9) {
+                assertEquals("mismatch at record " + i, records.get(i), iter.next());
+                i++;
+            }
+            assertFalse("too many records", iter.hasNext());
+            assertEquals("too few records", 400 * 9, i);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSortStringsWithCommonPrefix() {
+        try (Transaction transaction = d.beginTransaction()) {
+            d.setWorkMem(3); // B=3
+            Schema schema = new Schema().add("string", Type.stringType(16)).add("int", Type.intType());
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                // all keys have the same 4 character prefix
+                records.add(new Record(String.format("prefix%05d", i), i));
+            }
+            List<Record> shuffled = new ArrayList<>(records);
+            Collections.shuffle(shuffled, new Random(42));
+
+            SortOperator s = new SortOperator(
+                    transaction.getTransactionContext(),
+                    new TestSourceOperator(shuffled, schema),
+                    "string"
+            );
+            Iterator<Record> iter = s.sort().iterator();
+            int i = 0;
+            while (iter.hasNext() && i < records.size()) {
+                assertEquals("mismatch at record " + i, records.get(i), iter.next());
+                i++;
+            }
+            assertFalse("too many records", iter.hasNext());
+            assertEquals("too few records", records.size(), i);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSortNegativeFloats() {
+        try (Transaction transaction = d.beginTransaction()) {
+            d.setWorkMem(3); // B=3
+            Schema schema = new Schema().add("float", Type.floatType());
+            List<Record> records = new ArrayList<>();
+            records.add(new Record(-0.0f));
+            records.add(new Record(0.0f));
+            for (int i = 0; i < 4000; i++) {
+                records.add(new Record((i - 2000) * 0.25f));
+            }
+            List<Record> shuffled = new ArrayList<>(records);
+            Collections.shuffle(shuffled, new Random(42));
+            records.sort(new SortRecordComparator(0));
+
+            SortOperator s = new SortOperator(
+                    transaction.getTransactionContext(),
+                    new TestSourceOperator(shuffled, schema),
+                    "float"
+            );
+            Iterator<Record> iter = s.sort().iterator();
+            int i = 0;
+            while (iter.hasNext() && i < records.size()) {
+                assertEquals("mismatch at record " + i, records.get(i), iter.next());
+                i++;
+            }
+            assertFalse("too many records", iter.hasNext());
+            assertEquals("too few records", records.size(), i);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelSortRandomOrder() {
+        d.setSortParallelism(3);
+        try (Transaction transaction = d.beginTransaction()) {
+            d.setWorkMem(6); // B=6, blocks of 2 pages
+            List<Record> recordsToShuffle = new ArrayList<>();
+            for (int i = 0; i < 400 * 10; i++) {
+                recordsToShuffle.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+            Collections.shuffle(recordsToShuffle, new Random(42));
+
+            SortOperator s = new SortOperator(
+                    transaction.getTransactionContext(),
+                    new TestSourceOperator(recordsToShuffle, TestUtils.createSchemaWithAllTypes()),
+                    "int"
+            );
+
+            // 5 runs of 2 pages, merged at once
+            Iterator<Record> iter = s.sort().iterator();
+            int i = 0;
+            while (iter.hasNext() && i < 400 * 10) {
+                Record expected = TestUtils.createRecordWithAllTypesWithValue(i);
+                assertEquals("mismatch at record " + i, expected, iter.next());
+                i++;
+            }
+            assertFalse("too many records", iter.hasNext());
+            assertEquals("too few records", 400 * 10, i);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj3Part1Tests;
+import edu.berkeley.cs186.database.categories.Proj3Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj3Tests.class, Proj3Part1Tests.class})
+public class TestTopNOperator {
+    private static final String TABLE = "topNTable";
+    private Database db;
+    private Transaction transaction;
+    private TransactionContext context;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("topNTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(3);
+        this.db.waitAllTransactions();
+
+        Schema schema = new Schema().add("key", Type.intType()).add("value", Type.intType());
+        this.transaction = this.db.beginTransaction();
+        this.transaction.createTable(schema, TABLE);
+        this.context = this.transaction.getTransactionContext();
+
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        for (int key : keys) {
+            this.context.addRecord(TABLE, new Record(key, -key));
+        }
+    }
+
+    @After
+    public void afterEach() {
+        this.transaction.close();
+        this.db.close();
+    }
+
+    private static List<Record> toList(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        iter.forEachRemaining(records::add);
+        return records;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMatchesSortAndLimit() {
+        for (int[] limitOffset : new int[][] {{10, 0}, {10, 25}, {0, 5}, {100, 1995}, {5000, 0}}) {
+            int limit = limitOffset[0];
+            int offset = limitOffset[1];
+            QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+            QueryOperator sort = new SortOperator(this.context, scan, "value");
+            List<Record> expected = toList(new LimitOperator(sort, limit, offset).iterator());
+
+            scan = new SequentialScanOperator(this.context, TABLE);
+            TopNOperator topN = new TopNOperator(this.context, scan, "value", limit, offset);
+            assertEquals(expected, toList(topN.iterator()));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFitsInMemory() {
+        QueryOperator scan = new SequentialScanOperator(this.context, TABLE);
+        assertTrue(new TopNOperator(this.context, scan, "key", 10, 10).fitsInMemory());
+        assertFalse(new TopNOperator(this.context, scan, "key", 1000000, 0).fitsInMemory());
+        assertFalse(new TopNOperator(this.context, scan, "key", Integer.MAX_VALUE, 1).fitsInMemory());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlan() {
+        QueryPlan query = this.transaction.query(TABLE);
+        query.sort("key");
+        query.limit(3, 2);
+        List<Record> records = toList(query.execute());
+        assertTrue(query.getFinalOperator() instanceof TopNOperator);
+        assertEquals(Arrays.asList(new Record(2, -2), new Record(3, -3), new Record(4, -4)), records);
+
+        // a limit larger than work memory is a sort and a limit
+        query = this.transaction.query(TABLE);
+        query.sort("key");
+        query.limit(1000000);
+        records = toList(query.execute());
+        assertTrue(query.getFinalOperator() instanceof LimitOperator);
+        assertEquals(2000, records.size());
+    }
+}
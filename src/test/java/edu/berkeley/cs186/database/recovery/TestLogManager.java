@@ -14,10 +14,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @Category(SystemTests.class)
 public class TestLogManager {
@@ -130,4 +134,97 @@ public class TestLogManager {
         postIO = bufferManager.getNumIOs();
         assertEquals(0, postIO - prevIO);
     }
+
+    @Test
+    public void testTruncate() {
+        int recordsPerPage = DiskSpaceManager.PAGE_SIZE / 9;
+        for (int i = 0; i < recordsPerPage * 6; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.rewriteMasterRecord(new MasterLogRecord(40000L));
+
+        // only flushed pages are freed
+        logManager.flushToLSN(29999L);
+        assertEquals(2, logManager.truncateBefore(50000L));
+        assertNull(logManager.fetchLogRecord(10000L));
+        assertNull(logManager.fetchLogRecord(20000L));
+        assertEquals(new MasterLogRecord(recordsPerPage * 3), logManager.fetchLogRecord(30000L));
+
+        // not past the page the master record points to
+        logManager.flushToLSN(59999L);
+        assertEquals(1, logManager.truncateBefore(50000L));
+        assertEquals(40000L, logManager.getFirstLSN());
+
+        Iterator<LogRecord> iter = logManager.iterator();
+        assertEquals(new MasterLogRecord(40000L), iter.next());
+        for (int i = 1; i < recordsPerPage; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        for (int i = recordsPerPage * 4; i < recordsPerPage * 6; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // truncated pages are not reused
+        assertEquals(60000L, logManager.appendToLog(new MasterLogRecord(1234)));
+    }
+
+    @Test
+    public void testTruncateReopen() {
+        int recordsPerPage = DiskSpaceManager.PAGE_SIZE / 9;
+        for (int i = 0; i < recordsPerPage * 6; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.rewriteMasterRecord(new MasterLogRecord(40000L));
+        logManager.flushToLSN(59999L);
+        assertEquals(3, logManager.truncateBefore(40000L));
+        logManager.close();
+
+        logManager = new LogManager(bufferManager);
+        assertEquals(40000L, logManager.getFirstLSN());
+        assertEquals(new MasterLogRecord(recordsPerPage * 4), logManager.fetchLogRecord(40000L));
+        assertEquals(60000L, logManager.appendToLog(new MasterLogRecord(1234)));
+    }
+
+    @Test
+    public void testGroupCommitSingleFlush() throws InterruptedException {
+        long[] LSNs = new long[4];
+        for (int i = 0; i < LSNs.length; ++i) {
+            LSNs[i] = logManager.appendToLog(new MasterLogRecord(i));
+        }
+        // long delay: the batch is only flushed once all four committers are waiting
+        logManager.startGroupCommit(60000, LSNs.length);
+
+        long prevIO = bufferManager.getNumIOs();
+        List<Thread> threads = new ArrayList<>();
+        for (long LSN : LSNs) {
+            Thread t = new Thread(() -> logManager.groupFlushToLSN(LSN));
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long postIO = bufferManager.getNumIOs();
+
+        assertEquals(1, postIO - prevIO);
+        for (long LSN : LSNs) {
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+        }
+    }
+
+    @Test
+    public void testGroupCommitMaxDelay() {
+        long LSN = logManager.appendToLog(new MasterLogRecord(1234));
+        // batch never fills up, so it is flushed after the max delay
+        logManager.startGroupCommit(10, 100);
+
+        logManager.groupFlushToLSN(LSN);
+
+        assertTrue(logManager.getFlushedLSN() >= LSN);
+        logManager.stopGroupCommit();
+        LSN = logManager.appendToLog(new MasterLogRecord(5678));
+        logManager.groupFlushToLSN(LSN);
+        assertTrue(logManager.getFlushedLSN() >= LSN);
+    }
 }
@@ -11,8 +11,10 @@ import org.junit.experimental.categories.Category;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @Category(SystemTests.class)
 public class TestLogRecord {
@@ -86,6 +88,46 @@ public class TestLogRecord {
                                                "zxcvb".getBytes()));
     }
 
+    @Test
+    public void testCompactUpdatePageSerialize() {
+        UpdatePageLogRecord record = new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 1234,
+                "asdfg".getBytes(), "zxcvb".getBytes());
+        record.setCompact(true);
+        checkSerialize(record);
+
+        record = new UpdatePageLogRecord(98765L, 10000000001L, 43210L, (short) 12, "asdfg".getBytes(),
+                                         "asdfh".getBytes());
+        record.setCompact(true);
+        checkSerialize(record);
+        UpdatePageLogRecord plain = new UpdatePageLogRecord(98765L, 10000000001L, 43210L, (short) 12,
+                "asdfg".getBytes(), "asdfh".getBytes());
+        assertTrue(record.toBytes().length < plain.toBytes().length);
+    }
+
+    @Test
+    public void testCompactUpdatePageSerializeLarge() {
+        // repetitive images, mostly unchanged: compressed
+        byte[] before = new byte[2000];
+        byte[] after = new byte[2000];
+        for (int i = 0; i < before.length; ++i) {
+            before[i] = (byte) (i % 50);
+            after[i] = (byte) (i >= 100 && i < 120 ? i : i % 50);
+        }
+        UpdatePageLogRecord record = new UpdatePageLogRecord(98765L, 10000000001L, 43210L, (short) 0, before,
+                after);
+        record.setCompact(true);
+        checkSerialize(record);
+        assertTrue(record.toBytes().length < before.length);
+
+        // random images: stored uncompressed
+        Random random = new Random(186);
+        random.nextBytes(before);
+        random.nextBytes(after);
+        record = new UpdatePageLogRecord(98765L, 10000000001L, 43210L, (short) 0, before, after);
+        record.setCompact(true);
+        checkSerialize(record);
+    }
+
     @Test
     public void testUndoUpdatePageSerialize() {
         byte[] pageString = new String(new char[BufferManager.EFFECTIVE_PAGE_SIZE]).replace('\0',
@@ -6,10 +6,12 @@ import edu.berkeley.cs186.database.categories.HiddenTests;
 import edu.berkeley.cs186.database.categories.Proj5Tests;
 import edu.berkeley.cs186.database.categories.PublicTests;
 import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.*;
 import org.junit.After;
 import org.junit.Before;
@@ -23,6 +25,8 @@ import org.junit.rules.Timeout;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static junit.framework.TestCase.assertTrue;
@@ -568,6 +572,150 @@ public class TestRecoveryManager {
         }
     }
 
+    /**
+     * Tests that the background checkpointer takes a checkpoint once enough log
+     * has been written, without waiting for its interval to elapse:
+     *  - T1 writes two log pages worth of updates with the checkpointer running,
+     *    checkpointing every log page
+     *    Checks:
+     *      - The master record points to a checkpoint taken after the updates
+     *        started
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testCheckpointerLogVolume() throws InterruptedException {
+        byte[] before = new byte[] { (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00 };
+        byte[] after = new byte[] { (byte) 0xBA, (byte) 0xAD, (byte) 0xF0, (byte) 0x0D };
+        recoveryManager.startTransaction(DummyTransaction.create(1L));
+        recoveryManager.startCheckpointer(60000, 1);
+
+        long firstWriteLSN = recoveryManager.logPageWrite(1L, 10000000001L, (short) 0, before, after);
+        for (int i = 0; i < 2 * DiskSpaceManager.PAGE_SIZE / 39; ++i) {
+            recoveryManager.logPageWrite(1L, 10000000001L, (short) 0, before, after);
+        }
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (recoveryManager.getLastCheckpointLSN() < firstWriteLSN && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        recoveryManager.stopCheckpointer();
+        MasterLogRecord master = (MasterLogRecord) logManager.fetchLogRecord(0L);
+        assertTrue(master.lastCheckpointLSN > firstWriteLSN);
+        assertEquals(LogType.BEGIN_CHECKPOINT, logManager.fetchLogRecord(master.lastCheckpointLSN).getType());
+    }
+
+    /**
+     * Tests that the background checkpointer writes back pages that have been
+     * dirty since before the last checkpoint:
+     *  - Page 10000000001 is modified and added to the DPT, and a checkpoint is taken
+     *  - The checkpointer is started with a short interval
+     *    Checks:
+     *      - The page is written back and leaves the DPT
+     *      - The next checkpoint's DPT no longer contains the page
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testCheckpointerWritesBackOldPages() throws InterruptedException {
+        recoveryManager.redoComplete = true; // Must be true for DPT to shrink
+        Page page = bufferManager.fetchPage(new DummyLockContext(), 10000000001L);
+        try {
+            page.getBuffer().put(new byte[] { (byte) 0xBA, (byte) 0xAD, (byte) 0xF0, (byte) 0x0D });
+        } finally {
+            page.unpin();
+        }
+        dirtyPageTable.put(10000000001L, recoveryManager.getLastCheckpointLSN());
+        recoveryManager.checkpoint();
+        long checkpointLSN = recoveryManager.getLastCheckpointLSN();
+
+        recoveryManager.startCheckpointer(10, 1000);
+        long deadline = System.currentTimeMillis() + 1000;
+        while ((dirtyPageTable.containsKey(10000000001L) || recoveryManager.getLastCheckpointLSN() == checkpointLSN)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        recoveryManager.stopCheckpointer();
+
+        assertFalse(dirtyPageTable.containsKey(10000000001L));
+        MasterLogRecord master = (MasterLogRecord) logManager.fetchLogRecord(0L);
+        assertTrue(master.lastCheckpointLSN > checkpointLSN);
+        Iterator<LogRecord> logs = logManager.scanFrom(master.lastCheckpointLSN);
+        logs.next(); // begin checkpoint
+        assertFalse(logs.next().getDirtyPageTable().containsKey(10000000001L));
+    }
+
+    /**
+     * Tests that a failed background checkpoint is reported:
+     *  - A checkpointer is started on a recovery manager whose checkpoints fail
+     *    Checks:
+     *      - Closing the checkpointer rethrows the failure
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testCheckpointerReportsFailure() throws InterruptedException {
+        CountDownLatch attempted = new CountDownLatch(1);
+        RuntimeException failure = new IllegalStateException("checkpoint failed");
+        ARIESRecoveryManager failing = new ARIESRecoveryManager(DummyTransaction::create) {
+            @Override
+            public void checkpoint() {
+                attempted.countDown();
+                throw failure;
+            }
+        };
+        Checkpointer checkpointer = new Checkpointer(failing, 10, 1000);
+        assertTrue(attempted.await(10, TimeUnit.SECONDS));
+        try {
+            checkpointer.close();
+            fail("failed checkpoint was not reported");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    /**
+     * Tests truncating the log up to the recovery horizon:
+     *  - T1 writes two pages' worth of updates to page 10000000001, and a checkpoint
+     *    is taken
+     *    Checks:
+     *      - No log pages are freed, since T1 is running and the page is dirty
+     *  - T1 commits and ends, the page is written back, and a checkpoint is taken
+     *    Checks:
+     *      - The log pages before the checkpoint are freed
+     *      - The checkpoint can still be fetched, but T1's first update cannot
+     *  - The database is shut down and loaded from disk again
+     *    Checks:
+     *      - The log starts at the same page, and is appended to after its last page
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testTruncateLog() {
+        byte[] before = new byte[] { (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00 };
+        byte[] after = new byte[] { (byte) 0xBA, (byte) 0xAD, (byte) 0xF0, (byte) 0x0D };
+        recoveryManager.startTransaction(DummyTransaction.create(1L));
+        long firstWriteLSN = recoveryManager.logPageWrite(1L, 10000000001L, (short) 0, before, after);
+        for (int i = 0; i < 2 * DiskSpaceManager.PAGE_SIZE / 39; ++i) {
+            recoveryManager.logPageWrite(1L, 10000000001L, (short) 0, before, after);
+        }
+        recoveryManager.checkpoint();
+        assertEquals(0, recoveryManager.truncateLog());
+
+        recoveryManager.commit(1L);
+        recoveryManager.end(1L);
+        dirtyPageTable.remove(10000000001L); // page written back
+        recoveryManager.checkpoint();
+        long checkpointLSN = recoveryManager.getLastCheckpointLSN();
+        assertTrue(recoveryManager.truncateLog() > 0);
+        assertEquals(LogManager.makeLSN(LogManager.getLSNPage(checkpointLSN), 0), logManager.getFirstLSN());
+        assertEquals(LogType.BEGIN_CHECKPOINT, logManager.fetchLogRecord(checkpointLSN).getType());
+        assertNull(logManager.fetchLogRecord(firstWriteLSN));
+
+        long firstLSN = logManager.getFirstLSN();
+        shutdownRecoveryManager(recoveryManager);
+        recoveryManager = loadRecoveryManager(testDir);
+        assertEquals(firstLSN, logManager.getFirstLSN());
+        recoveryManager.checkpoint();
+        assertTrue(LogManager.getLSNPage(recoveryManager.getLastCheckpointLSN()) >
+                   LogManager.getLSNPage(checkpointLSN));
+    }
     /**
      * Test rolling back T2 while T1 is also running:
      * 1. T1 writes, T2 writes, T2 makes savepoint, T1 and T2 continue writing
@@ -976,6 +1124,88 @@ public class TestRecoveryManager {
         finishRedoChecks();
     }
 
+    /**
+     * Test parallel redo against serial redo:
+     * 1. Sets up two identical logs, each with T1 making 400 overlapping updates
+     *    to 11 pages, with a partition and page allocated halfway through, of
+     *    which only the first 100 updates make it to disk before the crash.
+     * 2. Runs redo serially on one, and with 4 redo threads on the other.
+     * 3. Checks that every page ends up with the same contents and pageLSN.
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelRedoMatchesSerial() throws IOException {
+        String serialDir = tempFolder.newFolder("serial-redo").getAbsolutePath();
+        String parallelDir = tempFolder.newFolder("parallel-redo").getAbsolutePath();
+        Map<Long, Long> dpt = crashAfterUpdates(serialDir);
+        assertEquals(dpt, crashAfterUpdates(parallelDir));
+
+        ARIESRecoveryManager serial = loadRecoveryManager(serialDir);
+        serial.dirtyPageTable.putAll(dpt);
+        serial.restartRedo();
+
+        ARIESRecoveryManager parallel = loadRecoveryManager(parallelDir);
+        parallel.dirtyPageTable.putAll(dpt);
+        parallel.setRedoThreads(4);
+        parallel.restartRedo();
+
+        for (long pageNum : dpt.keySet()) {
+            Page serialPage = serial.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+            Page parallelPage = parallel.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+            try {
+                byte[] serialBytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+                byte[] parallelBytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+                serialPage.getBuffer().get(serialBytes);
+                parallelPage.getBuffer().get(parallelBytes);
+                assertArrayEquals(serialBytes, parallelBytes);
+                assertEquals(serialPage.getPageLSN(), parallelPage.getPageLSN());
+            } finally {
+                serialPage.unpin();
+                parallelPage.unpin();
+            }
+        }
+        shutdownRecoveryManager(serial);
+        shutdownRecoveryManager(parallel);
+    }
+
+    /**
+     * Writes the log for testParallelRedoMatchesSerial in dir, applies the first
+     * 100 updates, and simulates a crash.
+     * @return the dirty page table at the time of the crash
+     */
+    private Map<Long, Long> crashAfterUpdates(String dir) {
+        ARIESRecoveryManager recoveryManager = loadRecoveryManager(dir);
+        Random random = new Random(186);
+        Map<Long, Long> dpt = new HashMap<>();
+        DummyTransaction.create(1L);
+        long newPageNum = DiskSpaceManager.getVirtualPageNum(2, 0);
+        long prevLSN = 0L;
+        for (int i = 0; i < 400; ++i) {
+            long pageNum = DiskSpaceManager.getVirtualPageNum(1, random.nextInt(10));
+            if (i == 200) {
+                prevLSN = logManager.appendToLog(new AllocPartLogRecord(1L, 2, prevLSN));
+                prevLSN = logManager.appendToLog(new AllocPageLogRecord(1L, newPageNum, prevLSN));
+            }
+            if (i >= 200 && random.nextInt(4) == 0) {
+                pageNum = newPageNum;
+            }
+            byte[] before = new byte[8];
+            byte[] after = new byte[8];
+            random.nextBytes(before);
+            random.nextBytes(after);
+            // small offsets, so that updates to a page overlap
+            LogRecord record = new UpdatePageLogRecord(1L, pageNum, prevLSN, (short) random.nextInt(32),
+                                                       before, after);
+            prevLSN = logManager.appendToLog(record);
+            dpt.putIfAbsent(pageNum, prevLSN);
+            if (i < 100) {
+                record.redo(recoveryManager, diskSpaceManager, bufferManager);
+            }
+        }
+        shutdownRecoveryManager(recoveryManager);
+        return dpt;
+    }
+
     /**
      * Test undo phase of recovery:
      * 1. Sets up log - T1 makes 4 updates and then aborts.